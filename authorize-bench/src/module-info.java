@@ -0,0 +1,17 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+// JMH instantiates the benchmark states and generated classes reflectively.
+open module authorize.bench {
+    exports org.spc.ofp.project.authorize.bench;
+    requires java.logging;
+    requires jmh.core;
+    // Used by JMH, which is an automatic module.
+    requires jdk.unsupported;
+    requires authorize.core;
+    // The current JSign digest path is measured against ours.
+    requires jsign;
+    requires authorize.test.support;
+}
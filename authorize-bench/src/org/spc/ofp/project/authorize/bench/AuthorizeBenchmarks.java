@@ -0,0 +1,39 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.util.Arrays;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks; accepts the usual JMH command line options, ie: {@code JarSigning -p engine=IN_PROCESS -t 1}.
+ * <br>When the first argument is {@code throughput}, runs the end-to-end {@link ThroughputCommand} instead.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class AuthorizeBenchmarks {
+
+    /**
+     * Main entry point.
+     * @param args The JMH command line arguments.
+     * @throws Exception In case of errors.
+     */
+    public static void main(String... args) throws Exception {
+        if (args.length > 0 && ThroughputCommand.NAME.equals(args[0])) {
+            final var command = new ThroughputCommand(Arrays.copyOfRange(args, 1, args.length), System.out);
+            System.exit(command.run());
+        }
+        final var commandLine = new CommandLineOptions(args);
+        var builder = new OptionsBuilder().parent(commandLine);
+        // Forked JVMs only inherit the class path; give them the module path when running as a module.
+        final var modulePath = System.getProperty("jdk.module.path"); // NOI18N.
+        if (modulePath != null && !modulePath.isBlank()) {
+            builder = builder.jvmArgsPrepend("--module-path", modulePath, "--add-modules", "ALL-MODULE-PATH"); // NOI18N.
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,147 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Fixtures shared by the benchmarks.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum BenchmarkUtils {
+    /**
+     * Unique instance of this class.
+     */
+    INSTANCE;
+
+    /**
+     * Number of files processed by each benchmark invocation; scores are per batch.
+     */
+    public static final int BATCH_SIZE = 8;
+    /**
+     * Alias of the throwaway signing key.
+     */
+    public static final String ALIAS = "bench"; // NOI18N.
+    /**
+     * Password of the throwaway key store and key.
+     */
+    public static final String PASSWORD = "benchmark"; // NOI18N.
+    /**
+     * Logger given to the signing processes.
+     */
+    public static final Logger LOGGER = Logger.getLogger(BenchmarkUtils.class.getName());
+
+    /**
+     * Gets the directory that contains the {@code jarsigner} executable of the running JDK.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    public String jdkBinDirectory() {
+        return Paths.get(System.getProperty("java.home"), "bin").toString(); // NOI18N.
+    }
+
+    /**
+     * Copies a template file over each file of a batch.
+     * @param template The template.
+     * @param files The files.
+     * @throws IOException In case of IO errors.
+     */
+    public void restore(final Path template, final List<Path> files) throws IOException {
+        for (final var file : files) {
+            Files.copy(template, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Creates the paths of a batch of files in a directory.
+     * @param directory The directory.
+     * @param extension The extension of the files, ie: {@code jar}.
+     * @return A {@code List<Path>} instance, never {@code null}.
+     */
+    public List<Path> batch(final Path directory, final String extension) {
+        final var result = new ArrayList<Path>(BATCH_SIZE);
+        for (int index = 0; index < BATCH_SIZE; index++) {
+            result.add(directory.resolve(String.format("file-%d.%s", index, extension))); // NOI18N.
+        }
+        return result;
+    }
+
+    /**
+     * Creates the pool used to spread a batch over several threads.
+     * @param threads The number of threads.
+     * @return An {@code ExecutorService} instance, {@code null} if {@code threads} is lower or equal to 1.
+     */
+    public ExecutorService createPool(final int threads) {
+        return (threads <= 1) ? null : Executors.newFixedThreadPool(threads, runnable -> {
+            final var thread = new Thread(runnable, "bench-worker"); // NOI18N.
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs tasks, on the calling thread if {@code pool} is {@code null}.
+     * @param <T> The type of the results.
+     * @param pool The pool, may be {@code null}.
+     * @param tasks The tasks.
+     * @return A {@code List<T>} instance, never {@code null}.
+     * @throws Exception The first error raised by a task.
+     */
+    public <T> List<T> runAll(final ExecutorService pool, final List<Callable<T>> tasks) throws Exception {
+        final var result = new ArrayList<T>(tasks.size());
+        if (pool == null) {
+            for (final var task : tasks) {
+                result.add(task.call());
+            }
+            return result;
+        }
+        for (final var future : pool.invokeAll(tasks)) {
+            try {
+                result.add(future.get());
+            } catch (ExecutionException ex) {
+                throw (ex.getCause() instanceof Exception) ? (Exception) ex.getCause() : ex;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes a directory and its content.
+     * @param directory The directory, may be {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    public void deleteTree(final Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException ex) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
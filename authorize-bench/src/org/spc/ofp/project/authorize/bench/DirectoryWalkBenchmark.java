@@ -0,0 +1,112 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerProcess;
+
+/**
+ * Walks a tree with {@code JarSignerProcess}, using an engine that reports every JAR file as signed.
+ * <br>The score covers the walk, the filtering and the dispatch to the workers; no JAR file is opened.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DirectoryWalkBenchmark {
+
+    @Param({"1000", "20000"})
+    public int fileCount;
+    @Param({"2", "6"})
+    public int depth;
+    @Param({"1", "4"})
+    public int threads;
+    /**
+     * One file out of {@code jarRatio} is a JAR file.
+     */
+    @Param({"4"})
+    public int jarRatio;
+
+    private Path directory;
+    private JarSignerParameters parameters;
+    private final AtomicInteger visited = new AtomicInteger();
+    private final JarSignerEngine engine = new JarSignerEngine() {
+        @Override
+        public boolean isFileSigned(final Path file) {
+            visited.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public void signFile(final Path file) {
+        }
+
+        @Override
+        public boolean isSigned(final byte[] jar) {
+            return true;
+        }
+
+        @Override
+        public byte[] sign(final byte[] jar) {
+            return jar;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("directory-walk"); // NOI18N.
+        for (int index = 0; index < fileCount; index++) {
+            var folder = directory;
+            // Spread files over a tree with 8 folders per level.
+            for (int level = 0, value = index; level < depth; level++, value /= 8) {
+                folder = folder.resolve(String.format("dir-%d", value % 8)); // NOI18N.
+            }
+            Files.createDirectories(folder);
+            final var extension = (index % jarRatio == 0) ? "jar" : "class"; // NOI18N.
+            Files.createFile(folder.resolve(String.format("file-%d.%s", index, extension))); // NOI18N.
+        }
+        parameters = JarSignerParametersBuilder.create()
+                .pathToSign(directory.toString())
+                .threads(threads)
+                .debugCommand(false)
+                .logger(BenchmarkUtils.LOGGER)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public int walk() throws Exception {
+        visited.set(0);
+        new JarSignerProcess(parameters, engine, null).sign();
+        return visited.get();
+    }
+}
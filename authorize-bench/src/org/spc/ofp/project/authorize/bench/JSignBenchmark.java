@@ -0,0 +1,120 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jsign.JSignEngine;
+import org.spc.ofp.project.authorize.signature.jsign.JSignProcess;
+import org.spc.ofp.project.authorize.test.ArtifactUtils;
+import org.spc.ofp.project.authorize.test.CertificateUtils;
+import org.spc.ofp.project.authorize.test.LocalTimeStampServer;
+
+/**
+ * Signs a batch of unsigned PE executables with {@code JSignProcess}.
+ * <br>The key store is loaded once per trial, as the daemon does.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class JSignBenchmark {
+
+    @Param({"65536", "4194304", "67108864"})
+    public long fileSize;
+    @Param({"1", "4"})
+    public int threads;
+    /**
+     * If {@code true}, signatures are timestamped by a local TSA.
+     */
+    @Param({"false"})
+    public boolean timestamp;
+
+    private Path directory;
+    private Path template;
+    private List<Path> files;
+    private LocalTimeStampServer tsa;
+    private List<Callable<Void>> tasks;
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final var utils = BenchmarkUtils.INSTANCE;
+        directory = Files.createTempDirectory("jsign"); // NOI18N.
+        final var keyStoreFile = directory.resolve("bench.jks"); // NOI18N.
+        CertificateUtils.INSTANCE.writeCodeSigningKeyStore(keyStoreFile, "JKS", BenchmarkUtils.ALIAS, BenchmarkUtils.PASSWORD); // NOI18N.
+        template = directory.resolve("template.bin"); // NOI18N.
+        ArtifactUtils.INSTANCE.writePortableExecutable(template, fileSize, new Random(0));
+        files = utils.batch(directory, "exe"); // NOI18N.
+        if (timestamp) {
+            tsa = new LocalTimeStampServer(0);
+            tsa.start();
+        }
+        final var builder = JSignParametersBuilder.create()
+                .keystoreFilename(keyStoreFile.toString())
+                .password(BenchmarkUtils.PASSWORD)
+                .keypass(BenchmarkUtils.PASSWORD)
+                .alias(BenchmarkUtils.ALIAS)
+                .programName("Benchmark") // NOI18N.
+                .useTimeStamp(timestamp)
+                .timeStampHost(timestamp ? tsa.getURL() : null)
+                .debugCommand(false)
+                .logger(BenchmarkUtils.LOGGER);
+        final var engine = new JSignEngine(builder.build());
+        tasks = files.stream()
+                .map(file -> builder.filename(file.toString()).build())
+                .map(parameters -> (Callable<Void>) () -> {
+                    new JSignProcess(parameters, engine, null).sign();
+                    return null;
+                })
+                .collect(Collectors.toList());
+        pool = utils.createPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() throws Exception {
+        BenchmarkUtils.INSTANCE.restore(template, files);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (tsa != null) {
+            tsa.stop();
+        }
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public void sign() throws Exception {
+        BenchmarkUtils.INSTANCE.runAll(pool, tasks);
+    }
+}
@@ -0,0 +1,121 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerProcess;
+import org.spc.ofp.project.authorize.test.ArtifactUtils;
+import org.spc.ofp.project.authorize.test.CertificateUtils;
+import org.spc.ofp.project.authorize.test.LocalTimeStampServer;
+
+/**
+ * Signs a batch of unsigned JAR files with {@code JarSignerProcess}, forking {@code jarsigner} or signing in-process.
+ * <br>The score is the time needed to sign the whole batch, engine creation included.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class JarSigningBenchmark {
+
+    /**
+     * The signing engine.
+     */
+    public enum Engine {
+        FORKED,
+        IN_PROCESS;
+    }
+
+    @Param({"IN_PROCESS", "FORKED"})
+    public Engine engine;
+    @Param({"65536", "4194304"})
+    public long jarSize;
+    @Param({"10", "1000"})
+    public int entryCount;
+    @Param({"1", "4"})
+    public int threads;
+    /**
+     * If {@code true}, signatures are timestamped by a local TSA.
+     */
+    @Param({"false"})
+    public boolean timestamp;
+
+    private Path directory;
+    private Path template;
+    private List<Path> files;
+    private LocalTimeStampServer tsa;
+    private JarSignerParameters parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final var utils = BenchmarkUtils.INSTANCE;
+        directory = Files.createTempDirectory("jar-signing"); // NOI18N.
+        final var keyStore = directory.resolve("bench.p12"); // NOI18N.
+        CertificateUtils.INSTANCE.writeCodeSigningKeyStore(keyStore, "PKCS12", BenchmarkUtils.ALIAS, BenchmarkUtils.PASSWORD); // NOI18N.
+        template = directory.resolve("template.bin"); // NOI18N.
+        ArtifactUtils.INSTANCE.writeJar(template, entryCount, jarSize, new Random(0));
+        final var tree = Files.createDirectory(directory.resolve("tree")); // NOI18N.
+        files = utils.batch(tree, "jar"); // NOI18N.
+        if (timestamp) {
+            tsa = new LocalTimeStampServer(0);
+            tsa.start();
+        }
+        parameters = JarSignerParametersBuilder.create()
+                .javaHome(utils.jdkBinDirectory())
+                .pathToSign(tree.toString())
+                .keyStore(keyStore.toString())
+                .storePassword(BenchmarkUtils.PASSWORD)
+                .keyPass(BenchmarkUtils.PASSWORD)
+                .alias(BenchmarkUtils.ALIAS)
+                .useTimeStamp(timestamp)
+                .timeStampHost(timestamp ? tsa.getURL() : null)
+                .inProcess(engine == Engine.IN_PROCESS)
+                .threads(threads)
+                .debugCommand(false)
+                .logger(BenchmarkUtils.LOGGER)
+                .build();
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() throws Exception {
+        BenchmarkUtils.INSTANCE.restore(template, files);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (tsa != null) {
+            tsa.stop();
+        }
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public void sign() throws Exception {
+        new JarSignerProcess(parameters, null).sign();
+    }
+}
@@ -0,0 +1,104 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.signature.jarsigner.InProcessJarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.test.ArtifactUtils;
+import org.spc.ofp.project.authorize.test.CertificateUtils;
+
+/**
+ * Checks whether a batch of JAR files is signed, as done before signing each file.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class JarVerificationBenchmark {
+
+    @Param({"65536", "4194304"})
+    public long jarSize;
+    @Param({"10", "1000"})
+    public int entryCount;
+    @Param({"1", "4"})
+    public int threads;
+    @Param({"true", "false"})
+    public boolean signed;
+    @Param({"false", "true"})
+    public boolean fullVerification;
+
+    private Path directory;
+    private List<Callable<Boolean>> tasks;
+    private ExecutorService pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final var utils = BenchmarkUtils.INSTANCE;
+        directory = Files.createTempDirectory("jar-verification"); // NOI18N.
+        final var keyStore = directory.resolve("bench.p12"); // NOI18N.
+        CertificateUtils.INSTANCE.writeCodeSigningKeyStore(keyStore, "PKCS12", BenchmarkUtils.ALIAS, BenchmarkUtils.PASSWORD); // NOI18N.
+        final var template = directory.resolve("template.jar"); // NOI18N.
+        ArtifactUtils.INSTANCE.writeJar(template, entryCount, jarSize, new Random(0));
+        final var parameters = JarSignerParametersBuilder.create()
+                .keyStore(keyStore.toString())
+                .storePassword(BenchmarkUtils.PASSWORD)
+                .keyPass(BenchmarkUtils.PASSWORD)
+                .alias(BenchmarkUtils.ALIAS)
+                .useTimeStamp(false)
+                .fullVerification(fullVerification)
+                .debugCommand(false)
+                .logger(BenchmarkUtils.LOGGER)
+                .build();
+        final JarSignerEngine engine = new InProcessJarSignerEngine(parameters);
+        if (signed) {
+            engine.signFile(template);
+        }
+        final var files = utils.batch(directory, "jar"); // NOI18N.
+        utils.restore(template, files);
+        tasks = files.stream()
+                .map(file -> (Callable<Boolean>) () -> engine.isFileSigned(file))
+                .collect(Collectors.toList());
+        pool = utils.createPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public List<Boolean> isFileSigned() throws Exception {
+        return BenchmarkUtils.INSTANCE.runAll(pool, tasks);
+    }
+}
@@ -0,0 +1,94 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.signature.jarsigner.InProcessJarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.test.ArtifactUtils;
+import org.spc.ofp.project.authorize.test.CertificateUtils;
+
+/**
+ * Signs a single large JAR file in-process, with the JDK signer or with parallel entry digests.
+ * <br>The threshold is set to {@code thresholdMB} so that smaller sizes show the cost of the JDK signer the parallel mode falls back to.
+ * <br>Run with {@code -prof gc} and a small {@code -jvmArgs -Xmx} to compare memory use on JAR files with many entries.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LargeJarSigningBenchmark {
+
+    @Param({"16777216", "268435456"})
+    public long jarSize;
+    @Param({"20000", "150000"})
+    public int entryCount;
+    @Param({"false", "true"})
+    public boolean parallelDigests;
+    @Param({"0"})
+    public long thresholdMB;
+
+    private Path directory;
+    private Path template;
+    private Path file;
+    private InProcessJarSignerEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("large-jar-signing"); // NOI18N.
+        final var keyStore = directory.resolve("bench.p12"); // NOI18N.
+        CertificateUtils.INSTANCE.writeCodeSigningKeyStore(keyStore, "PKCS12", BenchmarkUtils.ALIAS, BenchmarkUtils.PASSWORD); // NOI18N.
+        template = directory.resolve("template.bin"); // NOI18N.
+        ArtifactUtils.INSTANCE.writeJar(template, entryCount, jarSize, new Random(0));
+        file = directory.resolve("large.jar"); // NOI18N.
+        engine = new InProcessJarSignerEngine(JarSignerParametersBuilder.create()
+                .keyStore(keyStore.toString())
+                .storePassword(BenchmarkUtils.PASSWORD)
+                .keyPass(BenchmarkUtils.PASSWORD)
+                .alias(BenchmarkUtils.ALIAS)
+                .useTimeStamp(false)
+                .parallelDigests(parallelDigests)
+                .parallelDigestThreshold(thresholdMB * 1024 * 1024)
+                .debugCommand(false)
+                .logger(BenchmarkUtils.LOGGER)
+                .build());
+    }
+
+    @Setup(Level.Iteration)
+    public void restore() throws Exception {
+        Files.copy(template, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public void sign() throws Exception {
+        engine.signFile(file);
+    }
+}
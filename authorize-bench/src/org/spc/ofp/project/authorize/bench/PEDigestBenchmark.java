@@ -0,0 +1,89 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.jsign.DigestAlgorithm;
+import net.jsign.pe.PEFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.signature.jsign.PEDigester;
+import org.spc.ofp.project.authorize.test.ArtifactUtils;
+
+/**
+ * Computes the Authenticode digest of a single large PE file, with JSign's channel reads or in read-ahead windows.
+ * <br>The {@code dual} benchmarks compute SHA-1 and SHA-256 digests, as when checking a file with nested signatures.
+ * <br>The template is built in memory; run larger sizes with a matching {@code -jvmArgs -Xmx}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PEDigestBenchmark {
+
+    @Param({"67108864", "536870912"})
+    public long fileSize;
+
+    private Path directory;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("pe-digest"); // NOI18N.
+        file = directory.resolve("large.exe"); // NOI18N.
+        ArtifactUtils.INSTANCE.writePortableExecutable(file, fileSize, new Random(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public byte[] channel() throws Exception {
+        try (final var peFile = new PEFile(file.toFile())) {
+            return peFile.computeDigest(DigestAlgorithm.SHA256.getMessageDigest());
+        }
+    }
+
+    @Benchmark
+    public byte[] windowed() throws Exception {
+        return PEDigester.INSTANCE.digest(file, DigestAlgorithm.SHA256.getMessageDigest());
+    }
+
+    @Benchmark
+    public List<byte[]> dualChannel() throws Exception {
+        try (final var peFile = new PEFile(file.toFile())) {
+            return List.of(peFile.computeDigest(DigestAlgorithm.SHA1.getMessageDigest()),
+                    peFile.computeDigest(DigestAlgorithm.SHA256.getMessageDigest()));
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> dualWindowed() throws Exception {
+        final List<MessageDigest> digests = List.of(DigestAlgorithm.SHA1.getMessageDigest(), DigestAlgorithm.SHA256.getMessageDigest());
+        return PEDigester.INSTANCE.digest(file, digests);
+    }
+}
@@ -0,0 +1,91 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.io.StreamConsumer;
+
+/**
+ * Drains process-like output with {@code StreamConsumer}.
+ * <br>Each invocation starts {@code threads} consumers at once, as when several forked commands run concurrently.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StreamConsumerBenchmark {
+
+    @Param({"10", "10000"})
+    public int lineCount;
+    @Param({"80"})
+    public int lineLength;
+    @Param({"2", "16"})
+    public int threads;
+
+    private byte[] output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final var line = "x".repeat(lineLength); // NOI18N.
+        // The error line sits in the middle of the output.
+        final var half = (line + "\n").repeat(lineCount / 2); // NOI18N.
+        output = (half + "jarsigner: error\n" + half).getBytes(StandardCharsets.US_ASCII); // NOI18N.
+    }
+
+    /**
+     * Drains and discards the whole output.
+     * @throws Exception In case of errors.
+     */
+    @Benchmark
+    public void consume() throws Exception {
+        final var consumers = new ArrayList<StreamConsumer>(threads);
+        for (int index = 0; index < threads; index++) {
+            consumers.add(new StreamConsumer(new ByteArrayInputStream(output), OutputStream.nullOutputStream()));
+        }
+        for (final var consumer : consumers) {
+            consumer.await();
+        }
+    }
+
+    /**
+     * Waits for the error line only; the rest of the output is drained in the background.
+     * @return The matching lines.
+     * @throws Exception In case of errors.
+     */
+    @Benchmark
+    public List<Optional<String>> awaitMatch() throws Exception {
+        final var consumers = new ArrayList<StreamConsumer>(threads);
+        for (int index = 0; index < threads; index++) {
+            consumers.add(new StreamConsumer(new ByteArrayInputStream(output), null, line -> line.startsWith("jarsigner"))); // NOI18N.
+        }
+        final var result = new ArrayList<Optional<String>>(threads);
+        for (final var consumer : consumers) {
+            result.add(consumer.awaitMatch());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,281 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.spc.ofp.project.authorize.signature.jarsigner.ForkedJarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.InProcessJarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerProcess;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jsign.JSignEngine;
+import org.spc.ofp.project.authorize.signature.jsign.JSignProcess;
+import org.spc.ofp.project.authorize.test.CorpusGenerator;
+import org.spc.ofp.project.authorize.test.LocalTimeStampServer;
+
+/**
+ * End-to-end throughput benchmark: generates a corpus, then signs it with the real {@code JarSignerProcess} and {@code JSignProcess}.
+ * <br>Reports files/sec, MB/sec and per-file latency percentiles for each signing method.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class ThroughputCommand {
+
+    /**
+     * Name of the command, equals to "{@value}".
+     */
+    public static final String NAME = "throughput"; // NOI18N.
+
+    /**
+     * Decorates an engine to measure the time spent on each file, check included.
+     */
+    private static final class TimedEngine implements JarSignerEngine {
+
+        private final JarSignerEngine delegated;
+        private final Map<Path, Long> latencies = new ConcurrentHashMap<>();
+
+        TimedEngine(final JarSignerEngine delegated) {
+            this.delegated = delegated;
+        }
+
+        @Override
+        public boolean isFileSigned(final Path file) throws Exception {
+            final long start = System.nanoTime();
+            try {
+                return delegated.isFileSigned(file);
+            } finally {
+                latencies.merge(file, System.nanoTime() - start, Long::sum);
+            }
+        }
+
+        @Override
+        public void signFile(final Path file) throws Exception {
+            final long start = System.nanoTime();
+            try {
+                delegated.signFile(file);
+            } finally {
+                latencies.merge(file, System.nanoTime() - start, Long::sum);
+            }
+        }
+
+        @Override
+        public boolean isSigned(final byte[] jar) throws Exception {
+            return delegated.isSigned(jar);
+        }
+
+        @Override
+        public byte[] sign(final byte[] jar) throws Exception {
+            return delegated.sign(jar);
+        }
+    }
+
+    private final Map<String, String> arguments = new HashMap<>();
+    private final PrintStream out;
+
+    /**
+     * Creates a new instance.
+     * @param args The command line arguments, ie: {@code --jars=500}.
+     * @param out The report stream.
+     */
+    public ThroughputCommand(final String[] args, final PrintStream out) {
+        for (final var arg : args) {
+            final var pair = arg.replaceFirst("^--", "").split("=", 2); // NOI18N.
+            arguments.put(pair[0], (pair.length > 1) ? pair[1] : "true"); // NOI18N.
+        }
+        this.out = out;
+    }
+
+    private int intArgument(final String name, final int defaultValue) {
+        return arguments.containsKey(name) ? Integer.parseInt(arguments.get(name)) : defaultValue;
+    }
+
+    private long longArgument(final String name, final long defaultValue) {
+        return arguments.containsKey(name) ? Long.parseLong(arguments.get(name)) : defaultValue;
+    }
+
+    private double doubleArgument(final String name, final double defaultValue) {
+        return arguments.containsKey(name) ? Double.parseDouble(arguments.get(name)) : defaultValue;
+    }
+
+    /**
+     * Prints the usage of this command.
+     */
+    private void printUsage() {
+        out.printf("Usage: %s [options]%n", NAME); // NOI18N.
+        out.println("  --corpus=<dir>            Directory of the corpus; a temporary one is used and deleted otherwise."); // NOI18N.
+        out.println("  --jars=<count>            Number of JAR files (100)."); // NOI18N.
+        out.println("  --min-size=<bytes>        Minimum JAR size (16384)."); // NOI18N.
+        out.println("  --max-size=<bytes>        Maximum JAR size (4194304)."); // NOI18N.
+        out.println("  --entries=<count>         Entries per JAR file (100)."); // NOI18N.
+        out.println("  --depth=<levels>          Nesting depth of the tree (3)."); // NOI18N.
+        out.println("  --signed-fraction=<0..1>  Fraction of JAR files already signed (0)."); // NOI18N.
+        out.println("  --executables=<count>     Number of PE executables (10)."); // NOI18N.
+        out.println("  --exe-size=<bytes>        Size of PE executables (1048576)."); // NOI18N.
+        out.println("  --seed=<long>             Seed of the generator (0)."); // NOI18N.
+        out.println("  --forked                  Fork jarsigner instead of signing in-process."); // NOI18N.
+        out.println("  --threads=<count>         Signing threads (1)."); // NOI18N.
+        out.println("  --tsa-latency=<ms>        Timestamp with a local TSA that answers after this delay."); // NOI18N.
+    }
+
+    /**
+     * Runs this command.
+     * @return The exit code.
+     * @throws Exception In case of errors.
+     */
+    public int run() throws Exception {
+        if (arguments.containsKey("help")) { // NOI18N.
+            printUsage();
+            return 0;
+        }
+        final var utils = BenchmarkUtils.INSTANCE;
+        final boolean temporary = !arguments.containsKey("corpus"); // NOI18N.
+        final var root = temporary ? Files.createTempDirectory("corpus") : Paths.get(arguments.get("corpus")); // NOI18N.
+        LocalTimeStampServer tsa = null;
+        try {
+            out.printf("Generating corpus in %s%n", root); // NOI18N.
+            final var corpus = CorpusGenerator.create()
+                    .jarCount(intArgument("jars", 100)) // NOI18N.
+                    .jarSize(longArgument("min-size", 16 * 1024), longArgument("max-size", 4 * 1024 * 1024)) // NOI18N.
+                    .entriesPerJar(intArgument("entries", 100)) // NOI18N.
+                    .depth(intArgument("depth", 3)) // NOI18N.
+                    .signedFraction(doubleArgument("signed-fraction", 0)) // NOI18N.
+                    .executableCount(intArgument("executables", 10)) // NOI18N.
+                    .executableSize(longArgument("exe-size", 1024 * 1024)) // NOI18N.
+                    .seed(longArgument("seed", 0)) // NOI18N.
+                    .generate(root);
+            out.printf("%d JAR files, %d executables, %.1f MB%n", corpus.getJars().size(), corpus.getExecutables().size(), corpus.getTotalSize() / 1e6); // NOI18N.
+            final int threads = intArgument("threads", 1); // NOI18N.
+            final boolean timestamp = arguments.containsKey("tsa-latency"); // NOI18N.
+            if (timestamp) {
+                tsa = new LocalTimeStampServer(0);
+                tsa.setLatency(Duration.ofMillis(longArgument("tsa-latency", 0))); // NOI18N.
+                tsa.start();
+            }
+            final var timeStampHost = timestamp ? tsa.getURL() : null;
+            // JAR files.
+            final var jarParameters = JarSignerParametersBuilder.create()
+                    .javaHome(utils.jdkBinDirectory())
+                    .pathToSign(corpus.getTree().toString())
+                    .keyStore(corpus.getKeyStore().toString())
+                    .storePassword(CorpusGenerator.PASSWORD)
+                    .keyPass(CorpusGenerator.PASSWORD)
+                    .alias(CorpusGenerator.ALIAS)
+                    .useTimeStamp(timestamp)
+                    .timeStampHost(timeStampHost)
+                    .inProcess(!arguments.containsKey("forked")) // NOI18N.
+                    .threads(threads)
+                    .debugCommand(false)
+                    .logger(BenchmarkUtils.LOGGER)
+                    .build();
+            final var engine = new TimedEngine(arguments.containsKey("forked") // NOI18N.
+                    ? new ForkedJarSignerEngine(jarParameters)
+                    : new InProcessJarSignerEngine(jarParameters));
+            final long jarBytes = totalSize(corpus.getJars());
+            long start = System.nanoTime();
+            new JarSignerProcess(jarParameters, engine, null).sign();
+            report("jarsigner", corpus.getJars().size(), jarBytes, System.nanoTime() - start, engine.latencies.values().stream().mapToLong(Long::longValue).toArray()); // NOI18N.
+            // PE files.
+            if (!corpus.getExecutables().isEmpty()) {
+                final var jsignBuilder = JSignParametersBuilder.create()
+                        .keystoreFilename(corpus.getKeyStore().toString())
+                        .password(CorpusGenerator.PASSWORD)
+                        .keypass(CorpusGenerator.PASSWORD)
+                        .alias(CorpusGenerator.ALIAS)
+                        .programName("Corpus") // NOI18N.
+                        .useTimeStamp(timestamp)
+                        .timeStampHost(timeStampHost)
+                        .debugCommand(false)
+                        .logger(BenchmarkUtils.LOGGER);
+                final var jsignEngine = new JSignEngine(jsignBuilder.build());
+                final List<Callable<Long>> tasks = corpus.getExecutables().stream()
+                        .map(file -> jsignBuilder.filename(file.toString()).build())
+                        .map(parameters -> (Callable<Long>) () -> {
+                            final long fileStart = System.nanoTime();
+                            new JSignProcess(parameters, jsignEngine, null).sign();
+                            return System.nanoTime() - fileStart;
+                        })
+                        .collect(Collectors.toList());
+                final long exeBytes = totalSize(corpus.getExecutables());
+                final var pool = utils.createPool(threads);
+                try {
+                    start = System.nanoTime();
+                    final var latencies = utils.runAll(pool, tasks);
+                    report("jsign", tasks.size(), exeBytes, System.nanoTime() - start, latencies.stream().mapToLong(Long::longValue).toArray()); // NOI18N.
+                } finally {
+                    if (pool != null) {
+                        pool.shutdownNow();
+                    }
+                }
+            }
+            if (tsa != null) {
+                out.printf("TSA: %d requests%n", tsa.getRequestCount()); // NOI18N.
+            }
+        } finally {
+            if (tsa != null) {
+                tsa.stop();
+            }
+            if (temporary) {
+                utils.deleteTree(root);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the size of a list of files.
+     * @param files The files.
+     * @return A {@code long}.
+     * @throws Exception In case of IO errors.
+     */
+    private static long totalSize(final List<Path> files) throws Exception {
+        long result = 0;
+        for (final var file : files) {
+            result += Files.size(file);
+        }
+        return result;
+    }
+
+    /**
+     * Prints the result of a run.
+     * @param method The signing method.
+     * @param files The number of files.
+     * @param bytes The size of the files before signing.
+     * @param nanos The duration of the run.
+     * @param latencies Per-file latencies in nanoseconds.
+     */
+    private void report(final String method, final int files, final long bytes, final long nanos, final long[] latencies) {
+        Arrays.sort(latencies);
+        final double seconds = nanos / 1e9;
+        out.printf("%-10s %6d files in %8.2f s: %8.1f files/s, %8.2f MB/s, latency p50 %.1f ms, p95 %.1f ms, p99 %.1f ms%n", // NOI18N.
+                method, files, seconds, files / seconds, bytes / 1e6 / seconds,
+                percentile(latencies, 50) / 1e6, percentile(latencies, 95) / 1e6, percentile(latencies, 99) / 1e6);
+    }
+
+    /**
+     * Gets a percentile, using the nearest-rank method.
+     * @param sorted The sorted values.
+     * @param percentile The percentile in [0, 100].
+     * @return A {@code long}, {@code 0} if there are no values.
+     */
+    private static long percentile(final long[] sorted, final int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
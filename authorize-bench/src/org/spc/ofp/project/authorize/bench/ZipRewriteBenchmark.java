@@ -0,0 +1,119 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spc.ofp.project.authorize.io.RawZipFile;
+import org.spc.ofp.project.authorize.io.RawZipWriter;
+import org.spc.ofp.project.authorize.test.ArtifactUtils;
+
+/**
+ * Rewrites a JAR file with a new manifest, the way signing does, without the digests.
+ * <br>{@code RECOMPRESS} inflates and deflates every entry again; {@code RAW} copies entries verbatim with {@code RawZipWriter}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ZipRewriteBenchmark {
+
+    /**
+     * How entries are copied.
+     */
+    public enum Copy {
+        RECOMPRESS,
+        RAW;
+    }
+
+    @Param({"RECOMPRESS", "RAW"})
+    public Copy copy;
+    @Param({"16777216", "268435456"})
+    public long jarSize;
+    @Param({"20000"})
+    public int entryCount;
+
+    private Path directory;
+    private Path source;
+    private Path target;
+    private final byte[] manifest = "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8); // NOI18N.
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("zip-rewrite"); // NOI18N.
+        source = directory.resolve("source.jar"); // NOI18N.
+        target = directory.resolve("target.jar"); // NOI18N.
+        ArtifactUtils.INSTANCE.writeJar(source, entryCount, jarSize, new Random(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        BenchmarkUtils.INSTANCE.deleteTree(directory);
+    }
+
+    @Benchmark
+    public void rewrite() throws Exception {
+        switch (copy) {
+            case RAW: {
+                try (final var raw = new RawZipFile(source);
+                     final var writer = new RawZipWriter(target)) {
+                    writer.write(JarFile.MANIFEST_NAME, manifest, System.currentTimeMillis());
+                    for (final var entry : raw.getEntries()) {
+                        if (!JarFile.MANIFEST_NAME.equals(entry.getName())) {
+                            writer.copy(raw, entry);
+                        }
+                    }
+                }
+                break;
+            }
+            case RECOMPRESS:
+            default: {
+                try (final var zipFile = new ZipFile(source.toFile());
+                     final var zip = new ZipOutputStream(Files.newOutputStream(target))) {
+                    zip.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+                    zip.write(manifest);
+                    zip.closeEntry();
+                    for (final var entry : Collections.list(zipFile.entries())) {
+                        if (JarFile.MANIFEST_NAME.equals(entry.getName())) {
+                            continue;
+                        }
+                        final var copied = new ZipEntry(entry);
+                        copied.setCompressedSize(-1);
+                        zip.putNextEntry(copied);
+                        try (final var input = zipFile.getInputStream(entry)) {
+                            input.transferTo(zip);
+                        }
+                        zip.closeEntry();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -7,5 +7,6 @@ module authorize.cli {
     exports org.spc.ofp.project.authorize.cli;
     requires java.logging;
     requires authorize.core;
+    requires authorize.daemon;
     requires jsign;
 }
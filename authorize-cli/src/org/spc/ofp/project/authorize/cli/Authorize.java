@@ -5,6 +5,10 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.cli;
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Files;
@@ -12,19 +16,29 @@ import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.daemon.DaemonClient;
 import org.spc.ofp.project.authorize.signature.SignMethod;
 import org.spc.ofp.project.authorize.signature.SignUtils;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
 import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
 import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerProcess;
 import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerUtils;
+import org.spc.ofp.project.authorize.signature.jsign.AuthenticodeVerifier;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParameters;
 import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
 import org.spc.ofp.project.authorize.signature.jsign.JSignProcess;
 import org.spc.ofp.project.authorize.signature.jsign.JSignUtils;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureProcess;
+import org.spc.ofp.project.authorize.signature.bundle.StreamSignatureProcess;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureProcess;
 
 /**
  * Authorize command line interface.
@@ -99,6 +113,70 @@ public final class Authorize {
     public static final String TIMESTAMP_HOST_FLAG = "time-stamp-host"; // NOI18N.
     public static final String PROGRAM_NAME_FLAG = "program-name"; // NOI18N.
     public static final String PROGRAM_URL_FLAG = "program-url"; // NOI18N.
+    /**
+     * Full verification flag, equals to "{@value}".
+     * <br>When set, the digests of already signed JAR files are verified instead of only looking for signature files.
+     */
+    public static final String FULL_VERIFICATION_FLAG = "full-verification"; // NOI18N.
+    /**
+     * Warm workers flag, equals to "{@value}".
+     * <br>When set, jarsigner runs in a pool of long-lived JVMs of the target JDK instead of one new process per file.
+     */
+    public static final String WARM_WORKERS_FLAG = "warm-workers"; // NOI18N.
+    /**
+     * Parallel digests flag, equals to "{@value}".
+     * <br>When set, entry digests of large JAR files are computed in parallel; requires the jarsigner API sign method.
+     */
+    public static final String PARALLEL_DIGESTS_FLAG = "parallel-digests"; // NOI18N.
+    /**
+     * Parallel digest threshold in MB, equals to "{@value}".
+     */
+    public static final String PARALLEL_DIGEST_THRESHOLD_FLAG = "parallel-digest-threshold"; // NOI18N.
+    /**
+     * Reuse digests flag, equals to "{@value}".
+     * <br>When set, digests of entries unchanged since a previous signature are not computed again; requires the jarsigner API sign method.
+     */
+    public static final String REUSE_DIGESTS_FLAG = "reuse-digests"; // NOI18N.
+    /**
+     * Re-sign flag, equals to "{@value}".
+     * <br>When set, already signed JAR files are signed again and their existing signatures removed.
+     */
+    public static final String RESIGN_FLAG = "resign"; // NOI18N.
+    /**
+     * Sign nested flag, equals to "{@value}".
+     * <br>When set, JAR files nested in JAR files or ZIP archives are signed before their container; mixed sign method only.
+     */
+    public static final String SIGN_NESTED_FLAG = "sign-nested"; // NOI18N.
+    /**
+     * Additional aliases flag, equals to "{@value}".
+     * <br>Comma-separated aliases from the same key store that also sign each file, in the same pass with the jarsigner API sign method.
+     */
+    public static final String ADDITIONAL_ALIASES_FLAG = "additional-aliases"; // NOI18N.
+    /**
+     * Verify only flag, equals to "{@value}".
+     * <br>When set, native files are checked against the certificate of the alias and a report is printed; nothing is signed.
+     */
+    public static final String VERIFY_ONLY_FLAG = "verify-only"; // NOI18N.
+    /**
+     * Number of worker threads, equals to "{@value}".
+     */
+    public static final String THREADS_FLAG = "threads"; // NOI18N.
+    /**
+     * Incremental flag, equals to "{@value}".
+     * <br>When set, files recorded as signed in the index of a previous run and unchanged since are skipped.
+     */
+    public static final String INCREMENTAL_FLAG = "incremental"; // NOI18N.
+    /**
+     * No daemon flag, equals to "{@value}".
+     * <br>When set, files are signed by this process even if a signing daemon is running.
+     */
+    public static final String NO_DAEMON_FLAG = "no-daemon"; // NOI18N.
+    /**
+     * Stream flag, equals to "{@value}".
+     * <br>When set, an archive is read from the standard input and the signed archive is written to the standard output;
+     * the path to sign is ignored.
+     */
+    public static final String STREAM_FLAG = "stream"; // NOI18N.
 
     /**
      * Main entry point.
@@ -118,9 +196,11 @@ public final class Authorize {
         }
         // Override with command line arguments.
         mergeConfigurations(arguments, config);
+        // The standard output carries the signed archive in stream mode.
+        final var out = isStream(config) ? System.err : System.out;
         config.entrySet()
                 .stream()
-                .forEach(System.out::println);
+                .forEach(out::println);
         validateConfiguration(config);
         // Start sign job.
         sign(config);
@@ -139,7 +219,10 @@ public final class Authorize {
         out.printf("  %s%s=<path>\t\t%s%n", FLAG_PREXIT, CONFIG_FLAG, I18N.INSTANCE.getString("flag.config.description")); // NOI18N.
         out.printf("  %s%s=<method>\t%s%n", FLAG_PREXIT, SIGN_METHOD_FLAG, I18N.INSTANCE.getString("flag.sign-method.description")); // NOI18N.
         out.printf("\t%s\t\t%s%n", SignMethod.JARSIGNER, I18N.INSTANCE.getString("sign-method.jarsigner.description")); // NOI18N.
+        out.printf("\t%s\t\t%s%n", SignMethod.JARSIGNER_API, I18N.INSTANCE.getString("sign-method.jarsigner-api.description")); // NOI18N.
         out.printf("\t%s\t\t\t%s%n", SignMethod.JSIGN, I18N.INSTANCE.getString("sign-method.jsign.description")); // NOI18N.
+        out.printf("\t%s\t\t\t%s%n", SignMethod.MIXED, I18N.INSTANCE.getString("sign-method.mixed.description")); // NOI18N.
+        out.printf("\t%s\t\t\t%s%n", SignMethod.BUNDLE, I18N.INSTANCE.getString("sign-method.bundle.description")); // NOI18N.
         out.printf("  %s%s=<alias>\t\t%s%n", FLAG_PREXIT, ALIAS_FLAG, I18N.INSTANCE.getString("flag.alias.description")); // NOI18N.
         out.printf("  %s%s=<path>\t\t%s%n", FLAG_PREXIT, KEY_STORE_FLAG, I18N.INSTANCE.getString("flag.key-store.description")); // NOI18N.
         out.printf("  %s%s=<path>\t\t%s%n", FLAG_PREXIT, STORE_PASSWORD_FLAG, I18N.INSTANCE.getString("flag.store-password.description")); // NOI18N.
@@ -147,14 +230,27 @@ public final class Authorize {
         out.printf("  %s%s=<url>\t\t%s%n", FLAG_PREXIT, PROXY_HOST_FLAG, I18N.INSTANCE.getString("flag.proxy-host.description")); // NOI18N.
         out.printf("  %s%s=<port>\t\t%s%n", FLAG_PREXIT, PROXY_PORT_FLAG, I18N.INSTANCE.getString("flag.proxy-port.description")); // NOI18N.
         out.printf("  %s%s=<url>\t%s%n", FLAG_PREXIT, TIMESTAMP_HOST_FLAG, I18N.INSTANCE.getString("flag.timestamp-host.description")); // NOI18N.
+        out.printf("  %s%s=<count>\t\t%s%n", FLAG_PREXIT, THREADS_FLAG, I18N.INSTANCE.getString("flag.threads.description")); // NOI18N.
+        out.printf("  %s%s\t\t%s%n", FLAG_PREXIT, INCREMENTAL_FLAG, I18N.INSTANCE.getString("flag.incremental.description")); // NOI18N.
+        out.printf("  %s%s\t\t%s%n", FLAG_PREXIT, NO_DAEMON_FLAG, I18N.INSTANCE.getString("flag.no-daemon.description")); // NOI18N.
+        out.printf("  %s%s\t\t\t%s%n", FLAG_PREXIT, STREAM_FLAG, I18N.INSTANCE.getString("flag.stream.description")); // NOI18N.
         out.println();
         out.println(I18N.INSTANCE.getString("usage.jar-signer-options")); // NOI18N.
         out.printf("  %s%s=<path>\t\t%s%n", FLAG_PREXIT, JAVA_HOME_FLAG, I18N.INSTANCE.getString("flag.java-home.description")); // NOI18N.
         out.printf("  %s%s=<filename>\t%s%n", FLAG_PREXIT, JAR_SIGNER_FLAG, I18N.INSTANCE.getString("flag.jar-signer.description")); // NOI18N.
+        out.printf("  %s%s\t%s%n", FLAG_PREXIT, FULL_VERIFICATION_FLAG, I18N.INSTANCE.getString("flag.full-verification.description")); // NOI18N.
+        out.printf("  %s%s\t\t%s%n", FLAG_PREXIT, WARM_WORKERS_FLAG, I18N.INSTANCE.getString("flag.warm-workers.description")); // NOI18N.
+        out.printf("  %s%s\t%s%n", FLAG_PREXIT, PARALLEL_DIGESTS_FLAG, I18N.INSTANCE.getString("flag.parallel-digests.description")); // NOI18N.
+        out.printf("  %s%s=<MB>\t%s%n", FLAG_PREXIT, PARALLEL_DIGEST_THRESHOLD_FLAG, I18N.INSTANCE.getString("flag.parallel-digest-threshold.description")); // NOI18N.
+        out.printf("  %s%s\t\t%s%n", FLAG_PREXIT, REUSE_DIGESTS_FLAG, I18N.INSTANCE.getString("flag.reuse-digests.description")); // NOI18N.
+        out.printf("  %s%s\t\t\t%s%n", FLAG_PREXIT, RESIGN_FLAG, I18N.INSTANCE.getString("flag.resign.description")); // NOI18N.
+        out.printf("  %s%s\t\t%s%n", FLAG_PREXIT, SIGN_NESTED_FLAG, I18N.INSTANCE.getString("flag.sign-nested.description")); // NOI18N.
+        out.printf("  %s%s=<aliases>\t%s%n", FLAG_PREXIT, ADDITIONAL_ALIASES_FLAG, I18N.INSTANCE.getString("flag.additional-aliases.description")); // NOI18N.
         out.println();
         out.println(I18N.INSTANCE.getString("usage.jsign-options")); // NOI18N.
         out.printf("  %s%s=<name>\t\t%s%n", FLAG_PREXIT, PROGRAM_NAME_FLAG, I18N.INSTANCE.getString("flag.program-name.description")); // NOI18N.
         out.printf("  %s%s=<url>\t\t%s%n", FLAG_PREXIT, PROGRAM_URL_FLAG, I18N.INSTANCE.getString("flag.program-url.description")); // NOI18N.
+        out.printf("  %s%s\t\t%s%n", FLAG_PREXIT, VERIFY_ONLY_FLAG, I18N.INSTANCE.getString("flag.verify-only.description")); // NOI18N.
     }
 
     /**
@@ -183,6 +279,18 @@ public final class Authorize {
         result.put(DEBUG_COMMAND_FLAG, "false");
         result.put(DEBUG_SIGNATURE_FLAG, "false");
         result.put(DEBUG_DIRECTORY_WALK_FLAG, "false");
+        result.put(FULL_VERIFICATION_FLAG, "false");
+        result.put(WARM_WORKERS_FLAG, "false");
+        result.put(PARALLEL_DIGESTS_FLAG, "false");
+        result.put(PARALLEL_DIGEST_THRESHOLD_FLAG, String.valueOf(JarSignerUtils.DEFAULT_PARALLEL_DIGEST_THRESHOLD / (1024 * 1024)));
+        result.put(REUSE_DIGESTS_FLAG, "false");
+        result.put(RESIGN_FLAG, "false");
+        result.put(SIGN_NESTED_FLAG, "false");
+        result.put(VERIFY_ONLY_FLAG, "false");
+        result.put(THREADS_FLAG, "1");
+        result.put(INCREMENTAL_FLAG, "false");
+        result.put(NO_DAEMON_FLAG, "false");
+        result.put(STREAM_FLAG, "false");
         result.put(PROXY_HOST_FLAG, null);
         result.put(PROXY_PORT_FLAG, null);
         result.put(TIMESTAMP_HOST_FLAG, SignUtils.DEFAULT_TIME_STAMP_HOST);
@@ -330,8 +438,20 @@ public final class Authorize {
                         case SIGN_METHOD_FLAG: {
                             final var signMethodStr = arguments.getOrDefault(SIGN_METHOD_FLAG, SignMethod.JARSIGNER.name());
                             final var signMethod = SignMethod.parse(signMethodStr);
+                            // No path in stream mode; native executables cannot be signed from a stream.
+                            if (isStream(arguments) && signMethod == SignMethod.JSIGN) {
+                                System.err.printf(I18N.INSTANCE.getString("error.stream-sign-method.message"), signMethodStr); // NOI18N.
+                                System.exit(ErrorCode.EXIT_FAILURE);
+                            }
+                            if (isStream(arguments) && signMethod != SignMethod.UNKNOWN) {
+                                break;
+                            }
                             switch (signMethod) {
-                                case JARSIGNER: {
+                                case JARSIGNER:
+                                case JARSIGNER_API:
+                                case JSIGN:
+                                case MIXED:
+                                case BUNDLE: {
                                     final var pathToSignStr = arguments.get(PATH_TO_SIGN);
                                     try {
                                         final var pathToSign = Paths.get(pathToSignStr);
@@ -345,20 +465,6 @@ public final class Authorize {
                                     }
                                     break;
                                 }
-                                case JSIGN: {
-                                    final var pathToSignStr = arguments.get(PATH_TO_SIGN);
-                                    try {
-                                        final var pathToSign = Paths.get(pathToSignStr);
-                                        if (!Files.exists(pathToSign) || !Files.isRegularFile(pathToSign) || !Files.isReadable(pathToSign)) {
-                                            System.err.printf(I18N.INSTANCE.getString("error.java-home-invalid.message"), pathToSign.toAbsolutePath().toString());
-                                            System.exit(ErrorCode.EXIT_FAILURE);
-                                        }
-                                    } catch (InvalidPathException ex2) {
-                                        System.err.printf(I18N.INSTANCE.getString("error.jar-signer-invalid.message"), pathToSignStr);
-                                        System.exit(ErrorCode.EXIT_FAILURE);
-                                    }
-                                    break;
-                                }
                                 case UNKNOWN:
                                 default: {
                                     System.err.printf(I18N.INSTANCE.getString("error.sign-method-unknown.message"), signMethodStr); // NOI18N.
@@ -383,6 +489,7 @@ public final class Authorize {
                         }
                         case STORE_PASSWORD_FLAG:
                         case KEY_PASS_FLAG:
+                        case ADDITIONAL_ALIASES_FLAG:
                         case PROXY_HOST_FLAG:
                         case PROXY_PORT_FLAG:
                         case TIMESTAMP_HOST_FLAG:
@@ -419,6 +526,88 @@ public final class Authorize {
                             }
                             break;
                         }
+                        case THREADS_FLAG: {
+                            try {
+                                if (value == null || Integer.parseInt(value) < 1) {
+                                    throw new NumberFormatException();
+                                }
+                            } catch (NumberFormatException ex) {
+                                System.err.printf(I18N.INSTANCE.getString("error.threads-invalid.message"), value); // NOI18N.
+                                System.exit(ErrorCode.EXIT_FAILURE);
+                            }
+                            break;
+                        }
+                        case FULL_VERIFICATION_FLAG: {
+                            if (value == null) {
+                                arguments.put(FULL_VERIFICATION_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case WARM_WORKERS_FLAG: {
+                            if (value == null) {
+                                arguments.put(WARM_WORKERS_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case PARALLEL_DIGESTS_FLAG: {
+                            if (value == null) {
+                                arguments.put(PARALLEL_DIGESTS_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case PARALLEL_DIGEST_THRESHOLD_FLAG: {
+                            try {
+                                if (value == null || Long.parseLong(value) < 0) {
+                                    throw new NumberFormatException();
+                                }
+                            } catch (NumberFormatException ex) {
+                                System.err.printf(I18N.INSTANCE.getString("error.parallel-digest-threshold-invalid.message"), value); // NOI18N.
+                                System.exit(ErrorCode.EXIT_FAILURE);
+                            }
+                            break;
+                        }
+                        case REUSE_DIGESTS_FLAG: {
+                            if (value == null) {
+                                arguments.put(REUSE_DIGESTS_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case RESIGN_FLAG: {
+                            if (value == null) {
+                                arguments.put(RESIGN_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case SIGN_NESTED_FLAG: {
+                            if (value == null) {
+                                arguments.put(SIGN_NESTED_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case VERIFY_ONLY_FLAG: {
+                            if (value == null) {
+                                arguments.put(VERIFY_ONLY_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case INCREMENTAL_FLAG: {
+                            if (value == null) {
+                                arguments.put(INCREMENTAL_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case NO_DAEMON_FLAG: {
+                            if (value == null) {
+                                arguments.put(NO_DAEMON_FLAG, "true");
+                            }
+                            break;
+                        }
+                        case STREAM_FLAG: {
+                            if (value == null) {
+                                arguments.put(STREAM_FLAG, "true");
+                            }
+                            break;
+                        }
                         default: { // Unsupported argument.
                             final String pattern = (value == null) ? "error.unsupported-argument.message" : "error.unsupported-argument-pair.message"; // NOI18N.
                             System.err.printf(I18N.INSTANCE.getString(pattern), key, value);
@@ -434,9 +623,28 @@ public final class Authorize {
      */
     private static void sign(final LinkedHashMap<String, String> arguments) {
         final var signMethod = SignMethod.parse(arguments.getOrDefault(SIGN_METHOD_FLAG, SignMethod.JARSIGNER.name()));
+        // The daemon cannot read our standard input; a failure must not go unnoticed down the pipeline.
+        if (isStream(arguments)) {
+            try {
+                signStream(arguments);
+            } catch (Throwable ex) {
+                Logger.getLogger(Authorize.class.getName()).log(Level.SEVERE, ex.getMessage(), ex);
+                System.exit(ErrorCode.EXIT_FAILURE);
+            }
+            return;
+        }
         try {
+            // Delegate to the signing daemon when one is running.
+            if (!Boolean.parseBoolean(arguments.get(NO_DAEMON_FLAG))) {
+                final var client = DaemonClient.connect();
+                if (client.isPresent()) {
+                    signWithDaemon(client.get(), arguments);
+                    return;
+                }
+            }
             switch (signMethod) {
-                case JARSIGNER: {
+                case JARSIGNER:
+                case JARSIGNER_API: {
                     signWithJarSigner(arguments);
                     break;
                 }
@@ -444,9 +652,50 @@ public final class Authorize {
                     signWithJSign(arguments);
                     break;
                 }
+                case MIXED: {
+                    signMixed(arguments);
+                    break;
+                }
+                case BUNDLE: {
+                    signBundles(arguments);
+                    break;
+                }
             }
         } catch (Throwable ex) {
             Logger.getLogger(Authorize.class.getName()).log(Level.SEVERE, ex.getMessage(), ex);
+            System.exit(ErrorCode.EXIT_FAILURE);
+        }
+    }
+
+    /**
+     * Sign with the signing daemon.
+     * @param client The daemon client.
+     * @param arguments The argument map.
+     */
+    private static void signWithDaemon(final DaemonClient client, final LinkedHashMap<String, String> arguments) throws Exception {
+        final var request = new LinkedHashMap<String, String>(arguments);
+        request.remove(NO_DAEMON_FLAG);
+        // The daemon does not share our working directory.
+        for (final var key : Arrays.asList(PATH_TO_SIGN, KEY_STORE_FLAG, JAVA_HOME_FLAG)) {
+            final var value = request.get(key);
+            if (value != null) {
+                request.put(key, Paths.get(value).toAbsolutePath().toString());
+            }
+        }
+        final boolean verbose = Boolean.parseBoolean(arguments.get(DEBUG_COMMAND_FLAG))
+                || Boolean.parseBoolean(arguments.get(DEBUG_SIGNATURE_FLAG))
+                || Boolean.parseBoolean(arguments.get(DEBUG_DIRECTORY_WALK_FLAG));
+        final var messages = new LinkedList<String>();
+        final boolean success = client.sign(request, message -> {
+            if (verbose) {
+                System.out.println(message);
+            } else {
+                messages.add(message);
+            }
+        });
+        if (!success) {
+            final var message = messages.isEmpty() ? I18N.INSTANCE.getString("error.daemon-failed.message") : messages.getLast();
+            Logger.getLogger(Authorize.class.getName()).log(Level.SEVERE, message);
         }
     }
 
@@ -455,9 +704,20 @@ public final class Authorize {
      * @param arguments The argument map.
      */
     private static void signWithJarSigner(final LinkedHashMap<String, String> arguments) throws Exception {
+        final var process = new JarSignerProcess(jarSignerParameters(arguments), null);
+        process.sign();
+    }
+
+    /**
+     * Creates the JarSigner parameters from the arguments.
+     * @param arguments The argument map.
+     * @return A {@code JarSignerParameters} instance, never {@code null}.
+     */
+    private static JarSignerParameters jarSignerParameters(final LinkedHashMap<String, String> arguments) {
         final boolean useProxy = (arguments.get(PROXY_HOST_FLAG)) != null && (arguments.get(PROXY_PORT_FLAG) != null);
         final boolean useTimeStamp = (arguments.get(TIMESTAMP_HOST_FLAG) != null);
-        final var parameters = JarSignerParametersBuilder.create()
+        final var signMethod = SignMethod.parse(arguments.getOrDefault(SIGN_METHOD_FLAG, SignMethod.JARSIGNER.name()));
+        return JarSignerParametersBuilder.create()
                 .debugCommand(Boolean.parseBoolean(arguments.get(DEBUG_COMMAND_FLAG)))
                 .debugSignature(Boolean.parseBoolean(arguments.get(DEBUG_SIGNATURE_FLAG)))
                 .debugDirectoryWalk(Boolean.parseBoolean(arguments.get(DEBUG_DIRECTORY_WALK_FLAG)))
@@ -473,9 +733,17 @@ public final class Authorize {
                 .useTimeStamp(useTimeStamp)
                 .timeStampHost(arguments.getOrDefault(TIMESTAMP_HOST_FLAG, JarSignerUtils.DEFAULT_TIME_STAMP_HOST))
                 .pathToSign(arguments.get(PATH_TO_SIGN))
+                .inProcess(signMethod == SignMethod.JARSIGNER_API || signMethod == SignMethod.MIXED || signMethod == SignMethod.BUNDLE || isStream(arguments))
+                .fullVerification(Boolean.parseBoolean(arguments.get(FULL_VERIFICATION_FLAG)))
+                .threads(Integer.parseInt(arguments.getOrDefault(THREADS_FLAG, "1")))
+                .incremental(Boolean.parseBoolean(arguments.get(INCREMENTAL_FLAG)))
+                .warmWorkers(Boolean.parseBoolean(arguments.get(WARM_WORKERS_FLAG)))
+                .parallelDigests(Boolean.parseBoolean(arguments.get(PARALLEL_DIGESTS_FLAG)))
+                .parallelDigestThreshold(Long.parseLong(arguments.get(PARALLEL_DIGEST_THRESHOLD_FLAG)) * 1024 * 1024)
+                .reuseDigests(Boolean.parseBoolean(arguments.get(REUSE_DIGESTS_FLAG)))
+                .resign(Boolean.parseBoolean(arguments.get(RESIGN_FLAG)))
+                .additionalSigners(JarSignerUtils.INSTANCE.additionalSigners(arguments.get(ADDITIONAL_ALIASES_FLAG), arguments.get(KEY_STORE_FLAG), arguments.get(STORE_PASSWORD_FLAG), arguments.get(KEY_PASS_FLAG)))
                 .build();
-        final var process = new JarSignerProcess(parameters, null);
-        process.sign();
     }
 
     /**
@@ -483,9 +751,27 @@ public final class Authorize {
      * @param arguments The argument map.
      */
     private static void signWithJSign(final LinkedHashMap<String, String> arguments) throws Exception {
+        final var process = new JSignProcess(jsignParameters(arguments), null);
+        process.sign();
+        if (Boolean.parseBoolean(arguments.get(VERIFY_ONLY_FLAG))) {
+            final var report = process.getReport();
+            System.out.println(String.format(I18N.INSTANCE.getString("verify.report.message"), // NOI18N.
+                    report.get(AuthenticodeVerifier.Status.VALID),
+                    report.get(AuthenticodeVerifier.Status.UNSIGNED),
+                    report.get(AuthenticodeVerifier.Status.OTHER_SIGNER),
+                    report.get(AuthenticodeVerifier.Status.INVALID)));
+        }
+    }
+
+    /**
+     * Creates the JSign parameters from the arguments.
+     * @param arguments The argument map.
+     * @return A {@code JSignParameters} instance, never {@code null}.
+     */
+    private static JSignParameters jsignParameters(final LinkedHashMap<String, String> arguments) {
         final boolean useProxy = (arguments.get(PROXY_HOST_FLAG)) != null && (arguments.get(PROXY_PORT_FLAG) != null);
         final boolean useTimeStamp = (arguments.get(TIMESTAMP_HOST_FLAG) != null);
-        final var parameters = JSignParametersBuilder.create()
+        return JSignParametersBuilder.create()
                 .debugCommand(Boolean.parseBoolean(arguments.get(DEBUG_COMMAND_FLAG)))
                 .debugSignature(Boolean.parseBoolean(arguments.get(DEBUG_SIGNATURE_FLAG)))
                 .debugDirectoryWalk(Boolean.parseBoolean(arguments.get(DEBUG_DIRECTORY_WALK_FLAG)))
@@ -501,8 +787,74 @@ public final class Authorize {
                 .programName("Foo")
                 .programURL("Fii")
                 .filename(arguments.get(PATH_TO_SIGN))
+                .incremental(Boolean.parseBoolean(arguments.get(INCREMENTAL_FLAG)))
+                .threads(Integer.parseInt(arguments.getOrDefault(THREADS_FLAG, "1")))
+                .verifyOnly(Boolean.parseBoolean(arguments.get(VERIFY_ONLY_FLAG)))
+                .build();
+    }
+
+    /**
+     * sign JAR files and native executables of the same tree.
+     * @param arguments The argument map.
+     */
+    private static void signMixed(final LinkedHashMap<String, String> arguments) throws Exception {
+        final var parameters = MixedSignatureParametersBuilder.create()
+                .debugSignature(Boolean.parseBoolean(arguments.get(DEBUG_SIGNATURE_FLAG)))
+                .debugDirectoryWalk(Boolean.parseBoolean(arguments.get(DEBUG_DIRECTORY_WALK_FLAG)))
+                .jarSigner(jarSignerParameters(arguments))
+                .jsign(jsignParameters(arguments))
+                .pathToSign(arguments.get(PATH_TO_SIGN))
+                .resign(Boolean.parseBoolean(arguments.get(RESIGN_FLAG)))
+                .signNested(Boolean.parseBoolean(arguments.get(SIGN_NESTED_FLAG)))
+                .incremental(Boolean.parseBoolean(arguments.get(INCREMENTAL_FLAG)))
+                .threads(Integer.parseInt(arguments.getOrDefault(THREADS_FLAG, "1")))
                 .build();
-        final var process = new JSignProcess(parameters, null);
+        final var process = new MixedSignatureProcess(parameters, null);
         process.sign();
     }
+
+    /**
+     * sign JAR files inside distribution bundles.
+     * @param arguments The argument map.
+     */
+    private static void signBundles(final LinkedHashMap<String, String> arguments) throws Exception {
+        final var parameters = BundleSignatureParametersBuilder.create()
+                .debugSignature(Boolean.parseBoolean(arguments.get(DEBUG_SIGNATURE_FLAG)))
+                .debugDirectoryWalk(Boolean.parseBoolean(arguments.get(DEBUG_DIRECTORY_WALK_FLAG)))
+                .jarSigner(jarSignerParameters(arguments))
+                .pathToSign(arguments.get(PATH_TO_SIGN))
+                .resign(Boolean.parseBoolean(arguments.get(RESIGN_FLAG)))
+                .threads(Integer.parseInt(arguments.getOrDefault(THREADS_FLAG, "1")))
+                .build();
+        final var process = new BundleSignatureProcess(parameters, null);
+        process.sign();
+    }
+
+    /**
+     * sign an archive read from the standard input, the signed archive is written to the standard output.
+     * @param arguments The argument map.
+     */
+    private static void signStream(final LinkedHashMap<String, String> arguments) throws Exception {
+        final var parameters = BundleSignatureParametersBuilder.create()
+                .debugSignature(Boolean.parseBoolean(arguments.get(DEBUG_SIGNATURE_FLAG)))
+                .jarSigner(jarSignerParameters(arguments))
+                .resign(Boolean.parseBoolean(arguments.get(RESIGN_FLAG)))
+                .threads(Integer.parseInt(arguments.getOrDefault(THREADS_FLAG, "1")))
+                .build();
+        final var output = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out));
+        // Nothing else may be printed in the middle of the archive.
+        System.setOut(System.err);
+        final var process = new StreamSignatureProcess(parameters, new FileInputStream(FileDescriptor.in), output, null, null);
+        process.sign();
+        output.flush();
+    }
+
+    /**
+     * Test whether the stream mode is set; the flag may not have been validated yet.
+     * @param arguments The argument map.
+     * @return {@code True} if the archive is read from the standard input, {@code false} otherwise.
+     */
+    private static boolean isStream(final Map<String, String> arguments) {
+        return arguments.containsKey(STREAM_FLAG) && (arguments.get(STREAM_FLAG) == null || Boolean.parseBoolean(arguments.get(STREAM_FLAG)));
+    }
 }
@@ -4,10 +4,15 @@
  *  http://www.spc.int/                                                *
  ***********************************************************************/
 module authorize.core {
+    exports org.spc.ofp.project.authorize.der;
     exports org.spc.ofp.project.authorize.io;
     exports org.spc.ofp.project.authorize.signature;
+    exports org.spc.ofp.project.authorize.signature.bundle;
     exports org.spc.ofp.project.authorize.signature.jsign;
     exports org.spc.ofp.project.authorize.signature.jarsigner;
+    exports org.spc.ofp.project.authorize.signature.mixed;
     requires java.logging;
+    requires java.net.http;
+    requires jdk.jartool;
     requires jsign;
 }
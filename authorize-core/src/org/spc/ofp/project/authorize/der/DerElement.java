@@ -0,0 +1,224 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.der;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A DER element read from a byte array.
+ * <br>Elements are views on the original array; nothing is copied until requested.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class DerElement {
+
+    private final byte[] data;
+    private final int offset;
+    private final int tag;
+    private final int contentOffset;
+    private final int contentLength;
+
+    /**
+     * Creates a new instance.
+     * @param data The data.
+     * @param offset Offset of the element.
+     * @param tag The tag.
+     * @param contentOffset Offset of the content.
+     * @param contentLength Length of the content.
+     */
+    private DerElement(final byte[] data, final int offset, final int tag, final int contentOffset, final int contentLength) {
+        this.data = data;
+        this.offset = offset;
+        this.tag = tag;
+        this.contentOffset = contentOffset;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Parses the element at the start of an array.
+     * @param data The data.
+     * @return A {@code DerElement} instance, never {@code null}.
+     * @throws NullPointerException If {@code data} is {@code null}.
+     * @throws IOException If the data is not valid DER.
+     */
+    public static DerElement parse(final byte[] data) throws NullPointerException, IOException {
+        Objects.requireNonNull(data);
+        return parse(data, 0, data.length);
+    }
+
+    /**
+     * Parses an element.
+     * @param data The data.
+     * @param offset Offset of the element.
+     * @param limit End of the enclosing element.
+     * @return A {@code DerElement} instance, never {@code null}.
+     * @throws IOException If the data is not valid DER.
+     */
+    private static DerElement parse(final byte[] data, final int offset, final int limit) throws IOException {
+        if (offset + 2 > limit) {
+            throw new IOException("Truncated DER element."); // NOI18N.
+        }
+        final int tag = data[offset] & 0xFF;
+        if ((tag & 0x1F) == 0x1F) {
+            throw new IOException("Multi-byte DER tags are not supported."); // NOI18N.
+        }
+        int position = offset + 1;
+        int length = data[position++] & 0xFF;
+        if (length == 0x80) {
+            throw new IOException("Indefinite length is not allowed in DER."); // NOI18N.
+        }
+        if (length > 0x80) {
+            final int bytes = length & 0x7F;
+            if (bytes > 4 || position + bytes > limit) {
+                throw new IOException("Invalid DER length."); // NOI18N.
+            }
+            length = 0;
+            for (int index = 0; index < bytes; index++) {
+                length = (length << 8) | (data[position++] & 0xFF);
+            }
+            if (length < 0) {
+                throw new IOException("Invalid DER length."); // NOI18N.
+            }
+        }
+        if (position + length > limit) {
+            throw new IOException("Truncated DER element."); // NOI18N.
+        }
+        return new DerElement(data, offset, tag, position, length);
+    }
+
+    public int getTag() {
+        return tag;
+    }
+
+    /**
+     * Test whether this element is constructed.
+     * @return {@code True} if constructed, {@code false} if primitive.
+     */
+    public boolean isConstructed() {
+        return (tag & DerUtils.CONSTRUCTED) != 0;
+    }
+
+    /**
+     * Test whether this element is context-specific with the given tag number.
+     * @param number The tag number.
+     * @return {@code True} if this element is {@code [number]}, {@code false} otherwise.
+     */
+    public boolean isContext(final int number) {
+        return (tag & 0xC0) == DerUtils.CONTEXT && (tag & 0x1F) == number;
+    }
+
+    /**
+     * Gets the content octets.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] getContent() {
+        return Arrays.copyOfRange(data, contentOffset, contentOffset + contentLength);
+    }
+
+    /**
+     * Gets the full encoding of this element, header included.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] getEncoded() {
+        return Arrays.copyOfRange(data, offset, contentOffset + contentLength);
+    }
+
+    /**
+     * Gets the size of the full encoding of this element.
+     * @return An {@code int}.
+     */
+    public int getEncodedLength() {
+        return contentOffset + contentLength - offset;
+    }
+
+    /**
+     * Gets the children of a constructed element.
+     * @return A {@code List<DerElement>} instance, never {@code null}.
+     * @throws IOException If the content is not valid DER.
+     */
+    public List<DerElement> getChildren() throws IOException {
+        if (!isConstructed()) {
+            return Collections.emptyList();
+        }
+        final var result = new ArrayList<DerElement>();
+        final int limit = contentOffset + contentLength;
+        for (int position = contentOffset; position < limit;) {
+            final var child = parse(data, position, limit);
+            result.add(child);
+            position = child.contentOffset + child.contentLength;
+        }
+        return result;
+    }
+
+    /**
+     * Gets a child of a constructed element.
+     * @param index The index.
+     * @return A {@code DerElement} instance, never {@code null}.
+     * @throws IOException If the content is not valid DER or if there is no such child.
+     */
+    public DerElement getChild(final int index) throws IOException {
+        final var children = getChildren();
+        if (index < 0 || index >= children.size()) {
+            throw new IOException(String.format("Missing DER element #%d.", index)); // NOI18N.
+        }
+        return children.get(index);
+    }
+
+    /**
+     * Parses the content of this element as an element, ie: for an explicit tag or an OCTET STRING that wraps DER.
+     * @return A {@code DerElement} instance, never {@code null}.
+     * @throws IOException If the content is not valid DER.
+     */
+    public DerElement getInner() throws IOException {
+        return parse(data, contentOffset, contentOffset + contentLength);
+    }
+
+    /**
+     * Gets the value of an INTEGER.
+     * @return A {@code BigInteger} instance, never {@code null}.
+     * @throws IOException If this element is not an INTEGER.
+     */
+    public BigInteger getInteger() throws IOException {
+        if (tag != DerUtils.TAG_INTEGER || contentLength == 0) {
+            throw new IOException("Not a DER INTEGER."); // NOI18N.
+        }
+        return new BigInteger(getContent());
+    }
+
+    /**
+     * Gets the value of an OBJECT IDENTIFIER.
+     * @return A {@code String} instance in dotted notation, never {@code null}.
+     * @throws IOException If this element is not an OBJECT IDENTIFIER.
+     */
+    public String getOid() throws IOException {
+        if (tag != DerUtils.TAG_OID || contentLength == 0) {
+            throw new IOException("Not a DER OBJECT IDENTIFIER."); // NOI18N.
+        }
+        final var builder = new StringBuilder();
+        var arc = BigInteger.ZERO;
+        boolean first = true;
+        for (int index = contentOffset; index < contentOffset + contentLength; index++) {
+            final int value = data[index] & 0xFF;
+            arc = arc.shiftLeft(7).or(BigInteger.valueOf(value & 0x7F));
+            if ((value & 0x80) == 0) {
+                if (first) {
+                    final int head = arc.min(BigInteger.valueOf(80)).intValue() / 40;
+                    builder.append(head).append('.').append(arc.subtract(BigInteger.valueOf(40L * head)));
+                    first = false;
+                } else {
+                    builder.append('.').append(arc);
+                }
+                arc = BigInteger.ZERO;
+            }
+        }
+        return builder.toString();
+    }
+}
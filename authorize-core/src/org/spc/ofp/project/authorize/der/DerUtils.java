@@ -0,0 +1,268 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.der;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Minimal DER encoder for the ASN.1 structures used in signatures and timestamps.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum DerUtils {
+    /**
+     * Unique instance of this class.
+     */
+    INSTANCE;
+
+    public static final int TAG_BOOLEAN = 0x01;
+    public static final int TAG_INTEGER = 0x02;
+    public static final int TAG_BIT_STRING = 0x03;
+    public static final int TAG_OCTET_STRING = 0x04;
+    public static final int TAG_NULL = 0x05;
+    public static final int TAG_OID = 0x06;
+    public static final int TAG_UTF8_STRING = 0x0C;
+    public static final int TAG_PRINTABLE_STRING = 0x13;
+    public static final int TAG_UTC_TIME = 0x17;
+    public static final int TAG_GENERALIZED_TIME = 0x18;
+    public static final int TAG_SEQUENCE = 0x30;
+    public static final int TAG_SET = 0x31;
+    /**
+     * Context-specific class bits.
+     */
+    public static final int CONTEXT = 0x80;
+    /**
+     * Constructed bit.
+     */
+    public static final int CONSTRUCTED = 0x20;
+
+    private static final DateTimeFormatter UTC_TIME = DateTimeFormatter.ofPattern("yyMMddHHmmss'Z'"); // NOI18N.
+    private static final DateTimeFormatter GENERALIZED_TIME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'"); // NOI18N.
+
+    /**
+     * Encodes an element.
+     * @param tag The tag (single byte).
+     * @param content The content octets.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws NullPointerException If {@code content} is {@code null}.
+     */
+    public byte[] encode(final int tag, final byte[] content) throws NullPointerException {
+        Objects.requireNonNull(content);
+        final var output = new ByteArrayOutputStream(content.length + 6);
+        output.write(tag);
+        writeLength(output, content.length);
+        output.writeBytes(content);
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes a DER length.
+     * @param output The output.
+     * @param length The length.
+     */
+    void writeLength(final ByteArrayOutputStream output, final long length) {
+        if (length < 0x80) {
+            output.write((int) length);
+            return;
+        }
+        int bytes = 0;
+        for (long value = length; value != 0; value >>>= 8) {
+            bytes++;
+        }
+        output.write(0x80 | bytes);
+        for (int index = bytes - 1; index >= 0; index--) {
+            output.write((int) (length >>> (8 * index)));
+        }
+    }
+
+    /**
+     * Gets the size of the header (tag and length) of an element.
+     * @param length The length of the content.
+     * @return An {@code int}.
+     */
+    public int headerSize(final long length) {
+        if (length < 0x80) {
+            return 2;
+        }
+        int bytes = 0;
+        for (long value = length; value != 0; value >>>= 8) {
+            bytes++;
+        }
+        return 2 + bytes;
+    }
+
+    /**
+     * Encodes the header (tag and length) of an element, for streaming its content separately.
+     * @param tag The tag.
+     * @param length The length of the content.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] header(final int tag, final long length) {
+        final var output = new ByteArrayOutputStream(6);
+        output.write(tag);
+        writeLength(output, length);
+        return output.toByteArray();
+    }
+
+    /**
+     * Concatenates encoded elements.
+     * @param elements The elements.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] concat(final byte[]... elements) {
+        final var output = new ByteArrayOutputStream();
+        for (final var element : elements) {
+            if (element != null) {
+                output.writeBytes(element);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Encodes a SEQUENCE; {@code null} elements are skipped.
+     * @param elements The encoded elements.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] sequence(final byte[]... elements) {
+        return encode(TAG_SEQUENCE, concat(elements));
+    }
+
+    /**
+     * Encodes a SET OF; elements are sorted as required by DER; {@code null} elements are skipped.
+     * @param elements The encoded elements.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] set(final byte[]... elements) {
+        final var sorted = Arrays.stream(elements)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(element -> element, Arrays::compareUnsigned))
+                .toArray(byte[][]::new);
+        return encode(TAG_SET, concat(sorted));
+    }
+
+    /**
+     * Encodes an explicitly tagged context-specific element.
+     * @param number The tag number.
+     * @param element The encoded element.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] explicit(final int number, final byte[] element) {
+        return encode(CONTEXT | CONSTRUCTED | number, element);
+    }
+
+    /**
+     * Encodes an implicitly tagged context-specific element, replacing the tag of an encoded element.
+     * @param number The tag number.
+     * @param element The encoded element.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] implicit(final int number, final byte[] element) {
+        final var result = element.clone();
+        result[0] = (byte) (CONTEXT | (element[0] & CONSTRUCTED) | number);
+        return result;
+    }
+
+    public byte[] integer(final BigInteger value) {
+        return encode(TAG_INTEGER, value.toByteArray());
+    }
+
+    public byte[] integer(final long value) {
+        return integer(BigInteger.valueOf(value));
+    }
+
+    public byte[] bool(final boolean value) {
+        return encode(TAG_BOOLEAN, new byte[]{(byte) (value ? 0xFF : 0x00)});
+    }
+
+    public byte[] nullValue() {
+        return new byte[]{TAG_NULL, 0x00};
+    }
+
+    public byte[] octetString(final byte[] value) {
+        return encode(TAG_OCTET_STRING, value);
+    }
+
+    /**
+     * Encodes a BIT STRING with no unused bits.
+     * @param value The bits.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] bitString(final byte[] value) {
+        final var content = new byte[value.length + 1];
+        System.arraycopy(value, 0, content, 1, value.length);
+        return encode(TAG_BIT_STRING, content);
+    }
+
+    public byte[] utf8String(final String value) {
+        return encode(TAG_UTF8_STRING, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] printableString(final String value) {
+        return encode(TAG_PRINTABLE_STRING, value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public byte[] utcTime(final ZonedDateTime value) {
+        return encode(TAG_UTC_TIME, UTC_TIME.format(value.withZoneSameInstant(ZoneOffset.UTC)).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public byte[] generalizedTime(final ZonedDateTime value) {
+        return encode(TAG_GENERALIZED_TIME, GENERALIZED_TIME.format(value.withZoneSameInstant(ZoneOffset.UTC)).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Encodes an OBJECT IDENTIFIER.
+     * @param value The dotted representation, ie: {@code 1.2.840.113549.1.7.2}.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws IllegalArgumentException If {@code value} is not a valid OID.
+     */
+    public byte[] oid(final String value) throws IllegalArgumentException {
+        final var arcs = value.split("\\."); // NOI18N.
+        if (arcs.length < 2) {
+            throw new IllegalArgumentException(value);
+        }
+        final var output = new ByteArrayOutputStream();
+        writeArc(output, new BigInteger(arcs[0]).multiply(BigInteger.valueOf(40)).add(new BigInteger(arcs[1])));
+        for (int index = 2; index < arcs.length; index++) {
+            writeArc(output, new BigInteger(arcs[index]));
+        }
+        return encode(TAG_OID, output.toByteArray());
+    }
+
+    /**
+     * Writes an OID arc in base 128.
+     * @param output The output.
+     * @param arc The arc.
+     */
+    private void writeArc(final ByteArrayOutputStream output, final BigInteger arc) {
+        final int bits = Math.max(1, arc.bitLength());
+        final int groups = (bits + 6) / 7;
+        for (int group = groups - 1; group >= 0; group--) {
+            int value = arc.shiftRight(7 * group).intValue() & 0x7F;
+            if (group > 0) {
+                value |= 0x80;
+            }
+            output.write(value);
+        }
+    }
+
+    /**
+     * Encodes an AlgorithmIdentifier.
+     * @param oid The algorithm OID.
+     * @param withNullParameters If {@code true}, parameters are encoded as NULL; otherwise they are absent.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] algorithm(final String oid, final boolean withNullParameters) {
+        return sequence(oid(oid), withNullParameters ? nullValue() : null);
+    }
+}
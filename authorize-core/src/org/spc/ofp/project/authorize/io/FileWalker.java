@@ -0,0 +1,224 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.io;
+
+import java.io.IOException;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiPredicate;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Walks a file tree in a separate {@code Thread} and feeds the accepted files into a bounded queue.
+ * <br>The tree is walked once with {@code Files.walkFileTree()}; consumers can start working on the first files while the walk is still in progress.
+ * <br>Memory usage does not depend on the size of the tree: the walker blocks when the queue is full.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class FileWalker implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(FileWalker.class.getName());
+
+    /**
+     * Default capacity of the queue, equals to {@value}.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * A file discovered during the walk.
+     */
+    public static final class Entry {
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        /**
+         * Creates a new instance.
+         * @param path The path.
+         * @param attributes The attributes read during the walk.
+         */
+        private Entry(final Path path, final BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        /**
+         * Gets the path of this file.
+         * @return A {@code Path} instance, never {@code null}.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the attributes of this file, as read during the walk.
+         * @return A {@code BasicFileAttributes} instance, never {@code null}.
+         */
+        public BasicFileAttributes getAttributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     * Marks the end of the walk in the queue.
+     */
+    private static final Entry END = new Entry(null, null);
+
+    private final Path root;
+    private final BiPredicate<Path, BasicFileAttributes> filter;
+    private final BlockingQueue<Entry> queue;
+    private IntConsumer onFileFound;
+    private Thread thread;
+    private volatile boolean cancelled = false;
+    private volatile IOException failure;
+    private volatile boolean done = false;
+    private int discovered = 0;
+
+    /**
+     * Creates a new instance with a queue of default capacity.
+     * @param root The root of the tree.
+     * @param filter Files for which this filter returns {@code true} are put in the queue.
+     * @throws NullPointerException If {@code root} or {@code filter} is {@code null}.
+     */
+    public FileWalker(final Path root, final BiPredicate<Path, BasicFileAttributes> filter) throws NullPointerException {
+        this(root, filter, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param root The root of the tree.
+     * @param filter Files for which this filter returns {@code true} are put in the queue.
+     * @param capacity The capacity of the queue.
+     * @throws NullPointerException If {@code root} or {@code filter} is {@code null}.
+     */
+    public FileWalker(final Path root, final BiPredicate<Path, BasicFileAttributes> filter, final int capacity) throws NullPointerException {
+        Objects.requireNonNull(root);
+        Objects.requireNonNull(filter);
+        this.root = root;
+        this.filter = filter;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Sets the listener notified with the number of files discovered so far, each time a file is accepted.
+     * <br>The listener is called from the walking thread.
+     * @param value The listener, may be {@code null}.
+     */
+    public void setOnFileFound(final IntConsumer value) {
+        onFileFound = value;
+    }
+
+    /**
+     * Starts the walk in a separate thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this, "file-walker"); // NOI18N.
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Cancels the walk.
+     * <br>Files already in the queue are discarded.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        queue.clear();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Takes the next file, waiting for the walk to discover one if needed.
+     * @return An {@code Entry} instance, {@code null} once the walk is over.
+     * @throws IOException If the walk failed.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public Entry take() throws IOException, InterruptedException {
+        if (done) {
+            return null;
+        }
+        final var result = queue.take();
+        if (result == END) {
+            done = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) {
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                    if (cancelled) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    if (attributes.isRegularFile() && filter.test(file, attributes)) {
+                        try {
+                            queue.put(new Entry(file, attributes));
+                        } catch (InterruptedException ex) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        discovered++;
+                        if (onFileFound != null) {
+                            onFileFound.accept(discovered);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException ex) throws IOException {
+                    if (ex instanceof FileSystemLoopException) {
+                        LOGGER.log(Level.WARNING, "Skipping file system loop at {0}", file); // NOI18N.
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw ex;
+                }
+            });
+        } catch (IOException ex) {
+            failure = ex;
+        } finally {
+            if (!cancelled) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                queue.clear();
+                queue.offer(END);
+            }
+        }
+    }
+}
@@ -5,14 +5,19 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.io;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.zip.ZipException;
 
 /**
  * IO utility class.
@@ -42,4 +47,84 @@ public enum IOUtils {
             throw new IOException("Unsupported file permissions"); // NOI18N.
         }
     }
+
+    /**
+     * Replaces a file by a rewritten copy, keeping the permissions of the file.
+     * <br>Temporary files are only readable by their owner, their permissions would otherwise replace those of the file.
+     * @param file The file.
+     * @param rewritten The rewritten copy, ie: a temporary file in the same directory; moved over {@code file}.
+     * @throws NullPointerException If {@code file} or {@code rewritten} is {@code null}.
+     * @throws IOException In case of IO error.
+     */
+    public void replace(final Path file, final Path rewritten) throws NullPointerException, IOException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(rewritten);
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) { // NOI18N.
+            Files.setPosixFilePermissions(rewritten, Files.getPosixFilePermissions(file));
+        }
+        Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Replaces an archive by a rewritten copy, keeping the permissions of the archive and the data prepended to it, ie: the
+     * launcher script of a self-executing JAR file.
+     * <br>Offsets of the copy are left as written; readers locate entries from the central directory.
+     * @param file The archive.
+     * @param rewritten The rewritten copy, ie: a temporary file in the same directory; moved over {@code file}.
+     * @throws NullPointerException If {@code file} or {@code rewritten} is {@code null}.
+     * @throws IOException In case of IO error.
+     */
+    public void replaceArchive(final Path file, final Path rewritten) throws NullPointerException, IOException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(rewritten);
+        final long preambleLength = preambleLength(file);
+        if (preambleLength == 0 || preambleLength(rewritten) != 0) {
+            replace(file, rewritten);
+            return;
+        }
+        final var directory = file.toAbsolutePath().getParent();
+        final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); // NOI18N.
+        try {
+            try (final var input = FileChannel.open(file, StandardOpenOption.READ);
+                    final var copy = FileChannel.open(rewritten, StandardOpenOption.READ);
+                    final var output = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                transfer(input, preambleLength, output);
+                transfer(copy, copy.size(), output);
+            }
+            replace(file, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Gets the length of the data prepended to an archive.
+     * @param file The archive.
+     * @return A {@code long} &ge; 0; 0 if the archive cannot be read, ie: if it has entries beyond 4 GB.
+     * @throws IOException In case of IO error.
+     */
+    private static long preambleLength(final Path file) throws IOException {
+        try (final var zipFile = new RawZipFile(file)) {
+            return zipFile.getPreambleLength();
+        } catch (ZipException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Copies the start of a channel to another channel.
+     * @param input The source channel.
+     * @param length The number of bytes to copy.
+     * @param output The target channel.
+     * @throws IOException In case of IO error or if the source is shorter.
+     */
+    private static void transfer(final FileChannel input, final long length, final FileChannel output) throws IOException {
+        for (long position = 0; position < length;) {
+            final long transferred = input.transferTo(position, length - position, output);
+            if (transferred <= 0) {
+                throw new EOFException();
+            }
+            position += transferred;
+        }
+    }
 }
@@ -0,0 +1,440 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only view on the records of a ZIP file, used to copy entries without inflating them, see {@link RawZipWriter}.
+ * <br>Only the central directory is read when the file is opened. ZIP64 end records, as written for more than 65535
+ * entries, are supported; entries and offsets beyond 4 GB are not.
+ * <br>Data prepended to the archive, ie: the launcher script of a self-executing JAR file, is skipped as with
+ * {@code ZipFile}, see {@link #getPreambleLength()}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class RawZipFile implements Closeable {
+
+    static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    static final int END_SIGNATURE = 0x06054b50;
+    static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    static final int LOCAL_HEADER_SIZE = 30;
+    static final int CENTRAL_HEADER_SIZE = 46;
+    static final int END_SIZE = 22;
+    /**
+     * Offset of the local header offset in a central header.
+     */
+    static final int CENTRAL_OFFSET_FIELD = 42;
+    /**
+     * General purpose flag set when sizes and CRC follow the data.
+     */
+    static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    static final int ZIP64_END_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    /**
+     * Value of a size or offset field whose actual value is in a ZIP64 extra field.
+     */
+    static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    /**
+     * An entry, as described by the central directory.
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final int versionMadeBy;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private final int externalAttributes;
+        /**
+         * The central directory, shared by all entries.
+         */
+        private final ByteBuffer directory;
+        private final int centralHeaderOffset;
+        private final int centralHeaderLength;
+
+        /**
+         * Parses a central header already validated by {@link RawZipFile#readCentralDirectory()}.
+         * @param directory The central directory.
+         * @param start The position of the central header in {@code directory}.
+         * @param shift The length of the data prepended to the archive after it was written, added to offsets.
+         */
+        private Entry(final ByteBuffer directory, final int start, final long shift) {
+            this.directory = directory;
+            this.centralHeaderOffset = start;
+            versionMadeBy = Short.toUnsignedInt(directory.getShort(start + 4));
+            flags = Short.toUnsignedInt(directory.getShort(start + 8));
+            method = Short.toUnsignedInt(directory.getShort(start + 10));
+            crc = Integer.toUnsignedLong(directory.getInt(start + 16));
+            compressedSize = Integer.toUnsignedLong(directory.getInt(start + 20));
+            size = Integer.toUnsignedLong(directory.getInt(start + 24));
+            externalAttributes = directory.getInt(start + 38);
+            localHeaderOffset = Integer.toUnsignedLong(directory.getInt(start + CENTRAL_OFFSET_FIELD)) + shift;
+            final var nameBytes = new byte[Short.toUnsignedInt(directory.getShort(start + 28))];
+            directory.duplicate().position(start + CENTRAL_HEADER_SIZE).get(nameBytes);
+            name = new String(nameBytes, StandardCharsets.UTF_8);
+            centralHeaderLength = centralHeaderLength(directory, start);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/"); // NOI18N.
+        }
+
+        /**
+         * Gets the version made by field, the host system is in the high byte.
+         * @return An {@code int}.
+         */
+        public int getVersionMadeBy() {
+            return versionMadeBy;
+        }
+
+        /**
+         * Gets the external file attributes; on Unix hosts, the file mode is in the high word.
+         * @return An {@code int}.
+         */
+        public int getExternalAttributes() {
+            return externalAttributes;
+        }
+
+        /**
+         * Gets a copy of the central header of this entry, name, extra field and comment included.
+         * @return A {@code byte[]} instance, never {@code null}.
+         */
+        byte[] getCentralHeader() {
+            final var result = new byte[centralHeaderLength];
+            // Absolute bulk get is not available before Java 13.
+            directory.duplicate().position(centralHeaderOffset).get(result);
+            return result;
+        }
+    }
+
+    /**
+     * Read-only list of entries backed by the central directory.
+     */
+    private static final class EntryList extends AbstractList<Entry> implements RandomAccess {
+
+        private final ByteBuffer directory;
+        private final int[] offsets;
+        private final long shift;
+
+        EntryList(final ByteBuffer directory, final int[] offsets, final long shift) {
+            this.directory = directory;
+            this.offsets = offsets;
+            this.shift = shift;
+        }
+
+        @Override
+        public Entry get(final int index) {
+            return new Entry(directory, offsets[index], shift);
+        }
+
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    /**
+     * The file, {@code null} if the archive is held in memory.
+     */
+    private final FileChannel channel;
+    /**
+     * The archive held in memory, {@code null} if read from a file.
+     */
+    private final ByteBuffer content;
+    /**
+     * Entries are created on demand from the central directory, which is kept as read.
+     */
+    private final List<Entry> entries;
+    private final long preambleLength;
+
+    /**
+     * Opens a file.
+     * @param file The file.
+     * @throws NullPointerException If {@code file} is {@code null}.
+     * @throws ZipException If the file is not a ZIP file or if it has entries beyond 4 GB.
+     * @throws IOException In case of IO errors.
+     */
+    public RawZipFile(final Path file) throws NullPointerException, ZipException, IOException {
+        Objects.requireNonNull(file);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        content = null;
+        try {
+            entries = readCentralDirectory();
+            preambleLength = readPreambleLength();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens an archive held in memory, ie: an entry of another archive.
+     * @param content The archive.
+     * @throws NullPointerException If {@code content} is {@code null}.
+     * @throws ZipException If the content is not a ZIP archive or if it has entries beyond 4 GB.
+     * @throws IOException In case of IO errors.
+     */
+    public RawZipFile(final byte[] content) throws NullPointerException, ZipException, IOException {
+        Objects.requireNonNull(content);
+        channel = null;
+        this.content = ByteBuffer.wrap(content).asReadOnlyBuffer();
+        entries = readCentralDirectory();
+        preambleLength = readPreambleLength();
+    }
+
+    /**
+     * Reads and validates the central directory.
+     * @return A {@code List<Entry>} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private List<Entry> readCentralDirectory() throws IOException {
+        final long fileSize = size();
+        final int tailSize = (int) Math.min(fileSize, END_SIZE + MAX_COMMENT_SIZE);
+        final var tail = read(fileSize - tailSize, tailSize);
+        int end = -1;
+        for (int position = tailSize - END_SIZE; position >= 0; position--) {
+            if (tail.getInt(position) == END_SIGNATURE) {
+                end = position;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("End of central directory not found."); // NOI18N.
+        }
+        long count = Short.toUnsignedInt(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        // The central directory ends where the end records start.
+        long directoryEnd = fileSize - tailSize + end;
+        if (end >= ZIP64_LOCATOR_SIZE && tail.getInt(end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIGNATURE) {
+            // More than 65535 entries or a large file: the actual values are in the ZIP64 end record.
+            final long zip64EndOffset = tail.getLong(end - ZIP64_LOCATOR_SIZE + 8);
+            directoryEnd -= ZIP64_LOCATOR_SIZE + ZIP64_END_SIZE;
+            if (zip64EndOffset < 0 || zip64EndOffset > directoryEnd) {
+                throw new ZipException("Invalid ZIP64 end of central directory."); // NOI18N.
+            }
+            final var zip64End = read(directoryEnd, ZIP64_END_SIZE);
+            if (zip64End.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Invalid ZIP64 end of central directory."); // NOI18N.
+            }
+            count = zip64End.getLong(32);
+            directorySize = zip64End.getLong(40);
+            directoryOffset = zip64End.getLong(48);
+        }
+        // Offsets are relative to the start of the archive as written, data may have been prepended since.
+        final long shift = directoryEnd - directorySize - directoryOffset;
+        if (count < 0 || count > Integer.MAX_VALUE || directorySize < 0 || directorySize > Integer.MAX_VALUE
+                || directoryOffset < 0 || shift < 0) {
+            throw new ZipException("Invalid central directory."); // NOI18N.
+        }
+        final var directory = read(directoryOffset + shift, (int) directorySize);
+        final int[] offsets = new int[(int) Math.min(count, directorySize / CENTRAL_HEADER_SIZE)];
+        int found = 0;
+        for (int start = 0; directory.limit() - start >= CENTRAL_HEADER_SIZE && directory.getInt(start) == CENTRAL_HEADER_SIGNATURE;) {
+            final long compressedSize = Integer.toUnsignedLong(directory.getInt(start + 20));
+            final long size = Integer.toUnsignedLong(directory.getInt(start + 24));
+            final long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(start + CENTRAL_OFFSET_FIELD));
+            if (compressedSize == ZIP64_MAGIC || size == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                throw new ZipException("ZIP64 entries are not supported."); // NOI18N.
+            }
+            final int length = centralHeaderLength(directory, start);
+            if (start + length > directory.limit() || found == offsets.length) {
+                throw new ZipException("Invalid central directory."); // NOI18N.
+            }
+            offsets[found++] = start;
+            start += length;
+        }
+        if (found != count) {
+            throw new ZipException("Invalid central directory."); // NOI18N.
+        }
+        return new EntryList(directory, offsets, shift);
+    }
+
+    /**
+     * Gets the length of the data before the first local header, and checks that header.
+     * @return A {@code long}.
+     * @throws IOException In case of IO errors or if the first local header is invalid.
+     */
+    private long readPreambleLength() throws IOException {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        long result = Long.MAX_VALUE;
+        for (final var entry : entries) {
+            result = Math.min(result, entry.localHeaderOffset);
+        }
+        if (result > size() - LOCAL_HEADER_SIZE || read(result, Integer.BYTES).getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header."); // NOI18N.
+        }
+        return result;
+    }
+
+    /**
+     * Gets the size of the archive.
+     * @return A {@code long}.
+     * @throws IOException In case of IO errors.
+     */
+    private long size() throws IOException {
+        return (channel != null) ? channel.size() : content.capacity();
+    }
+
+    /**
+     * Gets the length of a central header: fixed part, name, extra field and comment.
+     * @param directory The central directory.
+     * @param start The position of the central header in {@code directory}.
+     * @return An {@code int}.
+     */
+    private static int centralHeaderLength(final ByteBuffer directory, final int start) {
+        final int nameLength = Short.toUnsignedInt(directory.getShort(start + 28));
+        final int extraLength = Short.toUnsignedInt(directory.getShort(start + 30));
+        final int commentLength = Short.toUnsignedInt(directory.getShort(start + 32));
+        return CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+
+    /**
+     * Reads a region of the file.
+     * @param position The position.
+     * @param length The length.
+     * @return A {@code ByteBuffer} instance in little-endian order, positioned at 0, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private ByteBuffer read(final long position, final int length) throws IOException {
+        final var result = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        if (content != null) {
+            if (position < 0 || position + length > content.capacity()) {
+                throw new EOFException();
+            }
+            result.put(content.duplicate().position((int) position).limit((int) position + length));
+            return result.flip();
+        }
+        while (result.hasRemaining()) {
+            if (channel.read(result, position + result.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        return result.flip();
+    }
+
+    /**
+     * Gets the entries, in central directory order.
+     * @return A {@code List<Entry>} instance, never {@code null}.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the length of the data prepended to the archive, ie: the launcher script of a self-executing JAR file.
+     * <br>This data is not part of any entry; it is not copied by {@link RawZipWriter}.
+     * @return A {@code long} &ge; 0.
+     */
+    public long getPreambleLength() {
+        return preambleLength;
+    }
+
+    /**
+     * Copies the local record of an entry, see {@link #getLocalRecordLength(Entry)}.
+     * @param entry The entry.
+     * @param target The target.
+     * @throws IOException In case of IO errors or if the record is truncated.
+     */
+    void transferLocalRecord(final Entry entry, final WritableByteChannel target) throws IOException {
+        long position = entry.localHeaderOffset;
+        long remaining = getLocalRecordLength(entry);
+        if (content != null) {
+            if (position + remaining > content.capacity()) {
+                throw new ZipException(String.format("Truncated entry \"%s\".", entry.name)); // NOI18N.
+            }
+            final var record = content.duplicate().position((int) position).limit((int) (position + remaining));
+            while (record.hasRemaining()) {
+                target.write(record);
+            }
+            return;
+        }
+        while (remaining > 0) {
+            final long transferred = channel.transferTo(position, remaining, target);
+            if (transferred <= 0) {
+                throw new ZipException(String.format("Truncated entry \"%s\".", entry.name)); // NOI18N.
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    /**
+     * Gets the length of the local record of an entry: local header, data and data descriptor.
+     * @param entry The entry.
+     * @return A {@code long}.
+     * @throws IOException In case of IO errors or if the local header is invalid.
+     */
+    long getLocalRecordLength(final Entry entry) throws IOException {
+        final var header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException(String.format("Invalid local header for entry \"%s\".", entry.name)); // NOI18N.
+        }
+        final int nameLength = Short.toUnsignedInt(header.getShort(26));
+        final int extraLength = Short.toUnsignedInt(header.getShort(28));
+        long result = LOCAL_HEADER_SIZE + nameLength + extraLength + entry.compressedSize;
+        if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            // The signature of the data descriptor is optional.
+            final var descriptor = read(entry.localHeaderOffset + result, 4);
+            result += (descriptor.getInt(0) == DATA_DESCRIPTOR_SIGNATURE) ? 16 : 12;
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
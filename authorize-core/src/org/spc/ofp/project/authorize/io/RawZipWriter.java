@@ -0,0 +1,423 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a ZIP file whose entries are either new or copied verbatim from a {@link RawZipFile}.
+ * <br>Copied entries keep their local header, compressed data and data descriptor byte for byte; the data is moved with
+ * {@code FileChannel.transferTo()} and is never inflated. Only the central directory is rewritten.
+ * <br>ZIP64 end records are written past 65535 entries; entries and offsets beyond 4 GB are not supported.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class RawZipWriter implements Closeable {
+
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+    /**
+     * Version 2.0, needed for deflate.
+     */
+    private static final int VERSION = 20;
+    /**
+     * Version 4.5, needed for ZIP64 extensions.
+     */
+    private static final int ZIP64_VERSION = 45;
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * General purpose flag set when the name is encoded in UTF-8.
+     */
+    private static final int FLAG_UTF8 = 0x800;
+
+    private final FileChannel channel;
+    /**
+     * Central headers are spooled to a temporary file, deleted on close, so memory use does not grow with the number of entries.
+     */
+    private final FileChannel centralDirectory;
+    private final OutputStream centralDirectoryOutput;
+    private long centralDirectorySize;
+    private long count;
+    private boolean openEntry;
+
+    /**
+     * Creates a new instance; the file is created or truncated.
+     * @param file The target file.
+     * @throws NullPointerException If {@code file} is {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    public RawZipWriter(final Path file) throws NullPointerException, IOException {
+        Objects.requireNonNull(file);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            final var absoluteFile = file.toAbsolutePath();
+            final var spoolFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".cen"); // NOI18N.
+            centralDirectory = FileChannel.open(spoolFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        centralDirectoryOutput = new BufferedOutputStream(Channels.newOutputStream(centralDirectory), BUFFER_SIZE);
+    }
+
+    /**
+     * Adds a new deflated entry.
+     * @param name The name of the entry.
+     * @param data The content of the entry.
+     * @param time The modification time of the entry, in milliseconds since the epoch.
+     * @throws NullPointerException If {@code name} or {@code data} is {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    public void write(final String name, final byte[] data, final long time) throws NullPointerException, IOException {
+        Objects.requireNonNull(data);
+        try (final var output = newEntry(name, time)) {
+            output.write(data);
+        }
+    }
+
+    /**
+     * Adds a new entry with the compression method and the host attributes of an existing entry, ie: its Unix file mode.
+     * <br>Stored entries stay stored, ie: JAR files nested in an executable archive, which are read in place.
+     * @param name The name of the entry.
+     * @param data The content of the entry.
+     * @param time The modification time of the entry, in milliseconds since the epoch.
+     * @param method The compression method, see {@link RawZipFile.Entry#getMethod()}; anything but {@code ZipEntry.STORED} is deflated.
+     * @param versionMadeBy The version made by field, see {@link RawZipFile.Entry#getVersionMadeBy()}.
+     * @param externalAttributes The external file attributes, see {@link RawZipFile.Entry#getExternalAttributes()}.
+     * @throws NullPointerException If {@code name} or {@code data} is {@code null}.
+     * @throws IllegalStateException If an entry is still open.
+     * @throws IOException In case of IO errors.
+     */
+    public void write(final String name, final byte[] data, final long time, final int method, final int versionMadeBy, final int externalAttributes) throws NullPointerException, IllegalStateException, IOException {
+        Objects.requireNonNull(data);
+        if (method != ZipEntry.STORED) {
+            try (final var output = newEntry(name, time, versionMadeBy, externalAttributes)) {
+                output.write(data);
+            }
+            return;
+        }
+        Objects.requireNonNull(name);
+        checkNoOpenEntry();
+        final var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final int dosTime = dosTime(time);
+        final long offset = checkedPosition();
+        final var crc = new CRC32();
+        crc.update(data);
+        // Sizes are known, no data descriptor.
+        final var local = ByteBuffer.allocate(RawZipFile.LOCAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(RawZipFile.LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION)
+                .putShort((short) FLAG_UTF8)
+                .putShort((short) ZipEntry.STORED)
+                .putInt(dosTime)
+                .putInt((int) crc.getValue())
+                .putInt(data.length)
+                .putInt(data.length)
+                .putShort((short) nameBytes.length)
+                .putShort((short) 0)
+                .put(nameBytes);
+        writeFully(local.flip());
+        writeFully(ByteBuffer.wrap(data));
+        addCentralHeader(centralHeader(madeBy(versionMadeBy), FLAG_UTF8, ZipEntry.STORED, dosTime, crc.getValue(), data.length, data.length, nameBytes, externalAttributes, offset));
+    }
+
+    /**
+     * Starts a new deflated entry whose content is streamed; CRC and sizes go in a data descriptor.
+     * <br>The entry ends when the returned stream is closed; no other entry can be added before that.
+     * @param name The name of the entry.
+     * @param time The modification time of the entry, in milliseconds since the epoch.
+     * @return An {@code OutputStream} instance, never {@code null}.
+     * @throws NullPointerException If {@code name} is {@code null}.
+     * @throws IllegalStateException If an entry is still open.
+     * @throws IOException In case of IO errors.
+     */
+    public OutputStream newEntry(final String name, final long time) throws NullPointerException, IllegalStateException, IOException {
+        return newEntry(name, time, VERSION, 0);
+    }
+
+    /**
+     * Starts a new deflated entry whose content is streamed, with the host attributes of an existing entry, ie: its Unix file mode.
+     * <br>The entry ends when the returned stream is closed; no other entry can be added before that.
+     * @param name The name of the entry.
+     * @param time The modification time of the entry, in milliseconds since the epoch.
+     * @param versionMadeBy The version made by field, see {@link RawZipFile.Entry#getVersionMadeBy()}.
+     * @param externalAttributes The external file attributes, see {@link RawZipFile.Entry#getExternalAttributes()}.
+     * @return An {@code OutputStream} instance, never {@code null}.
+     * @throws NullPointerException If {@code name} is {@code null}.
+     * @throws IllegalStateException If an entry is still open.
+     * @throws IOException In case of IO errors.
+     */
+    public OutputStream newEntry(final String name, final long time, final int versionMadeBy, final int externalAttributes) throws NullPointerException, IllegalStateException, IOException {
+        Objects.requireNonNull(name);
+        final int madeBy = madeBy(versionMadeBy);
+        checkNoOpenEntry();
+        final var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final int flags = FLAG_UTF8 | RawZipFile.FLAG_DATA_DESCRIPTOR;
+        final int dosTime = dosTime(time);
+        final long offset = checkedPosition();
+        final var local = ByteBuffer.allocate(RawZipFile.LOCAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(RawZipFile.LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION)
+                .putShort((short) flags)
+                .putShort((short) Deflater.DEFLATED)
+                .putInt(dosTime)
+                .putInt(0)
+                .putInt(0)
+                .putInt(0)
+                .putShort((short) nameBytes.length)
+                .putShort((short) 0)
+                .put(nameBytes);
+        writeFully(local.flip());
+        final long dataOffset = channel.position();
+        final var channelOutput = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                writeFully(ByteBuffer.wrap(b, off, len));
+            }
+        };
+        final var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        openEntry = true;
+        return new DeflaterOutputStream(channelOutput, deflater, BUFFER_SIZE) {
+            private final CRC32 crc = new CRC32();
+            private long size;
+            private boolean closed;
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                super.write(b, off, len);
+                crc.update(b, off, len);
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    finish();
+                } finally {
+                    deflater.end();
+                    openEntry = false;
+                }
+                final long compressedSize = channel.position() - dataOffset;
+                if (compressedSize >= RawZipFile.ZIP64_MAGIC || size >= RawZipFile.ZIP64_MAGIC) {
+                    throw new ZipException(String.format("Entry \"%s\" too large, ZIP64 entries are not supported.", name)); // NOI18N.
+                }
+                final var descriptor = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                descriptor.putInt(RawZipFile.DATA_DESCRIPTOR_SIGNATURE)
+                        .putInt((int) crc.getValue())
+                        .putInt((int) compressedSize)
+                        .putInt((int) size);
+                writeFully(descriptor.flip());
+                addCentralHeader(centralHeader(madeBy, flags, Deflater.DEFLATED, dosTime, crc.getValue(), compressedSize, size, nameBytes, externalAttributes, offset));
+            }
+        };
+    }
+
+    /**
+     * Gets the version made by field of a new entry: the host system is kept, the version is at least the one needed for deflate.
+     * @param versionMadeBy The version made by field of the existing entry.
+     * @return An {@code int}.
+     */
+    private static int madeBy(final int versionMadeBy) {
+        return (versionMadeBy & 0xFF00) | Math.max(versionMadeBy & 0xFF, VERSION);
+    }
+
+    /**
+     * Creates the central header of a new entry.
+     * @param madeBy The version made by field.
+     * @param flags The general purpose flags.
+     * @param method The compression method.
+     * @param dosTime The modification time, see {@link #dosTime(long)}.
+     * @param crc The CRC of the content.
+     * @param compressedSize The compressed size.
+     * @param size The size.
+     * @param nameBytes The encoded name.
+     * @param externalAttributes The external file attributes.
+     * @param offset The position of the local header.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    private static byte[] centralHeader(final int madeBy, final int flags, final int method, final int dosTime, final long crc, final long compressedSize, final long size, final byte[] nameBytes, final int externalAttributes, final long offset) {
+        final var central = ByteBuffer.allocate(RawZipFile.CENTRAL_HEADER_SIZE + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        central.putInt(RawZipFile.CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) madeBy)
+                .putShort((short) VERSION)
+                .putShort((short) flags)
+                .putShort((short) method)
+                .putInt(dosTime)
+                .putInt((int) crc)
+                .putInt((int) compressedSize)
+                .putInt((int) size)
+                .putShort((short) nameBytes.length)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(externalAttributes)
+                .putInt((int) offset)
+                .put(nameBytes);
+        return central.array();
+    }
+
+    /**
+     * Copies an entry verbatim.
+     * @param source The source archive.
+     * @param entry The entry, from {@code source}.
+     * @throws NullPointerException If {@code source} or {@code entry} is {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    public void copy(final RawZipFile source, final RawZipFile.Entry entry) throws NullPointerException, IOException {
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(entry);
+        checkNoOpenEntry();
+        final long offset = checkedPosition();
+        source.transferLocalRecord(entry, channel);
+        final var central = entry.getCentralHeader();
+        ByteBuffer.wrap(central).order(ByteOrder.LITTLE_ENDIAN).putInt(RawZipFile.CENTRAL_OFFSET_FIELD, (int) offset);
+        addCentralHeader(central);
+    }
+
+    /**
+     * Writes the central directory and closes the file.
+     * <br>ZIP64 end records are added when there are more than 65535 entries.
+     * @throws IllegalStateException If an entry is still open.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public void close() throws IllegalStateException, IOException {
+        try (channel; centralDirectory) {
+            checkNoOpenEntry();
+            final long offset = checkedPosition();
+            centralDirectoryOutput.flush();
+            for (long position = 0; position < centralDirectorySize;) {
+                final long transferred = centralDirectory.transferTo(position, centralDirectorySize - position, channel);
+                if (transferred <= 0) {
+                    throw new IOException("Truncated central directory."); // NOI18N.
+                }
+                position += transferred;
+            }
+            final boolean zip64 = count > MAX_ENTRIES || centralDirectorySize > MAX_OFFSET;
+            if (zip64) {
+                final long zip64EndOffset = channel.position();
+                final var zip64End = ByteBuffer.allocate(RawZipFile.ZIP64_END_SIZE + RawZipFile.ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                zip64End.putInt(RawZipFile.ZIP64_END_SIGNATURE)
+                        .putLong(RawZipFile.ZIP64_END_SIZE - 12)
+                        .putShort((short) ZIP64_VERSION)
+                        .putShort((short) ZIP64_VERSION)
+                        .putInt(0)
+                        .putInt(0)
+                        .putLong(count)
+                        .putLong(count)
+                        .putLong(centralDirectorySize)
+                        .putLong(offset);
+                zip64End.putInt(RawZipFile.ZIP64_LOCATOR_SIGNATURE)
+                        .putInt(0)
+                        .putLong(zip64EndOffset)
+                        .putInt(1);
+                writeFully(zip64End.flip());
+            }
+            final var end = ByteBuffer.allocate(RawZipFile.END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(RawZipFile.END_SIGNATURE)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) (zip64 ? MAX_ENTRIES : count))
+                    .putShort((short) (zip64 ? MAX_ENTRIES : count))
+                    .putInt((int) Math.min(centralDirectorySize, MAX_OFFSET))
+                    .putInt((int) offset)
+                    .putShort((short) 0);
+            writeFully(end.flip());
+        }
+    }
+
+    /**
+     * Checks that no streamed entry is open.
+     * @throws IllegalStateException If an entry is still open.
+     */
+    private void checkNoOpenEntry() throws IllegalStateException {
+        if (openEntry) {
+            throw new IllegalStateException("An entry is still open."); // NOI18N.
+        }
+    }
+
+    /**
+     * Records the central header of an entry.
+     * @param header The central header.
+     * @throws IOException In case of IO errors.
+     */
+    private void addCentralHeader(final byte[] header) throws IOException {
+        centralDirectoryOutput.write(header);
+        centralDirectorySize += header.length;
+        count++;
+    }
+
+    /**
+     * Gets the current position, checking it can be stored without ZIP64 extensions.
+     * @return A {@code long}.
+     * @throws IOException In case of IO errors or if the file is too large.
+     */
+    private long checkedPosition() throws IOException {
+        final long result = channel.position();
+        if (result > MAX_OFFSET) {
+            throw new ZipException("File too large, ZIP64 entries are not supported."); // NOI18N.
+        }
+        return result;
+    }
+
+    /**
+     * Writes a whole buffer.
+     * @param buffer The buffer.
+     * @throws IOException In case of IO errors.
+     */
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Converts a time to MS-DOS date and time, as stored in ZIP headers.
+     * @param time The time, in milliseconds since the epoch.
+     * @return An {@code int}, date in the high word and time in the low word.
+     */
+    private static int dosTime(final long time) {
+        final var date = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (date.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((date.getYear() - 1980) << 25)
+                | (date.getMonthValue() << 21)
+                | (date.getDayOfMonth() << 16)
+                | (date.getHour() << 11)
+                | (date.getMinute() << 5)
+                | (date.getSecond() >> 1);
+    }
+}
@@ -5,18 +5,27 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.io;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.io.OutputStream;
-import java.io.PrintStream;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A class that consumes a stream in a separate {@code Thread}.
+ * A class that consumes a stream in the background.
  * <br/>Typically this class is used to consume the output stream and error output stream of a {@code Process}.
+ * <br/>Consumers run on a shared pool: threads are reused from one command to the next and die once idle.
+ * Without a matcher, data is copied in bulk; with a matcher, lines are tested until the first one matches.
  *
  * @author Fabrice Bouyé (fabriceb@spc.int)
  */
@@ -24,9 +33,19 @@ public final class StreamConsumer implements Runnable {
 
     private static final Logger LOGGER = Logger.getLogger(StreamConsumer.class.getName());
 
-    private Thread thread;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Shared pool of consumer threads.
+     */
+    private static final ExecutorService EXECUTOR = createExecutor();
+
     private final InputStream in;
-    private final PrintStream out;
+    private final OutputStream out;
+    private final Predicate<String> matcher;
+    private final CountDownLatch matched = new CountDownLatch(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile String match;
 
     /**
      * Creates a new instance with not redirection.
@@ -39,18 +58,43 @@ public final class StreamConsumer implements Runnable {
     }
 
     /**
-     * Creates a new instance with not redirection.
+     * Creates a new instance.
      *
      * @param in  The source stream.
      * @param out The target stream.
      *            If {@code null}, all data coming from the stream will be lost.
      */
     public StreamConsumer(final InputStream in, final OutputStream out) {
+        this(in, out, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param in      The source stream.
+     * @param out     The target stream.
+     *                If {@code null}, all data coming from the stream will be lost.
+     * @param matcher Matcher tested on each line until one matches, see {@link #awaitMatch()}; may be {@code null}.
+     */
+    public StreamConsumer(final InputStream in, final OutputStream out, final Predicate<String> matcher) {
         this.in = in;
-        this.out = (out != null) ? new PrintStream(out) : null;
-        thread = new Thread(this);
-        thread.setPriority(Thread.MIN_PRIORITY);
-        thread.start();
+        this.out = out;
+        this.matcher = matcher;
+        EXECUTOR.execute(this);
+    }
+
+    /**
+     * Creates the shared pool.
+     * @return An {@code ExecutorService} instance, never {@code null}.
+     */
+    private static ExecutorService createExecutor() {
+        final var threadCounter = new AtomicInteger();
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30L, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            final var thread = new Thread(runnable, String.format("stream-consumer-%d", threadCounter.incrementAndGet())); // NOI18N.
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
     }
 
     /**
@@ -59,35 +103,90 @@ public final class StreamConsumer implements Runnable {
     @Override
     public void run() {
         try {
-            try (final InputStreamReader source = new InputStreamReader(in);
-                 final LineNumberReader reader = new LineNumberReader(source)) {
-                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-                    publish(line);
-                }
+            if (matcher == null) {
+                copy();
+            } else {
+                matchLines();
             }
-            done();
         } catch (IOException ex) {
             LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
         } finally {
-            thread = null;
+            matched.countDown();
+            done.countDown();
         }
     }
 
     /**
-     * Publish intermediate result.
-     *
-     * @param chunk The chunk to publish.
+     * Copies the stream in bulk.
+     * @throws IOException In case of IO errors.
      */
-    protected void publish(final String chunk) {
-        if (out != null) {
-            out.println(chunk);
+    private void copy() throws IOException {
+        try (in) {
+            final var buffer = new byte[BUFFER_SIZE];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                if (out != null && read > 0) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.flush();
+            }
         }
     }
 
     /**
-     * Called when the stream has been consummed.
+     * Reads the stream line by line, testing each line until one matches.
+     * @throws IOException In case of IO errors.
+     */
+    private void matchLines() throws IOException {
+        final var separator = System.lineSeparator().getBytes();
+        try (final var reader = new BufferedReader(new InputStreamReader(in), BUFFER_SIZE)) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (match == null && matcher.test(line)) {
+                    match = line;
+                    matched.countDown();
+                }
+                if (out != null) {
+                    out.write(line.getBytes());
+                    out.write(separator);
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Waits until a line matches or until the stream has been consumed.
+     * <br/>The remainder of the stream keeps being drained in the background.
+     *
+     * @return An {@code Optional<String>} instance that contains the first matching line, never {@code null}.
+     * @throws InterruptedException If the current thread was interrupted.
+     */
+    public Optional<String> awaitMatch() throws InterruptedException {
+        matched.await();
+        return Optional.ofNullable(match);
+    }
+
+    /**
+     * Gets the first matching line read so far.
+     *
+     * @return An {@code Optional<String>} instance, never {@code null}.
+     */
+    public Optional<String> getMatch() {
+        return Optional.ofNullable(match);
+    }
+
+    /**
+     * Waits until the stream has been consumed.
+     *
+     * @throws InterruptedException If the current thread was interrupted.
      */
-    protected void done() {
+    public void await() throws InterruptedException {
+        done.await();
     }
 
     /**
@@ -0,0 +1,529 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Sequential reader of a TAR stream, used to copy entries without extracting them.
+ * <br>Each entry keeps the raw blocks of its headers, extended headers included, so it can be written back byte for byte,
+ * or with a new size when its content is replaced.
+ * <br>ustar, pax ({@code x} and {@code g}) and GNU long name ({@code L} and {@code K}) headers are supported.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class TarReader implements Closeable {
+
+    /**
+     * Size of a TAR block, equals to {@value}.
+     */
+    public static final int BLOCK_SIZE = 512;
+    private static final int NAME_OFFSET = 0;
+    private static final int NAME_LENGTH = 100;
+    private static final int SIZE_OFFSET = 124;
+    private static final int SIZE_LENGTH = 12;
+    private static final int CHECKSUM_OFFSET = 148;
+    private static final int CHECKSUM_LENGTH = 8;
+    private static final int TYPE_OFFSET = 156;
+    private static final int MAGIC_OFFSET = 257;
+    private static final int PREFIX_OFFSET = 345;
+    private static final int PREFIX_LENGTH = 155;
+    private static final byte[] USTAR_MAGIC = {'u', 's', 't', 'a', 'r'}; // NOI18N.
+    /**
+     * Largest size that fits in the octal size field; larger sizes are written in base-256.
+     */
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final String PAX_PATH = "path"; // NOI18N.
+    private static final String PAX_SIZE = "size"; // NOI18N.
+
+    /**
+     * An extended header: its header block and its padded data.
+     */
+    private static final class Extension {
+
+        private final byte[] header;
+        private final byte[] data;
+
+        Extension(final byte[] header, final byte[] data) {
+            this.header = header;
+            this.data = data;
+        }
+    }
+
+    /**
+     * An entry, as described by its headers.
+     */
+    public static final class Entry {
+
+        private final List<Extension> extensions;
+        private final byte[] header;
+        private final String name;
+        private final long size;
+
+        private Entry(final List<Extension> extensions, final byte[] header, final String name, final long size) {
+            this.extensions = extensions;
+            this.header = header;
+            this.name = name;
+            this.size = size;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Test whether this entry is a regular file.
+         * @return {@code True} if this entry is a regular file, {@code false} otherwise.
+         */
+        public boolean isFile() {
+            final var type = header[TYPE_OFFSET];
+            return type == '0' || type == 0 || type == '7';
+        }
+
+        /**
+         * Writes the headers of this entry as read.
+         * @param output The output.
+         * @throws IOException In case of IO errors.
+         */
+        public void writeHeader(final OutputStream output) throws IOException {
+            for (final var extension : extensions) {
+                output.write(extension.header);
+                output.write(extension.data);
+            }
+            output.write(header);
+        }
+
+        /**
+         * Writes the headers of this entry for a new content size.
+         * <br>The size record of a pax header, if any, is dropped; sizes too large for the octal field are written in base-256.
+         * @param output The output.
+         * @param newSize The size of the new content.
+         * @throws IOException In case of IO errors.
+         */
+        public void writeHeader(final OutputStream output, final long newSize) throws IOException {
+            for (final var extension : extensions) {
+                if (extension.header[TYPE_OFFSET] != 'x') {
+                    output.write(extension.header);
+                    output.write(extension.data);
+                    continue;
+                }
+                final var data = removePaxRecord(extension.data, readSize(extension.header), PAX_SIZE);
+                output.write(withSize(extension.header, data.length));
+                output.write(data);
+                output.write(new byte[padding(data.length)]);
+            }
+            output.write(withSize(header, newSize));
+        }
+    }
+
+    private final InputStream input;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    /**
+     * Bytes of the current entry not read yet, followed by its padding.
+     */
+    private long remaining = 0;
+    private int remainingPadding = 0;
+    /**
+     * Set once the end of the archive has been reached; the current block is then the first block of the trailer.
+     */
+    private boolean finished = false;
+
+    /**
+     * Creates a new instance.
+     * @param input The TAR stream, ie: a decompressed {@code tar.gz} file.
+     * @throws NullPointerException If {@code input} is {@code null}.
+     */
+    public TarReader(final InputStream input) throws NullPointerException {
+        Objects.requireNonNull(input);
+        this.input = input;
+    }
+
+    /**
+     * Moves to the next entry; the content of the current entry is skipped if it was not read.
+     * @return An {@code Entry} instance, {@code null} once the end of the archive is reached.
+     * @throws IOException In case of IO errors or if the archive is not a valid TAR file.
+     */
+    public Entry next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        skip(remaining + remainingPadding);
+        remaining = 0;
+        remainingPadding = 0;
+        final var extensions = new ArrayList<Extension>();
+        String paxName = null;
+        String longName = null;
+        long paxSize = -1;
+        while (true) {
+            if (!readBlock()) {
+                // Archives without trailer are accepted.
+                finished = true;
+                return null;
+            }
+            if (isZeroBlock(block)) {
+                finished = true;
+                return null;
+            }
+            final var header = block.clone();
+            verifyChecksum(header);
+            final long size = readSize(header);
+            switch (header[TYPE_OFFSET]) {
+                case 'x':
+                case 'g':
+                case 'L':
+                case 'K': {
+                    if (size > Integer.MAX_VALUE - BLOCK_SIZE) {
+                        throw new IOException("Extended TAR header too large."); // NOI18N.
+                    }
+                    final var data = new byte[(int) size + padding(size)];
+                    readFully(data);
+                    extensions.add(new Extension(header, data));
+                    if (header[TYPE_OFFSET] == 'x') {
+                        final var path = findPaxRecord(data, size, PAX_PATH);
+                        paxName = (path == null) ? paxName : path;
+                        final var paxSizeValue = findPaxRecord(data, size, PAX_SIZE);
+                        paxSize = (paxSizeValue == null) ? paxSize : paxSize(paxSizeValue);
+                    } else if (header[TYPE_OFFSET] == 'L') {
+                        longName = readString(data, 0, (int) size);
+                    }
+                    break;
+                }
+                default: {
+                    final String name;
+                    if (paxName != null) {
+                        name = paxName;
+                    } else if (longName != null) {
+                        name = longName;
+                    } else {
+                        name = ustarName(header);
+                    }
+                    final long entrySize = (paxSize >= 0) ? paxSize : size;
+                    remaining = entrySize;
+                    remainingPadding = padding(entrySize);
+                    return new Entry(extensions, header, name, entrySize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a stream on the content of the current entry.
+     * <br>The stream must not be used once {@link #next()} has been called again; closing it does not close this reader.
+     * @return An {@code InputStream} instance, never {@code null}.
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final var one = new byte[1];
+                return (read(one, 0, 1) < 0) ? -1 : Byte.toUnsignedInt(one[0]);
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                final int read = input.read(b, off, (int) Math.min(len, remaining));
+                if (read < 0) {
+                    throw new EOFException("Truncated TAR entry."); // NOI18N.
+                }
+                remaining -= read;
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Copies the end of the archive verbatim, once {@link #next()} has returned {@code null}.
+     * @param output The output.
+     * @throws IllegalStateException If the end of the archive has not been reached yet.
+     * @throws IOException In case of IO errors.
+     */
+    public void transferTrailer(final OutputStream output) throws IllegalStateException, IOException {
+        if (!finished) {
+            throw new IllegalStateException();
+        }
+        // Archives without trailer get the two zero blocks of the format.
+        if (!isZeroBlock(block)) {
+            output.write(new byte[2 * BLOCK_SIZE]);
+            return;
+        }
+        output.write(block);
+        input.transferTo(output);
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Gets the number of padding bytes that follow content of given size.
+     * @param size The size.
+     * @return An {@code int} in [0, 512[.
+     */
+    public static int padding(final long size) {
+        return (int) ((BLOCK_SIZE - (size % BLOCK_SIZE)) % BLOCK_SIZE);
+    }
+
+    private boolean readBlock() throws IOException {
+        int offset = 0;
+        while (offset < BLOCK_SIZE) {
+            final int read = input.read(block, offset, BLOCK_SIZE - offset);
+            if (read < 0) {
+                if (offset == 0) {
+                    // Marks the block so it is not taken for a trailer.
+                    Arrays.fill(block, (byte) 1);
+                    return false;
+                }
+                throw new EOFException("Truncated TAR header."); // NOI18N.
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private void readFully(final byte[] data) throws IOException {
+        final int read = input.readNBytes(data, 0, data.length);
+        if (read < data.length) {
+            throw new EOFException("Truncated TAR header."); // NOI18N.
+        }
+    }
+
+    private void skip(final long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            final long done = input.skip(count - skipped);
+            if (done <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("Truncated TAR entry."); // NOI18N.
+                }
+                skipped++;
+            } else {
+                skipped += done;
+            }
+        }
+    }
+
+    private static boolean isZeroBlock(final byte[] header) {
+        for (final var value : header) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the checksum of a header: the sum of its bytes, the checksum field counting as spaces.
+     * @param header The header.
+     * @return A {@code long}.
+     */
+    private static long checksum(final byte[] header) {
+        long result = 0;
+        for (int index = 0; index < BLOCK_SIZE; index++) {
+            final boolean inField = index >= CHECKSUM_OFFSET && index < CHECKSUM_OFFSET + CHECKSUM_LENGTH;
+            result += inField ? ' ' : Byte.toUnsignedInt(header[index]);
+        }
+        return result;
+    }
+
+    private static void verifyChecksum(final byte[] header) throws IOException {
+        final long expected = parseOctal(header, CHECKSUM_OFFSET, CHECKSUM_LENGTH);
+        if (expected != checksum(header)) {
+            throw new IOException("Invalid TAR header checksum."); // NOI18N.
+        }
+    }
+
+    /**
+     * Reads the size field of a header, in octal or in base-256.
+     * @param header The header.
+     * @return A {@code long} &ge; 0.
+     * @throws IOException If the size is invalid.
+     */
+    private static long readSize(final byte[] header) throws IOException {
+        if ((header[SIZE_OFFSET] & 0x80) != 0) {
+            long result = 0;
+            for (int index = SIZE_OFFSET + 1; index < SIZE_OFFSET + SIZE_LENGTH; index++) {
+                result = (result << 8) | Byte.toUnsignedInt(header[index]);
+            }
+            if (result < 0) {
+                throw new IOException("Invalid TAR entry size."); // NOI18N.
+            }
+            return result;
+        }
+        return parseOctal(header, SIZE_OFFSET, SIZE_LENGTH);
+    }
+
+    private static long parseOctal(final byte[] header, final int offset, final int length) throws IOException {
+        int index = offset;
+        // Leading spaces are allowed, the value ends with a space or a NUL.
+        while (index < offset + length && header[index] == ' ') {
+            index++;
+        }
+        long result = 0;
+        for (; index < offset + length && header[index] != 0 && header[index] != ' '; index++) {
+            final var value = header[index];
+            if (value < '0' || value > '7') {
+                throw new IOException("Invalid TAR header."); // NOI18N.
+            }
+            result = (result << 3) + (value - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Gets a copy of a header with a new size and its checksum updated.
+     * @param header The header.
+     * @param size The new size.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    private static byte[] withSize(final byte[] header, final long size) {
+        final var result = header.clone();
+        if (size <= MAX_OCTAL_SIZE) {
+            final var digits = String.format("%011o", size).getBytes(StandardCharsets.US_ASCII); // NOI18N.
+            System.arraycopy(digits, 0, result, SIZE_OFFSET, digits.length);
+            result[SIZE_OFFSET + SIZE_LENGTH - 1] = 0;
+        } else {
+            result[SIZE_OFFSET] = (byte) 0x80;
+            for (int index = SIZE_OFFSET + SIZE_LENGTH - 1, shift = 0; index > SIZE_OFFSET; index--, shift += 8) {
+                result[index] = (byte) ((shift < Long.SIZE) ? (size >>> shift) : 0);
+            }
+        }
+        // 6 octal digits, a NUL and a space.
+        final var digits = String.format("%06o", checksum(result)).getBytes(StandardCharsets.US_ASCII); // NOI18N.
+        System.arraycopy(digits, 0, result, CHECKSUM_OFFSET, digits.length);
+        result[CHECKSUM_OFFSET + 6] = 0;
+        result[CHECKSUM_OFFSET + 7] = ' ';
+        return result;
+    }
+
+    private static String ustarName(final byte[] header) {
+        final var name = readString(header, NAME_OFFSET, NAME_LENGTH);
+        if (!Arrays.equals(header, MAGIC_OFFSET, MAGIC_OFFSET + USTAR_MAGIC.length, USTAR_MAGIC, 0, USTAR_MAGIC.length)) {
+            return name;
+        }
+        final var prefix = readString(header, PREFIX_OFFSET, PREFIX_LENGTH);
+        return prefix.isEmpty() ? name : prefix + '/' + name;
+    }
+
+    /**
+     * Reads a NUL terminated string.
+     * @param data The data.
+     * @param offset The start of the string.
+     * @param length The maximum length of the string.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private static String readString(final byte[] data, final int offset, final int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds a record of pax header data; records are formatted as {@code "<length> <key>=<value>\n"}.
+     * @param data The data.
+     * @param size The size of the data, without padding.
+     * @param key The key.
+     * @return A {@code String} instance, {@code null} if not found.
+     * @throws IOException If the data is invalid.
+     */
+    private static String findPaxRecord(final byte[] data, final long size, final String key) throws IOException {
+        String result = null;
+        for (int offset = 0; offset < size;) {
+            final int length = paxRecordLength(data, offset, (int) size);
+            final var record = new String(data, offset, length, StandardCharsets.UTF_8);
+            final int space = record.indexOf(' ');
+            final int equals = record.indexOf('=', space);
+            if (equals < 0) {
+                throw new IOException("Malformed pax record"); // NOI18N.
+            }
+            if (record.substring(space + 1, equals).equals(key)) {
+                result = record.substring(equals + 1, record.length() - 1);
+            }
+            offset += length;
+        }
+        return result;
+    }
+
+    /**
+     * Parses the value of a pax size record.
+     * @param value The value.
+     * @return A {@code long} &ge; 0.
+     * @throws IOException If the value is invalid.
+     */
+    private static long paxSize(final String value) throws IOException {
+        try {
+            final long result = Long.parseLong(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below.
+        }
+        throw new IOException("Malformed pax record"); // NOI18N.
+    }
+
+    /**
+     * Copies pax header data without the records of given key.
+     * @param data The data.
+     * @param size The size of the data, without padding.
+     * @param key The key.
+     * @return A {@code byte[]} instance, never {@code null}; without padding.
+     * @throws IOException If the data is invalid.
+     */
+    private static byte[] removePaxRecord(final byte[] data, final long size, final String key) throws IOException {
+        final var result = new ByteArrayOutputStream((int) size);
+        final var prefix = (' ' + key + '=').getBytes(StandardCharsets.UTF_8);
+        for (int offset = 0; offset < size;) {
+            final int length = paxRecordLength(data, offset, (int) size);
+            int space = offset;
+            while (data[space] != ' ') {
+                space++;
+            }
+            final boolean matches = space + prefix.length <= offset + length
+                    && Arrays.equals(data, space, space + prefix.length, prefix, 0, prefix.length);
+            if (!matches) {
+                result.write(data, offset, length);
+            }
+            offset += length;
+        }
+        return result.toByteArray();
+    }
+
+    private static int paxRecordLength(final byte[] data, final int offset, final int size) throws IOException {
+        int length = 0;
+        int index = offset;
+        while (index < size && data[index] >= '0' && data[index] <= '9') {
+            length = 10 * length + (data[index] - '0');
+            index++;
+        }
+        if (index == offset || index >= size || data[index] != ' ' || length <= index - offset || offset + length > size) {
+            throw new IOException("Invalid pax header."); // NOI18N.
+        }
+        return length;
+    }
+}
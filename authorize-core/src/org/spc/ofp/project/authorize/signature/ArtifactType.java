@@ -0,0 +1,176 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipException;
+import org.spc.ofp.project.authorize.io.RawZipFile;
+
+/**
+ * Kinds of signable files, detected from their content rather than from their name.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum ArtifactType {
+    /**
+     * A JAR file: a ZIP archive with a manifest.
+     */
+    JAR,
+    /**
+     * Any other ZIP archive; it may contain JAR files.
+     */
+    ZIP,
+    /**
+     * A Windows native executable or library (PE).
+     */
+    PORTABLE_EXECUTABLE,
+    /**
+     * A Windows installer, merge module or patch (MSI).
+     */
+    MSI,
+    /**
+     * Any other file.
+     */
+    OTHER;
+
+    /**
+     * ZIP local file header, {@code PK\3\4}.
+     */
+    private static final int ZIP_MAGIC = 0x04034B50;
+    /**
+     * DOS header, {@code MZ}.
+     */
+    private static final int DOS_MAGIC = 0x5A4D;
+    /**
+     * PE signature, {@code PE\0\0}.
+     */
+    private static final int PE_SIGNATURE = 0x00004550;
+    /**
+     * OLE compound file header.
+     */
+    private static final long OLE_MAGIC = 0xE11AB1A1E011CFD0L;
+    /**
+     * First 4 bytes of the class id of the root storage of installers ({@code 000C1084}) and patches ({@code 000C1086});
+     * the remaining 12 bytes are the same.
+     */
+    private static final int MSI_CLSID = 0x000C1084;
+    private static final int MSP_CLSID = 0x000C1086;
+    private static final long MSI_CLSID_TAIL = 0x46000000000000C0L;
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF"; // NOI18N.
+
+    /**
+     * Detects the type of a file from its first bytes.
+     * <br>ZIP archives are detected from their central directory, so self-executing JAR files that start with a launcher
+     * script are detected too.
+     * @param file The file.
+     * @return An {@code ArtifactType} instance, never {@code null}.
+     * @throws IOException In case of IO errors or if a file that starts like a ZIP archive cannot be read as one.
+     */
+    public static ArtifactType probe(final Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final var header = read(channel, 0, 0x40);
+            if (header.remaining() >= Integer.BYTES && header.getInt(0) == ZIP_MAGIC) {
+                try (final var zipFile = new RawZipFile(file)) {
+                    return archiveType(zipFile);
+                }
+            }
+            if (header.remaining() == 0x40 && (header.getShort(0) & 0xFFFF) == DOS_MAGIC) {
+                final var signature = read(channel, Integer.toUnsignedLong(header.getInt(0x3C)), Integer.BYTES);
+                return (signature.remaining() == Integer.BYTES && signature.getInt(0) == PE_SIGNATURE) ? PORTABLE_EXECUTABLE : OTHER;
+            }
+            if (header.remaining() == 0x40 && header.getLong(0) == OLE_MAGIC) {
+                return isInstaller(channel, header) ? MSI : OTHER;
+            }
+        }
+        // Data may have been prepended to an archive.
+        try (final var zipFile = new RawZipFile(file)) {
+            return archiveType(zipFile);
+        } catch (ZipException ex) {
+            return OTHER;
+        }
+    }
+
+    /**
+     * Detects the type of an archive held in memory, ie: an entry of another archive.
+     * <br>Only the central directory is read. Archives held in memory are read from their first local header, content that
+     * does not start with one is not an archive.
+     * @param content The content.
+     * @return {@code JAR}, {@code ZIP} or {@code OTHER}, never {@code null}.
+     * @throws IOException If the content starts like a ZIP archive but cannot be read as one.
+     */
+    public static ArtifactType probeArchive(final byte[] content) throws IOException {
+        if (content.length < Integer.BYTES || ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN).getInt(0) != ZIP_MAGIC) {
+            return OTHER;
+        }
+        try (final var zipFile = new RawZipFile(content)) {
+            if (zipFile.getPreambleLength() != 0) {
+                throw new ZipException("Invalid local header."); // NOI18N.
+            }
+            return archiveType(zipFile);
+        }
+    }
+
+    /**
+     * Detects the type of a ZIP archive from its central directory.
+     * @param zipFile The archive.
+     * @return {@code JAR} if the archive has a manifest, {@code ZIP} otherwise.
+     */
+    private static ArtifactType archiveType(final RawZipFile zipFile) {
+        // The manifest usually comes first, but not always.
+        for (final var entry : zipFile.getEntries()) {
+            if (MANIFEST_NAME.equals(entry.getName())) {
+                return JAR;
+            }
+        }
+        return ZIP;
+    }
+
+    /**
+     * Test whether an OLE compound file is an installer, from the class id of its root storage.
+     * <br>Other compound files, like legacy Office documents, are not signed with JSign.
+     * @param channel The channel.
+     * @param header The header of the compound file.
+     * @return {@code True} if the file is an installer or a patch, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    private static boolean isInstaller(final FileChannel channel, final ByteBuffer header) throws IOException {
+        final int sectorShift = header.getShort(0x1E) & 0xFFFF;
+        if (sectorShift < 7 || sectorShift > 16) {
+            return false;
+        }
+        // The root storage is the first entry of the first directory sector; sectors are numbered after the header sector.
+        final long directorySector = Integer.toUnsignedLong(header.getInt(0x30));
+        final long rootEntry = (directorySector + 1) << sectorShift;
+        final var classId = read(channel, rootEntry + 0x50, 16);
+        if (classId.remaining() < 16) {
+            return false;
+        }
+        final int head = classId.getInt(0);
+        return (head == MSI_CLSID || head == MSP_CLSID) && classId.getInt(4) == 0 && classId.getLong(8) == MSI_CLSID_TAIL;
+    }
+
+    /**
+     * Reads bytes at given position.
+     * @param channel The channel.
+     * @param position The position.
+     * @param length The number of bytes to read.
+     * @return A little-endian {@code ByteBuffer} instance, never {@code null}; shorter than {@code length} if the file ends before.
+     * @throws IOException In case of IO errors.
+     */
+    private static ByteBuffer read(final FileChannel channel, final long position, final int length) throws IOException {
+        final var result = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (result.hasRemaining()) {
+            if (channel.read(result, position + result.position()) < 0) {
+                break;
+            }
+        }
+        return result.flip();
+    }
+}
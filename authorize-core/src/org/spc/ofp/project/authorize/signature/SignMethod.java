@@ -18,6 +18,18 @@ public enum SignMethod {
      * Use JarSigner to sign Java JAR files (default sign method).
      */
     JARSIGNER,
+    /**
+     * Use the JDK's JarSigner API to sign Java JAR files inside the running JVM.
+     */
+    JARSIGNER_API,
+    /**
+     * Sign both JAR files and Windows native executables found in the same tree, in a single walk.
+     */
+    MIXED,
+    /**
+     * Sign the JAR files inside {@code zip} or {@code tar.gz} distribution bundles without extracting them.
+     */
+    BUNDLE,
     /**
      * Unsupported sign method.
      */
@@ -0,0 +1,434 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk index of files known to be signed, used to skip unchanged files without verifying them again.
+ * <br>Each file is recorded with its size, modification time, a fingerprint of its structure and the identity of the signer.
+ * <br>The index is stored as an open addressing hash table made of primitive arrays; the file is memory-mapped and bulk-copied on load, no parsing or rehashing is needed.
+ * <br>The whole index is discarded when the signers change, see {@link #identity(List, boolean)}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class SignatureIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(SignatureIndex.class.getName());
+
+    /**
+     * Name of the index file, equals to "{@value}".
+     */
+    public static final String INDEX_FILENAME = ".authorize-index"; // NOI18N.
+    /**
+     * File signature ("AIDX").
+     */
+    private static final int MAGIC = 0x41494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+    private static final int MIN_CAPACITY = 64;
+    /**
+     * File state: signed.
+     */
+    private static final byte STATE_SIGNED = 1;
+    /**
+     * Size of the tail read when fingerprinting a file that is not a ZIP archive.
+     */
+    private static final int TAIL_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path indexFile;
+    private final long identity;
+    // Table, key 0 marks an empty slot.
+    private long[] keys;
+    private long[] sizes;
+    private long[] times;
+    private long[] fingerprints;
+    private long[] signers;
+    private byte[] states;
+    private int count;
+    private boolean modified = false;
+
+    /**
+     * Creates a new empty instance.
+     * @param root The root directory of the signed tree.
+     * @param identity Identity of the signer.
+     */
+    private SignatureIndex(final Path root, final long identity) {
+        this.root = root;
+        this.indexFile = root.resolve(INDEX_FILENAME);
+        this.identity = identity;
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Opens the index of a tree.
+     * @param path The root of the signed tree; if it is a file, the index is stored in its parent directory.
+     * @param identity Identity of the signers, see {@link #identity(List, boolean)}.
+     * @return A {@code SignatureIndex} instance, never {@code null}.
+     * <br>If there is no index yet, if it is invalid or if it was created for another identity, the returned index is empty.
+     * @throws NullPointerException If {@code path} is {@code null}.
+     */
+    public static SignatureIndex open(final Path path, final long identity) throws NullPointerException {
+        Objects.requireNonNull(path);
+        final var absolutePath = path.toAbsolutePath().normalize();
+        final var root = Files.isDirectory(absolutePath) ? absolutePath : absolutePath.getParent();
+        final var result = new SignatureIndex(root, identity);
+        if (Files.isRegularFile(result.indexFile)) {
+            try {
+                result.load();
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, String.format("Discarding invalid index \"%s\".", result.indexFile), ex); // NOI18N.
+                result.allocate(MIN_CAPACITY);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the identity of the signers.
+     * <br>The identity changes when the certificate chain of a signer changes, ie: when an alias is re-keyed, when a signer is
+     * added or removed, or when re-signing is forced; other changes to the key store do not matter.
+     * @param chains The certificate chains of all signers, in signing order.
+     * @param resign If {@code true}, files are signed again even if they are already signed.
+     * @return A {@code long}.
+     * @throws NullPointerException If {@code chains} is {@code null}.
+     * @throws CertificateEncodingException If a certificate cannot be encoded.
+     */
+    public static long identity(final List<Certificate[]> chains, final boolean resign) throws NullPointerException, CertificateEncodingException {
+        Objects.requireNonNull(chains);
+        final var digest = newSha256();
+        digest.update((byte) (resign ? 1 : 0));
+        for (final var chain : chains) {
+            // Certificates are self-delimited DER structures, only chains need a length.
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(chain.length).array());
+            for (final var certificate : chain) {
+                digest.update(certificate.getEncoded());
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    /**
+     * Test whether a file is known to be signed by the current signer and did not change since.
+     * <br>When size and modification time match, no IO is performed.
+     * When only the modification time changed, the fingerprint of the file is compared; it is computed outside of the lock.
+     * @param file The file.
+     * @param attributes The attributes of the file.
+     * @return {@code True} if the file can be skipped, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean isSigned(final Path file, final BasicFileAttributes attributes) throws IOException {
+        final long key = key(file);
+        final long time = attributes.lastModifiedTime().toMillis();
+        final long fingerprint;
+        synchronized (this) {
+            final int slot = find(key);
+            if (slot < 0 || states[slot] != STATE_SIGNED || signers[slot] != identity || sizes[slot] != attributes.size()) {
+                return false;
+            }
+            if (times[slot] == time) {
+                return true;
+            }
+            fingerprint = fingerprints[slot];
+        }
+        if (fingerprint != fingerprint(file)) {
+            return false;
+        }
+        synchronized (this) {
+            final int slot = find(key);
+            // The record may have been replaced in the meantime.
+            if (slot >= 0 && fingerprints[slot] == fingerprint) {
+                times[slot] = time;
+                modified = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a file as signed by the current signer.
+     * <br>The fingerprint of the file is computed outside of the lock.
+     * @param file The file, as it is on disk after signing.
+     * @throws IOException In case of IO errors.
+     */
+    public void markSigned(final Path file) throws IOException {
+        final var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        final long key = key(file);
+        final long fingerprint = fingerprint(file);
+        synchronized (this) {
+            int slot = find(key);
+            if (slot < 0) {
+                if (2 * (count + 1) > keys.length) {
+                    rehash(2 * keys.length);
+                }
+                slot = -(find(key) + 1);
+                keys[slot] = key;
+                count++;
+            }
+            sizes[slot] = attributes.size();
+            times[slot] = attributes.lastModifiedTime().toMillis();
+            fingerprints[slot] = fingerprint;
+            signers[slot] = identity;
+            states[slot] = STATE_SIGNED;
+            modified = true;
+        }
+    }
+
+    /**
+     * Writes the index to disk if it was modified.
+     * @throws IOException In case of IO errors.
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        final var tempFile = Files.createTempFile(root, INDEX_FILENAME, ".tmp"); // NOI18N.
+        try {
+            try (final var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(identity);
+                output.writeInt(keys.length);
+                output.writeInt(count);
+                for (final long[] array : new long[][]{keys, sizes, times, fingerprints, signers}) {
+                    for (final long value : array) {
+                        output.writeLong(value);
+                    }
+                }
+                output.write(states);
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            modified = false;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Loads the index from disk.
+     * @throws IOException In case of IO errors.
+     */
+    private void load() throws IOException {
+        try (final var channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported index format."); // NOI18N.
+            }
+            final long fileIdentity = buffer.getLong();
+            if (fileIdentity != identity) {
+                LOGGER.log(Level.INFO, "Signers changed, index \"{0}\" invalidated.", indexFile); // NOI18N.
+                return;
+            }
+            final int capacity = buffer.getInt();
+            final int fileCount = buffer.getInt();
+            if (capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1 || channel.size() != HEADER_SIZE + 41L * capacity) {
+                throw new IOException("Corrupted index."); // NOI18N.
+            }
+            allocate(capacity);
+            final var longs = buffer.asLongBuffer();
+            longs.get(keys).get(sizes).get(times).get(fingerprints).get(signers);
+            buffer.position(buffer.position() + 40 * capacity);
+            buffer.get(states);
+            count = fileCount;
+        }
+    }
+
+    /**
+     * Allocates empty arrays.
+     * @param capacity The capacity, a power of 2.
+     */
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        sizes = new long[capacity];
+        times = new long[capacity];
+        fingerprints = new long[capacity];
+        signers = new long[capacity];
+        states = new byte[capacity];
+        count = 0;
+    }
+
+    /**
+     * Grows the table.
+     * @param capacity The new capacity, a power of 2.
+     */
+    private void rehash(final int capacity) {
+        final var oldKeys = keys;
+        final var oldSizes = sizes;
+        final var oldTimes = times;
+        final var oldFingerprints = fingerprints;
+        final var oldSigners = signers;
+        final var oldStates = states;
+        allocate(capacity);
+        for (int index = 0; index < oldKeys.length; index++) {
+            if (oldKeys[index] != 0) {
+                final int slot = -(find(oldKeys[index]) + 1);
+                keys[slot] = oldKeys[index];
+                sizes[slot] = oldSizes[index];
+                times[slot] = oldTimes[index];
+                fingerprints[slot] = oldFingerprints[index];
+                signers[slot] = oldSigners[index];
+                states[slot] = oldStates[index];
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Finds a key in the table using linear probing.
+     * @param key The key.
+     * @return The slot of the key if found; otherwise {@code -(insertion slot + 1)}.
+     */
+    private int find(final long key) {
+        final int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -(slot + 1);
+    }
+
+    /**
+     * Computes the key of a file from its path relative to the root of the tree (64-bit FNV-1a).
+     * @param file The file.
+     * @return A non-zero {@code long}.
+     */
+    private long key(final Path file) {
+        final var relative = root.relativize(file.toAbsolutePath().normalize())
+                .toString()
+                .replace('\\', '/');
+        long hash = 0xcbf29ce484222325L;
+        for (int index = 0; index < relative.length(); index++) {
+            hash ^= relative.charAt(index);
+            hash *= 0x100000001b3L;
+        }
+        return (hash == 0) ? 1 : hash;
+    }
+
+    /**
+     * Computes the fingerprint of a file.
+     * <br>For ZIP archives, this is a hash of the central directory (names, CRC32, sizes and offsets of all entries); otherwise a hash of the tail of the file.
+     * @param file The file.
+     * @return A {@code long}.
+     * @throws IOException In case of IO errors.
+     */
+    static long fingerprint(final Path file) throws IOException {
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final var centralDirectory = readCentralDirectory(channel, size);
+            final ByteBuffer data;
+            if (centralDirectory != null) {
+                data = centralDirectory;
+            } else {
+                final int length = (int) Math.min(size, TAIL_SIZE);
+                data = ByteBuffer.allocate(length);
+                readFully(channel, data, size - length);
+                data.flip();
+            }
+            final var digest = newSha256();
+            digest.update(data);
+            return ByteBuffer.wrap(digest.digest()).getLong() ^ size;
+        }
+    }
+
+    /**
+     * Reads the central directory of a ZIP archive.
+     * @param channel The channel.
+     * @param size The size of the file.
+     * @return A {@code ByteBuffer} instance, {@code null} if the file is not a ZIP archive.
+     * @throws IOException In case of IO errors.
+     */
+    private static ByteBuffer readCentralDirectory(final FileChannel channel, final long size) throws IOException {
+        // End of central directory record is 22 bytes followed by a comment of at most 65535 bytes.
+        final int tailLength = (int) Math.min(size, 22 + 0xFFFF);
+        if (tailLength < 22) {
+            return null;
+        }
+        final var tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, size - tailLength);
+        for (int position = tailLength - 22; position >= 0; position--) {
+            if (tail.getInt(position) == 0x06054b50) {
+                final long directorySize = tail.getInt(position + 12) & 0xFFFFFFFFL;
+                final long directoryOffset = tail.getInt(position + 16) & 0xFFFFFFFFL;
+                if (directoryOffset + directorySize > size || directorySize > Integer.MAX_VALUE) {
+                    return null;
+                }
+                final var result = ByteBuffer.allocate((int) directorySize);
+                readFully(channel, result, directoryOffset);
+                result.flip();
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fills a buffer from a channel.
+     * @param channel The channel.
+     * @param buffer The buffer.
+     * @param position The position in the channel.
+     * @throws IOException In case of IO errors.
+     */
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file."); // NOI18N.
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     * @return A {@code MessageDigest} instance, never {@code null}.
+     */
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256"); // NOI18N.
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JDK implementation supports SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SignatureIndex[%s, %d files, capacity %d]", indexFile, count, keys.length); // NOI18N.
+    }
+
+    /**
+     * Removes all records.
+     */
+    public synchronized void clear() {
+        Arrays.fill(keys, 0L);
+        count = 0;
+        modified = true;
+    }
+}
@@ -5,15 +5,82 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.signature;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.io.FileWalker;
 
 /**
  * Base class for a signature process
+ * <br>Also provides the scaffolding shared by processes that sign the files of a tree: the walk, the worker pool of the
+ * concurrent mode and the index of the incremental mode.
  * @author Fabrice Bouyé (fabriceb@spc.int)
  */
 public abstract class SignatureProcessBase {
 
+    /**
+     * Task run on a file found during the walk.
+     */
+    @FunctionalInterface
+    protected interface FileTask {
+
+        /**
+         * Runs this task.
+         * @param entry The file, with the attributes read during the walk.
+         * @throws Exception In case of errors.
+         */
+        void run(FileWalker.Entry entry) throws Exception;
+    }
+
+    /**
+     * Task run once the worker pool and the index are ready.
+     */
+    @FunctionalInterface
+    protected interface Task {
+
+        /**
+         * Runs this task.
+         * @throws Exception In case of errors.
+         */
+        void run() throws Exception;
+    }
+
     private Optional<SignatureProcessMonitor> observer = Optional.empty();
+    /**
+     * Total progress; raised by the walker each time a new file is discovered.
+     */
+    private volatile int totalProgress = 0;
+    /**
+     * Current progress; increased each time a file has been processed.
+     * <br>Incremented from worker threads in concurrent mode.
+     */
+    private final AtomicInteger currentProgress = new AtomicInteger();
+    /**
+     * The worker pool used in concurrent mode, {@code null} in sequential mode or when no task is running.
+     */
+    private ThreadPoolExecutor executor;
+    /**
+     * First error raised by a worker in concurrent mode.
+     */
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    /**
+     * Number of files that could not be signed; the process carries on with the next file.
+     */
+    private final AtomicInteger failedCount = new AtomicInteger();
+    /**
+     * The index of signed files in incremental mode, {@code null} otherwise.
+     */
+    private SignatureIndex index;
 
     /**
      * Creates a new instance.
@@ -57,4 +124,220 @@ public abstract class SignatureProcessBase {
     protected final boolean isCancelled() {
         return observer.isPresent() ? observer.get().isCancelled() : false;
     }
+
+    /**
+     * Test wether the process should stop, ie: it is cancelled or a worker failed.
+     * @return {@code True} if the process should stop, {@code false} otherwise.
+     */
+    protected final boolean isStopped() {
+        return isCancelled() || failure.get() != null;
+    }
+
+    /**
+     * Gets the worker pool.
+     * @return A {@code ThreadPoolExecutor} instance, {@code null} in sequential mode.
+     */
+    protected final ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the index of signed files.
+     * @return A {@code SignatureIndex} instance, {@code null} if not in incremental mode.
+     */
+    protected final SignatureIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the number of files processed so far.
+     * @return An {@code int} &ge; 0.
+     */
+    protected final int getProcessedCount() {
+        return currentProgress.get();
+    }
+
+    /**
+     * Gets the number of files that could not be signed.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Runs a task with the worker pool and the index, then releases both.
+     * <br>Files signed before an error or a cancellation are kept in the index. Errors raised by workers are not rethrown,
+     * see {@link #throwFailure()}.
+     * @param threads The number of workers; the pool is only created if greater than 1.
+     * @param workerName The name of worker threads, ie: {@code "jarsigner-worker-%d"}.
+     * @param index The index of signed files, {@code null} if not in incremental mode.
+     * @param task The task.
+     * @throws Exception In case of errors.
+     */
+    protected final void runTask(final int threads, final String workerName, final SignatureIndex index, final Task task) throws Exception {
+        this.index = index;
+        executor = (threads > 1) ? createExecutor(threads, workerName) : null;
+        try {
+            task.run();
+        } finally {
+            if (executor != null) {
+                shutdown(executor);
+                executor = null;
+            }
+            if (this.index != null) {
+                this.index.save();
+                this.index = null;
+            }
+        }
+    }
+
+    /**
+     * Rethrows the first error raised by a worker, if any, or fails if some files could not be signed.
+     * @throws Exception The error.
+     */
+    protected final void throwFailure() throws Exception {
+        final var exception = failure.get();
+        if (exception != null) {
+            throw exception;
+        }
+        final var failed = failedCount.get();
+        if (failed > 0) {
+            throw new IOException(String.format("%d files could not be signed.", failed)); // NOI18N.
+        }
+    }
+
+    /**
+     * Creates the bounded worker pool used in concurrent mode.
+     * <br>When all workers are busy and the queue is full, the submitting thread runs the task itself, which throttles the walk
+     * or the reading of the archive.
+     * @param threads The number of workers.
+     * @param workerName The name of worker threads.
+     * @return A {@code ThreadPoolExecutor} instance, never {@code null}.
+     */
+    protected static ThreadPoolExecutor createExecutor(final int threads, final String workerName) {
+        final var threadCounter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(2 * threads), runnable -> {
+            final var thread = new Thread(runnable, String.format(workerName, threadCounter.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Shuts down a worker pool and waits for its workers; pending tasks are dropped if the process is cancelled.
+     * @param executor The worker pool.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    protected final void shutdown(final ExecutorService executor) throws InterruptedException {
+        executor.shutdown();
+        if (isCancelled()) {
+            executor.shutdownNow();
+        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Walks a tree in a separate thread; files are consumed on the current thread as soon as they are discovered.
+     * <br>The walk stops once the process is cancelled or a worker failed.
+     * @param root The file or directory to walk.
+     * @param filter Called from the walking thread for every regular file in the tree.
+     * @param consumer Called for each file accepted by the filter.
+     * @throws Exception In case of errors.
+     */
+    protected final void walk(final Path root, final BiPredicate<Path, BasicFileAttributes> filter, final FileTask consumer) throws Exception {
+        final var walker = new FileWalker(root, filter);
+        walker.setOnFileFound(discovered -> {
+            totalProgress = discovered;
+            updateProgress(currentProgress.get(), discovered);
+        });
+        walker.start();
+        try {
+            for (var entry = walker.take(); entry != null; entry = walker.take()) {
+                if (isStopped()) {
+                    return;
+                }
+                consumer.run(entry);
+            }
+        } finally {
+            walker.cancel();
+        }
+    }
+
+    /**
+     * Runs a task on a file, on the worker pool in concurrent mode or on the current thread otherwise.
+     * @param entry The file.
+     * @param task The task.
+     * @throws Exception In case of errors, in sequential mode only.
+     */
+    protected final void execute(final FileWalker.Entry entry, final FileTask task) throws Exception {
+        if (executor == null) {
+            task.run(entry);
+        } else {
+            executor.execute(workerTask(entry, task));
+        }
+    }
+
+    /**
+     * Wraps a task run on a worker: it is skipped once the process should stop, and its error is recorded.
+     * @param entry The file.
+     * @param task The task.
+     * @return A {@code Runnable} instance, never {@code null}.
+     */
+    protected final Runnable workerTask(final FileWalker.Entry entry, final FileTask task) {
+        return () -> {
+            if (isStopped()) {
+                return;
+            }
+            try {
+                task.run(entry);
+            } catch (Exception ex) {
+                failure.compareAndSet(null, ex);
+            }
+        };
+    }
+
+    /**
+     * Skips a file unchanged since it was signed by a previous run, without opening it; progress is then updated.
+     * @param entry The file.
+     * @param debug If {@code true}, skipped files are logged.
+     * @param logger The logger.
+     * @return {@code True} if the file was skipped, {@code false} if it needs to be checked.
+     * @throws IOException In case of IO errors.
+     */
+    protected final boolean skipUnchanged(final FileWalker.Entry entry, final boolean debug, final Logger logger) throws IOException {
+        if (index == null || !index.isSigned(entry.getPath(), entry.getAttributes())) {
+            return false;
+        }
+        if (debug) {
+            final var message = String.format("File \"%s\" unchanged since last run.", entry.getPath().toString()); // NOI18N.
+            logger.log(Level.INFO, message);
+            updateMessage(message);
+        }
+        fileDone();
+        return true;
+    }
+
+    /**
+     * Reports a file that could not be signed, then update progress; the process carries on with the next file.
+     * @param file The file.
+     * @param ex The error.
+     * @param logger The logger.
+     */
+    protected final void fileFailed(final Path file, final Exception ex, final Logger logger) {
+        failedCount.incrementAndGet();
+        final var message = String.format("Signing \"%s\" failed: %s", file.toString(), ex.getMessage()); // NOI18N.
+        System.err.println(message);
+        logger.log(Level.SEVERE, message, ex);
+        updateMessage(message);
+        fileDone();
+    }
+
+    /**
+     * Update progress once a file has been processed.
+     */
+    protected final void fileDone() {
+        updateProgress(currentProgress.incrementAndGet(), totalProgress);
+        updateMessage("DONE"); // NOI18N.
+    }
 }
@@ -0,0 +1,287 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.der.DerElement;
+import org.spc.ofp.project.authorize.der.DerUtils;
+
+/**
+ * RFC 3161 timestamp client.
+ * <br>A single {@code HttpClient} is kept per TSA and proxy for the lifetime of the JVM; connections are kept alive and reused
+ * by every timestamp request, and HTTP/2 is used when the TSA supports it.
+ * <br>The latency of each request is logged at {@code FINE} level and accumulated in the statistics of the client.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class TimeStampClient {
+
+    private static final Logger LOGGER = Logger.getLogger(TimeStampClient.class.getName());
+
+    /**
+     * MIME type of timestamp requests, equals to "{@value}".
+     */
+    public static final String TIMESTAMP_QUERY = "application/timestamp-query"; // NOI18N.
+    /**
+     * MIME type of timestamp responses, equals to "{@value}".
+     */
+    public static final String TIMESTAMP_REPLY = "application/timestamp-reply"; // NOI18N.
+    /**
+     * OID of signed data content, equals to "{@value}".
+     */
+    public static final String SIGNED_DATA_OID = "1.2.840.113549.1.7.2"; // NOI18N.
+    /**
+     * OID of TSTInfo content, equals to "{@value}".
+     */
+    public static final String TST_INFO_OID = "1.2.840.113549.1.9.16.1.4"; // NOI18N.
+    /**
+     * OID of SHA-256, equals to "{@value}".
+     */
+    public static final String SHA256_OID = "2.16.840.1.101.3.4.2.1"; // NOI18N.
+    /**
+     * Default request timeout.
+     */
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * Shared clients, by TSA and proxy.
+     */
+    private static final Map<String, TimeStampClient> CLIENTS = new ConcurrentHashMap<>();
+
+    /**
+     * Latency statistics of a client.
+     */
+    public static final class Statistics {
+
+        private long count;
+        private long failures;
+        private long totalNanos;
+        private long minNanos = Long.MAX_VALUE;
+        private long maxNanos;
+
+        /**
+         * Creates a new instance.
+         */
+        private Statistics() {
+        }
+
+        /**
+         * Records a request.
+         * @param nanos The latency.
+         * @param success {@code True} if the request succeeded.
+         */
+        private synchronized void record(final long nanos, final boolean success) {
+            count++;
+            if (!success) {
+                failures++;
+            }
+            totalNanos += nanos;
+            minNanos = Math.min(minNanos, nanos);
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getFailures() {
+            return failures;
+        }
+
+        public synchronized double getMeanMillis() {
+            return (count == 0) ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public synchronized double getMinMillis() {
+            return (count == 0) ? 0 : minNanos / 1e6;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d failed, latency min %.1f ms, mean %.1f ms, max %.1f ms", // NOI18N.
+                    getCount(), getFailures(), getMinMillis(), getMeanMillis(), getMaxMillis());
+        }
+    }
+
+    private final URI uri;
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final SecureRandom random = new SecureRandom();
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * Creates a new instance.
+     * @param uri The URI of the TSA.
+     * @param proxy The HTTP proxy, may be {@code null}.
+     * @param timeout The timeout of each request.
+     * @throws NullPointerException If {@code uri} or {@code timeout} is {@code null}.
+     */
+    public TimeStampClient(final URI uri, final InetSocketAddress proxy, final Duration timeout) throws NullPointerException {
+        Objects.requireNonNull(uri);
+        Objects.requireNonNull(timeout);
+        this.uri = uri;
+        this.timeout = timeout;
+        var builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(timeout);
+        if (proxy != null) {
+            builder = builder.proxy(ProxySelector.of(proxy));
+        }
+        httpClient = builder.build();
+    }
+
+    /**
+     * Gets the shared client for a TSA.
+     * @param url The URL of the TSA.
+     * @param proxyHost The proxy host, may be {@code null}.
+     * @param proxyPort The proxy port, may be {@code null}.
+     * @return A {@code TimeStampClient} instance, never {@code null}.
+     * @throws NullPointerException If {@code url} is {@code null}.
+     * @throws IllegalArgumentException If {@code url} or {@code proxyPort} is invalid.
+     */
+    public static TimeStampClient of(final String url, final String proxyHost, final String proxyPort) throws NullPointerException, IllegalArgumentException {
+        Objects.requireNonNull(url);
+        final boolean useProxy = proxyHost != null && !proxyHost.isBlank() && proxyPort != null && !proxyPort.isBlank();
+        final var key = useProxy ? String.format("%s|%s:%s", url, proxyHost, proxyPort) : url; // NOI18N.
+        return CLIENTS.computeIfAbsent(key, k -> {
+            final var proxy = useProxy ? InetSocketAddress.createUnresolved(proxyHost, Integer.parseInt(proxyPort.trim())) : null;
+            return new TimeStampClient(URI.create(url), proxy, DEFAULT_TIMEOUT);
+        });
+    }
+
+    /**
+     * Gets the URI of the TSA.
+     * @return A {@code URI} instance, never {@code null}.
+     */
+    public URI getURI() {
+        return uri;
+    }
+
+    /**
+     * Gets the latency statistics of this client.
+     * @return A {@code Statistics} instance, never {@code null}.
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Requests a timestamp token.
+     * @param digestOid The OID of the digest algorithm.
+     * @param digest The digest to timestamp.
+     * @return The DER encoded timestamp token (a CMS {@code ContentInfo}), never {@code null}.
+     * @throws IOException If the request fails or if the TSA answer is invalid.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public byte[] timestamp(final String digestOid, final byte[] digest) throws IOException, InterruptedException {
+        final var nonce = new BigInteger(63, random);
+        final var der = DerUtils.INSTANCE;
+        final var query = der.sequence(
+                der.integer(1),
+                der.sequence(der.algorithm(digestOid, true), der.octetString(digest)),
+                der.integer(nonce),
+                der.bool(true));
+        final var request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Content-Type", TIMESTAMP_QUERY) // NOI18N.
+                .header("Accept", TIMESTAMP_REPLY) // NOI18N.
+                .POST(HttpRequest.BodyPublishers.ofByteArray(query))
+                .build();
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final var response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new IOException(String.format("TSA %s answered with HTTP code %d.", uri, response.statusCode())); // NOI18N.
+            }
+            final var result = parseResponse(response.body(), digest, nonce);
+            success = true;
+            return result;
+        } finally {
+            final long nanos = System.nanoTime() - start;
+            statistics.record(nanos, success);
+            LOGGER.log(Level.FINE, "Timestamp from {0} in {1} ms ({2}).", new Object[]{uri, nanos / 1_000_000, success ? "OK" : "FAILED"}); // NOI18N.
+        }
+    }
+
+    /**
+     * Parses a {@code TimeStampResp} and checks its token matches the request.
+     * @param response The response.
+     * @param digest The digest sent in the request.
+     * @param nonce The nonce sent in the request.
+     * @return The DER encoded timestamp token, never {@code null}.
+     * @throws IOException If the response is invalid or the request was rejected.
+     */
+    private byte[] parseResponse(final byte[] response, final byte[] digest, final BigInteger nonce) throws IOException {
+        try {
+            return parseToken(response, digest, nonce);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException(String.format("Invalid answer from TSA %s.", uri), ex); // NOI18N.
+        }
+    }
+
+    /**
+     * Extracts the token of a {@code TimeStampResp}.
+     * @param response The response.
+     * @param digest The digest sent in the request.
+     * @param nonce The nonce sent in the request.
+     * @return The DER encoded timestamp token, never {@code null}.
+     * @throws IOException If the response is invalid or the request was rejected.
+     */
+    private byte[] parseToken(final byte[] response, final byte[] digest, final BigInteger nonce) throws IOException {
+        final var children = DerElement.parse(response).getChildren();
+        final var statusInfo = children.get(0);
+        final int status = statusInfo.getChild(0).getInteger().intValue();
+        // 0 = granted, 1 = granted with modifications.
+        if (status != 0 && status != 1) {
+            throw new IOException(String.format("TSA %s rejected the request with status %d.", uri, status)); // NOI18N.
+        }
+        if (children.size() < 2) {
+            throw new IOException(String.format("TSA %s did not return a token.", uri)); // NOI18N.
+        }
+        final var token = children.get(1);
+        if (!SIGNED_DATA_OID.equals(token.getChild(0).getOid())) {
+            throw new IOException("Timestamp token is not a signed data."); // NOI18N.
+        }
+        final var encapsulated = token.getChild(1).getInner().getChild(2);
+        if (!TST_INFO_OID.equals(encapsulated.getChild(0).getOid())) {
+            throw new IOException("Timestamp token does not contain a TSTInfo."); // NOI18N.
+        }
+        final var tstInfo = encapsulated.getChild(1).getInner().getInner().getChildren();
+        final var imprint = tstInfo.get(2).getChild(1).getContent();
+        if (!Arrays.equals(imprint, digest)) {
+            throw new IOException("Timestamp token does not match the request."); // NOI18N.
+        }
+        // Nonce follows genTime and the optional accuracy and ordering fields.
+        final var tokenNonce = tstInfo.stream()
+                .skip(5)
+                .filter(element -> element.getTag() == DerUtils.TAG_INTEGER)
+                .findFirst();
+        if (tokenNonce.isEmpty() || !nonce.equals(tokenNonce.get().getInteger())) {
+            throw new IOException("Timestamp token nonce does not match the request."); // NOI18N.
+        }
+        return token.getEncoded();
+    }
+}
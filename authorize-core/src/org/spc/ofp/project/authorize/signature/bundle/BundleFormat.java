@@ -0,0 +1,84 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import org.spc.ofp.project.authorize.signature.ArtifactType;
+
+/**
+ * Formats of distribution bundles.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+enum BundleFormat {
+    /**
+     * A ZIP archive without manifest.
+     */
+    ZIP,
+    /**
+     * An uncompressed TAR archive.
+     */
+    TAR,
+    /**
+     * A TAR archive compressed with gzip.
+     */
+    TAR_GZIP;
+
+    private static final String ZIP_EXTENSION = ".zip"; // NOI18N.
+    private static final String TAR_EXTENSION = ".tar"; // NOI18N.
+    private static final String[] TAR_GZIP_EXTENSIONS = {".tar.gz", ".tgz"}; // NOI18N.
+    private static final int GZIP_MAGIC_0 = 0x1F;
+    private static final int GZIP_MAGIC_1 = 0x8B;
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4}; // NOI18N.
+    private static final byte[] USTAR_MAGIC = {'u', 's', 't', 'a', 'r'}; // NOI18N.
+    private static final int USTAR_MAGIC_OFFSET = 257;
+
+    /**
+     * Detects the format of a bundle from its name and its content.
+     * <br>JAR files are not bundles: they are signed as a whole. Temporary files written next to bundles are never accepted.
+     * @param file The file.
+     * @return A {@code BundleFormat} instance, {@code null} if the file is not a bundle.
+     * @throws IOException In case of IO errors.
+     */
+    static BundleFormat probe(final Path file) throws IOException {
+        final var name = file.getFileName().toString().toLowerCase(Locale.ENGLISH);
+        if (name.endsWith(TAR_EXTENSION)) {
+            return TAR;
+        }
+        for (final var extension : TAR_GZIP_EXTENSIONS) {
+            if (name.endsWith(extension)) {
+                try (final InputStream input = Files.newInputStream(file)) {
+                    return (input.read() == GZIP_MAGIC_0 && input.read() == GZIP_MAGIC_1) ? TAR_GZIP : null;
+                }
+            }
+        }
+        return (name.endsWith(ZIP_EXTENSION) && ArtifactType.probe(file) == ArtifactType.ZIP) ? ZIP : null;
+    }
+
+    /**
+     * Detects the format of an archive read from a stream, from its first block.
+     * <br>JAR files are reported as {@code ZIP}.
+     * @param header The first bytes of the archive, up to 512.
+     * @return A {@code BundleFormat} instance, {@code null} if the format is not supported.
+     */
+    static BundleFormat probe(final byte[] header) {
+        if (header.length >= 2 && Byte.toUnsignedInt(header[0]) == GZIP_MAGIC_0 && Byte.toUnsignedInt(header[1]) == GZIP_MAGIC_1) {
+            return TAR_GZIP;
+        }
+        if (header.length >= ZIP_MAGIC.length && Arrays.equals(header, 0, ZIP_MAGIC.length, ZIP_MAGIC, 0, ZIP_MAGIC.length)) {
+            return ZIP;
+        }
+        final int end = USTAR_MAGIC_OFFSET + USTAR_MAGIC.length;
+        if (header.length >= end && Arrays.equals(header, USTAR_MAGIC_OFFSET, end, USTAR_MAGIC, 0, USTAR_MAGIC.length)) {
+            return TAR;
+        }
+        return null;
+    }
+}
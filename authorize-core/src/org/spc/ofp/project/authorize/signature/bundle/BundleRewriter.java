@@ -0,0 +1,483 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import jdk.security.jarsigner.JarSignerException;
+import org.spc.ofp.project.authorize.io.RawZipFile;
+import org.spc.ofp.project.authorize.io.RawZipWriter;
+import org.spc.ofp.project.authorize.io.TarReader;
+import org.spc.ofp.project.authorize.signature.ArtifactType;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+
+/**
+ * Writes a copy of a bundle in which the JAR files are signed, in a single pass over the source bundle.
+ * <br>JAR files are read in memory, or spilled to a temporary file when larger than the threshold, and signed on the executor
+ * while the following entries are read; entries are written in their original order as soon as they are ready.
+ * At most a window of entries is in flight, which bounds memory usage.
+ * <br>Entries that are not signed are copied byte for byte: ZIP records are not inflated again and TAR headers are kept as read.
+ * <br>TAR streams are processed as they are read; ZIP archives read from a stream are buffered first, see {@link #rewriteArchive}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class BundleRewriter {
+
+    private static final Logger LOGGER = Logger.getLogger(BundleRewriter.class.getName());
+    /**
+     * Extensions of entries that may be JAR files; their content decides.
+     */
+    private static final String[] JAR_EXTENSIONS = {".jar", ".war", ".ear"}; // NOI18N.
+    /**
+     * Largest content held in memory whatever the threshold.
+     */
+    private static final long MAX_MEMORY_SIZE = Integer.MAX_VALUE - 8;
+    private static final String SPILL_PREFIX = "bundle"; // NOI18N.
+    private static final String SPILL_SUFFIX = ".jar"; // NOI18N.
+
+    /**
+     * The content of an entry, held in memory or spilled to a temporary file.
+     */
+    private static final class Content implements Closeable {
+
+        private final byte[] bytes;
+        private final Path file;
+        /**
+         * Set once the content has been signed.
+         */
+        private boolean modified;
+
+        private Content(final byte[] bytes, final Path file, final boolean modified) {
+            this.bytes = bytes;
+            this.file = file;
+            this.modified = modified;
+        }
+
+        long size() throws IOException {
+            return (bytes != null) ? bytes.length : Files.size(file);
+        }
+
+        void writeTo(final OutputStream output) throws IOException {
+            if (bytes != null) {
+                output.write(bytes);
+            } else {
+                Files.copy(file, output);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * An entry waiting to be written, with the task that produces its content.
+     * @param <E> The type of the entry.
+     */
+    private static final class Pending<E> {
+
+        private final E entry;
+        /**
+         * The task, {@code null} if the entry is copied from the source.
+         */
+        private final FutureTask<Content> task;
+
+        Pending(final E entry, final FutureTask<Content> task) {
+            this.entry = entry;
+            this.task = task;
+        }
+    }
+
+    private final JarSignerEngine engine;
+    private final boolean resign;
+    private final long spillThreshold;
+    /**
+     * The executor, {@code null} in sequential mode.
+     */
+    private final Executor executor;
+    private final int window;
+    private final BooleanSupplier cancelled;
+    private final AtomicInteger signedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /**
+     * Creates a new instance.
+     * @param engine The engine used to check and sign JAR files.
+     * @param resign If {@code true}, JAR files are signed again even if they are already signed.
+     * @param spillThreshold Size from which JAR files are spilled to a temporary file.
+     * @param executor The executor, {@code null} to sign JAR files on the calling thread.
+     * @param window The maximum number of entries in flight.
+     * @param cancelled Tells whether the rewrite should stop.
+     * @throws NullPointerException If {@code engine} or {@code cancelled} is {@code null}.
+     */
+    BundleRewriter(final JarSignerEngine engine, final boolean resign, final long spillThreshold, final Executor executor, final int window, final BooleanSupplier cancelled) throws NullPointerException {
+        Objects.requireNonNull(engine);
+        Objects.requireNonNull(cancelled);
+        this.engine = engine;
+        this.resign = resign;
+        this.spillThreshold = spillThreshold;
+        this.executor = executor;
+        this.window = Math.max(1, window);
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Gets the number of JAR files signed so far.
+     * @return An {@code int} &ge; 0.
+     */
+    int getSignedCount() {
+        return signedCount.get();
+    }
+
+    /**
+     * Gets the number of JAR files that could not be signed so far; they are copied as is.
+     * @return An {@code int} &ge; 0.
+     */
+    int getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Writes a copy of a ZIP bundle.
+     * <br>Signed JAR files are written deflated.
+     * @param source The source bundle.
+     * @param target The target file; created or truncated.
+     * @param spillDirectory The directory of temporary files, {@code null} for the default one.
+     * @return {@code True} if a JAR file was signed, {@code false} if the copy is identical or if the rewrite was cancelled.
+     * @throws Exception In case of errors.
+     */
+    boolean rewriteZip(final Path source, final Path target, final Path spillDirectory) throws Exception {
+        final int signedBefore = signedCount.get();
+        final var queue = new ArrayDeque<Pending<RawZipFile.Entry>>();
+        try (final var rawZipFile = new RawZipFile(source);
+                final var zipFile = new ZipFile(source.toFile());
+                final var writer = new RawZipWriter(target)) {
+            try {
+                for (final var entry : rawZipFile.getEntries()) {
+                    if (cancelled.getAsBoolean()) {
+                        return false;
+                    }
+                    final var zipEntry = entry.isDirectory() || !isCandidate(entry.getName()) ? null : zipFile.getEntry(entry.getName());
+                    if (zipEntry != null) {
+                        queue.add(new Pending<>(entry, submit(() -> {
+                            try (final var input = zipFile.getInputStream(zipEntry)) {
+                                return process(entry.getName(), read(input, entry.getSize(), spillDirectory));
+                            }
+                        })));
+                    } else if (queue.isEmpty()) {
+                        writer.copy(rawZipFile, entry);
+                    } else {
+                        queue.add(new Pending<>(entry, null));
+                    }
+                    while (queue.size() > window) {
+                        writeZip(queue.poll(), rawZipFile, zipFile, writer);
+                    }
+                }
+                while (!queue.isEmpty()) {
+                    writeZip(queue.poll(), rawZipFile, zipFile, writer);
+                }
+            } finally {
+                discard(queue);
+            }
+        }
+        return signedCount.get() > signedBefore;
+    }
+
+    /**
+     * Writes a copy of a TAR bundle.
+     * @param input The source bundle, uncompressed; read up to its end.
+     * @param output The output, uncompressed; not closed.
+     * @param spillDirectory The directory of temporary files, {@code null} for the default one.
+     * @return {@code True} if a JAR file was signed, {@code false} if the copy is identical or if the rewrite was cancelled.
+     * @throws Exception In case of errors.
+     */
+    boolean rewriteTar(final InputStream input, final OutputStream output, final Path spillDirectory) throws Exception {
+        final int signedBefore = signedCount.get();
+        final var reader = new TarReader(input);
+        final var queue = new ArrayDeque<Pending<TarReader.Entry>>();
+        try {
+            for (var entry = reader.next(); entry != null; entry = reader.next()) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                if (entry.isFile() && isCandidate(entry.getName())) {
+                    // The stream is sequential: the entry is read here, only signing runs on the executor.
+                    final var name = entry.getName();
+                    final var content = read(reader.getInputStream(), entry.getSize(), spillDirectory);
+                    queue.add(new Pending<>(entry, submit(() -> process(name, content))));
+                } else if (queue.isEmpty()) {
+                    entry.writeHeader(output);
+                    reader.getInputStream().transferTo(output);
+                    output.write(new byte[TarReader.padding(entry.getSize())]);
+                } else {
+                    final var content = read(reader.getInputStream(), entry.getSize(), spillDirectory);
+                    queue.add(new Pending<>(entry, submit(() -> content)));
+                }
+                while (queue.size() > window) {
+                    writeTar(queue.poll(), output);
+                }
+            }
+            while (!queue.isEmpty()) {
+                writeTar(queue.poll(), output);
+            }
+        } finally {
+            discard(queue);
+        }
+        reader.transferTrailer(output);
+        return signedCount.get() > signedBefore;
+    }
+
+    /**
+     * Writes a signed copy of a JAR file, or of a ZIP bundle, read from a stream.
+     * <br>The central directory comes last, so the archive is read up to its end first: in memory, or spilled to a temporary file
+     * when larger than the threshold.
+     * @param input The source archive; read up to its end.
+     * @param output The output; not closed.
+     * @param spillDirectory The directory of temporary files, {@code null} for the default one.
+     * @return {@code True} if a JAR file was signed, {@code false} if the archive was copied unchanged or if the rewrite was cancelled.
+     * @throws ZipException If the input is not a ZIP archive.
+     * @throws Exception In case of errors.
+     */
+    boolean rewriteArchive(final InputStream input, final OutputStream output, final Path spillDirectory) throws ZipException, Exception {
+        try (final var content = read(input, -1, spillDirectory)) {
+            final var type = (content.bytes != null) ? ArtifactType.probeArchive(content.bytes) : ArtifactType.probe(content.file);
+            switch (type) {
+                case JAR: {
+                    try (final var result = process("-", content)) { // NOI18N.
+                        result.writeTo(output);
+                        return result.modified;
+                    }
+                }
+                case ZIP: {
+                    return rewriteZip(content, output, spillDirectory);
+                }
+                default: {
+                    throw new ZipException("Not a ZIP archive."); // NOI18N.
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a copy of a ZIP bundle read from a stream; the bundle and its copy go to temporary files since entries are copied
+     * from their records.
+     * @param content The bundle.
+     * @param output The output; not closed.
+     * @param spillDirectory The directory of temporary files, {@code null} for the default one.
+     * @return {@code True} if a JAR file was signed, {@code false} if the bundle was copied unchanged or if the rewrite was cancelled.
+     * @throws Exception In case of errors.
+     */
+    private boolean rewriteZip(final Content content, final OutputStream output, final Path spillDirectory) throws Exception {
+        final var source = (content.file != null) ? content.file : createSpillFile(spillDirectory);
+        final var target = createSpillFile(spillDirectory);
+        try {
+            if (content.file == null) {
+                Files.write(source, content.bytes);
+            }
+            final boolean rewritten = rewriteZip(source, target, spillDirectory);
+            // Unchanged bundles are copied as read, not as written by the ZIP writer.
+            if (rewritten) {
+                Files.copy(target, output);
+            } else if (!cancelled.getAsBoolean()) {
+                content.writeTo(output);
+            }
+            return rewritten;
+        } finally {
+            Files.deleteIfExists(target);
+            if (content.file == null) {
+                Files.deleteIfExists(source);
+            }
+        }
+    }
+
+    private void writeZip(final Pending<RawZipFile.Entry> pending, final RawZipFile rawZipFile, final ZipFile zipFile, final RawZipWriter writer) throws Exception {
+        if (pending.task == null) {
+            writer.copy(rawZipFile, pending.entry);
+            return;
+        }
+        try (final var content = get(pending.task)) {
+            if (!content.modified) {
+                writer.copy(rawZipFile, pending.entry);
+                return;
+            }
+            final var entry = pending.entry;
+            final var name = entry.getName();
+            // Keeps the file mode, ie: the exec bit of a launcher JAR.
+            try (final var output = writer.newEntry(name, zipFile.getEntry(name).getTime(), entry.getVersionMadeBy(), entry.getExternalAttributes())) {
+                content.writeTo(output);
+            }
+        }
+    }
+
+    private void writeTar(final Pending<TarReader.Entry> pending, final OutputStream output) throws Exception {
+        try (final var content = get(pending.task)) {
+            final long size = content.size();
+            if (content.modified) {
+                pending.entry.writeHeader(output, size);
+            } else {
+                pending.entry.writeHeader(output);
+            }
+            content.writeTo(output);
+            output.write(new byte[TarReader.padding(size)]);
+        }
+    }
+
+    /**
+     * Checks and signs the content of an entry.
+     * <br>Runs on the executor. A JAR file that cannot be signed is reported and copied as is.
+     * @param name The name of the entry, used in reports.
+     * @param content The content.
+     * @return A {@code Content} instance, never {@code null}; {@code content} if it was not signed.
+     * @throws Exception In case of errors.
+     */
+    private Content process(final String name, final Content content) throws Exception {
+        try {
+            if (content.bytes != null) {
+                if (ArtifactType.probeArchive(content.bytes) != ArtifactType.JAR || (!resign && engine.isSigned(content.bytes))) {
+                    return content;
+                }
+                final var signed = engine.sign(content.bytes);
+                signedCount.incrementAndGet();
+                return new Content(signed, null, true);
+            }
+            if (ArtifactType.probe(content.file) != ArtifactType.JAR || (!resign && engine.isFileSigned(content.file))) {
+                return content;
+            }
+            engine.signFile(content.file);
+            signedCount.incrementAndGet();
+            content.modified = true;
+            return content;
+        } catch (JarSignerException ex) {
+            // The entry is left untouched by the engine.
+            failedCount.incrementAndGet();
+            final var message = String.format("Signing \"%s\" failed: %s", name, ex.getMessage()); // NOI18N.
+            System.err.println(message);
+            LOGGER.log(Level.SEVERE, message, ex);
+            return content;
+        } catch (Exception ex) {
+            content.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads the content of an entry, in memory or in a temporary file depending on its size.
+     * @param input The input, positioned on the content.
+     * @param size The size of the content, -1 if unknown; the content then goes up to the end of the input.
+     * @param spillDirectory The directory of temporary files, {@code null} for the default one.
+     * @return A {@code Content} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private Content read(final InputStream input, final long size, final Path spillDirectory) throws IOException {
+        final long limit = Math.min(spillThreshold, MAX_MEMORY_SIZE);
+        if (size >= 0 && size <= limit) {
+            return new Content(input.readNBytes((int) size), null, false);
+        }
+        // Contents of unknown size are spilled once they go past the threshold.
+        final var head = (size < 0) ? input.readNBytes((int) limit + 1) : new byte[0];
+        if (size < 0 && head.length <= limit) {
+            return new Content(head, null, false);
+        }
+        final var file = createSpillFile(spillDirectory);
+        try (final var output = Files.newOutputStream(file)) {
+            output.write(head);
+            input.transferTo(output);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+        return new Content(null, file, false);
+    }
+
+    private static Path createSpillFile(final Path spillDirectory) throws IOException {
+        return (spillDirectory == null)
+                ? Files.createTempFile(SPILL_PREFIX, SPILL_SUFFIX)
+                : Files.createTempFile(spillDirectory, SPILL_PREFIX, SPILL_SUFFIX);
+    }
+
+    /**
+     * Runs a task on the executor, or on the current thread in sequential mode.
+     * @param callable The task.
+     * @return A {@code FutureTask<Content>} instance, never {@code null}.
+     */
+    private FutureTask<Content> submit(final Callable<Content> callable) {
+        final var result = new FutureTask<>(callable);
+        if (executor == null) {
+            result.run();
+        } else {
+            executor.execute(result);
+        }
+        return result;
+    }
+
+    private static Content get(final FutureTask<Content> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException ex) {
+            final var cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Releases the entries left after an error or a cancellation; waits for running tasks so no temporary file is left behind.
+     * @param queue The entries.
+     */
+    private static void discard(final ArrayDeque<? extends Pending<?>> queue) {
+        for (final var pending : queue) {
+            if (pending.task == null || pending.task.cancel(false)) {
+                continue;
+            }
+            try {
+                pending.task.get().close();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (CancellationException | ExecutionException | IOException ex) {
+                // Already reported or nothing to release.
+            }
+        }
+        queue.clear();
+    }
+
+    /**
+     * Test whether an entry may be a JAR file.
+     * @param name The entry name.
+     * @return {@code True} if the entry has the extension of a JAR file, {@code false} otherwise.
+     */
+    private static boolean isCandidate(final String name) {
+        final var lowerName = name.toLowerCase(Locale.ENGLISH);
+        for (final var extension : JAR_EXTENSIONS) {
+            if (lowerName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,32 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+
+/**
+ * The parameters to sign the JAR files inside distribution bundles, ie: {@code zip} or {@code tar.gz} files.
+ * <br>JAR files are signed as described by the JarSigner parameters; the path and threads of those are ignored.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class BundleSignatureParameters {
+
+    /**
+     * Default size from which JAR files are spilled to a temporary file instead of being held in memory, equals to {@value} bytes.
+     */
+    public static final long DEFAULT_SPILL_THRESHOLD = 16L * 1024 * 1024;
+
+    String pathToSign = "";
+    JarSignerParameters jarSigner;
+    boolean resign = false;
+    int threads = 1;
+    long spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    // Debug.
+    boolean debugDirectoryWalk = false;
+    boolean debugSignature = false;
+    Logger logger = Logger.getGlobal();
+}
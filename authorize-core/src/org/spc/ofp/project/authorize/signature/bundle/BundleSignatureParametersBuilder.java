@@ -0,0 +1,96 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+
+/**
+ * Builder class for the parameters of the bundle sign process.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class BundleSignatureParametersBuilder {
+
+    private final BundleSignatureParameters delegated = new BundleSignatureParameters();
+
+    /**
+     * Hidden constructor.
+     */
+    private BundleSignatureParametersBuilder() {
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a new instance of this builder.
+     * @return A {@code BundleSignatureParametersBuilder} instance, never {@code null}.
+     */
+    public static BundleSignatureParametersBuilder create() {
+        return new BundleSignatureParametersBuilder();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Build the task parameter from this builder.
+     * @return A {@code BundleSignatureParameters} instance, never {@code null}.
+     */
+    public BundleSignatureParameters build() {
+        final var result = new BundleSignatureParameters();
+        result.pathToSign = delegated.pathToSign;
+        result.jarSigner = delegated.jarSigner;
+        result.resign = delegated.resign;
+        result.threads = delegated.threads;
+        result.spillThreshold = delegated.spillThreshold;
+        // Debug.
+        result.debugDirectoryWalk = delegated.debugDirectoryWalk;
+        result.debugSignature = delegated.debugSignature;
+        //
+        result.logger = delegated.logger;
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Builder methods.
+    public BundleSignatureParametersBuilder pathToSign(final String value) {
+        delegated.pathToSign = value;
+        return this;
+    }
+
+    public BundleSignatureParametersBuilder jarSigner(final JarSignerParameters value) {
+        delegated.jarSigner = value;
+        return this;
+    }
+
+    public BundleSignatureParametersBuilder resign(final boolean value) {
+        delegated.resign = value;
+        return this;
+    }
+
+    public BundleSignatureParametersBuilder threads(final int value) {
+        delegated.threads = Math.max(1, value);
+        return this;
+    }
+
+    public BundleSignatureParametersBuilder spillThreshold(final long value) {
+        delegated.spillThreshold = Math.max(0, value);
+        return this;
+    }
+    // Debug.
+
+    public BundleSignatureParametersBuilder debugDirectoryWalk(final boolean value) {
+        delegated.debugDirectoryWalk = value;
+        return this;
+    }
+
+    public BundleSignatureParametersBuilder debugSignature(final boolean value) {
+        delegated.debugSignature = value;
+        return this;
+    }
+
+    public BundleSignatureParametersBuilder logger(final Logger value) {
+        delegated.logger = (value == null) ? Logger.getGlobal() : value;
+        return this;
+    }
+}
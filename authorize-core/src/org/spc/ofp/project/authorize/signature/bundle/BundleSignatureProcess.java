@@ -0,0 +1,261 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.spc.ofp.project.authorize.io.FileWalker;
+import org.spc.ofp.project.authorize.io.IOUtils;
+import org.spc.ofp.project.authorize.signature.SignatureProcessBase;
+import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+
+/**
+ * Signs the JAR files inside distribution bundles, ie: {@code zip}, {@code tar} or {@code tar.gz} files, without extracting them to disk.
+ * <br>Each bundle is read once and its signed copy is written in the same pass, see {@link BundleRewriter}; JAR files of a bundle
+ * are signed concurrently on a shared worker pool. The copy replaces the bundle only if a JAR file was signed.
+ * <br>The gzip stream of a {@code tar.gz} bundle is compressed again, the TAR entries it contains are copied byte for byte.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class BundleSignatureProcess extends SignatureProcessBase {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * The parameters object.
+     */
+    private final BundleSignatureParameters parameters;
+    /**
+     * The engine used to check and sign JAR files; created when the process starts unless it was provided.
+     */
+    private JarSignerEngine jarSignerEngine;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @param monitor A monitor interested in the progress of this process, may be {@code null}.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public BundleSignatureProcess(final BundleSignatureParameters parameters, final SignatureProcessMonitor monitor) throws NullPointerException {
+        this(parameters, null, monitor);
+    }
+
+    /**
+     * Creates a new instance that reuses an existing engine.
+     * @param parameters The parameters object.
+     * @param jarSignerEngine The engine used for JAR files, may be {@code null}.
+     * <br>If {@code null}, a new engine is created from the JarSigner parameters when the process starts.
+     * @param monitor A monitor interested in the progress of this process, may be {@code null}.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public BundleSignatureProcess(final BundleSignatureParameters parameters, final JarSignerEngine jarSignerEngine, final SignatureProcessMonitor monitor) throws NullPointerException {
+        super(monitor);
+        Objects.requireNonNull(parameters);
+        this.parameters = parameters;
+        this.jarSignerEngine = jarSignerEngine;
+    }
+
+    @Override
+    public void sign() throws Exception {
+        // Nothing to do!
+        if (parameters.pathToSign == null || parameters.pathToSign.isEmpty() || parameters.pathToSign.isBlank()) {
+            return;
+        }
+        updateMessage("Initializing."); // NOI18N.
+        final var root = Paths.get(parameters.pathToSign);
+        if (jarSignerEngine == null) {
+            updateMessage("Loading key store."); // NOI18N.
+            jarSignerEngine = JarSignerEngine.create(Objects.requireNonNull(parameters.jarSigner));
+        }
+        if (isCancelled()) {
+            return;
+        }
+        // Run signing task.
+        updateMessage("Running task."); // NOI18N.
+        final var executor = (parameters.threads > 1) ? createExecutor(parameters.threads, "bundle-worker-%d") : null; // NOI18N.
+        rewriter = new BundleRewriter(jarSignerEngine, parameters.resign, parameters.spillThreshold, executor, 2 * parameters.threads, this::isCancelled);
+        try {
+            impl_sign(root);
+        } finally {
+            if (executor != null) {
+                shutdown(executor);
+            }
+        }
+        final var message = String.format("%d bundles (%d rewritten), %d JAR files signed, %d failed.", // NOI18N.
+                bundleCount.get(), rewrittenCount.get(), getSignedCount(), getFailedCount());
+        parameters.logger.log(Level.INFO, message);
+        updateMessage(message);
+        if (getFailedCount() > 0) {
+            throw new IOException(String.format("%d JAR files could not be signed.", getFailedCount())); // NOI18N.
+        }
+    }
+
+    /**
+     * Rewrites bundles.
+     */
+    private BundleRewriter rewriter;
+    /**
+     * Total progress; raised by the walker each time a new bundle is discovered.
+     */
+    private volatile int totalProgress = 0;
+    private final AtomicInteger currentProgress = new AtomicInteger();
+    /**
+     * Formats of the bundles accepted by the walker and not yet processed.
+     */
+    private final Map<Path, BundleFormat> pendingFormats = new ConcurrentHashMap<>();
+    private final AtomicInteger bundleCount = new AtomicInteger();
+    private final AtomicInteger rewrittenCount = new AtomicInteger();
+
+    /**
+     * Gets the number of bundles found.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getBundleCount() {
+        return bundleCount.get();
+    }
+
+    /**
+     * Gets the number of bundles rewritten because a JAR file they contain was signed.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getRewrittenCount() {
+        return rewrittenCount.get();
+    }
+
+    /**
+     * Gets the number of JAR files signed by this process.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getSignedCount() {
+        return (rewriter == null) ? 0 : rewriter.getSignedCount();
+    }
+
+    /**
+     * Gets the number of JAR files that could not be signed by this process.
+     * @return An {@code int} &ge; 0.
+     */
+    @Override
+    public int getFailedCount() {
+        return (rewriter == null) ? 0 : rewriter.getFailedCount();
+    }
+
+    /**
+     * The current signing process.
+     * <br>The tree is walked in a separate thread; bundles are rewritten one at a time, as soon as they are discovered.
+     * @param root The bundle or directory to sign.
+     * @throws Exception In case of errors.
+     */
+    private void impl_sign(final Path root) throws Exception {
+        final var walker = new FileWalker(root, this::acceptFile);
+        walker.setOnFileFound(discovered -> {
+            totalProgress = discovered;
+            updateProgress(currentProgress.get(), discovered);
+        });
+        walker.start();
+        try {
+            for (var entry = walker.take(); entry != null; entry = walker.take()) {
+                if (isCancelled()) {
+                    return;
+                }
+                signBundle(entry.getPath());
+            }
+        } finally {
+            walker.cancel();
+        }
+    }
+
+    /**
+     * Filter used by the walker; called from the walking thread for every regular file in the tree.
+     * @param file The file.
+     * @param attributes The attributes of the file.
+     * @return {@code True} if the file is a bundle, {@code false} otherwise.
+     */
+    private boolean acceptFile(final Path file, final BasicFileAttributes attributes) {
+        if (parameters.debugDirectoryWalk) {
+            final var message = String.format("File \"%s\"", file.toString()); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
+        }
+        BundleFormat format;
+        try {
+            format = BundleFormat.probe(file);
+        } catch (IOException ex) {
+            parameters.logger.log(Level.WARNING, String.format("File \"%s\" cannot be read.", file.toString()), ex); // NOI18N.
+            format = null;
+        }
+        if (format == null) {
+            return false;
+        }
+        pendingFormats.put(file, format);
+        return true;
+    }
+
+    /**
+     * Signs the JAR files of a single bundle, then update progress.
+     * @param file The bundle.
+     * @throws Exception In case of errors.
+     */
+    private void signBundle(final Path file) throws Exception {
+        final var format = pendingFormats.remove(file);
+        bundleCount.incrementAndGet();
+        updateMessage(file.toString());
+        final int signedBefore = getSignedCount();
+        final var directory = file.toAbsolutePath().getParent();
+        final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); // NOI18N.
+        try {
+            final boolean rewritten;
+            switch (format) {
+                case ZIP: {
+                    rewritten = rewriter.rewriteZip(file, tempFile, directory);
+                    break;
+                }
+                case TAR: {
+                    try (final var input = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+                            final var output = new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE)) {
+                        rewritten = rewriter.rewriteTar(input, output, directory);
+                    }
+                    break;
+                }
+                case TAR_GZIP:
+                default: {
+                    try (final var input = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE);
+                            final var output = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), BUFFER_SIZE), BUFFER_SIZE)) {
+                        rewritten = rewriter.rewriteTar(input, output, directory);
+                    }
+                }
+            }
+            if (rewritten && !isCancelled()) {
+                if (!Files.isWritable(file)) {
+                    IOUtils.INSTANCE.setWritable(file);
+                }
+                IOUtils.INSTANCE.replace(file, tempFile);
+                rewrittenCount.incrementAndGet();
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        if (parameters.debugSignature) {
+            final var message = String.format("File \"%s\": %d JAR files signed.", file.toString(), getSignedCount() - signedBefore); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
+        }
+        //
+        updateProgress(currentProgress.incrementAndGet(), totalProgress);
+        updateMessage("DONE"); // NOI18N.
+    }
+}
@@ -0,0 +1,141 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.spc.ofp.project.authorize.io.TarReader;
+import org.spc.ofp.project.authorize.signature.SignatureProcessBase;
+import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+
+/**
+ * Signs an archive read from a stream and writes the signed archive to another stream, ie: between the standard input and output
+ * of a build pipeline; nothing is rewritten in place.
+ * <br>The archive is a JAR file, or a {@code zip}, {@code tar} or {@code tar.gz} bundle whose JAR files are signed,
+ * see {@link BundleRewriter}. Its format is detected from its first bytes.
+ * <br>Memory usage is bounded by the spill threshold: larger JAR files and ZIP archives go to temporary files.
+ * The path of the parameters is ignored.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class StreamSignatureProcess extends SignatureProcessBase {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * The parameters object.
+     */
+    private final BundleSignatureParameters parameters;
+    private final InputStream input;
+    private final OutputStream output;
+    /**
+     * The engine used to check and sign JAR files; created when the process starts unless it was provided.
+     */
+    private JarSignerEngine jarSignerEngine;
+    /**
+     * Signs the archive.
+     */
+    private BundleRewriter rewriter;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @param input The source archive; read up to its end, not closed.
+     * @param output The output of the signed archive; not closed.
+     * @param jarSignerEngine The engine used for JAR files, may be {@code null}.
+     * <br>If {@code null}, a new engine is created from the JarSigner parameters when the process starts.
+     * @param monitor A monitor interested in the progress of this process, may be {@code null}.
+     * @throws NullPointerException If {@code parameters}, {@code input} or {@code output} is {@code null}.
+     */
+    public StreamSignatureProcess(final BundleSignatureParameters parameters, final InputStream input, final OutputStream output, final JarSignerEngine jarSignerEngine, final SignatureProcessMonitor monitor) throws NullPointerException {
+        super(monitor);
+        Objects.requireNonNull(parameters);
+        Objects.requireNonNull(input);
+        Objects.requireNonNull(output);
+        this.parameters = parameters;
+        this.input = input;
+        this.output = output;
+        this.jarSignerEngine = jarSignerEngine;
+    }
+
+    /**
+     * Gets the number of JAR files signed by this process.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getSignedCount() {
+        return (rewriter == null) ? 0 : rewriter.getSignedCount();
+    }
+
+    /**
+     * Gets the number of JAR files that could not be signed by this process.
+     * @return An {@code int} &ge; 0.
+     */
+    @Override
+    public int getFailedCount() {
+        return (rewriter == null) ? 0 : rewriter.getFailedCount();
+    }
+
+    @Override
+    public void sign() throws Exception {
+        updateMessage("Initializing."); // NOI18N.
+        if (jarSignerEngine == null) {
+            updateMessage("Loading key store."); // NOI18N.
+            jarSignerEngine = JarSignerEngine.create(Objects.requireNonNull(parameters.jarSigner));
+        }
+        if (isCancelled()) {
+            return;
+        }
+        // Run signing task.
+        updateMessage("Running task."); // NOI18N.
+        final var executor = (parameters.threads > 1) ? createExecutor(parameters.threads, "stream-worker-%d") : null; // NOI18N.
+        rewriter = new BundleRewriter(jarSignerEngine, parameters.resign, parameters.spillThreshold, executor, 2 * parameters.threads, this::isCancelled);
+        final BundleFormat format;
+        try {
+            final var bufferedInput = new BufferedInputStream(input, BUFFER_SIZE);
+            bufferedInput.mark(TarReader.BLOCK_SIZE);
+            format = BundleFormat.probe(bufferedInput.readNBytes(TarReader.BLOCK_SIZE));
+            bufferedInput.reset();
+            if (format == null) {
+                throw new IOException("Unsupported archive format."); // NOI18N.
+            }
+            updateMessage(String.format("Signing %s stream.", format)); // NOI18N.
+            switch (format) {
+                case ZIP: {
+                    rewriter.rewriteArchive(bufferedInput, output, null);
+                    break;
+                }
+                case TAR: {
+                    rewriter.rewriteTar(bufferedInput, output, null);
+                    break;
+                }
+                case TAR_GZIP:
+                default: {
+                    final var gzipOutput = new GZIPOutputStream(output, BUFFER_SIZE);
+                    rewriter.rewriteTar(new GZIPInputStream(bufferedInput, BUFFER_SIZE), gzipOutput, null);
+                    // The output belongs to the caller.
+                    gzipOutput.finish();
+                }
+            }
+            output.flush();
+        } finally {
+            if (executor != null) {
+                shutdown(executor);
+            }
+        }
+        final var message = String.format("%s stream, %d JAR files signed, %d failed.", format, getSignedCount(), getFailedCount()); // NOI18N.
+        parameters.logger.log(Level.INFO, message);
+        updateMessage(message);
+        if (getFailedCount() > 0) {
+            throw new IOException(String.format("%d JAR files could not be signed.", getFailedCount())); // NOI18N.
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import jdk.security.jarsigner.JarSignerException;
+import org.spc.ofp.project.authorize.io.IOUtils;
+import org.spc.ofp.project.authorize.io.RawZipFile;
+import org.spc.ofp.project.authorize.io.RawZipWriter;
+import org.spc.ofp.project.authorize.io.StreamConsumer;
+
+/**
+ * Engine that forks the {@code jarsigner} executable of the configured JDK for every file.
+ * <br>This is the engine to use when {@code javaHome} points to a JDK different from the running one.
+ * <br>When warm workers are enabled, files are signed by a pool of long-lived JVMs of that JDK instead (see {@link JarSignerWorkerPool}).
+ * <br>When re-signing, existing signatures are removed first, in a separate pass that copies entries verbatim.
+ * <br>The jarsigner tool has a single signer per run: additional signers sign the file one after the other.
+ * <br>Passes are applied to a copy that replaces the file once all of them succeeded: a failed signature leaves the file untouched.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class ForkedJarSignerEngine implements JarSignerEngine {
+
+    /**
+     * The parameters object.
+     */
+    private final JarSignerParameters parameters;
+    /**
+     * The verifier used to detect already signed files.
+     */
+    private final JarSignatureVerifier verifier;
+    /**
+     * The signer names, main signer first; unique within the run, see {@link JarSignerUtils#signerNames(JarSignerParameters)}.
+     */
+    private final List<String> signerNames;
+    /**
+     * Warm worker pool; {@code null} until first used, or if workers are disabled or unavailable.
+     */
+    private volatile JarSignerWorkerPool workerPool;
+    /**
+     * {@code True} once the worker pool has been looked up.
+     */
+    private volatile boolean workerPoolResolved;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public ForkedJarSignerEngine(final JarSignerParameters parameters) throws NullPointerException {
+        Objects.requireNonNull(parameters);
+        this.parameters = parameters;
+        this.verifier = new JarSignatureVerifier(parameters.fullVerification);
+        this.signerNames = JarSignerUtils.INSTANCE.signerNames(parameters);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>Verification is done in-process, no {@code jarsigner -verify} is forked.
+     */
+    @Override
+    public boolean isFileSigned(final Path file) throws IOException {
+        return verifier.isSigned(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signFile(final Path file) throws IOException, InterruptedException, JarSignerException {
+        // A copy is signed, and only replaces the file once every pass succeeded; the jarsigner tool does not keep file permissions.
+        final var absoluteFile = file.toAbsolutePath();
+        final var tempFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp"); // NOI18N.
+        try {
+            if (parameters.resign) {
+                stripSignatures(file, tempFile);
+            } else {
+                Files.copy(file, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            signFile(tempFile, parameters.keyStore, parameters.storePassword, parameters.alias, parameters.keyPass, signerNames.get(0));
+            int index = 1;
+            for (final var additionalSigner : parameters.additionalSigners) {
+                signFile(tempFile, additionalSigner.getKeyStore(), additionalSigner.getStorePassword(), additionalSigner.getAlias(), additionalSigner.getKeyPass(), signerNames.get(index++));
+            }
+            IOUtils.INSTANCE.replaceArchive(file, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSigned(final byte[] jar) throws IOException {
+        return verifier.isSigned(jar);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <br>The jarsigner tool only signs files: the JAR file is spilled to a temporary file, which is signed then read back.
+     */
+    @Override
+    public byte[] sign(final byte[] jar) throws IOException, InterruptedException, JarSignerException {
+        final var tempFile = Files.createTempFile("jarsigner", ".jar"); // NOI18N.
+        try {
+            Files.write(tempFile, jar);
+            signFile(tempFile);
+            return Files.readAllBytes(tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Signs a file with a single signer.
+     * @param file The file.
+     * @param keyStore The key store, empty to use the default key store.
+     * @param storePassword The key store password.
+     * @param alias The alias.
+     * @param keyPass The key password.
+     * @param signerName The base name of the {@code .SF} and signature block files.
+     * @throws IOException In case of IO errors.
+     * @throws InterruptedException If the current thread was interrupted.
+     * @throws JarSignerException If the jarsigner tool failed.
+     */
+    private void signFile(final Path file, final String keyStore, final String storePassword, final String alias, final String keyPass, final String signerName) throws IOException, InterruptedException, JarSignerException {
+        final var jvmOptions = new LinkedList<String>();
+        if (parameters.useProxy) {
+            final var proxyHost = parameters.proxyHost;
+            if (proxyHost != null && !proxyHost.isEmpty()) {
+                jvmOptions.add(String.format("-Dhttp.proxyHost=%s", proxyHost)); // NOI18N.
+            }
+            final var proxyPort = parameters.proxyPort;
+            if (proxyPort != null && !proxyPort.isEmpty()) {
+                jvmOptions.add(String.format("-Dhttp.proxyPort=%s", proxyPort)); // NOI18N.
+            }
+        }
+        final var args = new LinkedList<String>();
+        if (parameters.useTimeStamp) {
+            args.add("-tsa"); // NOI18N.
+            args.add(parameters.timeStampHost);
+        }
+        if (!keyStore.isEmpty()) {
+            args.add("-keystore"); // NOI18N.
+            args.add(keyStore);
+        }
+        args.add("-storepass"); // NOI18N.
+        args.add(storePassword);
+        if (!keyPass.isEmpty() && !keyPass.equals(storePassword)) {
+            args.add("-keypass"); // NOI18N.
+            args.add(keyPass);
+        }
+        // Otherwise signers whose aliases share the same prefix overwrite each other's files.
+        args.add("-sigfile"); // NOI18N.
+        args.add(signerName);
+        // ProcessBuilder quotes arguments itself when needed.
+        args.add(file.toString());
+        args.add(alias);
+        //
+        final var exec = Paths.get(parameters.javaHome, parameters.jarSignerExec);
+        final var pool = workerPool(exec, jvmOptions);
+        CommandResult result = null;
+        if (pool != null) {
+            try {
+                final var poolResult = pool.execute(args);
+                if (parameters.debugCommand) {
+                    System.out.print(poolResult.getOutput());
+                }
+                final var error = poolResult.getOutput().lines()
+                        .filter(ForkedJarSignerEngine::isError)
+                        .findFirst();
+                result = new CommandResult(poolResult.getExitCode(), error);
+            } catch (IOException ex) {
+                // Usually a target JDK too old to run the worker.
+                parameters.logger.log(Level.WARNING, "Warm workers unavailable, falling back to one process per file: {0}", ex.getMessage()); // NOI18N.
+                workerPool = null;
+            }
+        }
+        if (result == null) {
+            jvmOptions.forEach(option -> args.addFirst("-J" + option)); // NOI18N.
+            result = executeCommand(exec.toString(), args.toArray(new String[0]));
+        }
+        final var commandResult = result;
+        if (commandResult.exitCode > 0) {
+            // We had an issue with a JAR with several duplicate entries that could not be signed.
+            final var message = commandResult.error
+                    .map(error -> String.format("Command failed with error %d: %s", commandResult.exitCode, error)) // NOI18N.
+                    .orElse(String.format("Command failed with error %d.", commandResult.exitCode)); // NOI18N.
+            throw new JarSignerException(message, null);
+        }
+    }
+
+    /**
+     * Gets the warm worker pool for the target JDK.
+     * @param jarSignerExec The jarsigner executable; the java executable is looked up next to it.
+     * @param jvmOptions Options of the worker JVMs.
+     * @return A {@code JarSignerWorkerPool} instance, {@code null} if workers are disabled or unavailable.
+     */
+    private JarSignerWorkerPool workerPool(final Path jarSignerExec, final List<String> jvmOptions) {
+        if (!parameters.warmWorkers) {
+            return null;
+        }
+        if (!workerPoolResolved) {
+            synchronized (this) {
+                if (!workerPoolResolved) {
+                    final var javaExec = jarSignerExec.resolveSibling(jarSignerExec.getFileName().toString().replace("jarsigner", "java")); // NOI18N.
+                    try {
+                        workerPool = JarSignerWorkerPool.of(javaExec, jvmOptions, parameters.threads);
+                    } catch (IllegalStateException ex) {
+                        parameters.logger.log(Level.WARNING, "Warm workers unavailable, falling back to one process per file: {0}", ex.getMessage()); // NOI18N.
+                    }
+                    workerPoolResolved = true;
+                }
+            }
+        }
+        return workerPool;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Result of an external command.
+     */
+    private static final class CommandResult {
+
+        /**
+         * The exit code.
+         */
+        private final int exitCode;
+        /**
+         * The first error line printed by the command, if any.
+         */
+        private final Optional<String> error;
+
+        CommandResult(final int exitCode, final Optional<String> error) {
+            this.exitCode = exitCode;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Test whether a line printed by {@code jarsigner} reports an error.
+     * <br>Depending on the JDK, errors are printed on the standard output or on the standard error output.
+     * @param line The line.
+     * @return {@code True} if the line is an error, {@code false} otherwise.
+     */
+    private static boolean isError(final String line) {
+        return line.startsWith("jarsigner error:") || line.startsWith("jarsigner: "); // NOI18N.
+    }
+
+    /**
+     * Execute an external command.
+     * <br>Outputs are drained on the shared consumer pool and only echoed in debug mode; nothing is buffered.
+     * @param command The command to execute.
+     * @param args The arguments.
+     * @return A {@code CommandResult} instance, never {@code null}.
+     * @throws IOException In case of I/O error.
+     * @throws InterruptedException If the current thread was interrupted while waiting for the command.
+     */
+    private CommandResult executeCommand(final String command, final String... args) throws IOException, InterruptedException {
+        final var processArgs = new String[args.length + 1];
+        processArgs[0] = command;
+        System.arraycopy(args, 0, processArgs, 1, args.length);
+        if (parameters.debugCommand) {
+            var fullCommand = Arrays.stream(processArgs)
+                    .collect(Collectors.joining(" ")); // NOI18N.
+            parameters.logger.log(Level.INFO, "Executing: {0}", fullCommand);
+        }
+        final var processBuilder = new ProcessBuilder(processArgs);
+        final var process = processBuilder.start();
+        // Nothing to write to jarsigner.
+        process.getOutputStream().close();
+        final var out = new StreamConsumer(process.getInputStream(), parameters.debugCommand ? System.out : null, ForkedJarSignerEngine::isError);
+        final var err = new StreamConsumer(process.getErrorStream(), parameters.debugCommand ? System.err : null, ForkedJarSignerEngine::isError);
+        final int returnValue = process.waitFor();
+        out.await();
+        err.await();
+        if (parameters.debugCommand) {
+            parameters.logger.log(Level.INFO, "Process exited with error code: {0}", returnValue);
+        }
+        final var error = out.getMatch().or(err::getMatch);
+        return new CommandResult(returnValue, error);
+    }
+
+    /**
+     * Copies a file without its existing signatures, before the jarsigner tool signs the copy again; entries are copied verbatim.
+     * <br>The manifest is kept, jarsigner updates its digests.
+     * @param file The file.
+     * @param target The copy.
+     * @throws IOException In case of IO errors.
+     */
+    private static void stripSignatures(final Path file, final Path target) throws IOException {
+        try (final var raw = new RawZipFile(file);
+             final var writer = new RawZipWriter(target)) {
+            for (final var entry : raw.getEntries()) {
+                final var name = entry.getName();
+                if (name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || !ParallelJarSigner.isSignatureRelated(name)) {
+                    writer.copy(raw, entry);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.ZipFile;
+import jdk.security.jarsigner.JarSigner;
+import jdk.security.jarsigner.JarSignerException;
+import org.spc.ofp.project.authorize.io.IOUtils;
+import org.spc.ofp.project.authorize.signature.TimeStampClient;
+
+/**
+ * Engine that signs JAR files inside the running JVM using the {@code jdk.security.jarsigner} API.
+ * <br>The private key and certificate chain are loaded once when the engine is created.
+ * <br>When parallel digests are enabled, files larger than the threshold are signed by a {@link ParallelJarSigner} instead;
+ * when digest reuse or re-signing is enabled, when there are additional signers or when timestamping through a proxy, all files are.
+ * <br>Additional signers are signed for in the same pass: entries are read and digested once for all of them.
+ * <br>When re-signing, existing signatures are removed while the new one is written, in a single pass.
+ * <br>JAR files held in memory, ie: nested in another archive, are always signed by the {@code ParallelJarSigner}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class InProcessJarSignerEngine implements JarSignerEngine {
+
+    /**
+     * The parameters object.
+     */
+    private final JarSignerParameters parameters;
+    /**
+     * The signer, immutable once built.
+     */
+    private final JarSigner signer;
+    /**
+     * The parallel signer; only used for files when parallel digests, digest reuse or re-signing is enabled, when there
+     * are additional signers or when timestamping through a proxy, see {@link #useParallelSigner}.
+     */
+    private final ParallelJarSigner parallelSigner;
+    /**
+     * The verifier used to detect already signed files.
+     */
+    private final JarSignatureVerifier verifier;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     * @throws IOException In case of IO errors while reading the key store.
+     * @throws GeneralSecurityException If the key or certificate chain cannot be recovered from the key store.
+     */
+    public InProcessJarSignerEngine(final JarSignerParameters parameters) throws NullPointerException, IOException, GeneralSecurityException {
+        Objects.requireNonNull(parameters);
+        this.parameters = parameters;
+        this.verifier = new JarSignatureVerifier(parameters.fullVerification);
+        final var entry = loadKey(parameters.keyStore, parameters.storePassword, parameters.alias, parameters.keyPass);
+        final var chain = entry.getCertificateChain();
+        final var certPath = CertificateFactory.getInstance("X.509") // NOI18N.
+                .generateCertPath(Arrays.asList(chain));
+        // Signer names are unique within the run, even for aliases sharing the same prefix.
+        final var signerNames = JarSignerUtils.INSTANCE.signerNames(parameters);
+        var builder = new JarSigner.Builder(entry.getPrivateKey(), certPath)
+                .signerName(signerNames.get(0));
+        if (parameters.useTimeStamp) {
+            builder = builder.tsa(URI.create(parameters.timeStampHost));
+        }
+        signer = builder.build();
+        final var identities = new ArrayList<ParallelJarSigner.Identity>(1 + parameters.additionalSigners.size());
+        identities.add(identity(entry, signerNames.get(0)));
+        for (final var additionalSigner : parameters.additionalSigners) {
+            final var additionalEntry = loadKey(additionalSigner.getKeyStore(), additionalSigner.getStorePassword(), additionalSigner.getAlias(), additionalSigner.getKeyPass());
+            identities.add(identity(additionalEntry, signerNames.get(identities.size())));
+        }
+        final var timeStampClient = parameters.useTimeStamp
+                ? TimeStampClient.of(parameters.timeStampHost, parameters.useProxy ? parameters.proxyHost : null, parameters.useProxy ? parameters.proxyPort : null)
+                : null;
+        parallelSigner = new ParallelJarSigner(identities, timeStampClient, parameters.reuseDigests, parameters.resign);
+    }
+
+    /**
+     * Loads a private key and its certificate chain.
+     * @param keyStore The key store, empty to use the default key store.
+     * @param storePassword The key store password.
+     * @param alias The alias.
+     * @param keyPass The key password, empty to use the key store password.
+     * @return A {@code KeyStore.PrivateKeyEntry} instance, never {@code null}.
+     * @throws IOException In case of IO errors while reading the key store.
+     * @throws GeneralSecurityException If the key or certificate chain cannot be recovered from the key store.
+     */
+    private static KeyStore.PrivateKeyEntry loadKey(final String keyStore, final String storePassword, final String alias, final String keyPass) throws IOException, GeneralSecurityException {
+        final var keyStoreFile = JarSignerUtils.INSTANCE.keyStorePath(keyStore);
+        final var storePasswordChars = (storePassword == null) ? new char[0] : storePassword.toCharArray();
+        final var keyPassChars = (keyPass == null || keyPass.isEmpty()) ? storePasswordChars : keyPass.toCharArray();
+        final var store = KeyStore.getInstance(keyStoreFile.toFile(), storePasswordChars);
+        final var key = store.getKey(alias, keyPassChars);
+        if (!(key instanceof PrivateKey)) {
+            throw new UnrecoverableKeyException(String.format("No private key found for alias \"%s\".", alias)); // NOI18N.
+        }
+        return new KeyStore.PrivateKeyEntry((PrivateKey) key, store.getCertificateChain(alias));
+    }
+
+    /**
+     * Creates the identity of a signer of the parallel signer.
+     * @param entry The private key and its certificate chain.
+     * @param signerName The signer name, see {@link JarSignerUtils#signerNames(JarSignerParameters)}.
+     * @return A {@code ParallelJarSigner.Identity} instance, never {@code null}.
+     */
+    private static ParallelJarSigner.Identity identity(final KeyStore.PrivateKeyEntry entry, final String signerName) {
+        final var chain = entry.getCertificateChain();
+        final var certificates = new ArrayList<X509Certificate>(chain.length);
+        for (final var certificate : chain) {
+            certificates.add((X509Certificate) certificate);
+        }
+        return new ParallelJarSigner.Identity(entry.getPrivateKey(), certificates, signerName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isFileSigned(final Path file) throws IOException {
+        return verifier.isSigned(file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void signFile(final Path file) throws IOException, InterruptedException, JarSignerException {
+        final var directory = file.toAbsolutePath().getParent();
+        final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); // NOI18N.
+        try {
+            if (useParallelSigner(file)) {
+                parallelSigner.sign(file, tempFile);
+            } else {
+                try (final var zipFile = new ZipFile(file.toFile());
+                     final var output = Files.newOutputStream(tempFile)) {
+                    signer.sign(zipFile, output);
+                } catch (RuntimeException ex) {
+                    // The JDK signer wraps timestamping errors, report them like the parallel signer does.
+                    if (ex.getCause() instanceof IOException) {
+                        throw new JarSignerException("Error applying timestamp", ex.getCause()); // NOI18N.
+                    }
+                    throw ex;
+                }
+            }
+            IOUtils.INSTANCE.replaceArchive(file, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Test whether a file is signed by the parallel signer.
+     * <br>When timestamping through a proxy, all files are: the JDK signer opens the TSA connection itself and only honors
+     * the JVM-wide proxy settings, which would leak to every other connection of the JVM.
+     * @param file The file.
+     * @return {@code True} if the parallel signer is used, {@code false} if the JDK signer is used.
+     * @throws IOException In case of IO errors.
+     */
+    private boolean useParallelSigner(final Path file) throws IOException {
+        return parameters.reuseDigests
+                || parameters.resign
+                || !parameters.additionalSigners.isEmpty()
+                || (parameters.useTimeStamp && parameters.useProxy)
+                || (parameters.parallelDigests && Files.size(file) >= parameters.parallelDigestThreshold);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSigned(final byte[] jar) throws IOException {
+        return verifier.isSigned(jar);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] sign(final byte[] jar) throws IOException, InterruptedException, JarSignerException {
+        return parallelSigner.sign(jar);
+    }
+}
@@ -0,0 +1,199 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * In-process replacement for {@code jarsigner -verify}.
+ * <br>By default only the central directory of the archive is read to look for signature files;
+ * full digest verification of every entry is optional.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class JarSignatureVerifier {
+
+    /**
+     * Prefix of the signature directory, equals to "{@value}".
+     */
+    private static final String META_INF = "META-INF/"; // NOI18N.
+
+    /**
+     * If {@code true}, entries digests are verified against the manifest.
+     */
+    private final boolean fullVerification;
+
+    /**
+     * Creates a new instance.
+     * @param fullVerification If {@code true}, entries digests are verified against the manifest.
+     */
+    public JarSignatureVerifier(final boolean fullVerification) {
+        this.fullVerification = fullVerification;
+    }
+
+    /**
+     * Check if provided file is already signed.
+     * @param file The target file.
+     * @return {@code True} if {@code file} is already signed, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean isSigned(final Path file) throws IOException {
+        if (!hasSignatureFiles(file)) {
+            return false;
+        }
+        return !fullVerification || verifyDigests(file);
+    }
+
+    /**
+     * Fast check that only reads the central directory of the archive.
+     * @param file The target file.
+     * @return {@code True} if {@code file} contains a signature file with its matching signature block, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean hasSignatureFiles(final Path file) throws IOException {
+        final var names = new ArrayList<String>();
+        // Opening a ZipFile only reads the central directory, not the entries data.
+        try (final var zipFile = new ZipFile(file.toFile())) {
+            for (final var entries = zipFile.entries(); entries.hasMoreElements();) {
+                names.add(entries.nextElement().getName());
+            }
+        } catch (ZipException ex) {
+            // Not a valid archive, it cannot be signed.
+            return false;
+        }
+        return hasSignatureFiles(names);
+    }
+
+    /**
+     * Check if provided JAR file, held in memory, is already signed.
+     * @param jar The JAR file, ie: a JAR file nested in another archive.
+     * @return {@code True} if {@code jar} is already signed, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean isSigned(final byte[] jar) throws IOException {
+        final var names = new ArrayList<String>();
+        try (final var input = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            for (var entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                names.add(entry.getName());
+            }
+        } catch (ZipException ex) {
+            // Not a valid archive, it cannot be signed.
+            return false;
+        }
+        if (!hasSignatureFiles(names)) {
+            return false;
+        }
+        return !fullVerification || verifyDigests(jar);
+    }
+
+    /**
+     * Test whether entry names contain a signature file with its matching signature block.
+     * @param names The entry names.
+     * @return {@code True} if a signature file and its signature block are found, {@code false} otherwise.
+     */
+    private static boolean hasSignatureFiles(final List<String> names) {
+        final var signatureFiles = new HashSet<String>();
+        final var blockFiles = new HashSet<String>();
+        for (final var entryName : names) {
+            final var name = entryName.toUpperCase(Locale.ENGLISH);
+            if (!name.startsWith(META_INF) || name.indexOf('/', META_INF.length()) >= 0) {
+                continue;
+            }
+            final int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                continue;
+            }
+            final var baseName = name.substring(0, dot);
+            switch (name.substring(dot + 1)) {
+                case "SF": // NOI18N.
+                    signatureFiles.add(baseName);
+                    break;
+                case "RSA": // NOI18N.
+                case "DSA": // NOI18N.
+                case "EC": // NOI18N.
+                    blockFiles.add(baseName);
+                    break;
+                default:
+            }
+        }
+        signatureFiles.retainAll(blockFiles);
+        return !signatureFiles.isEmpty();
+    }
+
+    /**
+     * Full check that reads every entry and verifies its digest.
+     * @param file The target file.
+     * @return {@code True} if all entries are signed and their digests match, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean verifyDigests(final Path file) throws IOException {
+        var signed = false;
+        try (final var jarFile = new JarFile(file.toFile(), true)) {
+            final var buffer = new byte[8192];
+            for (final var entries = jarFile.entries(); entries.hasMoreElements();) {
+                final JarEntry entry = entries.nextElement();
+                if (entry.isDirectory() || entry.getName().toUpperCase(Locale.ENGLISH).startsWith(META_INF)) {
+                    continue;
+                }
+                // Code signers are only available once the entry has been fully read.
+                try (final InputStream input = jarFile.getInputStream(entry)) {
+                    while (input.read(buffer) != -1) {
+                    }
+                }
+                if (entry.getCodeSigners() == null) {
+                    return false;
+                }
+                signed = true;
+            }
+        } catch (SecurityException ex) {
+            // Digest mismatch.
+            return false;
+        }
+        return signed;
+    }
+
+    /**
+     * Full check of a JAR file held in memory.
+     * <br>Signatures are only verified when the manifest and the signature files come first, as written by the jarsigner tool.
+     * @param jar The JAR file.
+     * @return {@code True} if all entries are signed and their digests match, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    private static boolean verifyDigests(final byte[] jar) throws IOException {
+        var signed = false;
+        try (final var input = new JarInputStream(new ByteArrayInputStream(jar), true)) {
+            final var buffer = new byte[8192];
+            for (var entry = input.getNextJarEntry(); entry != null; entry = input.getNextJarEntry()) {
+                if (entry.isDirectory() || entry.getName().toUpperCase(Locale.ENGLISH).startsWith(META_INF)) {
+                    continue;
+                }
+                // Code signers are only available once the entry has been fully read.
+                while (input.read(buffer) != -1) {
+                }
+                if (entry.getCodeSigners() == null) {
+                    return false;
+                }
+                signed = true;
+            }
+        } catch (SecurityException ex) {
+            // Digest mismatch.
+            return false;
+        }
+        return signed;
+    }
+}
@@ -0,0 +1,61 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.nio.file.Path;
+import jdk.security.jarsigner.JarSignerException;
+
+/**
+ * Engine that checks and signs individual JAR files on behalf of a {@code JarSignerProcess}.
+ * <br>Signing failures are raised, see {@link JarSignerException}; callers decide whether to carry on with the next file.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public interface JarSignerEngine {
+
+    /**
+     * Creates the engine described by the parameters.
+     * @param parameters The parameters object.
+     * @return A {@code JarSignerEngine} instance, never {@code null}.
+     * @throws Exception In case of errors while loading the key store.
+     */
+    static JarSignerEngine create(final JarSignerParameters parameters) throws Exception {
+        return parameters.inProcess ? new InProcessJarSignerEngine(parameters) : new ForkedJarSignerEngine(parameters);
+    }
+
+    /**
+     * Check if provided file is already signed.
+     * @param file The target file.
+     * @return {@code True} if {@code file} is already signed, {@code false} otherwise.
+     * @throws Exception In case of errors.
+     */
+    boolean isFileSigned(Path file) throws Exception;
+
+    /**
+     * Sign provided file.
+     * @param file The target file.
+     * @throws JarSignerException If the file cannot be signed, ie: the key cannot be used or the timestamp cannot be
+     * obtained; the file is then left untouched.
+     * @throws Exception In case of errors.
+     */
+    void signFile(Path file) throws JarSignerException, Exception;
+
+    /**
+     * Check if provided JAR file, held in memory, is already signed.
+     * @param jar The JAR file, ie: a JAR file nested in another archive.
+     * @return {@code True} if {@code jar} is already signed, {@code false} otherwise.
+     * @throws Exception In case of errors.
+     */
+    boolean isSigned(byte[] jar) throws Exception;
+
+    /**
+     * Sign provided JAR file, held in memory.
+     * @param jar The JAR file, ie: a JAR file nested in another archive.
+     * @return A {@code byte[]} instance, never {@code null}; the signed JAR file.
+     * @throws JarSignerException If the JAR file cannot be signed.
+     * @throws Exception In case of errors.
+     */
+    byte[] sign(byte[] jar) throws JarSignerException, Exception;
+}
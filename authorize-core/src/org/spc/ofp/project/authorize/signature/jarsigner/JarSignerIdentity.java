@@ -0,0 +1,51 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.util.Objects;
+
+/**
+ * A signer in addition to the main one: key store, alias and passwords.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class JarSignerIdentity {
+
+    private final String keyStore;
+    private final String storePassword;
+    private final String alias;
+    private final String keyPass;
+
+    /**
+     * Creates a new instance.
+     * @param keyStore The key store, empty to use the default key store.
+     * @param storePassword The key store password.
+     * @param alias The alias.
+     * @param keyPass The key password, empty to use the key store password.
+     * @throws NullPointerException If any argument is {@code null}.
+     */
+    public JarSignerIdentity(final String keyStore, final String storePassword, final String alias, final String keyPass) throws NullPointerException {
+        this.keyStore = Objects.requireNonNull(keyStore);
+        this.storePassword = Objects.requireNonNull(storePassword);
+        this.alias = Objects.requireNonNull(alias);
+        this.keyPass = Objects.requireNonNull(keyPass);
+    }
+
+    public String getKeyStore() {
+        return keyStore;
+    }
+
+    public String getStorePassword() {
+        return storePassword;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getKeyPass() {
+        return keyPass;
+    }
+}
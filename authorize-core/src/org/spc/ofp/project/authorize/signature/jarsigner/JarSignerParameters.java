@@ -5,6 +5,8 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.signature.jarsigner;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -25,6 +27,16 @@ public final class JarSignerParameters {
     String proxyPort = "";
     boolean useTimeStamp = true;
     String timeStampHost = JarSignerUtils.DEFAULT_TIME_STAMP_HOST;
+    boolean inProcess = false;
+    boolean fullVerification = false;
+    int threads = 1;
+    boolean incremental = false;
+    boolean warmWorkers = false;
+    boolean parallelDigests = false;
+    long parallelDigestThreshold = JarSignerUtils.DEFAULT_PARALLEL_DIGEST_THRESHOLD;
+    boolean reuseDigests = false;
+    boolean resign = false;
+    List<JarSignerIdentity> additionalSigners = Collections.emptyList();
     // Debug.
     boolean debugDirectoryWalk = false;
     boolean debugSignature = false;
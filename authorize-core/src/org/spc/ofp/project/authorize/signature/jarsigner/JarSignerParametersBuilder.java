@@ -5,6 +5,8 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.signature.jarsigner;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
 
@@ -42,6 +44,16 @@ public final class JarSignerParametersBuilder {
         result.proxyPort = delegated.proxyPort;
         result.useTimeStamp = delegated.useTimeStamp;
         result.timeStampHost = delegated.timeStampHost;
+        result.inProcess = delegated.inProcess;
+        result.fullVerification = delegated.fullVerification;
+        result.threads = delegated.threads;
+        result.incremental = delegated.incremental;
+        result.warmWorkers = delegated.warmWorkers;
+        result.parallelDigests = delegated.parallelDigests;
+        result.parallelDigestThreshold = delegated.parallelDigestThreshold;
+        result.reuseDigests = delegated.reuseDigests;
+        result.resign = delegated.resign;
+        result.additionalSigners = List.copyOf(delegated.additionalSigners);
         // Debug.
         result.debugDirectoryWalk = delegated.debugDirectoryWalk;
         result.debugSignature = delegated.debugSignature;
@@ -112,6 +124,63 @@ public final class JarSignerParametersBuilder {
         delegated.timeStampHost = value;
         return this;
     }
+
+    public JarSignerParametersBuilder inProcess(final boolean value) {
+        delegated.inProcess = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder fullVerification(final boolean value) {
+        delegated.fullVerification = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder threads(final int value) {
+        delegated.threads = Math.max(1, value);
+        return this;
+    }
+
+    public JarSignerParametersBuilder incremental(final boolean value) {
+        delegated.incremental = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder warmWorkers(final boolean value) {
+        delegated.warmWorkers = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder parallelDigests(final boolean value) {
+        delegated.parallelDigests = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder parallelDigestThreshold(final long value) {
+        delegated.parallelDigestThreshold = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder reuseDigests(final boolean value) {
+        delegated.reuseDigests = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder resign(final boolean value) {
+        delegated.resign = value;
+        return this;
+    }
+
+    public JarSignerParametersBuilder additionalSigners(final List<JarSignerIdentity> value) {
+        delegated.additionalSigners = (value == null) ? List.of() : List.copyOf(value);
+        return this;
+    }
+
+    public JarSignerParametersBuilder addSigner(final String keyStore, final String storePassword, final String alias, final String keyPass) {
+        final var signers = new ArrayList<>(delegated.additionalSigners);
+        signers.add(new JarSignerIdentity(keyStore, storePassword, alias, keyPass));
+        delegated.additionalSigners = signers;
+        return this;
+    }
     // Debug.
 
     public JarSignerParametersBuilder debugDirectoryWalk(final boolean value) {
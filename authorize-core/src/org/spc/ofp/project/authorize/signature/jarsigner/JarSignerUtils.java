@@ -5,6 +5,19 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.signature.jarsigner;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import org.spc.ofp.project.authorize.signature.SignUtils;
 
 /**
@@ -21,10 +34,22 @@ public enum JarSignerUtils {
      * Default timestamp host, value is "{@value}".
      */
     public static final String DEFAULT_TIME_STAMP_HOST = SignUtils.DEFAULT_TIME_STAMP_HOST;
+    /**
+     * Default size from which entry digests are computed in parallel, value is {@value} bytes (64 MB).
+     */
+    public static final long DEFAULT_PARALLEL_DIGEST_THRESHOLD = 64L * 1024 * 1024;
     /**
      * Default timestamp host, value is determined at run time.
      */
     public static final String DEFAULT_JAR_SIGNER = nameDefaultJarSigner();
+    /**
+     * Maximum length of a signer name, as with the jarsigner tool.
+     */
+    private static final int SIGNER_NAME_LENGTH = 8;
+    /**
+     * Digits of the hash that tells apart signer names sharing the same prefix; all valid in a signer name.
+     */
+    private static final String HASH_DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ"; // NOI18N.
 
     /**
      * Generate default jar signer executable name for current platform.
@@ -37,4 +62,151 @@ public enum JarSignerUtils {
         }
         return result;
     }
+
+    /**
+     * Derive a signer name from a key alias, the same way the jarsigner tool does.
+     * <br>The name is used for the {@code .SF} and signature block files in {@code META-INF}.
+     * @param alias The alias.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    public String signerName(final String alias) {
+        final var source = (alias == null || alias.isBlank()) ? "SIGNER" : alias.toUpperCase(Locale.ENGLISH); // NOI18N.
+        final var result = new StringBuilder(SIGNER_NAME_LENGTH);
+        for (int index = 0; index < source.length() && result.length() < SIGNER_NAME_LENGTH; index++) {
+            final char c = source.charAt(index);
+            final boolean valid = (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            result.append(valid ? c : '_');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Derive the signer names of all the signers of a run, in order: the main signer first, then additional signers.
+     * @param parameters The parameters object.
+     * @return A {@code List<String>} instance, never {@code null}, see {@link #signerNames(List)}.
+     */
+    public List<String> signerNames(final JarSignerParameters parameters) {
+        final var aliases = new ArrayList<String>(1 + parameters.additionalSigners.size());
+        aliases.add(parameters.alias);
+        for (final var additionalSigner : parameters.additionalSigners) {
+            aliases.add(additionalSigner.getAlias());
+        }
+        return signerNames(aliases);
+    }
+
+    /**
+     * Derive unique signer names from the aliases of the signers of a run.
+     * <br>Names are derived as by {@link #signerName(String)}. Aliases whose names collide once truncated, ie:
+     * {@code ofp-release-2025} and {@code ofp-release-2026}, keep a shorter prefix followed by a hash of the alias instead;
+     * the result does not depend on the order of the aliases.
+     * @param aliases The aliases.
+     * @return A {@code List<String>} instance, never {@code null}; names are unique, in the order of {@code aliases}.
+     */
+    public List<String> signerNames(final List<String> aliases) {
+        final var result = new ArrayList<String>(aliases.size());
+        final var counts = new HashMap<String, Integer>();
+        for (final var alias : aliases) {
+            final var name = signerName(alias);
+            result.add(name);
+            counts.merge(name, 1, Integer::sum);
+        }
+        final var names = new HashSet<String>();
+        result.stream()
+                .filter(name -> counts.get(name) == 1)
+                .forEach(names::add);
+        for (int index = 0; index < result.size(); index++) {
+            final var name = result.get(index);
+            if (counts.get(name) == 1) {
+                continue;
+            }
+            final var prefix = name.substring(0, Math.min(name.length(), SIGNER_NAME_LENGTH - 2));
+            int hash = Math.floorMod(Objects.hashCode(aliases.get(index)), HASH_DIGITS.length() * HASH_DIGITS.length());
+            String candidate;
+            do {
+                candidate = prefix + HASH_DIGITS.charAt(hash / HASH_DIGITS.length()) + HASH_DIGITS.charAt(hash % HASH_DIGITS.length());
+                hash = (hash + 1) % (HASH_DIGITS.length() * HASH_DIGITS.length());
+            } while (!names.add(candidate));
+            result.set(index, candidate);
+        }
+        return result;
+    }
+
+    /**
+     * Parse a comma-separated list of additional aliases, all from the same key store.
+     * @param aliases The aliases, may be {@code null}.
+     * @param keyStore The key store, may be {@code null}.
+     * @param storePassword The key store password, may be {@code null}.
+     * @param keyPass The key password, may be {@code null}.
+     * @return A {@code List<JarSignerIdentity>} instance, never {@code null}.
+     */
+    public List<JarSignerIdentity> additionalSigners(final String aliases, final String keyStore, final String storePassword, final String keyPass) {
+        final var result = new ArrayList<JarSignerIdentity>();
+        if (aliases == null) {
+            return result;
+        }
+        for (final var alias : aliases.split(",")) { // NOI18N.
+            if (!alias.isBlank()) {
+                result.add(new JarSignerIdentity(
+                        (keyStore == null) ? "" : keyStore, // NOI18N.
+                        (storePassword == null) ? "" : storePassword, // NOI18N.
+                        alias.strip(),
+                        (keyPass == null) ? "" : keyPass)); // NOI18N.
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the path of a key store, using the same default as the jarsigner tool.
+     * @param keyStore The key store, may be {@code null}; if empty, the default key store is used.
+     * @return A {@code Path} instance, never {@code null}.
+     */
+    public Path keyStorePath(final String keyStore) {
+        return (keyStore == null || keyStore.isBlank())
+                ? Paths.get(System.getProperty("user.home"), ".keystore") // NOI18N.
+                : Paths.get(keyStore);
+    }
+
+    /**
+     * Loads the certificate chains of all signers, ie: to identify them in the index of incremental mode.
+     * <br>Only the key store passwords are needed, private keys are not recovered.
+     * @param parameters The parameters object.
+     * @return A {@code List<Certificate[]>} instance, never {@code null}; the chain of the alias comes first, followed by the
+     * chains of the additional signers.
+     * @throws IOException In case of IO errors while reading a key store.
+     * @throws GeneralSecurityException If a key store cannot be loaded or if an alias has no certificate chain.
+     */
+    public List<Certificate[]> certificateChains(final JarSignerParameters parameters) throws IOException, GeneralSecurityException {
+        final var keyStores = new HashMap<Path, KeyStore>();
+        final var result = new ArrayList<Certificate[]>(1 + parameters.additionalSigners.size());
+        result.add(certificateChain(keyStores, parameters.keyStore, parameters.storePassword, parameters.alias));
+        for (final var additionalSigner : parameters.additionalSigners) {
+            result.add(certificateChain(keyStores, additionalSigner.getKeyStore(), additionalSigner.getStorePassword(), additionalSigner.getAlias()));
+        }
+        return result;
+    }
+
+    /**
+     * Loads the certificate chain of an alias.
+     * @param keyStores Key stores already loaded, by path.
+     * @param keyStore The key store, empty to use the default key store.
+     * @param storePassword The key store password.
+     * @param alias The alias.
+     * @return A {@code Certificate[]} instance, never {@code null}.
+     * @throws IOException In case of IO errors while reading the key store.
+     * @throws GeneralSecurityException If the key store cannot be loaded or if the alias has no certificate chain.
+     */
+    private Certificate[] certificateChain(final HashMap<Path, KeyStore> keyStores, final String keyStore, final String storePassword, final String alias) throws IOException, GeneralSecurityException {
+        final var keyStoreFile = keyStorePath(keyStore).toAbsolutePath().normalize();
+        var store = keyStores.get(keyStoreFile);
+        if (store == null) {
+            store = KeyStore.getInstance(keyStoreFile.toFile(), (storePassword == null) ? new char[0] : storePassword.toCharArray());
+            keyStores.put(keyStoreFile, store);
+        }
+        final var result = store.getCertificateChain(alias);
+        if (result == null || result.length == 0) {
+            throw new KeyStoreException(String.format("No certificate chain found for alias \"%s\".", alias)); // NOI18N.
+        }
+        return result;
+    }
 }
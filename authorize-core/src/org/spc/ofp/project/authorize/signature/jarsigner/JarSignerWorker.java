@@ -0,0 +1,176 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.security.Permission;
+
+/**
+ * Long-lived worker program launched from the target JDK by {@code JarSignerWorkerPool}.
+ * <br>The jarsigner entry point of the JDK is loaded once, then each request is run by a fresh instance of it.
+ * <br>Protocol, over stdin and stdout:
+ * <ul>
+ * <li>Request: argument count ({@code int}), then each argument ({@code UTF}).</li>
+ * <li>Answer: any number of {@link #FRAME_OUTPUT} frames ({@code byte}, length {@code int}, bytes), then a {@link #FRAME_EXIT} frame ({@code byte}, exit code {@code int}).</li>
+ * </ul>
+ * A {@link #FRAME_READY} frame is sent once the entry point has been loaded.
+ * <br>This class runs in the target JDK on the class path; it must not depend on any other class of this project.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class JarSignerWorker {
+
+    /**
+     * Frame sent once the worker is ready.
+     */
+    static final byte FRAME_READY = 'R';
+    /**
+     * Frame that contains output of jarsigner.
+     */
+    static final byte FRAME_OUTPUT = 'O';
+    /**
+     * Frame that ends an answer.
+     */
+    static final byte FRAME_EXIT = 'X';
+    /**
+     * Entry point of the jarsigner tool.
+     */
+    static final String MAIN_CLASS = "sun.security.tools.jarsigner.Main"; // NOI18N.
+
+    /**
+     * Raised instead of exiting the JVM.
+     */
+    private static final class ExitException extends SecurityException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ExitException(final int status) {
+            super(String.format("Exit %d.", status)); // NOI18N.
+            this.status = status;
+        }
+    }
+
+    /**
+     * Turns {@code System.exit()} calls of jarsigner into exceptions; allows everything else.
+     */
+    private static final class ExitTrap extends SecurityManager {
+
+        @Override
+        public void checkExit(final int status) {
+            throw new ExitException(status);
+        }
+
+        @Override
+        public void checkPermission(final Permission permission) {
+        }
+
+        @Override
+        public void checkPermission(final Permission permission, final Object context) {
+        }
+    }
+
+    /**
+     * Sends everything written to it as output frames.
+     */
+    private static final class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream protocol;
+
+        FrameOutputStream(final DataOutputStream protocol) {
+            this.protocol = protocol;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            synchronized (protocol) {
+                protocol.writeByte(FRAME_OUTPUT);
+                protocol.writeInt(length);
+                protocol.write(bytes, offset, length);
+                protocol.flush();
+            }
+        }
+    }
+
+    /**
+     * Hidden constructor.
+     */
+    private JarSignerWorker() {
+    }
+
+    /**
+     * Main entry point.
+     * @param args Not used.
+     * @throws Exception If the jarsigner entry point cannot be loaded.
+     */
+    public static void main(String... args) throws Exception {
+        final var protocol = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        final var input = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+        // Whatever jarsigner prints goes back to the pool.
+        final var output = new PrintStream(new FrameOutputStream(protocol), true);
+        System.setOut(output);
+        System.setErr(output);
+        final var mainClass = Class.forName(MAIN_CLASS);
+        final var constructor = mainClass.getConstructor();
+        final var run = mainClass.getMethod("run", String[].class); // NOI18N.
+        try {
+            System.setSecurityManager(new ExitTrap());
+        } catch (UnsupportedOperationException | SecurityException ex) {
+            // Not available in this JDK: exits end the worker and the pool starts a new one.
+        }
+        synchronized (protocol) {
+            protocol.writeByte(FRAME_READY);
+            protocol.flush();
+        }
+        while (true) {
+            final int count;
+            try {
+                count = input.readInt();
+            } catch (EOFException ex) {
+                // The pool closed the connection.
+                return;
+            }
+            final var request = new String[count];
+            for (int index = 0; index < count; index++) {
+                request[index] = input.readUTF();
+            }
+            int status = 0;
+            try {
+                run.invoke(constructor.newInstance(), (Object) request);
+            } catch (InvocationTargetException ex) {
+                final var cause = ex.getCause();
+                if (cause instanceof ExitException) {
+                    status = ((ExitException) cause).status;
+                } else {
+                    output.println(cause);
+                    status = 1;
+                }
+            }
+            output.flush();
+            synchronized (protocol) {
+                protocol.writeByte(FRAME_EXIT);
+                protocol.writeInt(status);
+                protocol.flush();
+            }
+        }
+    }
+}
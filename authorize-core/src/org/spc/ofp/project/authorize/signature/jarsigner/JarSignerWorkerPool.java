@@ -0,0 +1,269 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.io.StreamConsumer;
+
+/**
+ * Pool of warm {@link JarSignerWorker} JVMs launched from a target JDK.
+ * <br>A single pool is kept per JDK and JVM options for the lifetime of the JVM; workers are started lazily,
+ * recycled after {@link #MAX_REQUESTS} requests and replaced when they die.
+ * <br>Workers need a target JDK that can load the classes of this project (JDK 12 or later).
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class JarSignerWorkerPool {
+
+    private static final Logger LOGGER = Logger.getLogger(JarSignerWorkerPool.class.getName());
+
+    /**
+     * Number of requests served by a worker before it is replaced.
+     */
+    public static final int MAX_REQUESTS = 500;
+
+    /**
+     * Shared pools, by java executable and JVM options.
+     */
+    private static final Map<List<String>, JarSignerWorkerPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Result of a request.
+     */
+    public static final class Result {
+
+        private final int exitCode;
+        private final String output;
+
+        private Result(final int exitCode, final String output) {
+            this.exitCode = exitCode;
+            this.output = output;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * Gets everything jarsigner printed, standard and error outputs mixed.
+         * @return A {@code String} instance, never {@code null}.
+         */
+        public String getOutput() {
+            return output;
+        }
+    }
+
+    /**
+     * A worker JVM.
+     */
+    private static final class Worker {
+
+        private final Process process;
+        private final DataOutputStream input;
+        private final DataInputStream output;
+        private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        private int requests;
+
+        Worker(final Process process) {
+            this.process = process;
+            this.input = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.output = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            // JVM messages, ie: crashes or class loading errors.
+            new StreamConsumer(process.getErrorStream(), errors);
+        }
+
+        void destroy() {
+            try {
+                input.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, ex.getMessage(), ex);
+            }
+            process.destroy();
+        }
+    }
+
+    private final List<String> command;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new instance.
+     * @param command The command that starts a worker.
+     * @param size The maximum number of workers.
+     */
+    private JarSignerWorkerPool(final List<String> command, final int size) {
+        this.command = command;
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Gets the shared pool for a JDK.
+     * <br>When a pool already exists for this JDK and these options, its size is not changed.
+     * @param javaExec The {@code java} executable of the target JDK.
+     * @param jvmOptions Options of the worker JVMs, ie: proxy settings.
+     * @param size The maximum number of workers.
+     * @return A {@code JarSignerWorkerPool} instance, never {@code null}.
+     * @throws NullPointerException If {@code javaExec} or {@code jvmOptions} is {@code null}.
+     * @throws IllegalStateException If the worker class is not available from a file, ie: when running from a runtime image.
+     */
+    public static JarSignerWorkerPool of(final Path javaExec, final List<String> jvmOptions, final int size) throws NullPointerException, IllegalStateException {
+        Objects.requireNonNull(javaExec);
+        Objects.requireNonNull(jvmOptions);
+        final var key = new ArrayList<String>();
+        key.add(javaExec.toString());
+        key.addAll(jvmOptions);
+        return POOLS.computeIfAbsent(key, k -> {
+            final var command = new ArrayList<>(k);
+            command.add("--add-exports"); // NOI18N.
+            command.add(String.format("jdk.jartool/%s=ALL-UNNAMED", JarSignerWorker.MAIN_CLASS.substring(0, JarSignerWorker.MAIN_CLASS.lastIndexOf('.')))); // NOI18N.
+            command.add("-cp"); // NOI18N.
+            command.add(workerClassPath());
+            command.add(JarSignerWorker.class.getName());
+            return new JarSignerWorkerPool(command, Math.max(1, size));
+        });
+    }
+
+    /**
+     * Gets the class path that contains the worker class.
+     * @return A {@code String} instance, never {@code null}.
+     * @throws IllegalStateException If the worker class is not available from a file.
+     */
+    private static String workerClassPath() throws IllegalStateException {
+        try {
+            final var location = JarSignerWorker.class.getProtectionDomain().getCodeSource().getLocation();
+            return Paths.get(location.toURI()).toString();
+        } catch (Exception ex) {
+            throw new IllegalStateException("Worker class is not available from a file.", ex); // NOI18N.
+        }
+    }
+
+    /**
+     * Runs jarsigner in a worker.
+     * @param args The jarsigner arguments.
+     * @return A {@code Result} instance, never {@code null}.
+     * @throws IOException If a worker cannot be started.
+     * @throws InterruptedException If the current thread was interrupted while waiting for a worker.
+     */
+    public Result execute(final List<String> args) throws IOException, InterruptedException {
+        permits.acquire();
+        try {
+            var worker = idle.poll();
+            if (worker == null || !worker.process.isAlive()) {
+                if (worker != null) {
+                    worker.destroy();
+                }
+                worker = start();
+            }
+            final var result = execute(worker, args);
+            if (!closed && worker.process.isAlive() && ++worker.requests < MAX_REQUESTS) {
+                idle.offer(worker);
+            } else {
+                worker.destroy();
+            }
+            return result;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Starts a worker and waits until it is ready.
+     * @return A {@code Worker} instance, never {@code null}.
+     * @throws IOException If the worker cannot be started.
+     */
+    private Worker start() throws IOException {
+        final var worker = new Worker(new ProcessBuilder(command).start());
+        final var output = new ByteArrayOutputStream();
+        try {
+            if (readFrames(worker, output, JarSignerWorker.FRAME_READY)) {
+                return worker;
+            }
+        } catch (EOFException ex) {
+            // Handled below.
+        }
+        worker.destroy();
+        throw new IOException(String.format("Worker failed to start: %s%s", output.toString(Charset.defaultCharset()), worker.errors.toString(Charset.defaultCharset()))); // NOI18N.
+    }
+
+    /**
+     * Sends a request to a worker.
+     * @param worker The worker.
+     * @param args The jarsigner arguments.
+     * @return A {@code Result} instance, never {@code null}.
+     * @throws InterruptedException If the current thread was interrupted.
+     */
+    private Result execute(final Worker worker, final List<String> args) throws InterruptedException {
+        final var output = new ByteArrayOutputStream();
+        try {
+            worker.input.writeInt(args.size());
+            for (final var arg : args) {
+                worker.input.writeUTF(arg);
+            }
+            worker.input.flush();
+            if (readFrames(worker, output, JarSignerWorker.FRAME_EXIT)) {
+                return new Result(worker.output.readInt(), output.toString(Charset.defaultCharset()));
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, ex.getMessage(), ex);
+        }
+        // The worker died, ie: jarsigner called System.exit() and could not be trapped; its exit code is the one of jarsigner.
+        worker.destroy();
+        final int exitCode = worker.process.waitFor();
+        return new Result((exitCode == 0) ? 1 : exitCode, output.toString(Charset.defaultCharset()) + worker.errors.toString(Charset.defaultCharset()));
+    }
+
+    /**
+     * Reads output frames until a frame of the given type.
+     * @param worker The worker.
+     * @param output Receives the content of output frames.
+     * @param type The type of the last frame.
+     * @return {@code True} if a frame of the given type was read, {@code false} if an unexpected frame was read.
+     * @throws IOException In case of IO errors, ie: the worker died.
+     */
+    private static boolean readFrames(final Worker worker, final ByteArrayOutputStream output, final byte type) throws IOException {
+        while (true) {
+            final byte frame = worker.output.readByte();
+            if (frame == type) {
+                return true;
+            }
+            if (frame != JarSignerWorker.FRAME_OUTPUT) {
+                return false;
+            }
+            final var bytes = new byte[worker.output.readInt()];
+            worker.output.readFully(bytes);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Stops idle workers and removes this pool from the shared pools; busy workers are stopped once their request is done.
+     */
+    public void close() {
+        closed = true;
+        POOLS.values().remove(this);
+        for (var worker = idle.poll(); worker != null; worker = idle.poll()) {
+            worker.destroy();
+        }
+    }
+}
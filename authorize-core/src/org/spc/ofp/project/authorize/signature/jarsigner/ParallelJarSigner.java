@@ -0,0 +1,823 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import jdk.security.jarsigner.JarSignerException;
+import org.spc.ofp.project.authorize.der.DerUtils;
+import org.spc.ofp.project.authorize.io.RawZipFile;
+import org.spc.ofp.project.authorize.io.RawZipWriter;
+import org.spc.ofp.project.authorize.signature.TimeStampClient;
+
+/**
+ * JAR signer that computes the per-entry digests of the manifest in parallel.
+ * <br>Entries are hashed on a shared {@code ForkJoinPool}; the manifest and the {@code .SF} file are written in entry order
+ * as digests complete, see {@link StreamingManifestWriter}, so neither is ever held in memory whole.
+ * <br>The manifest of the source is read in memory though: for a JAR file that is already signed, ie: when re-signing,
+ * memory use grows with its number of entries, see {@link #writeSignatureEntries}.
+ * <br>Produces the same layout as the jarsigner tool: SHA-256 digests, a PKCS #7 signature block without signed attributes
+ * and, optionally, an RFC 3161 timestamp on the signature.
+ * <br>Existing entries are copied to the output without being inflated again, see {@link RawZipWriter}; only the manifest and
+ * the signature files are written anew.
+ * <br>Several signers may sign at once: entries are read and digested once, and each signer gets its own signature files.
+ * <br>JAR files nested in other archives are signed in memory, see {@link #sign(byte[])}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class ParallelJarSigner {
+
+    private static final String NAME_ATTRIBUTE = "Name"; // NOI18N.
+    private static final String META_INF = "META-INF/"; // NOI18N.
+    /**
+     * CRC-32 of an entry when it was digested, recorded in the {@code .SF} file when digests are reused.
+     */
+    private static final String ENTRY_CRC_ATTRIBUTE = "Authorize-Entry-CRC32"; // NOI18N.
+    /**
+     * Size of an entry when it was digested, recorded in the {@code .SF} file when digests are reused.
+     */
+    private static final String ENTRY_SIZE_ATTRIBUTE = "Authorize-Entry-Size"; // NOI18N.
+    private static final String DATA_OID = "1.2.840.113549.1.7.1"; // NOI18N.
+    private static final String TIME_STAMP_TOKEN_OID = "1.2.840.113549.1.9.16.2.14"; // NOI18N.
+    private static final int BUFFER_SIZE = 16384;
+    /**
+     * Largest size or offset that can be stored without ZIP64 extensions.
+     */
+    private static final long MAX_ZIP_SIZE = 0xFFFFFFFFL;
+    /**
+     * Upper bound of the size of the signature block files of a signer, certificates and timestamp included.
+     */
+    private static final long MAX_BLOCK_SIZE = 64 * 1024;
+    /**
+     * Number of entries digested at once; bounds the number of sections held in memory.
+     */
+    private static final int WINDOW_SIZE = 4096;
+
+    /**
+     * Shared pool of digest threads, one per core.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * A section of the manifest, rendered, and its digest for the {@code .SF} file.
+     */
+    private static final class Section {
+
+        private final String name;
+        private final byte[] bytes;
+        private final byte[] digest;
+        private final Map<String, String> signatureAttributes;
+
+        Section(final String name, final byte[] bytes, final byte[] digest) {
+            this(name, bytes, digest, Collections.emptyMap());
+        }
+
+        Section(final String name, final byte[] bytes, final byte[] digest, final Map<String, String> signatureAttributes) {
+            this.name = name;
+            this.bytes = bytes;
+            this.digest = digest;
+            this.signatureAttributes = signatureAttributes;
+        }
+    }
+
+    /**
+     * What a previous signature recorded about an entry: the digest of its manifest section, its CRC-32 and its size.
+     */
+    private static final class Evidence {
+
+        private final byte[] sectionDigest;
+        private final long crc;
+        private final long size;
+
+        Evidence(final byte[] sectionDigest, final long crc, final long size) {
+            this.sectionDigest = sectionDigest;
+            this.crc = crc;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Opens a generated entry in the output; the entry ends when the stream is closed.
+     */
+    @FunctionalInterface
+    private interface EntryOpener {
+
+        OutputStream open(String name) throws IOException;
+    }
+
+    /**
+     * The entries of the JAR file being signed; same contract as {@code ZipFile}.
+     */
+    private interface Archive {
+
+        Enumeration<? extends ZipEntry> entries();
+
+        ZipEntry getEntry(String name);
+
+        InputStream getInputStream(ZipEntry entry) throws IOException;
+    }
+
+    /**
+     * A JAR file held in memory; entries are inflated once when the archive is read.
+     */
+    private static final class MemoryArchive implements Archive {
+
+        private final Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        private final Map<String, byte[]> contents = new HashMap<>();
+
+        /**
+         * Creates a new instance.
+         * @param source The JAR file.
+         * @throws IOException In case of IO errors or if the source is not a valid archive.
+         */
+        MemoryArchive(final byte[] source) throws IOException {
+            try (final var input = new ZipInputStream(new ByteArrayInputStream(source))) {
+                for (var entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                    // Sizes and CRC-32 of entries with a data descriptor are only known once they have been read.
+                    contents.put(entry.getName(), input.readAllBytes());
+                    entries.put(entry.getName(), entry);
+                }
+            }
+        }
+
+        @Override
+        public Enumeration<? extends ZipEntry> entries() {
+            return Collections.enumeration(entries.values());
+        }
+
+        @Override
+        public ZipEntry getEntry(final String name) {
+            return entries.get(name);
+        }
+
+        @Override
+        public InputStream getInputStream(final ZipEntry entry) {
+            return new ByteArrayInputStream(contents.get(entry.getName()));
+        }
+    }
+
+    /**
+     * Adapts a {@code ZipFile} to the {@code Archive} interface.
+     * @param zipFile The source file.
+     * @return An {@code Archive} instance, never {@code null}.
+     */
+    private static Archive archive(final ZipFile zipFile) {
+        return new Archive() {
+            @Override
+            public Enumeration<? extends ZipEntry> entries() {
+                return zipFile.entries();
+            }
+
+            @Override
+            public ZipEntry getEntry(final String name) {
+                return zipFile.getEntry(name);
+            }
+
+            @Override
+            public InputStream getInputStream(final ZipEntry entry) throws IOException {
+                return zipFile.getInputStream(entry);
+            }
+        };
+    }
+
+    /**
+     * A signer: private key, certificate chain and names of its signature files.
+     */
+    static final class Identity {
+
+        private final PrivateKey key;
+        private final List<X509Certificate> chain;
+        private final String signerName;
+        private final String signatureAlgorithm;
+        private final String signatureAlgorithmOid;
+        private final String blockExtension;
+
+        /**
+         * Creates a new instance.
+         * @param key The private key.
+         * @param chain The certificate chain, signer first.
+         * @param signerName The base name of the {@code .SF} and signature block files.
+         * @throws NullPointerException If any argument is {@code null}.
+         * @throws IllegalArgumentException If the key algorithm is not supported.
+         */
+        Identity(final PrivateKey key, final List<X509Certificate> chain, final String signerName) throws NullPointerException, IllegalArgumentException {
+            Objects.requireNonNull(key);
+            Objects.requireNonNull(chain);
+            Objects.requireNonNull(signerName);
+            this.key = key;
+            this.chain = chain;
+            this.signerName = signerName;
+            switch (key.getAlgorithm()) {
+                case "RSA": { // NOI18N.
+                    signatureAlgorithm = "SHA256withRSA"; // NOI18N.
+                    signatureAlgorithmOid = "1.2.840.113549.1.1.1"; // NOI18N.
+                    blockExtension = "RSA"; // NOI18N.
+                    break;
+                }
+                case "EC": { // NOI18N.
+                    signatureAlgorithm = "SHA256withECDSA"; // NOI18N.
+                    signatureAlgorithmOid = "1.2.840.10045.4.3.2"; // NOI18N.
+                    blockExtension = "EC"; // NOI18N.
+                    break;
+                }
+                case "DSA": { // NOI18N.
+                    signatureAlgorithm = "SHA256withDSA"; // NOI18N.
+                    signatureAlgorithmOid = "2.16.840.1.101.3.4.3.2"; // NOI18N.
+                    blockExtension = "DSA"; // NOI18N.
+                    break;
+                }
+                default: {
+                    throw new IllegalArgumentException(String.format("Unsupported key algorithm \"%s\".", key.getAlgorithm())); // NOI18N.
+                }
+            }
+        }
+    }
+
+    private final List<Identity> identities;
+    private final TimeStampClient timeStampClient;
+    private final boolean reuseDigests;
+    private final boolean stripSignatures;
+    private final String createdBy = String.format("%s (%s)", System.getProperty("java.version"), System.getProperty("java.vendor")); // NOI18N.
+
+    /**
+     * Creates a new instance.
+     * @param identities The signers, in the order their signature files are written.
+     * @param timeStampClient The TSA client, {@code null} to not timestamp signatures.
+     * @param reuseDigests If {@code true}, the digests of entries left unchanged since a previous signature by this class are
+     * reused instead of being computed again.
+     * @param stripSignatures If {@code true}, signature files of other signers are removed instead of being kept.
+     * @throws NullPointerException If {@code identities} is {@code null}.
+     * @throws IllegalArgumentException If {@code identities} is empty or if two signers share the same name.
+     */
+    ParallelJarSigner(final List<Identity> identities, final TimeStampClient timeStampClient, final boolean reuseDigests, final boolean stripSignatures) throws NullPointerException, IllegalArgumentException {
+        Objects.requireNonNull(identities);
+        if (identities.isEmpty()) {
+            throw new IllegalArgumentException("No signer."); // NOI18N.
+        }
+        final var signerNames = new HashSet<String>();
+        for (final var identity : identities) {
+            if (!signerNames.add(identity.signerName.toUpperCase(Locale.ENGLISH))) {
+                throw new IllegalArgumentException(String.format("Duplicate signer name \"%s\".", identity.signerName)); // NOI18N.
+            }
+        }
+        this.identities = List.copyOf(identities);
+        this.timeStampClient = timeStampClient;
+        this.reuseDigests = reuseDigests;
+        this.stripSignatures = stripSignatures;
+    }
+
+    /**
+     * Signs a JAR file.
+     * <br>Signature files of these signers are replaced; those of other signers are kept, or removed in the same pass when
+     * signatures are stripped.
+     * @param source The source file.
+     * @param target The target file, created or overwritten.
+     * @throws IOException In case of IO errors.
+     * @throws InterruptedException If the current thread was interrupted.
+     * @throws JarSignerException If the signature or the timestamp cannot be generated.
+     */
+    void sign(final Path source, final Path target) throws IOException, InterruptedException, JarSignerException {
+        final long time = System.currentTimeMillis();
+        try (final var zipFile = new ZipFile(source.toFile())) {
+            // The writer is chosen before signing, so the signature is only generated once.
+            if (canCopyVerbatim(source, zipFile)) {
+                writeRaw(archive(zipFile), source, target, time);
+            } else {
+                try (final var output = Files.newOutputStream(target)) {
+                    writeStreamed(archive(zipFile), output, target, time);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test whether the entries of a JAR file can be copied verbatim, ie: neither its entries nor the signed file need ZIP64
+     * extensions; otherwise entries are inflated and deflated again.
+     * <br>The size of the signature files is overestimated: each entry gets a section in the manifest and in each {@code .SF} file.
+     * @param source The source file.
+     * @param zipFile The source file, opened.
+     * @return {@code True} if entries can be copied verbatim, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    private boolean canCopyVerbatim(final Path source, final ZipFile zipFile) throws IOException {
+        long signatureSize = identities.size() * MAX_BLOCK_SIZE;
+        for (final var entries = zipFile.entries(); entries.hasMoreElements();) {
+            final var entry = entries.nextElement();
+            if (entry.getSize() >= MAX_ZIP_SIZE || entry.getCompressedSize() >= MAX_ZIP_SIZE) {
+                return false;
+            }
+            // Names are at most 3 bytes per char in UTF-8, lines are wrapped every 72 bytes, digests take less than 128 bytes.
+            signatureSize += (1 + identities.size()) * (4L * entry.getName().length() + 128);
+        }
+        return Files.size(source) + signatureSize < MAX_ZIP_SIZE;
+    }
+
+    /**
+     * Signs a JAR file held in memory, ie: a JAR file nested in another archive.
+     * <br>Entries are inflated and deflated again and the {@code .SF} file is spooled in memory; nothing is written to disk.
+     * @param source The source JAR file.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws IOException In case of IO errors or if the source is not a valid archive.
+     * @throws InterruptedException If the current thread was interrupted.
+     * @throws JarSignerException If the signature or the timestamp cannot be generated.
+     */
+    byte[] sign(final byte[] source) throws IOException, InterruptedException, JarSignerException {
+        final var output = new ByteArrayOutputStream(source.length + BUFFER_SIZE);
+        writeStreamed(new MemoryArchive(source), output, null, System.currentTimeMillis());
+        return output.toByteArray();
+    }
+
+    /**
+     * Writes the output, copying existing entries verbatim.
+     * @param archive The entries of the source file.
+     * @param source The source file.
+     * @param target The target file.
+     * @param time The modification time of generated entries.
+     * @throws ZipException If the source file is not a valid ZIP file.
+     * @throws IOException In case of IO errors.
+     * @throws InterruptedException If the current thread was interrupted.
+     * @throws JarSignerException If the signature or the timestamp cannot be generated.
+     */
+    private void writeRaw(final Archive archive, final Path source, final Path target, final long time) throws ZipException, IOException, InterruptedException, JarSignerException {
+        try (final var raw = new RawZipFile(source);
+             final var writer = new RawZipWriter(target)) {
+            writeSignatureEntries(archive, target, name -> writer.newEntry(name, time));
+            for (final var entry : raw.getEntries()) {
+                if (!isReplaced(entry.getName())) {
+                    writer.copy(raw, entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the output, inflating and deflating existing entries again.
+     * @param archive The entries of the source file.
+     * @param output Receives the target file; not closed.
+     * @param target The target file, {@code null} if the target is held in memory.
+     * @param time The modification time of generated entries.
+     * @throws IOException In case of IO errors.
+     * @throws InterruptedException If the current thread was interrupted.
+     * @throws JarSignerException If the signature or the timestamp cannot be generated.
+     */
+    private void writeStreamed(final Archive archive, final OutputStream output, final Path target, final long time) throws IOException, InterruptedException, JarSignerException {
+        final var zip = new ZipOutputStream(output);
+        writeSignatureEntries(archive, target, name -> {
+            final var entry = new ZipEntry(name);
+            entry.setTime(time);
+            zip.putNextEntry(entry);
+            return new FilterOutputStream(zip) {
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    zip.closeEntry();
+                }
+            };
+        });
+        final var buffer = new byte[BUFFER_SIZE];
+        for (final var entries = archive.entries(); entries.hasMoreElements();) {
+            final var entry = entries.nextElement();
+            if (isReplaced(entry.getName())) {
+                continue;
+            }
+            final var copy = new ZipEntry(entry);
+            if (copy.getMethod() == ZipEntry.DEFLATED) {
+                copy.setCompressedSize(-1);
+            }
+            zip.putNextEntry(copy);
+            try (final var input = archive.getInputStream(entry)) {
+                for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                    zip.write(buffer, 0, read);
+                }
+            }
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /**
+     * Digests the entries and writes the manifest and the signature files, first in the output as with the jarsigner tool.
+     * <br>Entries are digested by windows of {@value #WINDOW_SIZE}; the sections of each window are written before the next
+     * one starts, so generated sections are not accumulated.
+     * <br>The manifest of the source is read whole and its sections are indexed by name, as are the digests recorded by the
+     * previous signature when they are reused: for a source that is already signed, memory use grows with its number of
+     * entries. An unsigned source usually only has a main section.
+     * @param archive The entries of the source file.
+     * @param target The target file; the {@code .SF} file is spooled next to it, or in memory if {@code null}.
+     * @param opener Opens generated entries in the output.
+     * @throws IOException In case of IO errors.
+     * @throws InterruptedException If the current thread was interrupted.
+     * @throws JarSignerException If the signature or the timestamp cannot be generated.
+     */
+    private void writeSignatureEntries(final Archive archive, final Path target, final EntryOpener opener) throws IOException, InterruptedException, JarSignerException {
+        byte[] mainSection = null;
+        final var rawSections = new HashMap<String, byte[]>();
+        final var manifestEntry = archive.getEntry(JarFile.MANIFEST_NAME);
+        if (manifestEntry != null) {
+            final byte[] source;
+            try (final var input = archive.getInputStream(manifestEntry)) {
+                source = input.readAllBytes();
+            }
+            // Unchanged sections are kept byte for byte so that signatures of other signers stay valid.
+            final var split = splitSections(source);
+            mainSection = split.get(0);
+            for (final var section : split.subList(1, split.size())) {
+                final var name = attributes(section).get(NAME_ATTRIBUTE);
+                if (name != null) {
+                    rawSections.put(name, section);
+                }
+            }
+        }
+        if (mainSection == null) {
+            final var newSection = new ByteArrayOutputStream();
+            newSection.writeBytes(StreamingManifestWriter.attribute(Attributes.Name.MANIFEST_VERSION.toString(), "1.0")); // NOI18N.
+            newSection.writeBytes(StreamingManifestWriter.attribute("Created-By", createdBy)); // NOI18N.
+            newSection.writeBytes(StreamingManifestWriter.NEWLINE);
+            mainSection = newSection.toByteArray();
+        } else if (!endsWithBlankLine(mainSection)) {
+            // Manifest without sections and without a trailing blank line.
+            final var newSection = new ByteArrayOutputStream(mainSection.length + 4);
+            newSection.writeBytes(mainSection);
+            if (mainSection.length > 0 && mainSection[mainSection.length - 1] != '\n' && mainSection[mainSection.length - 1] != '\r') {
+                newSection.writeBytes(StreamingManifestWriter.NEWLINE);
+            }
+            newSection.writeBytes(StreamingManifestWriter.NEWLINE);
+            mainSection = newSection.toByteArray();
+        }
+        final Map<String, Evidence> evidence = reuseDigests ? readEvidence(archive) : Collections.emptyMap();
+        final var absoluteTarget = (target == null) ? null : target.toAbsolutePath();
+        final var spoolFile = (absoluteTarget == null) ? null : Files.createTempFile(absoluteTarget.getParent(), absoluteTarget.getFileName().toString(), ".sf"); // NOI18N.
+        try {
+            final var manifestWriter = new StreamingManifestWriter(opener.open(JarFile.MANIFEST_NAME), spoolFile, mainSection, createdBy);
+            try (manifestWriter) {
+                // Each task also renders the manifest section of its entry.
+                final var window = new ArrayList<Callable<Section>>(WINDOW_SIZE);
+                for (final var entries = archive.entries(); entries.hasMoreElements();) {
+                    final var entry = entries.nextElement();
+                    if (entry.isDirectory() || isSignatureRelated(entry.getName())) {
+                        continue;
+                    }
+                    final var raw = rawSections.remove(entry.getName());
+                    final var recorded = evidence.get(entry.getName());
+                    window.add(() -> digestEntry(archive, entry, raw, recorded));
+                    if (window.size() == WINDOW_SIZE) {
+                        writeSections(window, manifestWriter);
+                        window.clear();
+                    }
+                }
+                writeSections(window, manifestWriter);
+                // Sections without a digested entry, ie: package sealing, are kept in a stable order.
+                for (final var section : new TreeMap<>(rawSections).entrySet()) {
+                    final var kept = section(section.getKey(), section.getValue(), null);
+                    manifestWriter.addSection(kept.name, kept.bytes, kept.digest);
+                }
+            }
+            // The .SF file is the same for every signer, only its signature differs.
+            for (final var identity : identities) {
+                final byte[] signatureValue;
+                try {
+                    final var signature = Signature.getInstance(identity.signatureAlgorithm);
+                    signature.initSign(identity.key);
+                    try (final var output = opener.open(String.format("%s%s.SF", META_INF, identity.signerName))) { // NOI18N.
+                        manifestWriter.writeSignatureFile(output, signature);
+                    }
+                    signatureValue = signature.sign();
+                } catch (GeneralSecurityException ex) {
+                    throw new JarSignerException("Error creating signature", ex); // NOI18N.
+                }
+                final var block = signatureBlock(identity, signatureValue);
+                try (final var output = opener.open(String.format("%s%s.%s", META_INF, identity.signerName, identity.blockExtension))) { // NOI18N.
+                    output.write(block);
+                }
+            }
+        } finally {
+            if (spoolFile != null) {
+                Files.deleteIfExists(spoolFile);
+            }
+        }
+    }
+
+    /**
+     * Digests a window of entries on the pool and writes their sections in entry order.
+     * @param window The tasks.
+     * @param manifestWriter The manifest writer.
+     * @throws IOException In case of IO errors.
+     * @throws InterruptedException If the current thread was interrupted.
+     */
+    private static void writeSections(final List<Callable<Section>> window, final StreamingManifestWriter manifestWriter) throws IOException, InterruptedException {
+        for (final var future : POOL.invokeAll(window)) {
+            final Section section;
+            try {
+                section = future.get();
+            } catch (ExecutionException ex) {
+                final var cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException(cause);
+            }
+            manifestWriter.addSection(section.name, section.bytes, section.digest, section.signatureAttributes);
+        }
+    }
+
+    /**
+     * Digests an entry and renders its manifest section; runs on the pool.
+     * @param archive The entries of the source file.
+     * @param entry The entry.
+     * @param raw The section of the entry in the source manifest, may be {@code null}.
+     * @param recorded What a previous signature recorded about the entry, may be {@code null}.
+     * @return A {@code Section} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private Section digestEntry(final Archive archive, final ZipEntry entry, final byte[] raw, final Evidence recorded) throws IOException {
+        final Map<String, String> signatureAttributes = new LinkedHashMap<>();
+        if (reuseDigests && entry.getCrc() >= 0 && entry.getSize() >= 0) {
+            signatureAttributes.put(ENTRY_CRC_ATTRIBUTE, String.valueOf(entry.getCrc()));
+            signatureAttributes.put(ENTRY_SIZE_ATTRIBUTE, String.valueOf(entry.getSize()));
+        }
+        if (raw != null && recorded != null && recorded.crc == entry.getCrc() && recorded.size == entry.getSize()) {
+            // The section is the one that was signed and the central directory still matches the entry it was computed from.
+            // CRC-32 is not a cryptographic hash: an entry replaced on purpose keeps its old digest and fails verification.
+            final var sectionDigest = StreamingManifestWriter.digest().digest(raw);
+            if (MessageDigest.isEqual(sectionDigest, recorded.sectionDigest)) {
+                return new Section(entry.getName(), raw, sectionDigest, signatureAttributes);
+            }
+        }
+        final var digest = StreamingManifestWriter.digest();
+        final var buffer = new byte[BUFFER_SIZE];
+        try (final var input = archive.getInputStream(entry)) {
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        final var section = section(entry.getName(), raw, Base64.getEncoder().encodeToString(digest.digest()));
+        return new Section(section.name, section.bytes, section.digest, signatureAttributes);
+    }
+
+    /**
+     * Reads what previous signatures by this class recorded in their {@code .SF} files.
+     * @param archive The entries of the source file.
+     * @return A {@code Map<String, Evidence>} instance, by entry name, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private static Map<String, Evidence> readEvidence(final Archive archive) throws IOException {
+        final var result = new HashMap<String, Evidence>();
+        for (final var entries = archive.entries(); entries.hasMoreElements();) {
+            final var entry = entries.nextElement();
+            if (!isSignatureRelated(entry.getName()) || !entry.getName().toUpperCase(Locale.ENGLISH).endsWith(".SF")) { // NOI18N.
+                continue;
+            }
+            final byte[] signatureFile;
+            try (final var input = archive.getInputStream(entry)) {
+                signatureFile = input.readAllBytes();
+            }
+            final var sections = splitSections(signatureFile);
+            for (final var section : sections.subList(1, sections.size())) {
+                final var attributes = attributes(section);
+                final var name = attributes.get(NAME_ATTRIBUTE);
+                final var sectionDigest = attributes.get(StreamingManifestWriter.DIGEST_ATTRIBUTE);
+                final var crc = attributes.get(ENTRY_CRC_ATTRIBUTE);
+                final var size = attributes.get(ENTRY_SIZE_ATTRIBUTE);
+                if (name == null || sectionDigest == null || crc == null || size == null) {
+                    continue;
+                }
+                try {
+                    result.putIfAbsent(name, new Evidence(Base64.getDecoder().decode(sectionDigest), Long.parseLong(crc), Long.parseLong(size)));
+                } catch (IllegalArgumentException ex) {
+                    // Malformed values, the entry is digested again.
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renders a manifest section.
+     * @param name The entry name.
+     * @param raw The section of the entry in the source manifest, may be {@code null}.
+     * @param entryDigest The Base64 digest of the entry, {@code null} to keep the existing section as is.
+     * @return A {@code Section} instance, never {@code null}.
+     */
+    private static Section section(final String name, final byte[] raw, final String entryDigest) {
+        final var attributes = (raw == null) ? new LinkedHashMap<String, String>() : attributes(raw);
+        attributes.remove(NAME_ATTRIBUTE);
+        final var existingDigest = attributes.keySet().stream()
+                .filter(StreamingManifestWriter.DIGEST_ATTRIBUTE::equalsIgnoreCase)
+                .findFirst()
+                .orElse(null);
+        if (raw != null && (entryDigest == null || (existingDigest != null && entryDigest.equals(attributes.get(existingDigest))))) {
+            return new Section(name, raw, StreamingManifestWriter.digest().digest(raw));
+        }
+        if (entryDigest != null) {
+            // Digests of other algorithms belong to other signers and are kept.
+            attributes.remove(existingDigest);
+            attributes.put(StreamingManifestWriter.DIGEST_ATTRIBUTE, entryDigest);
+        }
+        final var output = new ByteArrayOutputStream(128);
+        output.writeBytes(StreamingManifestWriter.attribute(NAME_ATTRIBUTE, name));
+        for (final Map.Entry<String, String> attribute : attributes.entrySet()) {
+            output.writeBytes(StreamingManifestWriter.attribute(attribute.getKey(), attribute.getValue()));
+        }
+        output.writeBytes(StreamingManifestWriter.NEWLINE);
+        final var bytes = output.toByteArray();
+        return new Section(name, bytes, StreamingManifestWriter.digest().digest(bytes));
+    }
+
+    /**
+     * Generates the PKCS #7 signature block of a {@code .SF} file.
+     * @param identity The signer.
+     * @param signatureValue The signature of the {@code .SF} file.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws InterruptedException If the current thread was interrupted while waiting for the TSA.
+     * @throws JarSignerException If the signature or the timestamp cannot be generated.
+     */
+    private byte[] signatureBlock(final Identity identity, final byte[] signatureValue) throws InterruptedException, JarSignerException {
+        final var der = DerUtils.INSTANCE;
+        try {
+            byte[] unsignedAttributes = null;
+            if (timeStampClient != null) {
+                final var token = timeStampClient.timestamp(TimeStampClient.SHA256_OID, StreamingManifestWriter.digest().digest(signatureValue));
+                unsignedAttributes = der.implicit(1, der.set(der.sequence(der.oid(TIME_STAMP_TOKEN_OID), der.set(token))));
+            }
+            final var signer = identity.chain.get(0);
+            final var sha256 = der.algorithm(TimeStampClient.SHA256_OID, false);
+            final var signerInfo = der.sequence(
+                    der.integer(1),
+                    der.sequence(signer.getIssuerX500Principal().getEncoded(), der.integer(signer.getSerialNumber())),
+                    sha256,
+                    der.algorithm(identity.signatureAlgorithmOid, "RSA".equals(identity.blockExtension)), // NOI18N.
+                    der.octetString(signatureValue),
+                    unsignedAttributes);
+            final var certificates = new ByteArrayOutputStream();
+            for (final var certificate : identity.chain) {
+                certificates.writeBytes(certificate.getEncoded());
+            }
+            final var signedData = der.sequence(
+                    der.integer(1),
+                    der.set(sha256),
+                    der.sequence(der.oid(DATA_OID)),
+                    der.encode(DerUtils.CONTEXT | DerUtils.CONSTRUCTED, certificates.toByteArray()),
+                    der.set(signerInfo));
+            return der.sequence(der.oid(TimeStampClient.SIGNED_DATA_OID), der.explicit(0, signedData));
+        } catch (GeneralSecurityException ex) {
+            throw new JarSignerException("Error creating signature", ex); // NOI18N.
+        } catch (IOException ex) {
+            throw new JarSignerException("Error applying timestamp", ex); // NOI18N.
+        }
+    }
+
+    /**
+     * Splits a manifest in sections; each section keeps its line breaks and its trailing blank lines.
+     * @param manifest The manifest.
+     * @return A {@code List<byte[]>} instance, main section first, never {@code null} nor empty.
+     */
+    private static List<byte[]> splitSections(final byte[] manifest) {
+        final var result = new ArrayList<byte[]>();
+        int start = 0;
+        boolean lineStart = true;
+        boolean blank = false;
+        for (int position = 0; position < manifest.length;) {
+            final byte value = manifest[position];
+            if (value != '\r' && value != '\n') {
+                if (blank) {
+                    // A new section starts after one or more blank lines.
+                    result.add(Arrays.copyOfRange(manifest, start, position));
+                    start = position;
+                    blank = false;
+                }
+                lineStart = false;
+                position++;
+                continue;
+            }
+            position += (value == '\r' && position + 1 < manifest.length && manifest[position + 1] == '\n') ? 2 : 1;
+            blank |= lineStart;
+            lineStart = true;
+        }
+        result.add(Arrays.copyOfRange(manifest, start, manifest.length));
+        return result;
+    }
+
+    /**
+     * Parses the attributes of a section.
+     * @param section The section.
+     * @return A {@code Map<String, String>} instance in section order, {@code Name} included, never {@code null}.
+     */
+    private static Map<String, String> attributes(final byte[] section) {
+        // Join continuation lines before decoding, a character may be split between two lines.
+        final var joined = new ByteArrayOutputStream(section.length);
+        for (int position = 0; position < section.length; position++) {
+            final byte value = section[position];
+            if (value == '\r' || value == '\n') {
+                int next = position + 1;
+                if (value == '\r' && next < section.length && section[next] == '\n') {
+                    next++;
+                }
+                if (next < section.length && section[next] == ' ') {
+                    position = next;
+                    continue;
+                }
+            }
+            joined.write(value);
+        }
+        final var result = new LinkedHashMap<String, String>();
+        for (final var line : new String(joined.toByteArray(), StandardCharsets.UTF_8).split("\r\n|\n|\r")) { // NOI18N.
+            final int separator = line.indexOf(": "); // NOI18N.
+            if (separator > 0) {
+                result.put(line.substring(0, separator), line.substring(separator + 2));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Test whether a section ends with a blank line.
+     * @param section The section.
+     * @return {@code True} if the section ends with a blank line, {@code false} otherwise.
+     */
+    private static boolean endsWithBlankLine(final byte[] section) {
+        final var text = new String(section, StandardCharsets.ISO_8859_1);
+        return text.endsWith("\r\n\r\n") || text.endsWith("\n\n") || text.endsWith("\r\r"); // NOI18N.
+    }
+
+    /**
+     * Test whether an entry is the manifest or a signature file, which are not digested.
+     * @param name The entry name.
+     * @return {@code True} if the entry is signature related, {@code false} otherwise.
+     */
+    static boolean isSignatureRelated(final String name) {
+        final var upperName = name.toUpperCase(Locale.ENGLISH);
+        if (!upperName.startsWith(META_INF) || upperName.indexOf('/', META_INF.length()) >= 0) {
+            return false;
+        }
+        return upperName.equals(JarFile.MANIFEST_NAME)
+                || upperName.endsWith(".SF") // NOI18N.
+                || upperName.endsWith(".RSA") // NOI18N.
+                || upperName.endsWith(".DSA") // NOI18N.
+                || upperName.endsWith(".EC") // NOI18N.
+                || upperName.startsWith(META_INF + "SIG-"); // NOI18N.
+    }
+
+    /**
+     * Test whether an entry is not copied to the output: the manifest or a signature file of these signers, or any signature
+     * file when signatures are stripped.
+     * @param name The entry name.
+     * @return {@code True} if the entry is replaced, {@code false} otherwise.
+     */
+    private boolean isReplaced(final String name) {
+        if (name.equalsIgnoreCase(JarFile.MANIFEST_NAME) || (stripSignatures && isSignatureRelated(name))) {
+            return true;
+        }
+        if (!isSignatureRelated(name)) {
+            return false;
+        }
+        final var upperName = name.toUpperCase(Locale.ENGLISH);
+        for (final var identity : identities) {
+            final var prefix = META_INF + identity.signerName + '.';
+            if (upperName.startsWith(prefix) && upperName.indexOf('.', prefix.length()) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,189 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Writes a manifest section by section, as entries are digested, and prepares the matching {@code .SF} file.
+ * <br>Nothing is kept in memory but the digests: manifest sections go straight to the output, and the sections of the
+ * {@code .SF} file are spooled to a file until the digest of the whole manifest, which comes first, is known.
+ * <br>JAR files held in memory, ie: nested in another archive, spool the {@code .SF} file in memory instead.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class StreamingManifestWriter implements Closeable {
+
+    static final String DIGEST_ALGORITHM = "SHA-256"; // NOI18N.
+    static final String DIGEST_ATTRIBUTE = DIGEST_ALGORITHM + "-Digest"; // NOI18N.
+    static final byte[] NEWLINE = {'\r', '\n'};
+    private static final int LINE_LENGTH = 72;
+    private static final int BUFFER_SIZE = 16384;
+
+    private final OutputStream manifest;
+    private final Path spoolFile;
+    private final ByteArrayOutputStream memorySpool;
+    private final OutputStream spool;
+    private final MessageDigest manifestDigest = digest();
+    private final byte[] mainAttributesDigest;
+    private final String createdBy;
+    private byte[] manifestDigestValue;
+
+    /**
+     * Creates a new instance and writes the main section.
+     * @param manifest Receives the manifest; closed with this writer.
+     * @param spoolFile Temporary file that receives the sections of the {@code .SF} file; not deleted by this writer.
+     * <br>If {@code null}, the sections are spooled in memory.
+     * @param mainSection The main section, blank line included.
+     * @param createdBy Value of the {@code Created-By} attribute of the {@code .SF} file.
+     * @throws NullPointerException If {@code manifest}, {@code mainSection} or {@code createdBy} is {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    StreamingManifestWriter(final OutputStream manifest, final Path spoolFile, final byte[] mainSection, final String createdBy) throws NullPointerException, IOException {
+        Objects.requireNonNull(manifest);
+        Objects.requireNonNull(mainSection);
+        Objects.requireNonNull(createdBy);
+        this.manifest = manifest;
+        this.spoolFile = spoolFile;
+        this.createdBy = createdBy;
+        memorySpool = (spoolFile == null) ? new ByteArrayOutputStream() : null;
+        spool = (spoolFile == null) ? memorySpool : new BufferedOutputStream(Files.newOutputStream(spoolFile), BUFFER_SIZE);
+        manifest.write(mainSection);
+        manifestDigest.update(mainSection);
+        mainAttributesDigest = digest().digest(mainSection);
+    }
+
+    /**
+     * Adds a section.
+     * @param name The entry name.
+     * @param bytes The section, blank line included.
+     * @param digest The digest of the section.
+     * @throws IOException In case of IO errors.
+     */
+    void addSection(final String name, final byte[] bytes, final byte[] digest) throws IOException {
+        addSection(name, bytes, digest, Collections.emptyMap());
+    }
+
+    /**
+     * Adds a section.
+     * @param name The entry name.
+     * @param bytes The section, blank line included.
+     * @param digest The digest of the section.
+     * @param signatureAttributes Additional attributes of the section in the {@code .SF} file.
+     * @throws IOException In case of IO errors.
+     */
+    void addSection(final String name, final byte[] bytes, final byte[] digest, final Map<String, String> signatureAttributes) throws IOException {
+        manifest.write(bytes);
+        manifestDigest.update(bytes);
+        spool.write(attribute("Name", name)); // NOI18N.
+        spool.write(attribute(DIGEST_ATTRIBUTE, Base64.getEncoder().encodeToString(digest)));
+        for (final Map.Entry<String, String> attribute : signatureAttributes.entrySet()) {
+            spool.write(attribute(attribute.getKey(), attribute.getValue()));
+        }
+        spool.write(NEWLINE);
+    }
+
+    /**
+     * Ends the manifest.
+     * @throws IOException In case of IO errors.
+     */
+    @Override
+    public void close() throws IOException {
+        if (manifestDigestValue != null) {
+            return;
+        }
+        manifestDigestValue = manifestDigest.digest();
+        try (manifest) {
+            spool.close();
+        }
+    }
+
+    /**
+     * Writes the {@code .SF} file once the manifest is closed.
+     * @param output Receives the {@code .SF} file; not closed.
+     * @param signature Updated with the content of the {@code .SF} file.
+     * @throws IllegalStateException If the manifest is not closed.
+     * @throws IOException In case of IO errors.
+     * @throws SignatureException If {@code signature} is not initialized for signing.
+     */
+    void writeSignatureFile(final OutputStream output, final Signature signature) throws IllegalStateException, IOException, SignatureException {
+        if (manifestDigestValue == null) {
+            throw new IllegalStateException("Manifest is not closed."); // NOI18N.
+        }
+        final var encoder = Base64.getEncoder();
+        final var header = new ByteArrayOutputStream();
+        header.writeBytes(attribute("Signature-Version", "1.0")); // NOI18N.
+        header.writeBytes(attribute("Created-By", createdBy)); // NOI18N.
+        header.writeBytes(attribute(DIGEST_ALGORITHM + "-Digest-Manifest", encoder.encodeToString(manifestDigestValue))); // NOI18N.
+        header.writeBytes(attribute(DIGEST_ALGORITHM + "-Digest-Manifest-Main-Attributes", encoder.encodeToString(mainAttributesDigest))); // NOI18N.
+        header.writeBytes(NEWLINE);
+        final var bytes = header.toByteArray();
+        output.write(bytes);
+        signature.update(bytes);
+        if (memorySpool != null) {
+            final var sections = memorySpool.toByteArray();
+            output.write(sections);
+            signature.update(sections);
+            return;
+        }
+        final var buffer = new byte[BUFFER_SIZE];
+        try (final var input = Files.newInputStream(spoolFile)) {
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                output.write(buffer, 0, read);
+                signature.update(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Renders an attribute, wrapping lines at 72 bytes the way manifests require.
+     * @param name The name of the attribute.
+     * @param value The value of the attribute.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    static byte[] attribute(final String name, final String value) {
+        final var bytes = String.format("%s: %s", name, value).getBytes(StandardCharsets.UTF_8); // NOI18N.
+        final var output = new ByteArrayOutputStream(bytes.length + 2 * (1 + bytes.length / LINE_LENGTH));
+        int position = Math.min(LINE_LENGTH, bytes.length);
+        output.write(bytes, 0, position);
+        output.writeBytes(NEWLINE);
+        while (position < bytes.length) {
+            final int length = Math.min(LINE_LENGTH - 1, bytes.length - position);
+            output.write(' ');
+            output.write(bytes, position, length);
+            output.writeBytes(NEWLINE);
+            position += length;
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Creates a digest.
+     * @return A {@code MessageDigest} instance, never {@code null}.
+     */
+    static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (GeneralSecurityException ex) {
+            // SHA-256 is required on every Java platform.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jsign;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import net.jsign.DigestAlgorithm;
+import net.jsign.Signable;
+import net.jsign.pe.PEFile;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.cms.SignedData;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.CMSSignedData;
+
+/**
+ * In-process Authenticode verification of PE and MSI files.
+ * <br>A file is valid when one of its signatures, nested ones included, was made with our certificate and when the digest
+ * signed matches the digest of the file as it is now. The signature value and the certificate chain are not checked: this
+ * tells whether a file needs to be signed again, it is not a trust decision.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class AuthenticodeVerifier {
+
+    /**
+     * Result of the verification of a file.
+     */
+    public enum Status {
+        /**
+         * The file has no signature.
+         */
+        UNSIGNED,
+        /**
+         * The file is signed by our certificate and was not modified since.
+         */
+        VALID,
+        /**
+         * The file is only signed by other certificates and was not modified since.
+         */
+        OTHER_SIGNER,
+        /**
+         * The file was modified after it was signed.
+         */
+        INVALID;
+    }
+
+    /**
+     * Our certificate.
+     */
+    private final X509CertificateHolder certificate;
+
+    /**
+     * Creates a new instance.
+     * @param certificate Our certificate.
+     * @throws NullPointerException If {@code certificate} is {@code null}.
+     * @throws CertificateEncodingException If the certificate cannot be encoded.
+     */
+    public AuthenticodeVerifier(final X509Certificate certificate) throws NullPointerException, CertificateEncodingException {
+        Objects.requireNonNull(certificate);
+        try {
+            this.certificate = new X509CertificateHolder(certificate.getEncoded());
+        } catch (IOException ex) {
+            throw new CertificateEncodingException(ex);
+        }
+    }
+
+    /**
+     * Verifies a file.
+     * @param file The file.
+     * @return A {@code Status} instance, never {@code null}.
+     * @throws IOException In case of IO errors or if the file is not a PE or MSI file.
+     */
+    public Status verify(final Path file) throws IOException {
+        final var signable = JSignUtils.INSTANCE.open(file);
+        try {
+            final var signatures = signable.getSignatures();
+            if (signatures.isEmpty()) {
+                return Status.UNSIGNED;
+            }
+            final var signedDigests = new ArrayList<DigestInfo>(signatures.size());
+            final Set<DigestAlgorithm> algorithms = EnumSet.noneOf(DigestAlgorithm.class);
+            for (final var signature : signatures) {
+                final var signed = signedDigest(signature);
+                final var algorithm = (signed == null) ? null : DigestAlgorithm.of(signed.getAlgorithmId().getAlgorithm());
+                if (algorithm == null) {
+                    return Status.INVALID;
+                }
+                signedDigests.add(signed);
+                algorithms.add(algorithm);
+            }
+            // Digests of the file, by algorithm; PE files are read once for all algorithms.
+            final var fileDigests = fileDigests(file, signable, algorithms);
+            boolean ours = false;
+            for (int index = 0; index < signatures.size(); index++) {
+                final var signed = signedDigests.get(index);
+                final var fileDigest = fileDigests.get(DigestAlgorithm.of(signed.getAlgorithmId().getAlgorithm()));
+                if (!MessageDigest.isEqual(fileDigest, signed.getDigest())) {
+                    return Status.INVALID;
+                }
+                ours |= isOurs(signatures.get(index));
+            }
+            return ours ? Status.VALID : Status.OTHER_SIGNER;
+        } finally {
+            if (signable instanceof Closeable) {
+                ((Closeable) signable).close();
+            }
+        }
+    }
+
+    /**
+     * Computes the digests of a file.
+     * @param file The file.
+     * @param signable The opened file.
+     * @param algorithms The digest algorithms.
+     * @return A {@code Map<DigestAlgorithm, byte[]>} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private static Map<DigestAlgorithm, byte[]> fileDigests(final Path file, final Signable signable, final Set<DigestAlgorithm> algorithms) throws IOException {
+        final Map<DigestAlgorithm, byte[]> result = new EnumMap<>(DigestAlgorithm.class);
+        if (signable instanceof PEFile) {
+            final var digests = new ArrayList<MessageDigest>(algorithms.size());
+            algorithms.forEach(algorithm -> digests.add(algorithm.getMessageDigest()));
+            final var values = PEDigester.INSTANCE.digest(file, digests).iterator();
+            algorithms.forEach(algorithm -> result.put(algorithm, values.next()));
+        } else {
+            for (final var algorithm : algorithms) {
+                result.put(algorithm, signable.computeDigest(algorithm.getMessageDigest()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Test whether a signature was made with our certificate.
+     * @param signature The signature.
+     * @return {@code True} if a signer of {@code signature} is our certificate, {@code false} otherwise.
+     */
+    private boolean isOurs(final CMSSignedData signature) {
+        return signature.getSignerInfos()
+                .getSigners()
+                .stream()
+                .anyMatch(signer -> signer.getSID().match(certificate));
+    }
+
+    /**
+     * Extracts the digest of the file from the {@code SpcIndirectDataContent} of a signature.
+     * @param signature The signature.
+     * @return A {@code DigestInfo} instance, {@code null} if the signature is malformed.
+     */
+    private static DigestInfo signedDigest(final CMSSignedData signature) {
+        try {
+            final var signedData = SignedData.getInstance(signature.toASN1Structure().getContent());
+            final var content = signedData.getEncapContentInfo().getContent();
+            if (content == null) {
+                return null;
+            }
+            // SpcIndirectDataContent ::= SEQUENCE { data SpcAttributeTypeAndOptionalValue, messageDigest DigestInfo }
+            final var indirectData = ASN1Sequence.getInstance(content);
+            return (indirectData.size() < 2) ? null : DigestInfo.getInstance(indirectData.getObjectAt(1));
+        } catch (IllegalArgumentException | IllegalStateException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jsign;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import net.jsign.AuthenticodeSigner;
+
+/**
+ * Engine that checks and signs individual PE and MSI files on behalf of a {@code JSignProcess}.
+ * <br>The key store is loaded and the private key recovered once when the engine is created; the engine may be shared
+ * between threads and between processes.
+ * <br>Files are checked in-process against our certificate, see {@link AuthenticodeVerifier}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class JSignEngine {
+
+    /**
+     * The parameters object.
+     */
+    private final JSignParameters parameters;
+    private final PrivateKey key;
+    private final Certificate[] chain;
+    private final AuthenticodeVerifier verifier;
+    /**
+     * One signer per thread: signers are cheap to create but their timestamper is not thread-safe.
+     */
+    private final ThreadLocal<AuthenticodeSigner> signer = ThreadLocal.withInitial(this::createSigner);
+
+    /**
+     * Creates a new instance, loading the key store described by the parameters.
+     * @param parameters The parameters object.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     * @throws IOException In case of IO errors while reading the key store.
+     * @throws GeneralSecurityException If the key or certificate chain cannot be recovered from the key store.
+     */
+    public JSignEngine(final JSignParameters parameters) throws NullPointerException, IOException, GeneralSecurityException {
+        this(parameters, loadKeyStore(parameters));
+    }
+
+    /**
+     * Creates a new instance that uses an already loaded key store.
+     * @param parameters The parameters object.
+     * @param keyStore The loaded key store.
+     * @throws NullPointerException If {@code parameters} or {@code keyStore} is {@code null}.
+     * @throws GeneralSecurityException If the key or certificate chain cannot be recovered from the key store.
+     */
+    public JSignEngine(final JSignParameters parameters, final KeyStore keyStore) throws NullPointerException, GeneralSecurityException {
+        Objects.requireNonNull(parameters);
+        Objects.requireNonNull(keyStore);
+        this.parameters = parameters;
+        final var keyPass = (parameters.keypass == null || parameters.keypass.isEmpty()) ? parameters.password : parameters.keypass;
+        final var recovered = keyStore.getKey(parameters.alias, (keyPass == null) ? new char[0] : keyPass.toCharArray());
+        if (!(recovered instanceof PrivateKey)) {
+            throw new UnrecoverableKeyException(String.format("No private key found for alias \"%s\".", parameters.alias)); // NOI18N.
+        }
+        key = (PrivateKey) recovered;
+        chain = keyStore.getCertificateChain(parameters.alias);
+        if (chain == null || chain.length == 0) {
+            throw new UnrecoverableKeyException(String.format("No certificate chain found for alias \"%s\".", parameters.alias)); // NOI18N.
+        }
+        verifier = new AuthenticodeVerifier((X509Certificate) chain[0]);
+    }
+
+    /**
+     * Gets the certificate chain of the signer.
+     * @return A {@code Certificate[]} instance, never {@code null}.
+     */
+    public Certificate[] getCertificateChain() {
+        return chain.clone();
+    }
+
+    /**
+     * Loads the key store described by the parameters.
+     * @param parameters The parameters object.
+     * @return A {@code KeyStore} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     * @throws GeneralSecurityException If the key store cannot be loaded.
+     */
+    public static KeyStore loadKeyStore(final JSignParameters parameters) throws IOException, GeneralSecurityException {
+        final var result = KeyStore.getInstance("JKS"); // NOI18N.
+        final var keystoreFile = Paths.get(parameters.keystoreFilename);
+        try (final var input = Files.newInputStream(keystoreFile)) {
+            result.load(input, parameters.password.toCharArray());
+        }
+        return result;
+    }
+
+    /**
+     * Creates the signer of the current thread.
+     * @return An {@code AuthenticodeSigner} instance, never {@code null}.
+     */
+    private AuthenticodeSigner createSigner() {
+        var result = new AuthenticodeSigner(chain, key)
+                .withProgramName(parameters.programName)
+                .withProgramURL(parameters.programURL)
+                .withTimestamping(parameters.useTimeStamp);
+        if (parameters.useTimeStamp) {
+            // Timestamp requests share one keep-alive connection pool for the whole run.
+            final var proxyHost = parameters.useProxy ? parameters.proxyHost : null;
+            final var proxyPort = parameters.useProxy ? parameters.proxyPort : null;
+            result = result.withTimestamper(new PooledTimestamper(proxyHost, proxyPort))
+                    .withTimestampingAuthority(parameters.timeStampHost);
+        }
+        return result;
+    }
+
+    /**
+     * Verifies provided file against our certificate.
+     * @param file The target file.
+     * @return A {@code AuthenticodeVerifier.Status} instance, never {@code null}.
+     * @throws IOException In case of IO errors or if the file is not a PE or MSI file.
+     */
+    public AuthenticodeVerifier.Status verify(final Path file) throws IOException {
+        return verifier.verify(file);
+    }
+
+    /**
+     * Check if provided file is already signed by our certificate and unchanged since.
+     * @param file The target file.
+     * @return {@code True} if {@code file} has a valid signature by our certificate, {@code false} otherwise.
+     * @throws IOException In case of IO errors or if the file is not a PE or MSI file.
+     */
+    public boolean isFileSigned(final Path file) throws IOException {
+        return verifier.verify(file) == AuthenticodeVerifier.Status.VALID;
+    }
+
+    /**
+     * Sign provided file.
+     * @param file The target file.
+     * @param replace If {@code true}, existing signatures are replaced; otherwise ours is added to them.
+     * @throws Exception In case of errors.
+     */
+    public void signFile(final Path file, final boolean replace) throws Exception {
+        final var signable = JSignUtils.INSTANCE.open(file);
+        try {
+            // The signer is confined to the current thread.
+            signer.get()
+                    .withSignaturesReplaced(replace)
+                    .sign(signable);
+        } finally {
+            if (signable instanceof Closeable) {
+                ((Closeable) signable).close();
+            }
+        }
+    }
+}
@@ -26,6 +26,9 @@ public class JSignParameters {
     String proxyPort = "";
     boolean useTimeStamp = true;
     String timeStampHost = JSignUtils.DEFAULT_TIME_STAMP_HOST;
+    boolean incremental = false;
+    int threads = 1;
+    boolean verifyOnly = false;
     // Debug.
     boolean debugDirectoryWalk = false;
     boolean debugSignature = false;
@@ -50,6 +50,9 @@ public final class JSignParametersBuilder {
         result.proxyPort = delegated.proxyPort;
         result.useTimeStamp = delegated.useTimeStamp;
         result.timeStampHost = delegated.timeStampHost;
+        result.incremental = delegated.incremental;
+        result.threads = delegated.threads;
+        result.verifyOnly = delegated.verifyOnly;
         // Debug.
         result.debugDirectoryWalk = delegated.debugDirectoryWalk;
         result.debugSignature = delegated.debugSignature;
@@ -125,6 +128,21 @@ public final class JSignParametersBuilder {
         delegated.timeStampHost = value;
         return this;
     }
+
+    public JSignParametersBuilder incremental(final boolean value) {
+        delegated.incremental = value;
+        return this;
+    }
+
+    public JSignParametersBuilder threads(final int value) {
+        delegated.threads = Math.max(1, value);
+        return this;
+    }
+
+    public JSignParametersBuilder verifyOnly(final boolean value) {
+        delegated.verifyOnly = value;
+        return this;
+    }
     // Debug.
 
     public JSignParametersBuilder debugDirectoryWalk(final boolean value) {
@@ -5,19 +5,29 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.signature.jsign;
 
-import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyStore;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
-import net.jsign.AuthenticodeSigner;
-import net.jsign.pe.PEFile;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import org.spc.ofp.project.authorize.io.FileWalker;
 import org.spc.ofp.project.authorize.io.IOUtils;
+import org.spc.ofp.project.authorize.signature.SignatureIndex;
 import org.spc.ofp.project.authorize.signature.SignatureProcessBase;
 import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.TimeStampClient;
 
 /**
  * Handles file signing Windows native exec using <a href="http://ebourg.github.io/jsign/">JSign</a>.
+ * <br>The target is either a single file or a directory; directories are walked and every native executable and installer
+ * found is signed, see {@link JSignUtils#isSignable(String)}.
+ * <br>Files already signed by our certificate and unchanged since are skipped, see {@link AuthenticodeVerifier}; in verify-only
+ * mode, nothing is signed and the status of every file is reported instead.
  * @author Fabrice Bouyé (fabriceb@spc.int)
  */
 public final class JSignProcess extends SignatureProcessBase {
@@ -26,6 +36,10 @@ public final class JSignProcess extends SignatureProcessBase {
      * The parameters object.
      */
     private final JSignParameters parameters;
+    /**
+     * The engine used to check and sign files; created when the process starts unless one was provided.
+     */
+    private JSignEngine engine;
 
     /**
      * Creates a new instance.
@@ -34,9 +48,22 @@ public final class JSignProcess extends SignatureProcessBase {
      * @throws NullPointerException If {@code parameters} is {@code null}.
      */
     public JSignProcess(final JSignParameters parameters, final SignatureProcessMonitor monitor) throws NullPointerException {
+        this(parameters, null, monitor);
+    }
+
+    /**
+     * Creates a new instance that reuses an existing engine.
+     * @param parameters The parameters object.
+     * @param engine The engine to use, may be {@code null}.
+     * <br>If {@code null}, a new engine is created from {@code parameters} when the process starts.
+     * @param monitor A monitor interested in the progress of this process, may be {@code null}.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public JSignProcess(final JSignParameters parameters, final JSignEngine engine, final SignatureProcessMonitor monitor) throws NullPointerException {
         super(monitor);
         Objects.requireNonNull(parameters);
         this.parameters = parameters;
+        this.engine = engine;
     }
 
     @Override
@@ -46,57 +73,134 @@ public final class JSignProcess extends SignatureProcessBase {
             return;
         }
         updateMessage("Initializing."); // NOI18N.
-        final int totalProgress = 5;
-        int currentProgress = 0;
-        // Create keystore.
-        updateMessage("Create key store.");
-        final var keyStore = KeyStore.getInstance("JKS"); // NOI18N.
-        updateProgress(++currentProgress, totalProgress);
+        final var root = Paths.get(parameters.filename);
+        // Key store and signer are created once for the whole tree.
+        if (engine == null) {
+            updateMessage("Loading key store."); // NOI18N.
+            engine = new JSignEngine(parameters);
+        }
         if (isCancelled()) {
             return;
         }
-        // Open & load keystore file.
-        updateMessage("Loading key store."); // NOI18N.
-        final var keystoreFile = Paths.get(parameters.keystoreFilename);
-        try (final var input = Files.newInputStream(keystoreFile)) {
-            keyStore.load(input, parameters.password.toCharArray());
+        // Run signing task.
+        updateMessage("Running task."); // NOI18N.
+        final var index = (parameters.incremental && !parameters.verifyOnly)
+                ? SignatureIndex.open(root, SignatureIndex.identity(Collections.singletonList(engine.getCertificateChain()), false))
+                : null;
+        runTask(parameters.threads, "jsign-worker-%d", index, () -> impl_sign(root)); // NOI18N.
+        if (parameters.verifyOnly) {
+            updateMessage(String.format("%d files verified: %d valid, %d unsigned, %d signed by other certificates, %d modified after signing.", // NOI18N.
+                    getProcessedCount(),
+                    report.get(AuthenticodeVerifier.Status.VALID).get(),
+                    report.get(AuthenticodeVerifier.Status.UNSIGNED).get(),
+                    report.get(AuthenticodeVerifier.Status.OTHER_SIGNER).get(),
+                    report.get(AuthenticodeVerifier.Status.INVALID).get()));
+        } else if (parameters.useTimeStamp && parameters.debugCommand) {
+            final var client = TimeStampClient.of(parameters.timeStampHost, parameters.useProxy ? parameters.proxyHost : null, parameters.useProxy ? parameters.proxyPort : null);
+            parameters.logger.log(Level.INFO, "Timestamps: {0}", client.getStatistics());
         }
-        updateProgress(++currentProgress, totalProgress);
-        if (isCancelled()) {
-            return;
+        throwFailure();
+    }
+
+    /**
+     * Number of files by status.
+     */
+    private final Map<AuthenticodeVerifier.Status, AtomicInteger> report = newReport();
+
+    /**
+     * Creates an empty report.
+     * @return A {@code Map<AuthenticodeVerifier.Status, AtomicInteger>} instance, never {@code null}.
+     */
+    private static Map<AuthenticodeVerifier.Status, AtomicInteger> newReport() {
+        final Map<AuthenticodeVerifier.Status, AtomicInteger> result = new EnumMap<>(AuthenticodeVerifier.Status.class);
+        for (final var status : AuthenticodeVerifier.Status.values()) {
+            result.put(status, new AtomicInteger());
         }
-        // Create signer.
-        updateMessage("Creating signer."); // NOI18N.
-        var signer = new AuthenticodeSigner(keyStore, parameters.alias, parameters.keypass)
-                .withProgramName(parameters.programName)
-                .withProgramURL(parameters.programURL)
-//                .withContactEmail(parameters.programEmail)
-                .withTimestamping(parameters.useTimeStamp);
-        if (parameters.useTimeStamp) {
-            signer = signer.withTimestampingAuthority(parameters.timeStampHost);
+        return result;
+    }
+
+    /**
+     * Gets the number of files by status, once the process is over.
+     * <br>In verify-only mode, this is the report; otherwise it is the status of files before they were signed.
+     * @return A {@code Map<AuthenticodeVerifier.Status, Integer>} instance, never {@code null}.
+     */
+    public Map<AuthenticodeVerifier.Status, Integer> getReport() {
+        final Map<AuthenticodeVerifier.Status, Integer> result = new EnumMap<>(AuthenticodeVerifier.Status.class);
+        report.forEach((status, count) -> result.put(status, count.get()));
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * The current signing process.
+     * <br>The tree is walked once in a separate thread; files are consumed as soon as they are discovered:
+     * <ul>
+     * <li>Check if the file is already signed:</li>
+     * <ul>
+     * <li>If true, do nothing.</li>
+     * <li>If false, sign the file.</li>
+     * </ul>
+     * </ul>
+     * @param root The file or directory to sign.
+     * @throws Exception In case of errors.
+     */
+    private void impl_sign(final Path root) throws Exception {
+        // A file given explicitly is signed whatever its extension.
+        walk(root, (file, attributes) -> file.equals(root) || acceptFile(file, attributes), entry -> execute(entry, this::signFile));
+    }
+
+    /**
+     * Filter used by the walker; called from the walking thread for every regular file in the tree.
+     * @param file The file.
+     * @param attributes The attributes of the file.
+     * @return {@code True} if the file needs to be checked and signed, {@code false} otherwise.
+     */
+    private boolean acceptFile(final Path file, final BasicFileAttributes attributes) {
+        if (parameters.debugDirectoryWalk) {
+            final var message = String.format("File \"%s\"", file.toString()); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
         }
-        updateProgress(++currentProgress, totalProgress);
-        if (isCancelled()) {
+        return JSignUtils.INSTANCE.isSignable(file.getFileName().toString());
+    }
+
+    /**
+     * Check and sign a single file, then update progress.
+     * <br>May be called concurrently from worker threads.
+     * @param entry The file, with the attributes read during the walk.
+     * @throws Exception In case of errors.
+     */
+    private void signFile(final FileWalker.Entry entry) throws Exception {
+        final var file = entry.getPath();
+        updateMessage(file.toString());
+        // Unchanged since last run, skip without opening the file.
+        if (skipUnchanged(entry, parameters.debugSignature, parameters.logger)) {
             return;
         }
-        // Create file to be signed.
-        updateMessage("Preparing target file."); // NOI18N.
-        final var targetFile = Paths.get(parameters.filename);
-        if (!Files.isWritable(targetFile)) {
-            IOUtils.INSTANCE.setWritable(targetFile);
+        final var status = engine.verify(file);
+        report.get(status).incrementAndGet();
+        if (parameters.debugSignature || (parameters.verifyOnly && status != AuthenticodeVerifier.Status.VALID)) {
+            final var message = String.format("File \"%s\": %s.", file.toString(), status); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
         }
-        final var pefTargetFile = new PEFile(targetFile.toFile());
-        updateProgress(++currentProgress, totalProgress);
-        if (isCancelled()) {
+        if (parameters.verifyOnly) {
+            fileDone();
             return;
         }
-        // Sign file.
-        updateMessage("Signing file."); // NOI18N.
-        signer.sign(pefTargetFile);
-        updateProgress(++currentProgress, totalProgress);
-        // @todo Check signature?
-        if (isCancelled()) {
-            return;
+        if (status != AuthenticodeVerifier.Status.VALID) {
+            if (!Files.isWritable(file)) {
+                IOUtils.INSTANCE.setWritable(file);
+            }
+            // Signatures broken by a modification are replaced, ours is added next to valid ones of other signers.
+            engine.signFile(file, status == AuthenticodeVerifier.Status.INVALID);
+            final var message = String.format("File \"%s\" signed.", file.toString()); // NOI18N.
+            updateMessage(message);
+        }
+        final var index = getIndex();
+        if (index != null) {
+            index.markSigned(file);
         }
+        //
+        fileDone();
     }
 }
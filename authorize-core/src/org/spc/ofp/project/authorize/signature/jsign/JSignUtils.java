@@ -5,6 +5,12 @@
  ***********************************************************************/
 package org.spc.ofp.project.authorize.signature.jsign;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import net.jsign.Signable;
+import net.jsign.pe.PEFile;
 import org.spc.ofp.project.authorize.signature.SignUtils;
 
 /**
@@ -21,4 +27,33 @@ public enum JSignUtils {
      * Default timestamp host, value is "{@value}".
      */
     public static final String DEFAULT_TIME_STAMP_HOST = SignUtils.DEFAULT_TIME_STAMP_HOST;
+
+    /**
+     * Extensions of the native executables (PE) and installers (MSI) signed when walking a tree.
+     */
+    private static final Set<String> SIGNABLE_EXTENSIONS = Set.of(
+            "exe", "dll", "sys", "ocx", "scr", "cpl", "drv", "efi", "mui", // NOI18N.
+            "msi", "msm", "msp"); // NOI18N.
+
+    /**
+     * Test whether a file is signed with JSign when walking a tree, from its name.
+     * @param filename The file name.
+     * @return {@code True} if the file is a native executable or an installer, {@code false} otherwise.
+     */
+    public boolean isSignable(final String filename) {
+        final int dot = filename.lastIndexOf('.');
+        return dot >= 0 && SIGNABLE_EXTENSIONS.contains(filename.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Opens a file for signing or verification.
+     * <br>PE files are hashed in large read-ahead windows, see {@link PEDigester}.
+     * @param file The file.
+     * @return A {@code Signable} instance, never {@code null}.
+     * @throws IOException In case of IO errors or if the file is not a PE or MSI file.
+     */
+    public Signable open(final Path file) throws IOException {
+        final var ioFile = file.toFile();
+        return PEFile.isPEFile(ioFile) ? new WindowedPEFile(file) : Signable.of(ioFile);
+    }
 }
@@ -0,0 +1,272 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jsign;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the Authenticode digest of PE files, reading the image in large windows.
+ * <br>Windows are read through the channel into direct buffers, nothing is mapped: JSign truncates and rewrites the file
+ * when it signs it, which fails on Windows while a mapping of the file is alive. The checksum field, the certificate table
+ * entry and the certificate table are skipped by slicing the windows.
+ * <br>The Authenticode digest is a single hash over the whole image and cannot be split; instead, the next window is
+ * read while the current one is hashed, and several digests of the same file are computed concurrently in one pass.
+ * <br>Digests are the same as the ones computed by JSign's {@code PEFile}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum PEDigester {
+    /**
+     * Unique instance of this class.
+     */
+    INSTANCE;
+
+    /**
+     * Size of the windows.
+     */
+    private static final int WINDOW_SIZE = 4 * 1024 * 1024;
+    /**
+     * Offset of the PE header offset in the DOS header.
+     */
+    private static final int PE_OFFSET_OFFSET = 0x3C;
+    /**
+     * The PE signature, {@code PE\0\0}.
+     */
+    private static final int PE_SIGNATURE = 0x00004550;
+    private static final int PE32_MAGIC = 0x010B;
+    private static final int PE32_PLUS_MAGIC = 0x020B;
+    /**
+     * Index of the certificate table in the data directories.
+     */
+    private static final int CERTIFICATE_TABLE = 4;
+    /**
+     * Pool used to page in windows ahead and to update several digests concurrently.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+    /**
+     * The two windows of the current thread: one is hashed while the other is read.
+     */
+    private static final ThreadLocal<ByteBuffer[]> WINDOWS = ThreadLocal.withInitial(() -> new ByteBuffer[]{
+        ByteBuffer.allocateDirect(WINDOW_SIZE),
+        ByteBuffer.allocateDirect(WINDOW_SIZE)
+    });
+
+    /**
+     * Computes the Authenticode digest of a PE file.
+     * @param file The file.
+     * @param digest The digest to update; it is reset once the digest has been computed.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws NullPointerException If {@code file} or {@code digest} is {@code null}.
+     * @throws IOException In case of IO errors or if the file is not a PE file.
+     */
+    public byte[] digest(final Path file, final MessageDigest digest) throws NullPointerException, IOException {
+        Objects.requireNonNull(digest);
+        return digest(file, List.of(digest)).get(0);
+    }
+
+    /**
+     * Computes several Authenticode digests of a PE file in a single pass.
+     * @param file The file.
+     * @param digests The digests to update; they are reset once the digests have been computed.
+     * @return A {@code List<byte[]>} instance, never {@code null}; in the same order as {@code digests}.
+     * @throws NullPointerException If {@code file} or {@code digests} is {@code null}.
+     * @throws IOException In case of IO errors or if the file is not a PE file.
+     */
+    public List<byte[]> digest(final Path file, final List<MessageDigest> digests) throws NullPointerException, IOException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(digests);
+        try (final var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final var ranges = ranges(channel, size);
+            final var windows = WINDOWS.get();
+            read(channel, windows[0], 0, size);
+            int current = 0;
+            for (long position = 0; position < size; position += WINDOW_SIZE) {
+                final var window = windows[current];
+                // Read the next window while this one is hashed.
+                final long next = position + WINDOW_SIZE;
+                final var nextWindow = windows[1 - current];
+                final Future<?> prefetch = (next < size) ? POOL.submit(() -> read(channel, nextWindow, next, size)) : null;
+                try {
+                    final var slices = slices(window, position, ranges);
+                    if (digests.size() == 1) {
+                        update(digests.get(0), slices);
+                    } else {
+                        final var tasks = new ArrayList<ForkJoinTask<?>>(digests.size());
+                        for (final var digest : digests) {
+                            tasks.add(POOL.submit(() -> update(digest, slices)));
+                        }
+                        tasks.forEach(ForkJoinTask::join);
+                    }
+                } finally {
+                    // The window and the channel must not be released while being read.
+                    join(prefetch);
+                }
+                current = 1 - current;
+            }
+        }
+        final var result = new ArrayList<byte[]>(digests.size());
+        for (final var digest : digests) {
+            result.add(digest.digest());
+        }
+        return result;
+    }
+
+    /**
+     * Reads the window starting at given position.
+     * @param channel The channel.
+     * @param window The window, flipped once read.
+     * @param position The position of the window.
+     * @param size The size of the file.
+     * @return {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private static Void read(final FileChannel channel, final ByteBuffer window, final long position, final long size) throws IOException {
+        window.clear().limit((int) Math.min(WINDOW_SIZE, size - position));
+        while (window.hasRemaining()) {
+            if (channel.read(window, position + window.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        window.flip();
+        return null;
+    }
+
+    /**
+     * Waits for a read to complete, even if the current thread is interrupted, since the window is reused afterwards.
+     * @param prefetch The read, may be {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private static void join(final Future<?> prefetch) throws IOException {
+        if (prefetch == null) {
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    prefetch.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            final var cause = ex.getCause();
+            throw (cause instanceof IOException) ? (IOException) cause : new IOException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Updates a digest with slices of a window.
+     * @param digest The digest.
+     * @param slices The slices; they are consumed on a duplicate so they may be shared between digests.
+     */
+    private static void update(final MessageDigest digest, final List<ByteBuffer> slices) {
+        for (final var slice : slices) {
+            digest.update(slice.duplicate());
+        }
+    }
+
+    /**
+     * Cuts the hashed ranges that fall into a window.
+     * @param window The window.
+     * @param position The position of the window in the file.
+     * @param ranges The hashed ranges, as pairs of start (inclusive) and end (exclusive) positions in the file.
+     * @return A {@code List<ByteBuffer>} instance, never {@code null}.
+     */
+    private static List<ByteBuffer> slices(final ByteBuffer window, final long position, final long[] ranges) {
+        final long end = position + window.limit();
+        final var result = new ArrayList<ByteBuffer>(ranges.length / 2);
+        for (int index = 0; index < ranges.length; index += 2) {
+            final long from = Math.max(ranges[index], position);
+            final long to = Math.min(ranges[index + 1], end);
+            if (from < to) {
+                result.add(window.duplicate()
+                        .position((int) (from - position))
+                        .limit((int) (to - position)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the ranges of the file covered by the Authenticode digest.
+     * @param channel The channel.
+     * @param size The size of the file.
+     * @return A {@code long[]} instance, never {@code null}; pairs of start (inclusive) and end (exclusive) positions.
+     * @throws IOException In case of IO errors or if the file is not a PE file.
+     */
+    private static long[] ranges(final FileChannel channel, final long size) throws IOException {
+        final long peOffset = Integer.toUnsignedLong(readInt(channel, PE_OFFSET_OFFSET));
+        if (readInt(channel, peOffset) != PE_SIGNATURE) {
+            throw new IOException("Not a PE file."); // NOI18N.
+        }
+        final long optionalHeader = peOffset + 24;
+        final int magic = readInt(channel, optionalHeader) & 0xFFFF;
+        final long dataDirectories;
+        switch (magic) {
+            case PE32_MAGIC:
+                dataDirectories = optionalHeader + 96;
+                break;
+            case PE32_PLUS_MAGIC:
+                dataDirectories = optionalHeader + 112;
+                break;
+            default:
+                throw new IOException(String.format("Unsupported PE format 0x%04X.", magic)); // NOI18N.
+        }
+        final long checksum = optionalHeader + 64;
+        final long certificateEntry = dataDirectories + 8 * CERTIFICATE_TABLE;
+        final int directoryCount = readInt(channel, dataDirectories - 4);
+        long certificateTable = 0;
+        long certificateSize = 0;
+        if (Integer.compareUnsigned(CERTIFICATE_TABLE, directoryCount) < 0) {
+            certificateTable = Integer.toUnsignedLong(readInt(channel, certificateEntry));
+            certificateSize = Integer.toUnsignedLong(readInt(channel, certificateEntry + 4));
+        }
+        if (certificateTable == 0 || certificateSize == 0) {
+            return new long[]{0, checksum, checksum + 4, certificateEntry, certificateEntry + 8, size};
+        }
+        if (certificateTable < certificateEntry + 8 || certificateTable + certificateSize > size) {
+            throw new IOException("Malformed certificate table."); // NOI18N.
+        }
+        return new long[]{0, checksum, checksum + 4, certificateEntry, certificateEntry + 8, certificateTable, certificateTable + certificateSize, size};
+    }
+
+    /**
+     * Reads a little-endian 32-bit value.
+     * @param channel The channel.
+     * @param position The position of the value.
+     * @return An {@code int}.
+     * @throws IOException In case of IO errors or if the file is too short.
+     */
+    private static int readInt(final FileChannel channel, final long position) throws IOException {
+        final var buffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Not a PE file."); // NOI18N.
+            }
+        }
+        return buffer.getInt(0);
+    }
+}
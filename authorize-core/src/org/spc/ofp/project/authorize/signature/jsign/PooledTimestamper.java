@@ -0,0 +1,52 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jsign;
+
+import java.io.IOException;
+import net.jsign.DigestAlgorithm;
+import net.jsign.timestamp.RFC3161Timestamper;
+import net.jsign.timestamp.TimestampingException;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.spc.ofp.project.authorize.signature.TimeStampClient;
+
+/**
+ * RFC 3161 timestamper that sends its requests through the shared {@code TimeStampClient} instead of opening a new connection for each signature.
+ * <br>Retries and fallback between TSAs are still handled by JSign.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class PooledTimestamper extends RFC3161Timestamper {
+
+    private final String proxyHost;
+    private final String proxyPort;
+
+    /**
+     * Creates a new instance.
+     * @param proxyHost The proxy host, may be {@code null}.
+     * @param proxyPort The proxy port, may be {@code null}.
+     */
+    PooledTimestamper(final String proxyHost, final String proxyPort) {
+        this.proxyHost = proxyHost;
+        this.proxyPort = proxyPort;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected CMSSignedData timestamp(final DigestAlgorithm algo, final byte[] encryptedDigest) throws IOException, TimestampingException {
+        final var client = TimeStampClient.of(tsaurl.toString(), proxyHost, proxyPort);
+        try {
+            final var token = client.timestamp(algo.oid.getId(), algo.getMessageDigest().digest(encryptedDigest));
+            return new CMSSignedData(token);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TimestampingException("Interrupted while waiting for the TSA."); // NOI18N.
+        } catch (CMSException ex) {
+            throw new TimestampingException(ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jsign;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import net.jsign.pe.PEFile;
+
+/**
+ * A {@code PEFile} whose Authenticode digest is computed by the {@link PEDigester}, in large read-ahead windows.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class WindowedPEFile extends PEFile {
+
+    /**
+     * The file.
+     */
+    private final Path file;
+
+    /**
+     * Creates a new instance.
+     * @param file The file.
+     * @throws IOException In case of IO errors or if the file is not a PE file.
+     */
+    WindowedPEFile(final Path file) throws IOException {
+        super(file.toFile());
+        this.file = file;
+    }
+
+    @Override
+    public synchronized byte[] computeDigest(final MessageDigest digest) throws IOException {
+        // Writes made by JSign through its channel, such as padding, are visible to the channel of the digester.
+        return PEDigester.INSTANCE.digest(file, digest);
+    }
+}
@@ -0,0 +1,174 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.mixed;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs signing tasks in dependency order while the tree is still being walked.
+ * <br>Tasks are grouped by container, ie: a jpackage application image: tasks that belong to a container run as soon as
+ * they are submitted, in parallel; tasks that depend on a container, ie: the native launcher of the image, only run once
+ * every task of the container has completed and the walk is over, since more content may be discovered until then.
+ * <br>Tasks run on the executor, or on the submitting thread in sequential mode.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class DependencyScheduler {
+
+    /**
+     * State of a container.
+     */
+    private static final class Container {
+
+        /**
+         * Number of tasks of the container that are not completed yet.
+         */
+        private int pending = 0;
+        /**
+         * Tasks waiting on the container.
+         */
+        private final List<Runnable> waiting = new ArrayList<>();
+    }
+
+    /**
+     * The executor, {@code null} in sequential mode.
+     */
+    private final Executor executor;
+    private final Map<Path, Container> containers = new HashMap<>();
+    /**
+     * Number of tasks submitted and not completed yet, waiting ones included.
+     */
+    private int running = 0;
+    /**
+     * Set once no more tasks can be added to containers.
+     */
+    private boolean sealed = false;
+
+    /**
+     * Creates a new instance.
+     * @param executor The executor, {@code null} to run tasks on the submitting thread.
+     */
+    DependencyScheduler(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Submits a task that belongs to a container.
+     * @param task The task.
+     * @param container The container, {@code null} if the task does not belong to any.
+     * @throws NullPointerException If {@code task} is {@code null}.
+     */
+    void submit(final Runnable task, final Path container) throws NullPointerException {
+        Objects.requireNonNull(task);
+        synchronized (this) {
+            if (container != null) {
+                containers.computeIfAbsent(container, key -> new Container()).pending++;
+            }
+            running++;
+        }
+        dispatch(() -> {
+            try {
+                task.run();
+            } finally {
+                complete(container);
+            }
+        });
+    }
+
+    /**
+     * Submits a task that depends on a container.
+     * <br>The task runs once every task of the container has completed and the scheduler has been sealed.
+     * @param task The task.
+     * @param container The container, {@code null} if the task does not depend on any.
+     * @throws NullPointerException If {@code task} is {@code null}.
+     */
+    void submitAfter(final Runnable task, final Path container) throws NullPointerException {
+        Objects.requireNonNull(task);
+        final Runnable wrapper = () -> {
+            try {
+                task.run();
+            } finally {
+                complete(null);
+            }
+        };
+        synchronized (this) {
+            running++;
+            final var state = (container == null) ? null : containers.computeIfAbsent(container, key -> new Container());
+            if (state != null && (!sealed || state.pending > 0)) {
+                state.waiting.add(wrapper);
+                return;
+            }
+        }
+        dispatch(wrapper);
+    }
+
+    /**
+     * Seals this scheduler once the walk is over: no more tasks will be added to containers.
+     * <br>Tasks waiting on containers whose tasks have all completed are released.
+     */
+    void seal() {
+        final var released = new ArrayList<Runnable>();
+        synchronized (this) {
+            sealed = true;
+            for (final var state : containers.values()) {
+                if (state.pending == 0) {
+                    released.addAll(state.waiting);
+                    state.waiting.clear();
+                }
+            }
+        }
+        released.forEach(this::dispatch);
+    }
+
+    /**
+     * Waits until every submitted task has completed.
+     * <br>Should be called once the scheduler is sealed, otherwise tasks waiting on containers never run.
+     * @throws InterruptedException If the current thread was interrupted.
+     */
+    synchronized void await() throws InterruptedException {
+        while (running > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * Called when a task has completed; releases the tasks waiting on its container if it was the last one.
+     * @param container The container of the task, may be {@code null}.
+     */
+    private void complete(final Path container) {
+        List<Runnable> released = List.of();
+        synchronized (this) {
+            if (container != null) {
+                final var state = containers.get(container);
+                state.pending--;
+                if (sealed && state.pending == 0 && !state.waiting.isEmpty()) {
+                    released = new ArrayList<>(state.waiting);
+                    state.waiting.clear();
+                }
+            }
+            running--;
+            notifyAll();
+        }
+        released.forEach(this::dispatch);
+    }
+
+    /**
+     * Runs a task on the executor, or on the current thread in sequential mode.
+     * @param task The task.
+     */
+    private void dispatch(final Runnable task) {
+        if (executor == null) {
+            task.run();
+        } else {
+            executor.execute(task);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.mixed;
+
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParameters;
+
+/**
+ * The parameters to sign a tree that contains both JAR files and Windows native files.
+ * <br>JAR files are signed as described by the JarSigner parameters and native files as described by the JSign parameters;
+ * the path and threads of those are ignored.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public class MixedSignatureParameters {
+
+    String pathToSign = "";
+    JarSignerParameters jarSigner;
+    JSignParameters jsign;
+    boolean resign = false;
+    boolean incremental = false;
+    /**
+     * If {@code true}, JAR files nested in archives are signed before their container.
+     */
+    boolean signNested = false;
+    int threads = 1;
+    // Debug.
+    boolean debugDirectoryWalk = false;
+    boolean debugSignature = false;
+    Logger logger = Logger.getGlobal();
+}
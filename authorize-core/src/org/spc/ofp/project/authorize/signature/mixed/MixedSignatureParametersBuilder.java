@@ -0,0 +1,109 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.mixed;
+
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParameters;
+
+/**
+ * Builder class for the parameters of the mixed sign process.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class MixedSignatureParametersBuilder {
+
+    private final MixedSignatureParameters delegated = new MixedSignatureParameters();
+
+    /**
+     * Hidden constructor.
+     */
+    private MixedSignatureParametersBuilder() {
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Creates a new instance of this builder.
+     * @return A {@code MixedSignatureParametersBuilder} instance, never {@code null}.
+     */
+    public static MixedSignatureParametersBuilder create() {
+        return new MixedSignatureParametersBuilder();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Build the task parameter from this builder.
+     * @return A {@code MixedSignatureParameters} instance, never {@code null}.
+     */
+    public MixedSignatureParameters build() {
+        final var result = new MixedSignatureParameters();
+        result.pathToSign = delegated.pathToSign;
+        result.jarSigner = delegated.jarSigner;
+        result.jsign = delegated.jsign;
+        result.resign = delegated.resign;
+        result.incremental = delegated.incremental;
+        result.signNested = delegated.signNested;
+        result.threads = delegated.threads;
+        // Debug.
+        result.debugDirectoryWalk = delegated.debugDirectoryWalk;
+        result.debugSignature = delegated.debugSignature;
+        //
+        result.logger = delegated.logger;
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Builder methods.
+    public MixedSignatureParametersBuilder pathToSign(final String value) {
+        delegated.pathToSign = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder jarSigner(final JarSignerParameters value) {
+        delegated.jarSigner = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder jsign(final JSignParameters value) {
+        delegated.jsign = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder resign(final boolean value) {
+        delegated.resign = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder incremental(final boolean value) {
+        delegated.incremental = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder signNested(final boolean value) {
+        delegated.signNested = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder threads(final int value) {
+        delegated.threads = Math.max(1, value);
+        return this;
+    }
+    // Debug.
+
+    public MixedSignatureParametersBuilder debugDirectoryWalk(final boolean value) {
+        delegated.debugDirectoryWalk = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder debugSignature(final boolean value) {
+        delegated.debugSignature = value;
+        return this;
+    }
+
+    public MixedSignatureParametersBuilder logger(final Logger value) {
+        delegated.logger = (value == null) ? Logger.getGlobal() : value;
+        return this;
+    }
+}
@@ -0,0 +1,412 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.mixed;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import jdk.security.jarsigner.JarSignerException;
+import org.spc.ofp.project.authorize.io.FileWalker;
+import org.spc.ofp.project.authorize.io.IOUtils;
+import org.spc.ofp.project.authorize.signature.ArtifactType;
+import org.spc.ofp.project.authorize.signature.SignatureIndex;
+import org.spc.ofp.project.authorize.signature.SignatureProcessBase;
+import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerUtils;
+import org.spc.ofp.project.authorize.signature.jsign.AuthenticodeVerifier;
+import org.spc.ofp.project.authorize.signature.jsign.JSignEngine;
+
+/**
+ * Signs JAR files and Windows native files found in the same tree, in a single walk.
+ * <br>Files are classified from their content, see {@link ArtifactType}, then checked and signed by the JarSigner or the
+ * JSign engine on a shared worker pool.
+ * <br>Files are signed in containment order, see {@link DependencyScheduler}: the native files of a jpackage application
+ * image, ie: its launcher, are only signed once the JAR files of the image have been signed.
+ * <br>Optionally, JAR files nested in archives are signed before their container, see {@link NestedArchiveSigner}; ZIP archives
+ * are then processed too.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class MixedSignatureProcess extends SignatureProcessBase {
+
+    /**
+     * Directory of the JAR files of a jpackage application image, under the image on Windows and macOS or under {@code lib} on Linux.
+     */
+    private static final String APP_DIRECTORY = "app"; // NOI18N.
+    private static final String LIB_DIRECTORY = "lib"; // NOI18N.
+
+    /**
+     * The parameters object.
+     */
+    private final MixedSignatureParameters parameters;
+    /**
+     * The engines used to check and sign files; created when the process starts unless they were provided.
+     */
+    private JarSignerEngine jarSignerEngine;
+    private JSignEngine jsignEngine;
+    /**
+     * Signs nested JAR files, {@code null} if nested archives are not processed.
+     */
+    private NestedArchiveSigner nestedSigner;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @param monitor A monitor interested in the progress of this process, may be {@code null}.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public MixedSignatureProcess(final MixedSignatureParameters parameters, final SignatureProcessMonitor monitor) throws NullPointerException {
+        this(parameters, null, null, monitor);
+    }
+
+    /**
+     * Creates a new instance that reuses existing engines.
+     * @param parameters The parameters object.
+     * @param jarSignerEngine The engine used for JAR files, may be {@code null}.
+     * <br>If {@code null}, a new engine is created from the JarSigner parameters when the process starts.
+     * @param jsignEngine The engine used for native files, may be {@code null}.
+     * <br>If {@code null}, a new engine is created from the JSign parameters when the process starts.
+     * @param monitor A monitor interested in the progress of this process, may be {@code null}.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public MixedSignatureProcess(final MixedSignatureParameters parameters, final JarSignerEngine jarSignerEngine, final JSignEngine jsignEngine, final SignatureProcessMonitor monitor) throws NullPointerException {
+        super(monitor);
+        Objects.requireNonNull(parameters);
+        this.parameters = parameters;
+        this.jarSignerEngine = jarSignerEngine;
+        this.jsignEngine = jsignEngine;
+    }
+
+    @Override
+    public void sign() throws Exception {
+        // Nothing to do!
+        if (parameters.pathToSign == null || parameters.pathToSign.isEmpty() || parameters.pathToSign.isBlank()) {
+            return;
+        }
+        updateMessage("Initializing."); // NOI18N.
+        final var root = Paths.get(parameters.pathToSign);
+        // Key stores are loaded once for the whole tree.
+        if (jarSignerEngine == null) {
+            updateMessage("Loading key store."); // NOI18N.
+            jarSignerEngine = JarSignerEngine.create(Objects.requireNonNull(parameters.jarSigner));
+        }
+        if (jsignEngine == null) {
+            updateMessage("Loading key store."); // NOI18N.
+            jsignEngine = new JSignEngine(Objects.requireNonNull(parameters.jsign));
+        }
+        if (parameters.signNested) {
+            nestedSigner = new NestedArchiveSigner(jarSignerEngine, parameters.resign);
+        }
+        if (isCancelled()) {
+            return;
+        }
+        // Run signing task.
+        updateMessage("Running task."); // NOI18N.
+        SignatureIndex index = null;
+        if (parameters.incremental) {
+            final var chains = new ArrayList<>(JarSignerUtils.INSTANCE.certificateChains(parameters.jarSigner));
+            chains.add(jsignEngine.getCertificateChain());
+            index = SignatureIndex.open(root, SignatureIndex.identity(chains, parameters.resign));
+        }
+        runTask(parameters.threads, "mixed-worker-%d", index, () -> impl_sign(root)); // NOI18N.
+        var message = String.format("%d JAR files (%d signed), %d native executables (%d signed), %d installers (%d signed).", // NOI18N.
+                getFileCount(ArtifactType.JAR), getSignedCount(ArtifactType.JAR),
+                getFileCount(ArtifactType.PORTABLE_EXECUTABLE), getSignedCount(ArtifactType.PORTABLE_EXECUTABLE),
+                getFileCount(ArtifactType.MSI), getSignedCount(ArtifactType.MSI));
+        if (nestedSigner != null) {
+            message = String.format("%s %d ZIP archives (%d rewritten), %d nested JAR files signed.", message, // NOI18N.
+                    getFileCount(ArtifactType.ZIP), getSignedCount(ArtifactType.ZIP), getNestedSignedCount());
+        }
+        if (getFailedCount() > 0) {
+            message = String.format("%s %d files could not be signed.", message, getFailedCount()); // NOI18N.
+        }
+        parameters.logger.log(Level.INFO, message);
+        updateMessage(message);
+        throwFailure();
+    }
+
+    /**
+     * Types of the files accepted by the walker and not yet processed.
+     */
+    private final Map<Path, ArtifactType> pendingTypes = new ConcurrentHashMap<>();
+    /**
+     * Errors of the files that could not be classified, reported as failures once processed.
+     */
+    private final Map<Path, IOException> probeFailures = new ConcurrentHashMap<>();
+    /**
+     * Number of files found and number of files signed, by type.
+     */
+    private final AtomicInteger[] fileCounts = newCounts();
+    private final AtomicInteger[] signedCounts = newCounts();
+
+    /**
+     * Creates counters, one per type.
+     * @return An {@code AtomicInteger[]} instance, never {@code null}.
+     */
+    private static AtomicInteger[] newCounts() {
+        final var result = new AtomicInteger[ArtifactType.values().length];
+        for (int index = 0; index < result.length; index++) {
+            result[index] = new AtomicInteger();
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of files of given type found in the tree.
+     * @param type The type.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getFileCount(final ArtifactType type) {
+        return fileCounts[type.ordinal()].get();
+    }
+
+    /**
+     * Gets the number of files of given type signed by this process.
+     * <br>For ZIP archives, this is the number of archives rewritten because a nested JAR file was signed.
+     * @param type The type.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getSignedCount(final ArtifactType type) {
+        return signedCounts[type.ordinal()].get();
+    }
+
+    /**
+     * Gets the number of nested JAR files signed by this process.
+     * @return An {@code int} &ge; 0.
+     */
+    public int getNestedSignedCount() {
+        return (nestedSigner == null) ? 0 : nestedSigner.getSignedCount();
+    }
+
+    /**
+     * The current signing process.
+     * <br>The tree is walked once in a separate thread that also classifies files; files are consumed as soon as they are discovered,
+     * except native files of application images that wait for the JAR files of their image.
+     * @param root The file or directory to sign.
+     * @throws Exception In case of errors.
+     */
+    private void impl_sign(final Path root) throws Exception {
+        final var scheduler = new DependencyScheduler(getExecutor());
+        try {
+            walk(root, this::acceptFile, entry -> {
+                final var task = workerTask(entry, this::signFile);
+                final var file = entry.getPath();
+                switch (pendingTypes.get(file)) {
+                    case PORTABLE_EXECUTABLE:
+                    case MSI: {
+                        scheduler.submitAfter(task, launcherImage(file, root));
+                        break;
+                    }
+                    default: {
+                        scheduler.submit(task, contentImage(file, root));
+                    }
+                }
+            });
+        } finally {
+            // Release native files waiting on their image, then wait for every task before the pool is shut down.
+            scheduler.seal();
+            scheduler.await();
+        }
+    }
+
+    /**
+     * Finds the jpackage application image a JAR file or an archive belongs to: files under {@code app/} on Windows and macOS
+     * or under {@code lib/app/} on Linux.
+     * @param file The file.
+     * @param root The root of the walk.
+     * @return A {@code Path} instance, the directory of the image; {@code null} if the file is not in an image.
+     */
+    private static Path contentImage(final Path file, final Path root) {
+        for (var directory = file.getParent(); directory != null && directory.startsWith(root); directory = directory.getParent()) {
+            if (APP_DIRECTORY.equals(String.valueOf(directory.getFileName()))) {
+                final var parent = directory.getParent();
+                return (parent != null && LIB_DIRECTORY.equals(String.valueOf(parent.getFileName()))) ? parent.getParent() : parent;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the jpackage application image a native file belongs to, ie: the launcher at the root of the image or the native
+     * libraries of its runtime.
+     * @param file The file.
+     * @param root The root of the walk.
+     * @return A {@code Path} instance, the directory of the image; {@code null} if the file is not in an image.
+     */
+    private static Path launcherImage(final Path file, final Path root) {
+        for (var directory = file.getParent(); directory != null && directory.startsWith(root); directory = directory.getParent()) {
+            if (Files.isDirectory(directory.resolve(APP_DIRECTORY)) || Files.isDirectory(directory.resolve(LIB_DIRECTORY).resolve(APP_DIRECTORY))) {
+                return directory;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Filter used by the walker; called from the walking thread for every regular file in the tree.
+     * @param file The file.
+     * @param attributes The attributes of the file.
+     * @return {@code True} if the file needs to be checked and signed, {@code false} otherwise.
+     */
+    private boolean acceptFile(final Path file, final BasicFileAttributes attributes) {
+        if (parameters.debugDirectoryWalk) {
+            final var message = String.format("File \"%s\"", file.toString()); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
+        }
+        ArtifactType type;
+        try {
+            type = ArtifactType.probe(file);
+        } catch (IOException ex) {
+            // Accepted, so the failure is counted.
+            probeFailures.put(file, ex);
+            pendingTypes.put(file, ArtifactType.OTHER);
+            return true;
+        }
+        if (type == ArtifactType.OTHER || (type == ArtifactType.ZIP && !parameters.signNested)) {
+            return false;
+        }
+        pendingTypes.put(file, type);
+        return true;
+    }
+
+    /**
+     * Check and sign a single file, then update progress.
+     * <br>May be called concurrently from worker threads.
+     * @param entry The file, with the attributes read during the walk.
+     * @throws Exception In case of errors.
+     */
+    private void signFile(final FileWalker.Entry entry) throws Exception {
+        final var file = entry.getPath();
+        final var type = pendingTypes.remove(file);
+        final var probeFailure = probeFailures.remove(file);
+        if (probeFailure != null) {
+            fileFailed(file, probeFailure, parameters.logger);
+            return;
+        }
+        fileCounts[type.ordinal()].incrementAndGet();
+        updateMessage(file.toString());
+        // Unchanged since last run, skip without opening the file.
+        if (skipUnchanged(entry, parameters.debugSignature, parameters.logger)) {
+            return;
+        }
+        final boolean signed;
+        try {
+            switch (type) {
+                case JAR: {
+                    signed = signJar(file);
+                    break;
+                }
+                case ZIP: {
+                    signed = signZip(file);
+                    break;
+                }
+                default: {
+                    signed = signNative(file);
+                }
+            }
+        } catch (JarSignerException ex) {
+            // The file is left untouched, carry on with the next one.
+            fileFailed(file, ex, parameters.logger);
+            return;
+        }
+        if (signed) {
+            signedCounts[type.ordinal()].incrementAndGet();
+            final var message = String.format("File \"%s\" signed.", file.toString()); // NOI18N.
+            updateMessage(message);
+        }
+        //
+        fileDone();
+    }
+
+    /**
+     * Check and sign a JAR file.
+     * @param file The file.
+     * @return {@code True} if the file was signed, {@code false} if it was skipped.
+     * @throws JarSignerException If the file or one of its nested JAR files cannot be signed.
+     * @throws Exception In case of errors.
+     */
+    private boolean signJar(final Path file) throws Exception {
+        if (nestedSigner != null && !Files.isWritable(file)) {
+            IOUtils.INSTANCE.setWritable(file);
+        }
+        // Nested JAR files are signed first, the container no longer matches its signature if any changed.
+        final boolean rewritten = nestedSigner != null && nestedSigner.rewrite(file);
+        final boolean fileIsSigned = !rewritten && jarSignerEngine.isFileSigned(file);
+        if (parameters.debugSignature) {
+            final var message = String.format("File \"%s\" signed: %s.", file.toString(), fileIsSigned); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
+        }
+        final boolean sign = !fileIsSigned || parameters.resign;
+        if (sign) {
+            if (!Files.isWritable(file)) {
+                IOUtils.INSTANCE.setWritable(file);
+            }
+            jarSignerEngine.signFile(file);
+        }
+        final var index = getIndex();
+        if (index != null) {
+            index.markSigned(file);
+        }
+        return sign;
+    }
+
+    /**
+     * Sign the JAR files nested in a ZIP archive; the archive itself is not signed.
+     * @param file The file.
+     * @return {@code True} if the archive was rewritten, {@code false} if it was left untouched.
+     * @throws JarSignerException If one of its nested JAR files cannot be signed.
+     * @throws Exception In case of errors.
+     */
+    private boolean signZip(final Path file) throws Exception {
+        if (!Files.isWritable(file)) {
+            IOUtils.INSTANCE.setWritable(file);
+        }
+        final boolean rewritten = nestedSigner.rewrite(file);
+        final var index = getIndex();
+        if (index != null) {
+            index.markSigned(file);
+        }
+        return rewritten;
+    }
+
+    /**
+     * Check and sign a PE or MSI file.
+     * @param file The file.
+     * @return {@code True} if the file was signed, {@code false} if it was skipped.
+     * @throws Exception In case of errors.
+     */
+    private boolean signNative(final Path file) throws Exception {
+        final var status = jsignEngine.verify(file);
+        if (parameters.debugSignature) {
+            final var message = String.format("File \"%s\": %s.", file.toString(), status); // NOI18N.
+            parameters.logger.log(Level.INFO, message);
+            updateMessage(message);
+        }
+        final boolean sign = status != AuthenticodeVerifier.Status.VALID || parameters.resign;
+        if (sign) {
+            if (!Files.isWritable(file)) {
+                IOUtils.INSTANCE.setWritable(file);
+            }
+            // Signatures broken by a modification are replaced, ours is added next to valid ones of other signers.
+            jsignEngine.signFile(file, status == AuthenticodeVerifier.Status.INVALID || parameters.resign);
+        }
+        final var index = getIndex();
+        if (index != null) {
+            index.markSigned(file);
+        }
+        return sign;
+    }
+}
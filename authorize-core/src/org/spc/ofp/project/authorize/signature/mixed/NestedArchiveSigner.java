@@ -0,0 +1,264 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.mixed;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import jdk.security.jarsigner.JarSignerException;
+import org.spc.ofp.project.authorize.io.IOUtils;
+import org.spc.ofp.project.authorize.io.RawZipFile;
+import org.spc.ofp.project.authorize.io.RawZipWriter;
+import org.spc.ofp.project.authorize.signature.ArtifactType;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+
+/**
+ * Signs the JAR files nested in an archive, ie: libraries of an executable JAR file or JAR files inside a ZIP distribution,
+ * without extracting them to disk.
+ * <br>Nested archives are read in memory and processed concurrently; archives nested in them are processed first, recursively,
+ * so a JAR file is only signed once all the JAR files it contains have been signed.
+ * <br>An archive that contains a modified entry is rewritten through a {@link RawZipWriter}: other entries are copied
+ * verbatim, modified ones keep their compression method, so stored JAR files of executable archives stay stored, and their
+ * file mode.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class NestedArchiveSigner {
+
+    /**
+     * Extensions of entries that may be nested archives; their content decides.
+     */
+    private static final String[] ARCHIVE_EXTENSIONS = {".jar", ".war", ".ear", ".zip"}; // NOI18N.
+    private static final String SPILL_PREFIX = "nested"; // NOI18N.
+    private static final String SPILL_SUFFIX = ".zip"; // NOI18N.
+
+    /**
+     * Shared pool of nested archive tasks, one thread per core; tasks wait on their own nested tasks by joining them.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Receives the entries of an archive in order.
+     */
+    @FunctionalInterface
+    private interface EntryVisitor {
+
+        void visit(ZipEntry entry, InputStream input) throws IOException, InterruptedException;
+    }
+
+    /**
+     * The entries of an archive, read from a file or from memory.
+     */
+    @FunctionalInterface
+    private interface Source {
+
+        void forEach(EntryVisitor visitor) throws IOException, InterruptedException;
+    }
+
+    private final JarSignerEngine engine;
+    private final boolean resign;
+    private final AtomicInteger signedCount = new AtomicInteger();
+
+    /**
+     * Creates a new instance.
+     * @param engine The engine used to check and sign nested JAR files.
+     * @param resign If {@code true}, nested JAR files are signed again even if they are already signed.
+     * @throws NullPointerException If {@code engine} is {@code null}.
+     */
+    NestedArchiveSigner(final JarSignerEngine engine, final boolean resign) throws NullPointerException {
+        Objects.requireNonNull(engine);
+        this.engine = engine;
+        this.resign = resign;
+    }
+
+    /**
+     * Gets the number of nested JAR files signed so far.
+     * @return An {@code int} &ge; 0.
+     */
+    int getSignedCount() {
+        return signedCount.get();
+    }
+
+    /**
+     * Signs the JAR files nested in an archive; the archive is rewritten in place if any of them changed.
+     * <br>The archive itself is not signed.
+     * @param file The archive.
+     * @return {@code True} if the archive was rewritten, {@code false} if it was left untouched.
+     * @throws JarSignerException If a nested JAR file cannot be signed; the archive is then left untouched.
+     * @throws Exception In case of errors.
+     */
+    boolean rewrite(final Path file) throws Exception {
+        final Map<String, byte[]> replacements;
+        try (final var zipFile = new ZipFile(file.toFile())) {
+            replacements = process(source(zipFile));
+        }
+        if (replacements.isEmpty()) {
+            return false;
+        }
+        final var directory = file.toAbsolutePath().getParent();
+        final var tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp"); // NOI18N.
+        try {
+            write(file, replacements, tempFile);
+            IOUtils.INSTANCE.replaceArchive(file, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return true;
+    }
+
+    /**
+     * Processes the nested archives of an archive concurrently.
+     * @param source The archive.
+     * @return A {@code Map<String, byte[]>} instance, never {@code null}; the new content of modified entries, by name.
+     * @throws Exception In case of errors.
+     */
+    private Map<String, byte[]> process(final Source source) throws Exception {
+        final var tasks = new LinkedHashMap<String, ForkJoinTask<byte[]>>();
+        source.forEach((entry, input) -> {
+            if (!entry.isDirectory() && isCandidate(entry.getName())) {
+                final var content = input.readAllBytes();
+                tasks.put(entry.getName(), POOL.submit(() -> processNested(content)));
+            }
+        });
+        if (tasks.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final var result = new HashMap<String, byte[]>();
+        for (final var task : tasks.entrySet()) {
+            try {
+                final var content = task.getValue().get();
+                if (content != null) {
+                    result.put(task.getKey(), content);
+                }
+            } catch (ExecutionException ex) {
+                final var cause = ex.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw ex;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Processes a nested archive: its own nested archives first, then the archive itself if it is a JAR file.
+     * <br>Runs on the pool.
+     * @param content The content of the archive.
+     * @return A {@code byte[]} instance, {@code null} if the archive is unchanged.
+     * @throws Exception In case of errors.
+     */
+    private byte[] processNested(final byte[] content) throws Exception {
+        final var type = ArtifactType.probeArchive(content);
+        if (type == ArtifactType.OTHER) {
+            return null;
+        }
+        final var replacements = process(source(content));
+        var result = content;
+        if (!replacements.isEmpty()) {
+            // Rare: an archive nested in a nested archive changed. Spilled to be rewritten like a file.
+            final var sourceFile = Files.createTempFile(SPILL_PREFIX, SPILL_SUFFIX);
+            final var targetFile = Files.createTempFile(SPILL_PREFIX, SPILL_SUFFIX);
+            try {
+                Files.write(sourceFile, content);
+                write(sourceFile, replacements, targetFile);
+                result = Files.readAllBytes(targetFile);
+            } finally {
+                Files.deleteIfExists(targetFile);
+                Files.deleteIfExists(sourceFile);
+            }
+        }
+        // A modified JAR file no longer matches its signature.
+        if (type == ArtifactType.JAR && (!replacements.isEmpty() || resign || !engine.isSigned(content))) {
+            result = engine.sign(result);
+            signedCount.incrementAndGet();
+        }
+        return (result == content) ? null : result;
+    }
+
+    /**
+     * Writes a copy of an archive, replacing modified entries.
+     * @param source The archive.
+     * @param replacements The new content of modified entries, by name.
+     * @param target The copy.
+     * @throws IOException In case of IO errors.
+     */
+    private static void write(final Path source, final Map<String, byte[]> replacements, final Path target) throws IOException {
+        try (final var rawZipFile = new RawZipFile(source);
+                final var zipFile = new ZipFile(source.toFile());
+                final var writer = new RawZipWriter(target)) {
+            for (final var entry : rawZipFile.getEntries()) {
+                final var name = entry.getName();
+                final var replacement = replacements.get(name);
+                if (replacement == null) {
+                    writer.copy(rawZipFile, entry);
+                } else {
+                    writer.write(name, replacement, zipFile.getEntry(name).getTime(), entry.getMethod(), entry.getVersionMadeBy(), entry.getExternalAttributes());
+                }
+            }
+        }
+    }
+
+    /**
+     * Test whether an entry may be a nested archive.
+     * @param name The entry name.
+     * @return {@code True} if the entry has the extension of an archive, {@code false} otherwise.
+     */
+    private static boolean isCandidate(final String name) {
+        final var lowerName = name.toLowerCase(Locale.ENGLISH);
+        for (final var extension : ARCHIVE_EXTENSIONS) {
+            if (lowerName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the entries of an archive file, in the order of its central directory.
+     * @param zipFile The archive.
+     * @return A {@code Source} instance, never {@code null}.
+     */
+    private static Source source(final ZipFile zipFile) {
+        return visitor -> {
+            for (final var entries = zipFile.entries(); entries.hasMoreElements();) {
+                final var entry = entries.nextElement();
+                try (final var input = zipFile.getInputStream(entry)) {
+                    visitor.visit(entry, input);
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the entries of an archive held in memory, in the order of its local headers.
+     * @param content The archive.
+     * @return A {@code Source} instance, never {@code null}.
+     */
+    private static Source source(final byte[] content) {
+        return visitor -> {
+            try (final var input = new ZipInputStream(new ByteArrayInputStream(content))) {
+                for (var entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                    visitor.visit(entry, input);
+                }
+            }
+        };
+    }
+}
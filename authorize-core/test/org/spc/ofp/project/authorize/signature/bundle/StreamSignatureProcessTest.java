@@ -0,0 +1,115 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.bundle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import jdk.security.jarsigner.JarSignerException;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+
+/**
+ * Tests for {@link StreamSignatureProcess}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public class StreamSignatureProcessTest {
+
+    /**
+     * Engine whose signatures always fail.
+     */
+    private static final class FailingEngine implements JarSignerEngine {
+
+        @Override
+        public boolean isFileSigned(final Path file) {
+            return false;
+        }
+
+        @Override
+        public void signFile(final Path file) throws JarSignerException {
+            throw new JarSignerException("Signature failed", null); // NOI18N.
+        }
+
+        @Override
+        public boolean isSigned(final byte[] jar) {
+            return false;
+        }
+
+        @Override
+        public byte[] sign(final byte[] jar) throws JarSignerException {
+            throw new JarSignerException("Signature failed", null); // NOI18N.
+        }
+    }
+
+    /**
+     * Creates an unsigned JAR file.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private static byte[] newJar() throws IOException {
+        final var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0"); // NOI18N.
+        final var result = new ByteArrayOutputStream();
+        try (final var output = new JarOutputStream(result, manifest)) {
+            output.putNextEntry(new ZipEntry("test.txt")); // NOI18N.
+            output.write("test".getBytes(StandardCharsets.UTF_8)); // NOI18N.
+            output.closeEntry();
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Creates a ZIP bundle that contains an unsigned JAR file.
+     * @return A {@code byte[]} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private static byte[] newBundle() throws IOException {
+        final var result = new ByteArrayOutputStream();
+        try (final var output = new ZipOutputStream(result)) {
+            output.putNextEntry(new ZipEntry("lib/test.jar")); // NOI18N.
+            output.write(newJar());
+            output.closeEntry();
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Signs a stream and checks that the process fails.
+     * @param archive The archive.
+     * @throws Exception In case of errors.
+     */
+    private static void assertSignFails(final byte[] archive) throws Exception {
+        final var parameters = BundleSignatureParametersBuilder.create()
+                .build();
+        final var process = new StreamSignatureProcess(parameters, new ByteArrayInputStream(archive), new ByteArrayOutputStream(), new FailingEngine(), null);
+        try {
+            process.sign();
+            fail("Signature failures must fail the process."); // NOI18N.
+        } catch (IOException ex) {
+            assertEquals(0, process.getSignedCount());
+            assertEquals(1, process.getFailedCount());
+        }
+    }
+
+    @Test
+    public void testSignJarFailure() throws Exception {
+        assertSignFails(newJar());
+    }
+
+    @Test
+    public void testSignBundleFailure() throws Exception {
+        assertSignFails(newBundle());
+    }
+}
@@ -0,0 +1,51 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.signature.jarsigner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link JarSignerUtils}.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public class JarSignerUtilsTest {
+
+    @Test
+    public void testSignerName() {
+        assertEquals("OFP-RELE", JarSignerUtils.INSTANCE.signerName("ofp-release-2025")); // NOI18N.
+        assertEquals("MY_KEY", JarSignerUtils.INSTANCE.signerName("my.key")); // NOI18N.
+    }
+
+    @Test
+    public void testSignerNamesSamePrefix() {
+        final var names = JarSignerUtils.INSTANCE.signerNames(Arrays.asList("ofp-release-2025", "ofp-release-2026")); // NOI18N.
+        assertEquals(2, names.size());
+        assertFalse(names.get(0).equals(names.get(1)));
+        for (final var name : names) {
+            assertTrue(name, name.length() <= 8);
+            assertTrue(name, name.startsWith("OFP-RE")); // NOI18N.
+            assertTrue(name, name.matches("[A-Z0-9_-]+")); // NOI18N.
+        }
+        // Names do not depend on the order of signers, a file signed by one run is recognized by the next.
+        final var reversed = JarSignerUtils.INSTANCE.signerNames(Arrays.asList("ofp-release-2026", "ofp-release-2025")); // NOI18N.
+        assertEquals(names.get(0), reversed.get(1));
+        assertEquals(names.get(1), reversed.get(0));
+    }
+
+    @Test
+    public void testSignerNamesUnique() {
+        // Aliases without collision keep the name given by the jarsigner tool.
+        final var names = JarSignerUtils.INSTANCE.signerNames(Arrays.asList("release", "ofp-release-2025", "ofp-release-2026", "release")); // NOI18N.
+        assertEquals(4, new HashSet<>(names).size());
+        final var single = JarSignerUtils.INSTANCE.signerNames(Arrays.asList("ofp-release-2025", "backup")); // NOI18N.
+        assertEquals(Arrays.asList("OFP-RELE", "BACKUP"), single); // NOI18N.
+    }
+}
@@ -0,0 +1,12 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+module authorize.daemon {
+    exports org.spc.ofp.project.authorize.daemon;
+    requires java.logging;
+    requires jdk.httpserver;
+    requires authorize.core;
+    requires jsign;
+}
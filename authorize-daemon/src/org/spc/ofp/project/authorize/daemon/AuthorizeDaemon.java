@@ -0,0 +1,317 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.daemon;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-running signing daemon.
+ * <br>Keeps unlocked key material and warm engines in memory and accepts sign and verify jobs from local clients over HTTP.
+ * <br>The server only listens on the loopback interface; clients find its port and access token in a file only readable by the current user.
+ * <br>Jobs are queued per client and served in round-robin order by a fixed number of workers.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class AuthorizeDaemon {
+
+    private static final Logger LOGGER = Logger.getLogger(AuthorizeDaemon.class.getName());
+
+    /**
+     * Prefix of flags, equals to "{@value}".
+     */
+    public static final String FLAG_PREXIT = "--"; // NOI18N.
+    /**
+     * Port flag, equals to "{@value}".
+     * <br>Default is {@code 0}, any free port.
+     */
+    public static final String PORT_FLAG = "port"; // NOI18N.
+    /**
+     * Number of jobs run concurrently, equals to "{@value}".
+     */
+    public static final String WORKERS_FLAG = "workers"; // NOI18N.
+    /**
+     * Stops the running daemon, equals to "{@value}".
+     */
+    public static final String STOP_FLAG = "stop"; // NOI18N.
+    /**
+     * Prints the status of the running daemon, equals to "{@value}".
+     */
+    public static final String STATUS_FLAG = "status"; // NOI18N.
+    /**
+     * Default number of workers, equals to {@value}.
+     */
+    public static final int DEFAULT_WORKERS = 2;
+
+    private final HttpServer server;
+    private final String token;
+    private final FairJobQueue<DaemonJob> queue = new FairJobQueue<>();
+    private final EngineCache cache = new EngineCache();
+    private final List<Thread> workers = new LinkedList<>();
+    private final ExecutorService handlers;
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private boolean stopped = false;
+
+    /**
+     * Creates a new instance.
+     * @param port The port, {@code 0} for any free port.
+     * @param workerCount Number of jobs run concurrently.
+     * @throws IOException If the server cannot be created.
+     */
+    public AuthorizeDaemon(final int port, final int workerCount) throws IOException {
+        final var bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Handler threads block until their job has run, they are cheap and mostly idle.
+        final var handlerCounter = new AtomicInteger();
+        handlers = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, String.format("daemon-handler-%d", handlerCounter.incrementAndGet())); // NOI18N.
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(handlers);
+        server.createContext(DaemonUtils.SIGN_ENDPOINT, exchange -> handleJob(exchange, DaemonJob.Kind.SIGN));
+        server.createContext(DaemonUtils.VERIFY_ENDPOINT, exchange -> handleJob(exchange, DaemonJob.Kind.VERIFY));
+        server.createContext(DaemonUtils.STATUS_ENDPOINT, this::handleStatus);
+        server.createContext(DaemonUtils.SHUTDOWN_ENDPOINT, this::handleShutdown);
+        for (int index = 0; index < Math.max(1, workerCount); index++) {
+            final var worker = new Thread(this::work, String.format("daemon-worker-%d", index + 1)); // NOI18N.
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Starts the server and advertises it in the daemon file.
+     * @throws IOException If the daemon file cannot be written.
+     */
+    public void start() throws IOException {
+        server.start();
+        workers.forEach(Thread::start);
+        DaemonUtils.INSTANCE.writeDaemonFile(getPort(), token);
+        LOGGER.log(Level.INFO, "Daemon listening on port {0} with {1} workers.", new Object[]{getPort(), workers.size()}); // NOI18N.
+    }
+
+    /**
+     * Stops the server.
+     */
+    public synchronized void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        try {
+            DaemonUtils.INSTANCE.deleteDaemonFile();
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+        }
+        server.stop(0);
+        workers.forEach(Thread::interrupt);
+        handlers.shutdownNow();
+        cache.clear();
+        notifyAll();
+    }
+
+    /**
+     * Waits until the daemon is stopped.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public synchronized void awaitStop() throws InterruptedException {
+        while (!stopped) {
+            wait();
+        }
+    }
+
+    /**
+     * Gets the port the server listens to.
+     * @return An {@code int}.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Worker loop.
+     */
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final var job = queue.take();
+                runningJobs.incrementAndGet();
+                try {
+                    job.run(cache);
+                } finally {
+                    runningJobs.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Daemon is stopping.
+        }
+    }
+
+    /**
+     * Checks the access token of a request.
+     * @param exchange The exchange.
+     * @return {@code True} if the request is authorized; otherwise the exchange is answered and closed.
+     * @throws IOException In case of IO errors.
+     */
+    private boolean authorize(final HttpExchange exchange) throws IOException {
+        final var value = exchange.getRequestHeaders().getFirst(DaemonUtils.TOKEN_HEADER);
+        if (value != null && MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        LOGGER.log(Level.WARNING, "Rejected request from {0}.", exchange.getRemoteAddress()); // NOI18N.
+        exchange.sendResponseHeaders(403, -1);
+        exchange.close();
+        return false;
+    }
+
+    /**
+     * Handles sign and verify requests.
+     * <br>The request body is a properties file; the response is streamed while the job runs.
+     * @param exchange The exchange.
+     * @param kind The kind of job.
+     * @throws IOException In case of IO errors.
+     */
+    private void handleJob(final HttpExchange exchange, final DaemonJob.Kind kind) throws IOException {
+        if (!authorize(exchange)) {
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) { // NOI18N.
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        final var properties = new Properties();
+        try (final var input = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            properties.load(input);
+        }
+        final var request = new LinkedHashMap<String, String>();
+        properties.stringPropertyNames().forEach(name -> request.put(name, properties.getProperty(name)));
+        var client = exchange.getRequestHeaders().getFirst(DaemonUtils.CLIENT_HEADER);
+        if (client == null || client.isBlank()) {
+            client = String.valueOf(exchange.getRemoteAddress());
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8"); // NOI18N.
+        // Unknown length, the response is chunked.
+        exchange.sendResponseHeaders(200, 0);
+        final var job = new DaemonJob(kind, client, request, exchange.getResponseBody());
+        queue.put(client, job);
+        try {
+            job.await();
+        } catch (InterruptedException ex) {
+            job.cancel();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Handles status requests.
+     * @param exchange The exchange.
+     * @throws IOException In case of IO errors.
+     */
+    private void handleStatus(final HttpExchange exchange) throws IOException {
+        if (!authorize(exchange)) {
+            return;
+        }
+        final var body = String.format("%squeued=%d clients=%d running=%d engines=%d%n%s%s%n", // NOI18N.
+                DaemonUtils.MESSAGE_PREFIX, queue.size(), queue.clientCount(), runningJobs.get(), cache.size(),
+                DaemonUtils.RESULT_PREFIX, DaemonUtils.RESULT_OK)
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8"); // NOI18N.
+        exchange.sendResponseHeaders(200, body.length);
+        try (final var output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    /**
+     * Handles shutdown requests.
+     * @param exchange The exchange.
+     * @throws IOException In case of IO errors.
+     */
+    private void handleShutdown(final HttpExchange exchange) throws IOException {
+        if (!authorize(exchange)) {
+            return;
+        }
+        final var body = String.format("%s%s%n", DaemonUtils.RESULT_PREFIX, DaemonUtils.RESULT_OK).getBytes(StandardCharsets.UTF_8); // NOI18N.
+        exchange.sendResponseHeaders(200, body.length);
+        try (final var output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+        // Cannot stop the server from one of its own handlers.
+        final var stopper = new Thread(this::stop, "daemon-stop"); // NOI18N.
+        stopper.start();
+    }
+
+    /**
+     * Main entry point.
+     * @param args The command line arguments.
+     */
+    public static void main(String... args) {
+        int port = 0;
+        int workerCount = DEFAULT_WORKERS;
+        try {
+            for (final var arg : args) {
+                final var pair = arg.replace(FLAG_PREXIT, "").split("=", 2); // NOI18N.
+                switch (pair[0]) {
+                    case PORT_FLAG:
+                        port = Integer.parseInt(pair[1]);
+                        break;
+                    case WORKERS_FLAG:
+                        workerCount = Integer.parseInt(pair[1]);
+                        break;
+                    case STOP_FLAG: {
+                        final var client = DaemonClient.connect();
+                        if (client.isPresent()) {
+                            client.get().shutdown();
+                        } else {
+                            System.err.println("No daemon running."); // NOI18N.
+                        }
+                        return;
+                    }
+                    case STATUS_FLAG: {
+                        final var client = DaemonClient.connect();
+                        System.out.println(client.isPresent() ? client.get().status() : "No daemon running."); // NOI18N.
+                        return;
+                    }
+                    default:
+                        System.err.printf("Unsupported argument \"%s\".%n", arg); // NOI18N.
+                        System.exit(1);
+                }
+            }
+            if (DaemonClient.connect().isPresent()) {
+                System.err.println("A daemon is already running."); // NOI18N.
+                System.exit(1);
+            }
+            final var daemon = new AuthorizeDaemon(port, workerCount);
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop));
+            daemon.start();
+            daemon.awaitStop();
+        } catch (Exception ex) {
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            System.exit(1);
+        }
+    }
+}
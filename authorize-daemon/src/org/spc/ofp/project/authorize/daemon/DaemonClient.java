@@ -0,0 +1,196 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.daemon;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Client of a running signing daemon.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class DaemonClient {
+
+    /**
+     * Environment variable that overrides the client identifier used for fair queuing, equals to "{@value}".
+     * <br>Default is the PID of the current process.
+     */
+    public static final String CLIENT_ID_ENV = "AUTHORIZE_CLIENT_ID"; // NOI18N.
+    /**
+     * Timeout used when looking for a running daemon, in ms, equals to {@value}.
+     */
+    private static final int CONNECT_TIMEOUT = 500;
+
+    private final int port;
+    private final String token;
+    private final String client;
+
+    /**
+     * Creates a new instance.
+     * @param port The port.
+     * @param token The access token.
+     */
+    private DaemonClient(final int port, final String token) {
+        this.port = port;
+        this.token = token;
+        final var clientId = System.getenv(CLIENT_ID_ENV);
+        this.client = (clientId == null || clientId.isBlank()) ? String.valueOf(ProcessHandle.current().pid()) : clientId;
+    }
+
+    /**
+     * Connects to the running daemon, if any.
+     * @return An {@code Optional<DaemonClient>} instance, never {@code null}.
+     * <br>Empty if no daemon is advertised or if it does not answer.
+     */
+    public static Optional<DaemonClient> connect() {
+        return DaemonUtils.INSTANCE.readDaemonFile()
+                .flatMap(properties -> {
+                    try {
+                        final int port = Integer.parseInt(properties.getProperty(DaemonUtils.PORT_KEY));
+                        final var token = properties.getProperty(DaemonUtils.TOKEN_KEY);
+                        final var result = new DaemonClient(port, token);
+                        result.status();
+                        return Optional.of(result);
+                    } catch (IOException | RuntimeException ex) {
+                        // Stale daemon file.
+                        return Optional.empty();
+                    }
+                });
+    }
+
+    /**
+     * Submits a sign job and waits for its completion.
+     * @param request The request, using the same keys as the command line flags; paths must be absolute.
+     * @param onMessage Called for each message sent by the daemon, may be {@code null}.
+     * @return {@code True} on success, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean sign(final Map<String, String> request, final Consumer<String> onMessage) throws IOException {
+        return submit(DaemonUtils.SIGN_ENDPOINT, request, onMessage);
+    }
+
+    /**
+     * Submits a verify job and waits for its completion.
+     * @param request The request, using the same keys as the command line flags; paths must be absolute.
+     * @param onMessage Called for each message sent by the daemon, may be {@code null}.
+     * @return {@code True} if all files are signed, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    public boolean verify(final Map<String, String> request, final Consumer<String> onMessage) throws IOException {
+        return submit(DaemonUtils.VERIFY_ENDPOINT, request, onMessage);
+    }
+
+    /**
+     * Gets the status of the daemon.
+     * @return A {@code String} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    public String status() throws IOException {
+        final var builder = new StringBuilder();
+        final var connection = open(DaemonUtils.STATUS_ENDPOINT, "GET"); // NOI18N.
+        readResponse(connection, message -> builder.append(message));
+        return builder.toString();
+    }
+
+    /**
+     * Stops the daemon.
+     * @throws IOException In case of IO errors.
+     */
+    public void shutdown() throws IOException {
+        final var connection = open(DaemonUtils.SHUTDOWN_ENDPOINT, "POST"); // NOI18N.
+        connection.setDoOutput(true);
+        connection.getOutputStream().close();
+        readResponse(connection, null);
+    }
+
+    /**
+     * Submits a job.
+     * @param endpoint The endpoint.
+     * @param request The request.
+     * @param onMessage Called for each message, may be {@code null}.
+     * @return {@code True} on success, {@code false} otherwise.
+     * @throws IOException In case of IO errors.
+     */
+    private boolean submit(final String endpoint, final Map<String, String> request, final Consumer<String> onMessage) throws IOException {
+        Objects.requireNonNull(request);
+        final var properties = new Properties();
+        request.forEach((key, value) -> {
+            if (key != null && value != null) {
+                properties.setProperty(key, value);
+            }
+        });
+        final var connection = open(endpoint, "POST"); // NOI18N.
+        connection.setDoOutput(true);
+        // Jobs wait in the queue then run for as long as needed.
+        connection.setReadTimeout(0);
+        try (final var output = new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8)) {
+            properties.store(output, null);
+        }
+        return readResponse(connection, onMessage);
+    }
+
+    /**
+     * Opens a connection to the daemon.
+     * @param endpoint The endpoint.
+     * @param method The HTTP method.
+     * @return A {@code HttpURLConnection} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private HttpURLConnection open(final String endpoint, final String method) throws IOException {
+        final var url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, endpoint); // NOI18N.
+        final var result = (HttpURLConnection) url.openConnection();
+        result.setRequestMethod(method);
+        result.setConnectTimeout(CONNECT_TIMEOUT);
+        result.setReadTimeout(CONNECT_TIMEOUT * 10);
+        result.setRequestProperty(DaemonUtils.TOKEN_HEADER, token);
+        result.setRequestProperty(DaemonUtils.CLIENT_HEADER, client);
+        return result;
+    }
+
+    /**
+     * Reads the response of the daemon.
+     * @param connection The connection.
+     * @param onMessage Called for each message, may be {@code null}.
+     * @return {@code True} if the result is successful, {@code false} otherwise.
+     * @throws IOException In case of IO errors or if the daemon rejected the request.
+     */
+    private boolean readResponse(final HttpURLConnection connection, final Consumer<String> onMessage) throws IOException {
+        final int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new IOException(String.format("Daemon answered with HTTP code %d.", code)); // NOI18N.
+        }
+        try (final var reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            for (var line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.startsWith(DaemonUtils.MESSAGE_PREFIX)) {
+                    if (onMessage != null) {
+                        onMessage.accept(line.substring(DaemonUtils.MESSAGE_PREFIX.length()));
+                    }
+                } else if (line.startsWith(DaemonUtils.RESULT_PREFIX)) {
+                    final var result = line.substring(DaemonUtils.RESULT_PREFIX.length());
+                    if (result.startsWith(DaemonUtils.RESULT_OK)) {
+                        return true;
+                    }
+                    if (onMessage != null && result.length() > DaemonUtils.RESULT_FAILED.length()) {
+                        onMessage.accept(result.substring(DaemonUtils.RESULT_FAILED.length()).trim());
+                    }
+                    return false;
+                }
+            }
+        }
+        throw new IOException("Connection to daemon lost."); // NOI18N.
+    }
+}
@@ -0,0 +1,438 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.io.FileWalker;
+import org.spc.ofp.project.authorize.signature.SignMethod;
+import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.jarsigner.InProcessJarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignatureVerifier;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParameters;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerProcess;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerUtils;
+import org.spc.ofp.project.authorize.signature.jsign.AuthenticodeVerifier;
+import org.spc.ofp.project.authorize.signature.jsign.JSignEngine;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParameters;
+import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jsign.JSignProcess;
+import org.spc.ofp.project.authorize.signature.jsign.JSignUtils;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureProcess;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureProcess;
+
+/**
+ * A sign or verify job submitted by a client.
+ * <br>Progress and messages are streamed back to the client as lines of text while the job runs; the last line is always the result.
+ * <br>Request keys use the same names as the flags of the command line interface.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class DaemonJob implements SignatureProcessMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(DaemonJob.class.getName());
+
+    static final String SIGN_METHOD_KEY = "sign-method"; // NOI18N.
+    static final String PATH_TO_SIGN_KEY = "path-to-sign"; // NOI18N.
+    static final String JAVA_HOME_KEY = "java-home"; // NOI18N.
+    static final String JAR_SIGNER_KEY = "jar-signer"; // NOI18N.
+    static final String KEY_STORE_KEY = "key-store"; // NOI18N.
+    static final String ALIAS_KEY = "alias"; // NOI18N.
+    static final String STORE_PASSWORD_KEY = "store-password"; // NOI18N.
+    static final String KEY_PASS_KEY = "key-pass"; // NOI18N.
+    static final String PROXY_HOST_KEY = "proxy-host"; // NOI18N.
+    static final String PROXY_PORT_KEY = "proxy-port"; // NOI18N.
+    static final String TIMESTAMP_HOST_KEY = "time-stamp-host"; // NOI18N.
+    static final String PROGRAM_NAME_KEY = "program-name"; // NOI18N.
+    static final String PROGRAM_URL_KEY = "program-url"; // NOI18N.
+    static final String FULL_VERIFICATION_KEY = "full-verification"; // NOI18N.
+    static final String THREADS_KEY = "threads"; // NOI18N.
+    static final String INCREMENTAL_KEY = "incremental"; // NOI18N.
+    static final String WARM_WORKERS_KEY = "warm-workers"; // NOI18N.
+    static final String PARALLEL_DIGESTS_KEY = "parallel-digests"; // NOI18N.
+    static final String PARALLEL_DIGEST_THRESHOLD_KEY = "parallel-digest-threshold"; // NOI18N.
+    static final String REUSE_DIGESTS_KEY = "reuse-digests"; // NOI18N.
+    static final String RESIGN_KEY = "resign"; // NOI18N.
+    static final String SIGN_NESTED_KEY = "sign-nested"; // NOI18N.
+    static final String ADDITIONAL_ALIASES_KEY = "additional-aliases"; // NOI18N.
+    static final String VERIFY_ONLY_KEY = "verify-only"; // NOI18N.
+    static final String DEBUG_COMMAND_KEY = "debug-command"; // NOI18N.
+    static final String DEBUG_SIGNATURE_KEY = "debug-signature"; // NOI18N.
+    static final String DEBUG_DIRECTORY_WALK_KEY = "debug-directory-walk"; // NOI18N.
+
+    /**
+     * Kind of job.
+     */
+    enum Kind {
+        SIGN,
+        VERIFY;
+    }
+
+    private final Kind kind;
+    private final String client;
+    private final Map<String, String> request;
+    private final PrintWriter output;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a new instance.
+     * @param kind The kind of job.
+     * @param client The client identifier.
+     * @param request The request.
+     * @param output The stream on which the response is written.
+     * @throws NullPointerException If any parameter is {@code null}.
+     */
+    DaemonJob(final Kind kind, final String client, final Map<String, String> request, final OutputStream output) throws NullPointerException {
+        Objects.requireNonNull(kind);
+        Objects.requireNonNull(client);
+        Objects.requireNonNull(request);
+        Objects.requireNonNull(output);
+        this.kind = kind;
+        this.client = client;
+        this.request = request;
+        this.output = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the client identifier.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    public String getClient() {
+        return client;
+    }
+
+    /**
+     * Waits until this job has run.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Cancels this job.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Runs this job and writes the result.
+     * @param cache The cache of warm engines.
+     */
+    public void run(final EngineCache cache) {
+        try {
+            if (cancelled) {
+                writeResult(false, "Cancelled."); // NOI18N.
+                return;
+            }
+            final boolean success = (kind == Kind.SIGN) ? sign(cache) : verify(cache);
+            writeResult(success, null);
+        } catch (Exception ex) {
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            writeResult(false, String.valueOf(ex.getMessage()));
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Signs the requested path.
+     * @param cache The cache of warm engines.
+     * @return {@code True} on success.
+     * @throws Exception In case of errors.
+     */
+    private boolean sign(final EngineCache cache) throws Exception {
+        final var signMethod = SignMethod.parse(request.getOrDefault(SIGN_METHOD_KEY, SignMethod.JARSIGNER.name()));
+        switch (signMethod) {
+            case JARSIGNER:
+            case JARSIGNER_API: {
+                final var parameters = jarSignerParameters(signMethod == SignMethod.JARSIGNER_API);
+                new JarSignerProcess(parameters, jarSignerEngine(cache, parameters, signMethod == SignMethod.JARSIGNER_API), this).sign();
+                return !cancelled;
+            }
+            case MIXED: {
+                // JAR files are signed in-process, next to the native executables.
+                final var jarSignerParameters = jarSignerParameters(true);
+                final var jsignParameters = jsignParameters(false);
+                final var parameters = MixedSignatureParametersBuilder.create()
+                        .debugSignature(Boolean.parseBoolean(request.get(DEBUG_SIGNATURE_KEY)))
+                        .debugDirectoryWalk(Boolean.parseBoolean(request.get(DEBUG_DIRECTORY_WALK_KEY)))
+                        .jarSigner(jarSignerParameters)
+                        .jsign(jsignParameters)
+                        .pathToSign(request.get(PATH_TO_SIGN_KEY))
+                        .resign(Boolean.parseBoolean(request.get(RESIGN_KEY)))
+                        .signNested(Boolean.parseBoolean(request.get(SIGN_NESTED_KEY)))
+                        .incremental(Boolean.parseBoolean(request.get(INCREMENTAL_KEY)))
+                        .threads(Integer.parseInt(request.getOrDefault(THREADS_KEY, "1")))
+                        .build();
+                new MixedSignatureProcess(parameters, jarSignerEngine(cache, jarSignerParameters, true), jsignEngine(cache, jsignParameters), this).sign();
+                return !cancelled;
+            }
+            case BUNDLE: {
+                // JAR files inside bundles are signed in memory.
+                final var jarSignerParameters = jarSignerParameters(true);
+                final var parameters = BundleSignatureParametersBuilder.create()
+                        .debugSignature(Boolean.parseBoolean(request.get(DEBUG_SIGNATURE_KEY)))
+                        .debugDirectoryWalk(Boolean.parseBoolean(request.get(DEBUG_DIRECTORY_WALK_KEY)))
+                        .jarSigner(jarSignerParameters)
+                        .pathToSign(request.get(PATH_TO_SIGN_KEY))
+                        .resign(Boolean.parseBoolean(request.get(RESIGN_KEY)))
+                        .threads(Integer.parseInt(request.getOrDefault(THREADS_KEY, "1")))
+                        .build();
+                new BundleSignatureProcess(parameters, jarSignerEngine(cache, jarSignerParameters, true), this).sign();
+                return !cancelled;
+            }
+            case JSIGN: {
+                final var parameters = jsignParameters(Boolean.parseBoolean(request.get(VERIFY_ONLY_KEY)));
+                final var process = new JSignProcess(parameters, jsignEngine(cache, parameters), this);
+                process.sign();
+                return !cancelled;
+            }
+            case UNKNOWN:
+            default:
+                throw new IllegalArgumentException(String.format("Unsupported sign method \"%s\".", request.get(SIGN_METHOD_KEY))); // NOI18N.
+        }
+    }
+
+    /**
+     * Creates the parameters of a JarSigner job from the request.
+     * @param inProcess If {@code true}, files are signed with the jarsigner API.
+     * @return A {@code JarSignerParameters} instance, never {@code null}.
+     */
+    private JarSignerParameters jarSignerParameters(final boolean inProcess) {
+        final boolean useProxy = request.get(PROXY_HOST_KEY) != null && request.get(PROXY_PORT_KEY) != null;
+        final boolean useTimeStamp = request.get(TIMESTAMP_HOST_KEY) != null;
+        final var keyStore = request.get(KEY_STORE_KEY);
+        final var storePassword = request.get(STORE_PASSWORD_KEY);
+        final var keyPass = request.get(KEY_PASS_KEY);
+        return JarSignerParametersBuilder.create()
+                .debugCommand(Boolean.parseBoolean(request.get(DEBUG_COMMAND_KEY)))
+                .debugSignature(Boolean.parseBoolean(request.get(DEBUG_SIGNATURE_KEY)))
+                .debugDirectoryWalk(Boolean.parseBoolean(request.get(DEBUG_DIRECTORY_WALK_KEY)))
+                .javaHome(request.get(JAVA_HOME_KEY))
+                .jarSignerExec(request.getOrDefault(JAR_SIGNER_KEY, JarSignerUtils.DEFAULT_JAR_SIGNER))
+                .keyStore(keyStore)
+                .alias(request.get(ALIAS_KEY))
+                .storePassword(storePassword)
+                .keyPass(keyPass)
+                .useProxy(useProxy)
+                .proxyHost(request.get(PROXY_HOST_KEY))
+                .proxyPort(request.get(PROXY_PORT_KEY))
+                .useTimeStamp(useTimeStamp)
+                .timeStampHost(request.getOrDefault(TIMESTAMP_HOST_KEY, JarSignerUtils.DEFAULT_TIME_STAMP_HOST))
+                .pathToSign(request.get(PATH_TO_SIGN_KEY))
+                .inProcess(inProcess)
+                .fullVerification(Boolean.parseBoolean(request.get(FULL_VERIFICATION_KEY)))
+                .threads(Integer.parseInt(request.getOrDefault(THREADS_KEY, "1")))
+                .incremental(Boolean.parseBoolean(request.get(INCREMENTAL_KEY)))
+                .warmWorkers(Boolean.parseBoolean(request.get(WARM_WORKERS_KEY)))
+                .parallelDigests(Boolean.parseBoolean(request.get(PARALLEL_DIGESTS_KEY)))
+                .parallelDigestThreshold(Long.parseLong(request.getOrDefault(PARALLEL_DIGEST_THRESHOLD_KEY, String.valueOf(JarSignerUtils.DEFAULT_PARALLEL_DIGEST_THRESHOLD / (1024 * 1024)))) * 1024 * 1024)
+                .reuseDigests(Boolean.parseBoolean(request.get(REUSE_DIGESTS_KEY)))
+                .resign(Boolean.parseBoolean(request.get(RESIGN_KEY)))
+                .additionalSigners(JarSignerUtils.INSTANCE.additionalSigners(request.get(ADDITIONAL_ALIASES_KEY), keyStore, storePassword, keyPass))
+                .build();
+    }
+
+    /**
+     * Computes the part of the cache key of an engine that identifies its key.
+     * <br>The key changes when the alias changes or when the key store file is replaced or modified, so engines are loaded again.
+     * @param keyStore The key store, may be {@code null}; if empty, the default key store is used.
+     * @param alias The alias, may be {@code null}.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private static String keyStoreKey(final String keyStore, final String alias) {
+        final var keyStoreFile = JarSignerUtils.INSTANCE.keyStorePath(keyStore).toAbsolutePath().normalize();
+        final var builder = new StringBuilder();
+        builder.append(alias).append('|').append(keyStoreFile);
+        try {
+            final var attributes = Files.readAttributes(keyStoreFile, BasicFileAttributes.class);
+            builder.append('|').append(attributes.size()).append('|').append(attributes.lastModifiedTime().toMillis());
+        } catch (IOException ex) {
+            // Key store not readable, loading the engine will report it.
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the in-process JarSigner engine of the request from the cache, creating it if needed.
+     * @param cache The engine cache.
+     * @param parameters The parameters of the job.
+     * @param inProcess If {@code true}, files are signed with the jarsigner API.
+     * @return A {@code JarSignerEngine} instance, {@code null} if files are signed by forking the jarsigner tool.
+     * @throws Exception In case of errors.
+     */
+    private JarSignerEngine jarSignerEngine(final EngineCache cache, final JarSignerParameters parameters, final boolean inProcess) throws Exception {
+        // The forked engine holds no key material, there is nothing to keep warm; its worker JVMs are shared across jobs anyway.
+        if (!inProcess) {
+            return null;
+        }
+        final boolean useProxy = request.get(PROXY_HOST_KEY) != null && request.get(PROXY_PORT_KEY) != null;
+        final boolean useTimeStamp = request.get(TIMESTAMP_HOST_KEY) != null;
+        final var key = String.join("|", SignMethod.JARSIGNER_API.name(), // NOI18N.
+                keyStoreKey(request.get(KEY_STORE_KEY), request.get(ALIAS_KEY)),
+                String.valueOf(useTimeStamp ? request.get(TIMESTAMP_HOST_KEY) : null),
+                String.valueOf(useProxy ? request.get(PROXY_HOST_KEY) + ':' + request.get(PROXY_PORT_KEY) : null),
+                request.get(FULL_VERIFICATION_KEY),
+                request.get(PARALLEL_DIGESTS_KEY),
+                request.get(PARALLEL_DIGEST_THRESHOLD_KEY),
+                request.get(REUSE_DIGESTS_KEY),
+                request.get(RESIGN_KEY),
+                request.get(ADDITIONAL_ALIASES_KEY));
+        return cache.get(key, request.get(STORE_PASSWORD_KEY), request.get(KEY_PASS_KEY), () -> new InProcessJarSignerEngine(parameters));
+    }
+
+    /**
+     * Creates the parameters of a JSign job from the request.
+     * @param verifyOnly If {@code true}, files are verified but not signed.
+     * @return A {@code JSignParameters} instance, never {@code null}.
+     */
+    private JSignParameters jsignParameters(final boolean verifyOnly) {
+        final boolean useProxy = request.get(PROXY_HOST_KEY) != null && request.get(PROXY_PORT_KEY) != null;
+        final boolean useTimeStamp = request.get(TIMESTAMP_HOST_KEY) != null;
+        return JSignParametersBuilder.create()
+                .debugCommand(Boolean.parseBoolean(request.get(DEBUG_COMMAND_KEY)))
+                .debugSignature(Boolean.parseBoolean(request.get(DEBUG_SIGNATURE_KEY)))
+                .debugDirectoryWalk(Boolean.parseBoolean(request.get(DEBUG_DIRECTORY_WALK_KEY)))
+                .keystoreFilename(request.get(KEY_STORE_KEY))
+                .alias(request.get(ALIAS_KEY))
+                .password(request.get(STORE_PASSWORD_KEY))
+                .keypass(request.get(KEY_PASS_KEY))
+                .useProxy(useProxy)
+                .proxyHost(request.get(PROXY_HOST_KEY))
+                .proxyPort(request.get(PROXY_PORT_KEY))
+                .useTimeStamp(useTimeStamp)
+                .timeStampHost(request.getOrDefault(TIMESTAMP_HOST_KEY, JSignUtils.DEFAULT_TIME_STAMP_HOST))
+                .programName(request.get(PROGRAM_NAME_KEY))
+                .programURL(request.get(PROGRAM_URL_KEY))
+                .filename(request.get(PATH_TO_SIGN_KEY))
+                .incremental(Boolean.parseBoolean(request.get(INCREMENTAL_KEY)))
+                .threads(Integer.parseInt(request.getOrDefault(THREADS_KEY, "1")))
+                .verifyOnly(verifyOnly)
+                .build();
+    }
+
+    /**
+     * Gets the JSign engine of the request from the cache, creating it if needed.
+     * @param cache The engine cache.
+     * @param parameters The parameters of the job.
+     * @return A {@code JSignEngine} instance, never {@code null}.
+     * @throws Exception In case of errors.
+     */
+    private JSignEngine jsignEngine(final EngineCache cache, final JSignParameters parameters) throws Exception {
+        final boolean useProxy = request.get(PROXY_HOST_KEY) != null && request.get(PROXY_PORT_KEY) != null;
+        final boolean useTimeStamp = request.get(TIMESTAMP_HOST_KEY) != null;
+        final var key = String.join("|", SignMethod.JSIGN.name(), // NOI18N.
+                keyStoreKey(request.get(KEY_STORE_KEY), request.get(ALIAS_KEY)),
+                String.valueOf(useTimeStamp ? request.get(TIMESTAMP_HOST_KEY) : null),
+                String.valueOf(useProxy ? request.get(PROXY_HOST_KEY) + ':' + request.get(PROXY_PORT_KEY) : null),
+                request.get(PROGRAM_NAME_KEY),
+                request.get(PROGRAM_URL_KEY));
+        return cache.get(key, request.get(STORE_PASSWORD_KEY), request.get(KEY_PASS_KEY), () -> new JSignEngine(parameters));
+    }
+
+    /**
+     * Verifies the requested path.
+     * @param cache The engine cache.
+     * @return {@code True} if all files are signed.
+     * @throws Exception In case of errors.
+     */
+    private boolean verify(final EngineCache cache) throws Exception {
+        final var signMethod = SignMethod.parse(request.getOrDefault(SIGN_METHOD_KEY, SignMethod.JARSIGNER.name()));
+        final var path = Paths.get(request.get(PATH_TO_SIGN_KEY));
+        if (signMethod == SignMethod.JSIGN) {
+            // Files are checked against the certificate of the requested alias.
+            final var parameters = jsignParameters(true);
+            final var process = new JSignProcess(parameters, jsignEngine(cache, parameters), this);
+            process.sign();
+            final var report = process.getReport();
+            final int total = report.values().stream().mapToInt(Integer::intValue).sum();
+            return report.get(AuthenticodeVerifier.Status.VALID) == total && !cancelled;
+        }
+        final var verifier = new JarSignatureVerifier(Boolean.parseBoolean(request.get(FULL_VERIFICATION_KEY)));
+        final var walker = new FileWalker(path, (file, attributes) -> file.getFileName().toString().endsWith(".jar")); // NOI18N.
+        walker.start();
+        int total = 0;
+        int unsigned = 0;
+        try {
+            for (var entry = walker.take(); entry != null && !cancelled; entry = walker.take()) {
+                final Path file = entry.getPath();
+                total++;
+                if (!Files.isReadable(file) || !verifier.isSigned(file)) {
+                    unsigned++;
+                    updateMessage(String.format("File \"%s\" is not signed.", file)); // NOI18N.
+                }
+            }
+        } finally {
+            walker.cancel();
+        }
+        updateMessage(String.format("%d of %d files signed.", total - unsigned, total)); // NOI18N.
+        return unsigned == 0 && !cancelled;
+    }
+
+    /**
+     * Writes a line to the client.
+     * <br>If the client went away, the job is cancelled.
+     * @param line The line.
+     */
+    private void writeLine(final String line) {
+        synchronized (output) {
+            output.print(line.replace('\r', ' ').replace('\n', ' '));
+            output.print('\n');
+            output.flush();
+            if (output.checkError()) {
+                cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Writes the result line.
+     * @param success {@code True} on success.
+     * @param message An optional message, may be {@code null}.
+     */
+    private void writeResult(final boolean success, final String message) {
+        final var result = success ? DaemonUtils.RESULT_OK : DaemonUtils.RESULT_FAILED;
+        writeLine(DaemonUtils.RESULT_PREFIX + ((message == null) ? result : result + ' ' + message));
+    }
+
+    @Override
+    public void updateProgress(final double progress, final double totalProgess) {
+        writeLine(String.format("%s%d %d", DaemonUtils.PROGRESS_PREFIX, (long) progress, (long) totalProgess)); // NOI18N.
+    }
+
+    @Override
+    public void updateMessage(final String message) {
+        writeLine(DaemonUtils.MESSAGE_PREFIX + message);
+    }
+
+    @Override
+    public void updateTitle(final String title) {
+        updateMessage(title);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
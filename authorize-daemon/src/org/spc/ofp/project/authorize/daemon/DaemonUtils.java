@@ -0,0 +1,172 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.daemon;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Base definitions shared by the daemon and its clients.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum DaemonUtils {
+    /**
+     * Unique instance of this class.
+     */
+    INSTANCE;
+
+    /**
+     * Name of the file that advertises a running daemon, equals to "{@value}".
+     */
+    public static final String DAEMON_FILENAME = "daemon.properties"; // NOI18N.
+    /**
+     * Port key in the daemon file, equals to "{@value}".
+     */
+    public static final String PORT_KEY = "port"; // NOI18N.
+    /**
+     * Token key in the daemon file, equals to "{@value}".
+     */
+    public static final String TOKEN_KEY = "token"; // NOI18N.
+    /**
+     * PID key in the daemon file, equals to "{@value}".
+     */
+    public static final String PID_KEY = "pid"; // NOI18N.
+    /**
+     * Header that carries the access token, equals to "{@value}".
+     */
+    public static final String TOKEN_HEADER = "X-Authorize-Token"; // NOI18N.
+    /**
+     * Header that identifies the client for fair queuing, equals to "{@value}".
+     */
+    public static final String CLIENT_HEADER = "X-Authorize-Client"; // NOI18N.
+    /**
+     * Sign endpoint, equals to "{@value}".
+     */
+    public static final String SIGN_ENDPOINT = "/sign"; // NOI18N.
+    /**
+     * Verify endpoint, equals to "{@value}".
+     */
+    public static final String VERIFY_ENDPOINT = "/verify"; // NOI18N.
+    /**
+     * Status endpoint, equals to "{@value}".
+     */
+    public static final String STATUS_ENDPOINT = "/status"; // NOI18N.
+    /**
+     * Shutdown endpoint, equals to "{@value}".
+     */
+    public static final String SHUTDOWN_ENDPOINT = "/shutdown"; // NOI18N.
+    /**
+     * Prefix of message lines in responses, equals to "{@value}".
+     */
+    public static final String MESSAGE_PREFIX = "MESSAGE "; // NOI18N.
+    /**
+     * Prefix of progress lines in responses, equals to "{@value}".
+     */
+    public static final String PROGRESS_PREFIX = "PROGRESS "; // NOI18N.
+    /**
+     * Prefix of the result line that ends every response, equals to "{@value}".
+     */
+    public static final String RESULT_PREFIX = "RESULT "; // NOI18N.
+    /**
+     * Successful result, equals to "{@value}".
+     */
+    public static final String RESULT_OK = "OK"; // NOI18N.
+    /**
+     * Failed result, equals to "{@value}".
+     */
+    public static final String RESULT_FAILED = "FAILED"; // NOI18N.
+
+    /**
+     * Gets the directory that holds the daemon file.
+     * @return A {@code Path} instance, never {@code null}.
+     */
+    public Path getDaemonDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".authorize"); // NOI18N.
+    }
+
+    /**
+     * Gets the file that advertises a running daemon.
+     * @return A {@code Path} instance, never {@code null}.
+     */
+    public Path getDaemonFile() {
+        return getDaemonDirectory().resolve(DAEMON_FILENAME);
+    }
+
+    /**
+     * Writes the daemon file; only the current user can read it.
+     * @param port The port.
+     * @param token The access token.
+     * @throws IOException In case of IO errors.
+     */
+    void writeDaemonFile(final int port, final String token) throws IOException {
+        final var directory = getDaemonDirectory();
+        final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix"); // NOI18N.
+        if (!Files.isDirectory(directory)) {
+            if (posix) {
+                Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------"))); // NOI18N.
+            } else {
+                Files.createDirectories(directory);
+            }
+        }
+        final var properties = new Properties();
+        properties.setProperty(PORT_KEY, String.valueOf(port));
+        properties.setProperty(TOKEN_KEY, token);
+        properties.setProperty(PID_KEY, String.valueOf(ProcessHandle.current().pid()));
+        final var tempFile = posix
+                ? Files.createTempFile(directory, DAEMON_FILENAME, ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))) // NOI18N.
+                : Files.createTempFile(directory, DAEMON_FILENAME, ".tmp"); // NOI18N.
+        try {
+            try (final var output = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                properties.store(output, null);
+            }
+            if (!posix) {
+                final var file = tempFile.toFile();
+                file.setReadable(false, false);
+                file.setReadable(true, true);
+                file.setWritable(false, false);
+                file.setWritable(true, true);
+            }
+            Files.move(tempFile, getDaemonFile(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Reads the daemon file.
+     * @return An {@code Optional<Properties>} instance, never {@code null}.
+     * <br>Empty if no daemon file exists or if it cannot be read.
+     */
+    Optional<Properties> readDaemonFile() {
+        final var file = getDaemonFile();
+        if (!Files.isReadable(file)) {
+            return Optional.empty();
+        }
+        final var result = new Properties();
+        try (final var input = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            result.load(input);
+        } catch (IOException ex) {
+            return Optional.empty();
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Removes the daemon file.
+     * @throws IOException In case of IO errors.
+     */
+    void deleteDaemonFile() throws IOException {
+        Files.deleteIfExists(getDaemonFile());
+    }
+}
@@ -0,0 +1,106 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.daemon;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps unlocked key material and warm engines in memory between jobs.
+ * <br>Passwords are never stored; a salted hash is kept to check that a job knows the passwords of the entry it reuses.
+ * When the hash does not match, the entry is loaded again with the provided passwords, which fails if they are wrong.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class EngineCache {
+
+    /**
+     * A cached value.
+     */
+    private static final class Entry {
+
+        private final byte[] salt;
+        private final byte[] credentials;
+        private final Object value;
+
+        Entry(final byte[] salt, final byte[] credentials, final Object value) {
+            this.salt = salt;
+            this.credentials = credentials;
+            this.value = value;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Gets a cached value, loading it if needed.
+     * <br>Loading happens outside of the lock so a slow key store does not block jobs that use other entries.
+     * @param <T> The type of the value.
+     * @param key The cache key; must change whenever the key store, the alias or the engine options change.
+     * @param storePassword The store password.
+     * @param keyPass The key password.
+     * @param loader Loads the value; it must fail if the passwords are wrong.
+     * @return A {@code T} instance, never {@code null}.
+     * @throws Exception If the value cannot be loaded.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(final String key, final String storePassword, final String keyPass, final Callable<T> loader) throws Exception {
+        synchronized (this) {
+            final var entry = entries.get(key);
+            if (entry != null && MessageDigest.isEqual(entry.credentials, credentials(entry.salt, storePassword, keyPass))) {
+                return (T) entry.value;
+            }
+        }
+        final var value = loader.call();
+        final var salt = new byte[16];
+        random.nextBytes(salt);
+        synchronized (this) {
+            entries.put(key, new Entry(salt, credentials(salt, storePassword, keyPass), value));
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of cached values.
+     * @return An {@code int}.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Computes the salted hash of a pair of passwords.
+     * @param salt The salt.
+     * @param storePassword The store password, may be {@code null}.
+     * @param keyPass The key password, may be {@code null}.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    private static byte[] credentials(final byte[] salt, final String storePassword, final String keyPass) {
+        try {
+            final var digest = MessageDigest.getInstance("SHA-256"); // NOI18N.
+            digest.update(salt);
+            digest.update(String.valueOf(storePassword).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(keyPass).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JDK implementation supports SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+}
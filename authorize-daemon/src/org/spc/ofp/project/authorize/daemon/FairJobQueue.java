@@ -0,0 +1,86 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.daemon;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Job queue that serves clients in round-robin order.
+ * <br>Each client has its own FIFO queue; a client that submits many jobs cannot delay the jobs of other clients by more than one job each.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ * @param <T> The type of the jobs.
+ */
+final class FairJobQueue<T> {
+
+    /**
+     * Pending jobs for each client.
+     */
+    private final Map<String, ArrayDeque<T>> queues = new HashMap<>();
+    /**
+     * Clients that have pending jobs, in the order they will be served.
+     */
+    private final ArrayDeque<String> clients = new ArrayDeque<>();
+    private int size = 0;
+
+    /**
+     * Adds a job at the end of the queue of its client.
+     * @param client The client identifier.
+     * @param job The job.
+     * @throws NullPointerException If {@code client} or {@code job} is {@code null}.
+     */
+    public synchronized void put(final String client, final T job) throws NullPointerException {
+        Objects.requireNonNull(client);
+        Objects.requireNonNull(job);
+        final var queue = queues.computeIfAbsent(client, key -> new ArrayDeque<>());
+        if (queue.isEmpty()) {
+            clients.addLast(client);
+        }
+        queue.addLast(job);
+        size++;
+        notifyAll();
+    }
+
+    /**
+     * Takes the next job, waiting for one to be submitted if needed.
+     * <br>The client that was served moves to the end of the rotation.
+     * @return A {@code T} instance, never {@code null}.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public synchronized T take() throws InterruptedException {
+        while (clients.isEmpty()) {
+            wait();
+        }
+        final var client = clients.removeFirst();
+        final var queue = queues.get(client);
+        final var result = queue.removeFirst();
+        if (queue.isEmpty()) {
+            queues.remove(client);
+        } else {
+            clients.addLast(client);
+        }
+        size--;
+        return result;
+    }
+
+    /**
+     * Gets the number of pending jobs.
+     * @return An {@code int}.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of clients with pending jobs.
+     * @return An {@code int}.
+     */
+    public synchronized int clientCount() {
+        return clients.size();
+    }
+}
@@ -0,0 +1,73 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize;
+
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads numeric values from the app settings.
+ * <br>Invalid values are logged and replaced by the default value; out of range values are clamped.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum Settings {
+    /**
+     * The unique instance of this class.
+     */
+    INSTANCE;
+
+    private static final Logger LOGGER = Logger.getLogger(Authorize.class.getName());
+
+    /**
+     * Maximum number of worker threads; workers mostly wait for forked signers or timestamp servers.
+     */
+    public static final int MAX_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Gets an {@code int} setting.
+     * @param properties The settings.
+     * @param key The key.
+     * @param defaultValue The default value, within range.
+     * @param min The minimum value.
+     * @param max The maximum value.
+     * @return An {@code int} within range.
+     */
+    public int getInt(final Properties properties, final String key, final int defaultValue, final int min, final int max) {
+        return (int) getLong(properties, key, defaultValue, min, max);
+    }
+
+    /**
+     * Gets a {@code long} setting.
+     * @param properties The settings.
+     * @param key The key.
+     * @param defaultValue The default value, within range.
+     * @param min The minimum value.
+     * @param max The maximum value.
+     * @return A {@code long} within range.
+     */
+    public long getLong(final Properties properties, final String key, final long defaultValue, final long min, final long max) {
+        final var value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        final long result;
+        try {
+            result = Long.parseLong(value.trim());
+        } catch (NumberFormatException ex) {
+            final var message = String.format("Invalid value \"%s\" for setting \"%s\", using %d.", value, key, defaultValue); // NOI18N.
+            LOGGER.log(Level.WARNING, message);
+            return defaultValue;
+        }
+        if (result < min || result > max) {
+            final long clamped = Math.max(min, Math.min(max, result));
+            final var message = String.format("Value %d for setting \"%s\" out of range [%d, %d], using %d.", result, key, min, max, clamped); // NOI18N.
+            LOGGER.log(Level.WARNING, message);
+            return clamped;
+        }
+        return result;
+    }
+}
@@ -20,6 +20,7 @@ import javafx.scene.layout.AnchorPane;
 import javafx.stage.FileChooser;
 import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
 import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerUtils;
 
 /**
  * The controller for the project settings UI.
@@ -39,6 +40,10 @@ public final class KeyStoreSettingsController implements Initializable {
     private PasswordField keyPassField;
     @FXML
     private CheckBox samePassCheck;
+    /**
+     * Comma-separated aliases of additional signers, may be {@code null}.
+     */
+    private String additionalAliases;
 
     /**
      * {@inheritDoc}
@@ -74,6 +79,8 @@ public final class KeyStoreSettingsController implements Initializable {
         pathField.setText(path);
         final var alias = (invalid) ? null : properties.getProperty(project + ".alias"); // NOI18N.
         aliasField.setText(alias);
+        // No field in the UI, aliases of additional signers are only set in the properties.
+        additionalAliases = (invalid) ? null : properties.getProperty(project + ".additional.aliases"); // NOI18N.
         final var keyPass = (invalid) ? null : properties.getProperty(project + ".key.pass"); // NOI18N.
         final var storePass = (invalid) ? null : properties.getProperty(project + ".store.password"); // NOI18N.
         final boolean samePassword = Objects.equals(storePass, keyPass);
@@ -95,7 +102,8 @@ public final class KeyStoreSettingsController implements Initializable {
         parametersBuilder.keyStore(pathField.getText())
                 .storePassword(storePassField.getText())
                 .alias(aliasField.getText())
-                .keyPass(keyPassField.getText());
+                .keyPass(keyPassField.getText())
+                .additionalSigners(JarSignerUtils.INSTANCE.additionalSigners(additionalAliases, pathField.getText(), storePassField.getText(), keyPassField.getText()));
     }
 
     /**
@@ -45,6 +45,7 @@ import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import org.spc.ofp.project.authorize.Authorize;
 import org.spc.ofp.project.authorize.I18N;
+import org.spc.ofp.project.authorize.Settings;
 import org.spc.ofp.project.authorize.scene.jsign.JSignSettingsController;
 import org.spc.ofp.project.authorize.scene.keystore.KeyStoreSettingsController;
 import org.spc.ofp.project.authorize.scene.project.ProjectSettingsController;
@@ -52,6 +53,10 @@ import org.spc.ofp.project.authorize.task.jsign.JSignSignTask;
 import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
 import org.spc.ofp.project.authorize.task.jarsigner.JarSignerSignTask;
 import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.task.bundle.BundleSignTask;
+import org.spc.ofp.project.authorize.task.mixed.MixedSignTask;
 
 /**
  * The controller for the project main UI.
@@ -63,6 +68,10 @@ public final class MainUIController implements Initializable {
     private static final String IMPLICIT_SIGN_METHOD = "jarsigner"; // NOI18N.
     public static final String DEFAULT_CONFIG_FILE = "settings.properties"; // NOI18N.
     private static final Preferences PREFS = Preferences.userNodeForPackage(Authorize.class);
+    /**
+     * Maximum parallel digest threshold in MB, so the threshold in bytes does not overflow.
+     */
+    private static final long MAX_DIGEST_THRESHOLD = Long.MAX_VALUE / (1024 * 1024);
 
     @FXML
     private BorderPane rootPane;
@@ -138,7 +147,8 @@ public final class MainUIController implements Initializable {
         final var signMethodStr = properties.getProperty(String.format("%s.sign.method", currentProject), IMPLICIT_SIGN_METHOD); // NOI18N.
         final var signMethod = SignMethod.parse(signMethodStr);
         switch (signMethod) {
-            case JSIGN: {
+            case JSIGN:
+            case MIXED: {
                 try {
                     final var jsignLabel = new Label(resources.getString("windows.exec.sign.label")); // NOI18N.
                     jsignLabel.getStyleClass().add("h1");
@@ -221,7 +231,16 @@ public final class MainUIController implements Initializable {
                 signWithJSignAsync();
                 break;
             }
-            case JARSIGNER: {
+            case MIXED: {
+                signMixedAsync();
+                break;
+            }
+            case BUNDLE: {
+                signBundlesAsync();
+                break;
+            }
+            case JARSIGNER:
+            case JARSIGNER_API: {
                 signWithJarSignerAsync();
                 break;
             }
@@ -238,81 +257,128 @@ public final class MainUIController implements Initializable {
         final var signService = new Service<Void>() {
             @Override
             protected Task<Void> createTask() {
-                final var parametersBuilder = JarSignerParametersBuilder.create()
+                final var parameters = jarSignerParametersBuilder().build();
+                final var task = new JarSignerSignTask(parameters);
+                return task;
+            }
+        };
+        startSignService(signService);
+    }
+
+    /**
+     * Sign with JSign asynchronously.
+     */
+    private void signWithJSignAsync() {
+        final var signService = new Service<Void>() {
+            @Override
+            protected Task<Void> createTask() {
+                final var parameters = jsignParametersBuilder().build();
+                final var task = new JSignSignTask(parameters);
+                return task;
+            }
+        };
+        startSignService(signService);
+    }
+
+    /**
+     * Sign JAR files and native executables of the project asynchronously, in a single walk.
+     */
+    private void signMixedAsync() {
+        final var signService = new Service<Void>() {
+            @Override
+            protected Task<Void> createTask() {
+                final var parametersBuilder = MixedSignatureParametersBuilder.create()
                         .debugDirectoryWalk(Boolean.parseBoolean(properties.getProperty("debug.directory.walk"))) // NOI18N.
                         .debugSignature(Boolean.parseBoolean(properties.getProperty("debug.signature"))) // NOI18N.
-                        .debugCommand(Boolean.parseBoolean(properties.getProperty("debug.command"))) // NOI18N.
-                        .javaHome(properties.getProperty("java.home")) // NOI18N.
-                        .jarSignerExec(properties.getProperty("jar.signer")) // NOI18N.
-                        .useProxy(Boolean.parseBoolean(properties.getProperty("use.proxy"))) // NOI18N.
-                        .proxyHost(properties.getProperty("proxy.host")) // NOI18N.
-                        .proxyPort(properties.getProperty("proxy.port")) // NOI18N.
+                        .incremental(Boolean.parseBoolean(properties.getProperty("incremental"))) // NOI18N.
+                        .resign(Boolean.parseBoolean(properties.getProperty("resign"))) // NOI18N.
+                        .signNested(Boolean.parseBoolean(properties.getProperty("sign.nested"))) // NOI18N.
+                        .jarSigner(jarSignerParametersBuilder().inProcess(true).build())
+                        .jsign(jsignParametersBuilder().build())
                         .logger(LOGGER);
                 projectSettingsController.apply(parametersBuilder);
-                keyStoreSettingsController.apply(parametersBuilder);
                 final var parameters = parametersBuilder.build();
-                final var task = new JarSignerSignTask(parameters);
+                final var task = new MixedSignTask(parameters);
                 return task;
             }
         };
-        final ChangeListener<String> messageListener = (observable, oldValue, newValue) -> LOGGER.log(Level.INFO, newValue);
-        signService.messageProperty().addListener(messageListener);
-        signService.setOnSucceeded(event -> {
-            final var message = I18N.INSTANCE.getString("task.sign.success"); // NOI18N.
-            LOGGER.log(Level.INFO, message); // NOI18N.
-            runningServices.remove(signService);
-            signService.messageProperty().removeListener(messageListener);
-            progressBar.progressProperty().unbind();
-            displaySuccessMessage(I18N.INSTANCE.getString("app.title"), I18N.INSTANCE.getString("digital.signature.label"), message);
-            signing.set(false);
-        });
-        signService.setOnCancelled(event -> {
-            final var message = I18N.INSTANCE.getString("task.sign.cancel"); // NOI18N.
-            LOGGER.log(Level.WARNING, message);
-            runningServices.remove(signService);
-            signService.messageProperty().removeListener(messageListener);
-            progressBar.progressProperty().unbind();
-            signing.set(false);
-        });
-        signService.setOnFailed(event -> {
-            final var ex = event.getSource().getException();
-            final var message = I18N.INSTANCE.getString("task.sign.fail"); // NOI18N.
-            LOGGER.log(Level.INFO, message, ex.getMessage());
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-            runningServices.remove(signService);
-            signService.messageProperty().removeListener(messageListener);
-            progressBar.progressProperty().unbind();
-            signing.set(false);
-        });
-        progressBar.progressProperty().bind(signService.progressProperty());
-        signing.set(true);
-        runningServices.add(signService);
-        signService.start();
+        startSignService(signService);
     }
 
     /**
-     * Sign with JSign asynchronously.
+     * Sign the JAR files inside the bundles of the project asynchronously.
      */
-    private void signWithJSignAsync() {
+    private void signBundlesAsync() {
         final var signService = new Service<Void>() {
             @Override
             protected Task<Void> createTask() {
-                final var parametersBuilder = JSignParametersBuilder.create()
+                final var parametersBuilder = BundleSignatureParametersBuilder.create()
                         .debugDirectoryWalk(Boolean.parseBoolean(properties.getProperty("debug.directory.walk"))) // NOI18N.
                         .debugSignature(Boolean.parseBoolean(properties.getProperty("debug.signature"))) // NOI18N.
-                        .debugCommand(Boolean.parseBoolean(properties.getProperty("debug.command"))) // NOI18N.
-                        .useProxy(Boolean.parseBoolean(properties.getProperty("use.proxy"))) // NOI18N.
-                        .proxyHost(properties.getProperty("proxy.host")) // NOI18N.
-                        .proxyPort(properties.getProperty("proxy.port")) // NOI18N.                       
+                        .resign(Boolean.parseBoolean(properties.getProperty("resign"))) // NOI18N.
+                        .jarSigner(jarSignerParametersBuilder().inProcess(true).build())
                         .logger(LOGGER);
                 projectSettingsController.apply(parametersBuilder);
-                keyStoreSettingsController.apply(parametersBuilder);
-                jsignSettingsController.apply(parametersBuilder);
                 final var parameters = parametersBuilder.build();
-                final var task = new JSignSignTask(parameters);
+                final var task = new BundleSignTask(parameters);
                 return task;
             }
         };
+        startSignService(signService);
+    }
+
+    /**
+     * Creates the JarSigner parameters of the current project.
+     * @return A {@code JarSignerParametersBuilder} instance, never {@code null}.
+     */
+    private JarSignerParametersBuilder jarSignerParametersBuilder() {
+        final var parametersBuilder = JarSignerParametersBuilder.create()
+                .debugDirectoryWalk(Boolean.parseBoolean(properties.getProperty("debug.directory.walk"))) // NOI18N.
+                .debugSignature(Boolean.parseBoolean(properties.getProperty("debug.signature"))) // NOI18N.
+                .debugCommand(Boolean.parseBoolean(properties.getProperty("debug.command"))) // NOI18N.
+                .javaHome(properties.getProperty("java.home")) // NOI18N.
+                .jarSignerExec(properties.getProperty("jar.signer")) // NOI18N.
+                .fullVerification(Boolean.parseBoolean(properties.getProperty("full.verification"))) // NOI18N.
+                .incremental(Boolean.parseBoolean(properties.getProperty("incremental"))) // NOI18N.
+                .warmWorkers(Boolean.parseBoolean(properties.getProperty("warm.workers"))) // NOI18N.
+                .parallelDigests(Boolean.parseBoolean(properties.getProperty("parallel.digests"))) // NOI18N.
+                .parallelDigestThreshold(Settings.INSTANCE.getLong(properties, "parallel.digest.threshold", 64, 0, MAX_DIGEST_THRESHOLD) * 1024 * 1024) // NOI18N.
+                .reuseDigests(Boolean.parseBoolean(properties.getProperty("reuse.digests"))) // NOI18N.
+                .resign(Boolean.parseBoolean(properties.getProperty("resign"))) // NOI18N.
+                .useProxy(Boolean.parseBoolean(properties.getProperty("use.proxy"))) // NOI18N.
+                .proxyHost(properties.getProperty("proxy.host")) // NOI18N.
+                .proxyPort(properties.getProperty("proxy.port")) // NOI18N.
+                .logger(LOGGER);
+        projectSettingsController.apply(parametersBuilder);
+        keyStoreSettingsController.apply(parametersBuilder);
+        return parametersBuilder;
+    }
+
+    /**
+     * Creates the JSign parameters of the current project.
+     * @return A {@code JSignParametersBuilder} instance, never {@code null}.
+     */
+    private JSignParametersBuilder jsignParametersBuilder() {
+        final var parametersBuilder = JSignParametersBuilder.create()
+                .debugDirectoryWalk(Boolean.parseBoolean(properties.getProperty("debug.directory.walk"))) // NOI18N.
+                .debugSignature(Boolean.parseBoolean(properties.getProperty("debug.signature"))) // NOI18N.
+                .debugCommand(Boolean.parseBoolean(properties.getProperty("debug.command"))) // NOI18N.
+                .incremental(Boolean.parseBoolean(properties.getProperty("incremental"))) // NOI18N.
+                .useProxy(Boolean.parseBoolean(properties.getProperty("use.proxy"))) // NOI18N.
+                .proxyHost(properties.getProperty("proxy.host")) // NOI18N.
+                .proxyPort(properties.getProperty("proxy.port")) // NOI18N.
+                .logger(LOGGER);
+        projectSettingsController.apply(parametersBuilder);
+        keyStoreSettingsController.apply(parametersBuilder);
+        jsignSettingsController.apply(parametersBuilder);
+        return parametersBuilder;
+    }
+
+    /**
+     * Starts a sign service and tracks its progress.
+     * @param signService The service.
+     */
+    private void startSignService(final Service<Void> signService) {
         final ChangeListener<String> messageListener = (observable, oldValue, newValue) -> LOGGER.log(Level.INFO, newValue);
         signService.messageProperty().addListener(messageListener);
         signService.setOnSucceeded(event -> {
@@ -11,11 +11,18 @@ import java.util.Properties;
 import java.util.ResourceBundle;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Spinner;
+import javafx.scene.control.SpinnerValueFactory;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.AnchorPane;
 import javafx.stage.DirectoryChooser;
+import org.spc.ofp.project.authorize.Settings;
+import org.spc.ofp.project.authorize.signature.SignMethod;
 import org.spc.ofp.project.authorize.signature.jsign.JSignParametersBuilder;
 import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureParametersBuilder;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureParametersBuilder;
 
 /**
  * The controller for the project settings UI.
@@ -27,13 +34,17 @@ public final class ProjectSettingsController implements Initializable {
     private AnchorPane rootPane;
     @FXML
     private TextField pathField;
+    @FXML
+    private CheckBox inProcessCheck;
+    @FXML
+    private Spinner<Integer> threadsSpinner;
 
     /**
      * {@inheritDoc}
      */
     @Override
     public void initialize(final URL url, final ResourceBundle resources) {
-
+        threadsSpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(1, Settings.MAX_THREADS, 1));
     }
 
     /**
@@ -45,6 +56,13 @@ public final class ProjectSettingsController implements Initializable {
         final boolean invalid = properties == null || project == null;
         final var path = (invalid) ? null : properties.getProperty(project + ".path.to.sign"); // NOI18N.
         pathField.setText(path);
+        final var signMethodStr = (invalid) ? null : properties.getProperty(project + ".sign.method"); // NOI18N.
+        final var signMethod = SignMethod.parse(signMethodStr);
+        // JAR files of mixed and bundle projects are always signed in-process.
+        inProcessCheck.setSelected(signMethod == SignMethod.JARSIGNER_API || signMethod == SignMethod.MIXED || signMethod == SignMethod.BUNDLE);
+        inProcessCheck.setDisable(signMethod == SignMethod.JSIGN || signMethod == SignMethod.MIXED || signMethod == SignMethod.BUNDLE);
+        final int threads = (properties == null) ? 1 : Settings.INSTANCE.getInt(properties, "threads", 1, 1, Settings.MAX_THREADS); // NOI18N.
+        threadsSpinner.getValueFactory().setValue(threads);
     }
 
     /**
@@ -55,7 +73,9 @@ public final class ProjectSettingsController implements Initializable {
         if (parametersBuilder == null) {
             return;
         }
-        parametersBuilder.pathToSign(pathField.getText());
+        parametersBuilder.pathToSign(pathField.getText())
+                .inProcess(inProcessCheck.isSelected())
+                .threads(threadsSpinner.getValue());
     }
 
     /**
@@ -66,7 +86,32 @@ public final class ProjectSettingsController implements Initializable {
         if (parametersBuilder == null) {
             return;
         }
-        parametersBuilder.filename(pathField.getText());
+        parametersBuilder.filename(pathField.getText())
+                .threads(threadsSpinner.getValue());
+    }
+
+    /**
+     * Apply parameters to the mixed process.
+     * @param parametersBuilder The parameters builder.
+     */
+    public void apply(final MixedSignatureParametersBuilder parametersBuilder) {
+        if (parametersBuilder == null) {
+            return;
+        }
+        parametersBuilder.pathToSign(pathField.getText())
+                .threads(threadsSpinner.getValue());
+    }
+
+    /**
+     * Apply parameters to the bundle process.
+     * @param parametersBuilder The parameters builder.
+     */
+    public void apply(final BundleSignatureParametersBuilder parametersBuilder) {
+        if (parametersBuilder == null) {
+            return;
+        }
+        parametersBuilder.pathToSign(pathField.getText())
+                .threads(threadsSpinner.getValue());
     }
 
     /**
@@ -0,0 +1,61 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.task.bundle;
+
+import java.util.Objects;
+import javafx.concurrent.Task;
+import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureParameters;
+import org.spc.ofp.project.authorize.signature.bundle.BundleSignatureProcess;
+
+/**
+ * The task that signs the JAR files inside distribution bundles without extracting them.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class BundleSignTask extends Task<Void> {
+
+    /**
+     * The parameters object.
+     */
+    private final BundleSignatureParameters parameters;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public BundleSignTask(final BundleSignatureParameters parameters) throws NullPointerException {
+        Objects.requireNonNull(parameters);
+        this.parameters = parameters;
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        final var process = new BundleSignatureProcess(parameters, new SignatureProcessMonitor() {
+            @Override
+            public void updateProgress(final double progress, final double totalProgess) {
+                BundleSignTask.this.updateProgress(progress, totalProgess);
+            }
+
+            @Override
+            public void updateMessage(final String message) {
+                BundleSignTask.this.updateMessage(message);
+            }
+
+            @Override
+            public void updateTitle(final String title) {
+                BundleSignTask.this.updateTitle(title);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return BundleSignTask.this.isCancelled();
+            }
+        });
+        process.sign();
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.task.mixed;
+
+import java.util.Objects;
+import javafx.concurrent.Task;
+import org.spc.ofp.project.authorize.signature.SignatureProcessMonitor;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureParameters;
+import org.spc.ofp.project.authorize.signature.mixed.MixedSignatureProcess;
+
+/**
+ * The task that signs JAR files and Windows native executables of the same tree in a single walk.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class MixedSignTask extends Task<Void> {
+
+    /**
+     * The parameters object.
+     */
+    private final MixedSignatureParameters parameters;
+
+    /**
+     * Creates a new instance.
+     * @param parameters The parameters object.
+     * @throws NullPointerException If {@code parameters} is {@code null}.
+     */
+    public MixedSignTask(final MixedSignatureParameters parameters) throws NullPointerException {
+        Objects.requireNonNull(parameters);
+        this.parameters = parameters;
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        final var process = new MixedSignatureProcess(parameters, new SignatureProcessMonitor() {
+            @Override
+            public void updateProgress(final double progress, final double totalProgess) {
+                MixedSignTask.this.updateProgress(progress, totalProgess);
+            }
+
+            @Override
+            public void updateMessage(final String message) {
+                MixedSignTask.this.updateMessage(message);
+            }
+
+            @Override
+            public void updateTitle(final String title) {
+                MixedSignTask.this.updateTitle(title);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return MixedSignTask.this.isCancelled();
+            }
+        });
+        process.sign();
+        return null;
+    }
+}
@@ -0,0 +1,11 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+module authorize.test.support {
+    exports org.spc.ofp.project.authorize.test;
+    requires java.logging;
+    requires jdk.httpserver;
+    requires authorize.core;
+}
@@ -0,0 +1,146 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates synthetic artifacts for tests and benchmarks.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum ArtifactUtils {
+    /**
+     * Unique instance of this class.
+     */
+    INSTANCE;
+
+    /**
+     * Offset of the PE header.
+     */
+    private static final int PE_OFFSET = 0x80;
+    /**
+     * Size of the headers, aligned on the file alignment.
+     */
+    private static final int HEADERS_SIZE = 0x200;
+    private static final int FILE_ALIGNMENT = 0x200;
+    private static final int SECTION_ALIGNMENT = 0x1000;
+
+    /**
+     * Writes an unsigned JAR file.
+     * <br>Entries contain random data, so the JAR size is close to {@code size} whatever the compression.
+     * @param file The target file.
+     * @param entryCount The number of entries, not counting the manifest.
+     * @param size The total size of the entries in bytes.
+     * @param random The source of the entry data.
+     * @throws IOException In case of IO errors.
+     */
+    public void writeJar(final Path file, final int entryCount, final long size, final Random random) throws IOException {
+        final var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0"); // NOI18N.
+        final int count = Math.max(1, entryCount);
+        final long entrySize = size / count;
+        final var buffer = new byte[(int) Math.min(entrySize, 64 * 1024)];
+        try (final var output = new JarOutputStream(Files.newOutputStream(file), manifest)) {
+            for (int index = 0; index < count; index++) {
+                output.putNextEntry(new JarEntry(String.format("data/%d/entry-%d.bin", index / 100, index))); // NOI18N.
+                // The last entry takes the remainder.
+                long remaining = (index == count - 1) ? size - entrySize * (count - 1) : entrySize;
+                while (remaining > 0) {
+                    final int length = (int) Math.min(remaining, buffer.length);
+                    random.nextBytes(buffer);
+                    output.write(buffer, 0, length);
+                    remaining -= length;
+                }
+                output.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Writes a minimal unsigned 32-bit PE executable with a single code section.
+     * @param file The target file.
+     * @param size The approximate size of the file in bytes.
+     * @param random The source of the section data.
+     * @throws IOException In case of IO errors.
+     */
+    public void writePortableExecutable(final Path file, final long size, final Random random) throws IOException {
+        final int sectionSize = align((int) Math.max(FILE_ALIGNMENT, size - HEADERS_SIZE), FILE_ALIGNMENT);
+        final var buffer = ByteBuffer.allocate(HEADERS_SIZE + sectionSize).order(ByteOrder.LITTLE_ENDIAN);
+        // DOS header.
+        buffer.putShort(0, (short) 0x5A4D); // MZ
+        buffer.putInt(0x3C, PE_OFFSET);
+        // PE signature and COFF header.
+        buffer.position(PE_OFFSET);
+        buffer.putInt(0x00004550); // PE\0\0
+        buffer.putShort((short) 0x014C); // i386
+        buffer.putShort((short) 1); // Number of sections.
+        buffer.putInt((int) (System.currentTimeMillis() / 1000));
+        buffer.putInt(0); // Symbol table.
+        buffer.putInt(0); // Number of symbols.
+        buffer.putShort((short) 0xE0); // Size of optional header.
+        buffer.putShort((short) 0x0102); // Executable, 32-bit.
+        // Optional header.
+        final int optionalHeader = buffer.position();
+        buffer.putShort((short) 0x010B); // PE32
+        buffer.put((byte) 14).put((byte) 0); // Linker version.
+        buffer.putInt(sectionSize); // Size of code.
+        buffer.putInt(0).putInt(0); // Size of initialized and uninitialized data.
+        buffer.putInt(SECTION_ALIGNMENT); // Entry point.
+        buffer.putInt(SECTION_ALIGNMENT); // Base of code.
+        buffer.putInt(0); // Base of data.
+        buffer.putInt(0x00400000); // Image base.
+        buffer.putInt(SECTION_ALIGNMENT);
+        buffer.putInt(FILE_ALIGNMENT);
+        buffer.putShort((short) 6).putShort((short) 0); // OS version.
+        buffer.putShort((short) 0).putShort((short) 0); // Image version.
+        buffer.putShort((short) 6).putShort((short) 0); // Subsystem version.
+        buffer.putInt(0); // Win32 version.
+        buffer.putInt(SECTION_ALIGNMENT + align(sectionSize, SECTION_ALIGNMENT)); // Size of image.
+        buffer.putInt(HEADERS_SIZE);
+        buffer.putInt(0); // Checksum.
+        buffer.putShort((short) 3); // Console subsystem.
+        buffer.putShort((short) 0x8140); // NX compatible, dynamic base, terminal server aware.
+        buffer.putInt(0x100000).putInt(0x1000); // Stack reserve and commit.
+        buffer.putInt(0x100000).putInt(0x1000); // Heap reserve and commit.
+        buffer.putInt(0); // Loader flags.
+        buffer.putInt(16); // Number of data directories, all empty.
+        // Section table.
+        buffer.position(optionalHeader + 0xE0);
+        buffer.put(new byte[]{'.', 't', 'e', 'x', 't', 0, 0, 0});
+        buffer.putInt(sectionSize); // Virtual size.
+        buffer.putInt(SECTION_ALIGNMENT); // Virtual address.
+        buffer.putInt(sectionSize); // Size of raw data.
+        buffer.putInt(HEADERS_SIZE); // Pointer to raw data.
+        buffer.putInt(0).putInt(0).putShort((short) 0).putShort((short) 0); // Relocations and line numbers.
+        buffer.putInt(0x60000020); // Code, executable, readable.
+        // Section data: a single RET followed by random bytes.
+        final var data = new byte[sectionSize];
+        random.nextBytes(data);
+        data[0] = (byte) 0xC3;
+        buffer.position(HEADERS_SIZE);
+        buffer.put(data);
+        Files.write(file, buffer.array());
+    }
+
+    /**
+     * Aligns a value.
+     * @param value The value.
+     * @param alignment The alignment, a power of 2.
+     * @return An {@code int}.
+     */
+    private static int align(final int value, final int alignment) {
+        return (value + alignment - 1) & -alignment;
+    }
+}
@@ -0,0 +1,143 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.ZonedDateTime;
+import org.spc.ofp.project.authorize.der.DerUtils;
+
+/**
+ * Generates throwaway keys and self-signed certificates for tests and benchmarks.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum CertificateUtils {
+    /**
+     * Unique instance of this class.
+     */
+    INSTANCE;
+
+    /**
+     * OID of the code signing extended key usage, equals to "{@value}".
+     */
+    public static final String CODE_SIGNING_OID = "1.3.6.1.5.5.7.3.3"; // NOI18N.
+    /**
+     * OID of the timestamping extended key usage, equals to "{@value}".
+     */
+    public static final String TIME_STAMPING_OID = "1.3.6.1.5.5.7.3.8"; // NOI18N.
+    /**
+     * OID of SHA256withRSA, equals to "{@value}".
+     */
+    public static final String SHA256_WITH_RSA_OID = "1.2.840.113549.1.1.11"; // NOI18N.
+    private static final String COMMON_NAME_OID = "2.5.4.3"; // NOI18N.
+    private static final String EXTENDED_KEY_USAGE_OID = "2.5.29.37"; // NOI18N.
+    private static final String BASIC_CONSTRAINTS_OID = "2.5.29.19"; // NOI18N.
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Generates a RSA key pair.
+     * @param size The key size in bits.
+     * @return A {@code KeyPair} instance, never {@code null}.
+     * @throws GeneralSecurityException If RSA is not available.
+     */
+    public KeyPair generateKeyPair(final int size) throws GeneralSecurityException {
+        final var generator = KeyPairGenerator.getInstance("RSA"); // NOI18N.
+        generator.initialize(size, random);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Encodes a X.500 name with a single common name.
+     * @param commonName The common name.
+     * @return A {@code byte[]} instance, never {@code null}.
+     */
+    public byte[] name(final String commonName) {
+        final var der = DerUtils.INSTANCE;
+        return der.sequence(der.set(der.sequence(der.oid(COMMON_NAME_OID), der.utf8String(commonName))));
+    }
+
+    /**
+     * Creates a self-signed certificate.
+     * @param keyPair The key pair of the subject.
+     * @param commonName The common name of the subject and issuer.
+     * @param extendedKeyUsage OID of the extended key usage, marked critical.
+     * @param days Validity in days, starting yesterday.
+     * @return A {@code X509Certificate} instance, never {@code null}.
+     * @throws GeneralSecurityException If the certificate cannot be signed or parsed.
+     */
+    public X509Certificate selfSign(final KeyPair keyPair, final String commonName, final String extendedKeyUsage, final int days) throws GeneralSecurityException {
+        final var der = DerUtils.INSTANCE;
+        final var name = name(commonName);
+        final var algorithm = der.algorithm(SHA256_WITH_RSA_OID, true);
+        final var now = ZonedDateTime.now();
+        final var extensions = der.sequence(
+                der.sequence(der.oid(BASIC_CONSTRAINTS_OID), der.octetString(der.sequence())),
+                der.sequence(der.oid(EXTENDED_KEY_USAGE_OID), der.bool(true), der.octetString(der.sequence(der.oid(extendedKeyUsage)))));
+        final var tbs = der.sequence(
+                der.explicit(0, der.integer(2)),
+                der.integer(new BigInteger(63, random)),
+                algorithm,
+                name,
+                der.sequence(der.utcTime(now.minusDays(1)), der.utcTime(now.plusDays(days))),
+                name,
+                // Already a SubjectPublicKeyInfo.
+                keyPair.getPublic().getEncoded(),
+                der.explicit(3, extensions));
+        final var signature = Signature.getInstance("SHA256withRSA"); // NOI18N.
+        signature.initSign(keyPair.getPrivate());
+        signature.update(tbs);
+        final var certificate = der.sequence(tbs, algorithm, der.bitString(signature.sign()));
+        return (X509Certificate) CertificateFactory.getInstance("X.509") // NOI18N.
+                .generateCertificate(new ByteArrayInputStream(certificate));
+    }
+
+    /**
+     * Creates a key store that contains a throwaway code signing key.
+     * @param type The key store type, ie: {@code PKCS12} or {@code JKS}.
+     * @param alias The alias.
+     * @param password The password used for both the store and the key.
+     * @return A {@code KeyStore} instance, never {@code null}.
+     * @throws GeneralSecurityException If the key store cannot be created.
+     * @throws IOException In case of IO errors.
+     */
+    public KeyStore createCodeSigningKeyStore(final String type, final String alias, final String password) throws GeneralSecurityException, IOException {
+        final var keyPair = generateKeyPair(2048);
+        final var certificate = selfSign(keyPair, "Authorize Test Signer", CODE_SIGNING_OID, 365); // NOI18N.
+        final var result = KeyStore.getInstance(type);
+        result.load(null, null);
+        result.setKeyEntry(alias, keyPair.getPrivate(), password.toCharArray(), new Certificate[]{certificate});
+        return result;
+    }
+
+    /**
+     * Writes a key store that contains a throwaway code signing key.
+     * @param file The target file.
+     * @param type The key store type, ie: {@code PKCS12} or {@code JKS}.
+     * @param alias The alias.
+     * @param password The password used for both the store and the key.
+     * @throws GeneralSecurityException If the key store cannot be created.
+     * @throws IOException In case of IO errors.
+     */
+    public void writeCodeSigningKeyStore(final Path file, final String type, final String alias, final String password) throws GeneralSecurityException, IOException {
+        final var keyStore = createCodeSigningKeyStore(type, alias, password);
+        try (final var output = Files.newOutputStream(file)) {
+            keyStore.store(output, password.toCharArray());
+        }
+    }
+}
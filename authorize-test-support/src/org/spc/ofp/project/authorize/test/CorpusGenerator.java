@@ -0,0 +1,234 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.spc.ofp.project.authorize.signature.jarsigner.InProcessJarSignerEngine;
+import org.spc.ofp.project.authorize.signature.jarsigner.JarSignerParametersBuilder;
+
+/**
+ * Generates a tree of synthetic JAR files and PE executables, along with a throwaway key store.
+ * <br>The same seed always produces the same tree, so runs can be compared.
+ * <pre>
+ * final var corpus = CorpusGenerator.create()
+ *         .jarCount(500)
+ *         .signedFraction(0.2)
+ *         .generate(directory);
+ * </pre>
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class CorpusGenerator {
+
+    /**
+     * Name of the key store file, in the root directory.
+     */
+    public static final String KEY_STORE_FILENAME = "corpus.jks"; // NOI18N.
+    /**
+     * Name of the directory that contains the artifacts, in the root directory.
+     */
+    public static final String TREE_DIRECTORY = "tree"; // NOI18N.
+    /**
+     * Alias of the throwaway key.
+     */
+    public static final String ALIAS = "corpus"; // NOI18N.
+    /**
+     * Password of the throwaway key store and key.
+     */
+    public static final String PASSWORD = "corpus"; // NOI18N.
+    /**
+     * Number of sub-directories per directory.
+     */
+    private static final int FAN_OUT = 4;
+
+    /**
+     * A generated corpus.
+     */
+    public static final class Corpus {
+
+        private final Path root;
+        private final List<Path> jars;
+        private final List<Path> executables;
+        private final long totalSize;
+
+        private Corpus(final Path root, final List<Path> jars, final List<Path> executables, final long totalSize) {
+            this.root = root;
+            this.jars = Collections.unmodifiableList(jars);
+            this.executables = Collections.unmodifiableList(executables);
+            this.totalSize = totalSize;
+        }
+
+        public Path getRoot() {
+            return root;
+        }
+
+        public Path getTree() {
+            return root.resolve(TREE_DIRECTORY);
+        }
+
+        public Path getKeyStore() {
+            return root.resolve(KEY_STORE_FILENAME);
+        }
+
+        public List<Path> getJars() {
+            return jars;
+        }
+
+        public List<Path> getExecutables() {
+            return executables;
+        }
+
+        /**
+         * Gets the size of all artifacts, before signing.
+         * @return A {@code long}.
+         */
+        public long getTotalSize() {
+            return totalSize;
+        }
+    }
+
+    private int jarCount = 100;
+    private long minJarSize = 16 * 1024;
+    private long maxJarSize = 4 * 1024 * 1024;
+    private int entriesPerJar = 100;
+    private int depth = 3;
+    private double signedFraction = 0;
+    private int executableCount = 0;
+    private long executableSize = 1024 * 1024;
+    private long seed = 0;
+
+    /**
+     * Hidden constructor.
+     */
+    private CorpusGenerator() {
+    }
+
+    /**
+     * Creates a new generator.
+     * @return A {@code CorpusGenerator} instance, never {@code null}.
+     */
+    public static CorpusGenerator create() {
+        return new CorpusGenerator();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Builder methods.
+    public CorpusGenerator jarCount(final int value) {
+        jarCount = Math.max(0, value);
+        return this;
+    }
+
+    /**
+     * Sets the range of JAR sizes; sizes are distributed log-uniformly, so small files dominate as in real trees.
+     * @param min The minimum size in bytes.
+     * @param max The maximum size in bytes.
+     * @return This generator.
+     */
+    public CorpusGenerator jarSize(final long min, final long max) {
+        minJarSize = Math.max(1, Math.min(min, max));
+        maxJarSize = Math.max(1, Math.max(min, max));
+        return this;
+    }
+
+    public CorpusGenerator entriesPerJar(final int value) {
+        entriesPerJar = Math.max(1, value);
+        return this;
+    }
+
+    public CorpusGenerator depth(final int value) {
+        depth = Math.max(0, value);
+        return this;
+    }
+
+    public CorpusGenerator signedFraction(final double value) {
+        signedFraction = Math.max(0, Math.min(1, value));
+        return this;
+    }
+
+    public CorpusGenerator executableCount(final int value) {
+        executableCount = Math.max(0, value);
+        return this;
+    }
+
+    public CorpusGenerator executableSize(final long value) {
+        executableSize = Math.max(1, value);
+        return this;
+    }
+
+    public CorpusGenerator seed(final long value) {
+        seed = value;
+        return this;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    /**
+     * Generates a corpus.
+     * @param root The root directory, created if needed.
+     * @return A {@code Corpus} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     * @throws GeneralSecurityException If the key store cannot be created or if a JAR file cannot be signed.
+     * @throws InterruptedException If the current thread was interrupted while signing.
+     */
+    public Corpus generate(final Path root) throws IOException, GeneralSecurityException, InterruptedException {
+        final var random = new Random(seed);
+        Files.createDirectories(root);
+        final var keyStore = root.resolve(KEY_STORE_FILENAME);
+        CertificateUtils.INSTANCE.writeCodeSigningKeyStore(keyStore, "JKS", ALIAS, PASSWORD); // NOI18N.
+        final var tree = Files.createDirectories(root.resolve(TREE_DIRECTORY));
+        final var engine = (signedFraction > 0) ? new InProcessJarSignerEngine(JarSignerParametersBuilder.create()
+                .keyStore(keyStore.toString())
+                .storePassword(PASSWORD)
+                .keyPass(PASSWORD)
+                .alias(ALIAS)
+                .useTimeStamp(false)
+                .debugCommand(false)
+                .build()) : null;
+        final var artifacts = ArtifactUtils.INSTANCE;
+        long totalSize = 0;
+        final var jars = new ArrayList<Path>(jarCount);
+        for (int index = 0; index < jarCount; index++) {
+            final var file = directory(tree, random).resolve(String.format("lib-%05d.jar", index)); // NOI18N.
+            final var ratio = (double) maxJarSize / minJarSize;
+            final long size = Math.round(minJarSize * Math.pow(ratio, random.nextDouble()));
+            artifacts.writeJar(file, entriesPerJar, size, random);
+            if (engine != null && random.nextDouble() < signedFraction) {
+                engine.signFile(file);
+            }
+            totalSize += Files.size(file);
+            jars.add(file);
+        }
+        final var executables = new ArrayList<Path>(executableCount);
+        for (int index = 0; index < executableCount; index++) {
+            final var file = directory(tree, random).resolve(String.format("app-%05d.exe", index)); // NOI18N.
+            artifacts.writePortableExecutable(file, executableSize, random);
+            totalSize += Files.size(file);
+            executables.add(file);
+        }
+        return new Corpus(root, jars, executables, totalSize);
+    }
+
+    /**
+     * Picks a random directory in the tree, at most {@code depth} levels deep.
+     * @param tree The root of the tree.
+     * @param random The source of randomness.
+     * @return A {@code Path} instance, never {@code null}.
+     * @throws IOException In case of IO errors.
+     */
+    private Path directory(final Path tree, final Random random) throws IOException {
+        var result = tree;
+        final int level = (depth == 0) ? 0 : random.nextInt(depth + 1);
+        for (int index = 0; index < level; index++) {
+            result = result.resolve(String.format("dir-%d", random.nextInt(FAN_OUT))); // NOI18N.
+        }
+        return Files.createDirectories(result);
+    }
+}
@@ -0,0 +1,329 @@
+/***********************************************************************
+ *  Copyright - Secretariat of the Pacific Community                   *
+ *  Droit de copie - Secrétariat Général de la Communauté du Pacifique *
+ *  http://www.spc.int/                                                *
+ ***********************************************************************/
+package org.spc.ofp.project.authorize.test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.spc.ofp.project.authorize.der.DerElement;
+import org.spc.ofp.project.authorize.der.DerUtils;
+import org.spc.ofp.project.authorize.signature.TimeStampClient;
+
+/**
+ * Small RFC 3161 timestamp server that signs tokens with a throwaway key.
+ * <br>Latency, jitter, error rate and connection resets can be injected to measure throughput and retry behavior offline.
+ * <br>The server can be embedded (see {@link #start()}) or run standalone (see {@link #main(java.lang.String...)}).
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class LocalTimeStampServer {
+
+    private static final Logger LOGGER = Logger.getLogger(LocalTimeStampServer.class.getName());
+
+    /**
+     * Policy of the issued tokens, equals to "{@value}".
+     */
+    public static final String POLICY_OID = "1.3.6.1.4.1.4146.2.99"; // NOI18N.
+    private static final String CONTENT_TYPE_OID = "1.2.840.113549.1.9.3"; // NOI18N.
+    private static final String MESSAGE_DIGEST_OID = "1.2.840.113549.1.9.4"; // NOI18N.
+    private static final String SIGNING_CERTIFICATE_V2_OID = "1.2.840.113549.1.9.16.2.47"; // NOI18N.
+    private static final String RSA_ENCRYPTION_OID = "1.2.840.113549.1.1.1"; // NOI18N.
+    /**
+     * PKIStatus rejection, see RFC 3161.
+     */
+    private static final int STATUS_REJECTION = 2;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final KeyPair keyPair;
+    private final X509Certificate certificate;
+    private final AtomicLong serialNumber = new AtomicLong();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger injectedFailures = new AtomicInteger();
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration jitter = Duration.ZERO;
+    private volatile double errorRate = 0;
+    private volatile double resetRate = 0;
+
+    /**
+     * Creates a new instance listening on the loopback interface.
+     * @param port The port, {@code 0} for any free port.
+     * @throws IOException If the server cannot be created.
+     * @throws GeneralSecurityException If the throwaway key cannot be created.
+     */
+    public LocalTimeStampServer(final int port) throws IOException, GeneralSecurityException {
+        keyPair = CertificateUtils.INSTANCE.generateKeyPair(2048);
+        certificate = CertificateUtils.INSTANCE.selfSign(keyPair, "Authorize Local TSA", CertificateUtils.TIME_STAMPING_OID, 365); // NOI18N.
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // Injected latency must not serialize requests.
+        final var threadCounter = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            final var thread = new Thread(runnable, String.format("local-tsa-%d", threadCounter.incrementAndGet())); // NOI18N.
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle); // NOI18N.
+    }
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gets the URL of this server.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    public String getURL() {
+        final var address = server.getAddress();
+        return URI.create(String.format("http://%s:%d/", address.getAddress().getHostAddress(), address.getPort())).toString(); // NOI18N.
+    }
+
+    /**
+     * Gets the certificate of the throwaway TSA key.
+     * @return A {@code X509Certificate} instance, never {@code null}.
+     */
+    public X509Certificate getCertificate() {
+        return certificate;
+    }
+
+    /**
+     * Sets the latency added to each response.
+     * @param value The latency, {@code null} for none.
+     */
+    public void setLatency(final Duration value) {
+        latency = (value == null) ? Duration.ZERO : value;
+    }
+
+    /**
+     * Sets the maximum random latency added on top of the base latency.
+     * @param value The jitter, {@code null} for none.
+     */
+    public void setJitter(final Duration value) {
+        jitter = (value == null) ? Duration.ZERO : value;
+    }
+
+    /**
+     * Sets the probability of answering with an error (HTTP 500 or a rejected status, evenly).
+     * @param value The probability in [0, 1].
+     */
+    public void setErrorRate(final double value) {
+        errorRate = Math.max(0, Math.min(1, value));
+    }
+
+    /**
+     * Sets the probability of closing the connection without answering.
+     * @param value The probability in [0, 1].
+     */
+    public void setResetRate(final double value) {
+        resetRate = Math.max(0, Math.min(1, value));
+    }
+
+    /**
+     * Gets the number of requests received.
+     * @return An {@code int}.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Gets the number of injected errors and resets.
+     * @return An {@code int}.
+     */
+    public int getInjectedFailures() {
+        return injectedFailures.get();
+    }
+
+    /**
+     * Handles a timestamp request.
+     * @param exchange The exchange.
+     * @throws IOException In case of IO errors.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            final var request = exchange.getRequestBody().readAllBytes();
+            final var random = ThreadLocalRandom.current();
+            final long delay = latency.toMillis() + (jitter.isZero() ? 0 : random.nextLong(jitter.toMillis() + 1));
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (random.nextDouble() < resetRate) {
+                injectedFailures.incrementAndGet();
+                // Closing without a response drops the connection.
+                return;
+            }
+            if (!"POST".equals(exchange.getRequestMethod())) { // NOI18N.
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final var der = DerUtils.INSTANCE;
+            byte[] response;
+            if (random.nextDouble() < errorRate) {
+                injectedFailures.incrementAndGet();
+                if (random.nextBoolean()) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                response = der.sequence(der.sequence(der.integer(STATUS_REJECTION), der.sequence(der.utf8String("Injected failure.")))); // NOI18N.
+            } else {
+                response = der.sequence(der.sequence(der.integer(0)), createToken(request));
+            }
+            exchange.getResponseHeaders().set("Content-Type", TimeStampClient.TIMESTAMP_REPLY); // NOI18N.
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Creates a timestamp token for a request.
+     * @param request The DER encoded {@code TimeStampReq}.
+     * @return The DER encoded {@code ContentInfo}, never {@code null}.
+     * @throws IOException If the request is invalid.
+     * @throws GeneralSecurityException If the token cannot be signed.
+     */
+    private byte[] createToken(final byte[] request) throws IOException, GeneralSecurityException {
+        final var der = DerUtils.INSTANCE;
+        final var fields = DerElement.parse(request).getChildren();
+        final var messageImprint = fields.get(1);
+        BigInteger nonce = null;
+        boolean certReq = false;
+        for (final var field : fields.subList(2, fields.size())) {
+            if (field.getTag() == DerUtils.TAG_INTEGER) {
+                nonce = field.getInteger();
+            } else if (field.getTag() == DerUtils.TAG_BOOLEAN) {
+                certReq = field.getContent()[0] != 0;
+            }
+        }
+        final var tstInfo = der.sequence(
+                der.integer(1),
+                der.oid(POLICY_OID),
+                messageImprint.getEncoded(),
+                der.integer(serialNumber.incrementAndGet()),
+                der.generalizedTime(ZonedDateTime.now()),
+                (nonce == null) ? null : der.integer(nonce));
+        final var sha256 = der.algorithm(TimeStampClient.SHA256_OID, false);
+        final var certificateEncoded = certificate.getEncoded();
+        final var signedAttributes = der.set(
+                der.sequence(der.oid(CONTENT_TYPE_OID), der.set(der.oid(TimeStampClient.TST_INFO_OID))),
+                der.sequence(der.oid(MESSAGE_DIGEST_OID), der.set(der.octetString(MessageDigest.getInstance("SHA-256").digest(tstInfo)))), // NOI18N.
+                der.sequence(der.oid(SIGNING_CERTIFICATE_V2_OID), der.set(der.sequence(der.sequence(der.sequence(
+                        der.octetString(MessageDigest.getInstance("SHA-256").digest(certificateEncoded)))))))); // NOI18N.
+        final var signature = Signature.getInstance("SHA256withRSA"); // NOI18N.
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signedAttributes);
+        final var issuer = DerElement.parse(certificateEncoded).getChild(0).getChildren().get(3).getEncoded();
+        final var signerInfo = der.sequence(
+                der.integer(1),
+                der.sequence(issuer, der.integer(certificate.getSerialNumber())),
+                sha256,
+                der.implicit(0, signedAttributes),
+                der.algorithm(RSA_ENCRYPTION_OID, true),
+                der.octetString(signature.sign()));
+        final var signedData = der.sequence(
+                der.integer(3),
+                der.set(sha256),
+                der.sequence(der.oid(TimeStampClient.TST_INFO_OID), der.explicit(0, der.octetString(tstInfo))),
+                certReq ? der.encode(DerUtils.CONTEXT | DerUtils.CONSTRUCTED, certificateEncoded) : null,
+                der.set(signerInfo));
+        return der.sequence(der.oid(TimeStampClient.SIGNED_DATA_OID), der.explicit(0, signedData));
+    }
+
+    /**
+     * Main entry point.
+     * <br>Flags: {@code --port=<port>}, {@code --latency=<ms>}, {@code --jitter=<ms>}, {@code --error-rate=<0..1>}, {@code --reset-rate=<0..1>}, {@code --certificate=<file>}.
+     * @param args The command line arguments.
+     * @throws Exception In case of errors.
+     */
+    public static void main(String... args) throws Exception {
+        int port = 0;
+        long latency = 0;
+        long jitter = 0;
+        double errorRate = 0;
+        double resetRate = 0;
+        String certificateFile = null;
+        for (final var arg : args) {
+            final var pair = arg.replace("--", "").split("=", 2); // NOI18N.
+            final var value = (pair.length > 1) ? pair[1] : ""; // NOI18N.
+            switch (pair[0]) {
+                case "port": // NOI18N.
+                    port = Integer.parseInt(value);
+                    break;
+                case "latency": // NOI18N.
+                    latency = Long.parseLong(value);
+                    break;
+                case "jitter": // NOI18N.
+                    jitter = Long.parseLong(value);
+                    break;
+                case "error-rate": // NOI18N.
+                    errorRate = Double.parseDouble(value);
+                    break;
+                case "reset-rate": // NOI18N.
+                    resetRate = Double.parseDouble(value);
+                    break;
+                case "certificate": // NOI18N.
+                    certificateFile = value;
+                    break;
+                default:
+                    System.err.printf("Unsupported argument \"%s\".%n", arg); // NOI18N.
+                    System.exit(1);
+            }
+        }
+        final var server = new LocalTimeStampServer(port);
+        server.setLatency(Duration.ofMillis(latency));
+        server.setJitter(Duration.ofMillis(jitter));
+        server.setErrorRate(errorRate);
+        server.setResetRate(resetRate);
+        if (certificateFile != null) {
+            final var pem = String.format("-----BEGIN CERTIFICATE-----%n%s%n-----END CERTIFICATE-----%n", // NOI18N.
+                    Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(server.getCertificate().getEncoded())); // NOI18N.
+            Files.writeString(Paths.get(certificateFile), pem, StandardCharsets.US_ASCII);
+        }
+        server.start();
+        System.out.println(server.getURL());
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        Thread.currentThread().join();
+    }
+}